@@ -528,13 +528,11 @@ public class ArchiveElementFactory {
         
         if (uri != null) {
             try {
+                // The listing contains only files, so the entries need not 
+                // be checked again.
                 List<URI> uris = FileFinder.listFiles(uri);
-                if ((uris != null) && (uris.size() > 0)) { 
-                    for (URI element : uris) {
-                        if (!Files.isDirectory(Paths.get(element))) {
-                            files.add(element);
-                        }
-                    }
+                if (uris != null) { 
+                    files.addAll(uris);
                 }
             }
             catch (IOException ioe) {
@@ -6,6 +6,8 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import mil.nga.bundler.archive.ArchiveSettings;
+import mil.nga.bundler.interfaces.ArchivePlannerI;
 import mil.nga.bundler.interfaces.BundlerConstantsI;
 import mil.nga.bundler.model.Archive;
 import mil.nga.bundler.model.ArchiveElement;
@@ -13,9 +15,15 @@ import mil.nga.bundler.model.ArchiveJob;
 import mil.nga.bundler.model.ExtendedArchiveElement;
 import mil.nga.bundler.model.ExtendedFileEntry;
 import mil.nga.bundler.model.FileEntry;
+import mil.nga.bundler.planner.ArchivePlannerFactory;
 import mil.nga.bundler.types.ArchiveType;
 
 /**
+ * Class used to break the files of a job into the individual output 
+ * archives.  The compressed size of each file is estimated by the 
+ * <code>CompressionEstimator</code> and the files are then divided into 
+ * archives of the target size by the configured planning strategy (see 
+ * <code>ArchivePlannerI</code>).
  * 
  * @author L. Craig Carpenter
  *
@@ -43,6 +51,11 @@ public class ArchiveJobFactory implements BundlerConstantsI {
      */
     private FileNameGenerator fnGenerator;
     
+    /**
+     * The strategy used to divide the files into archives.
+     */
+    private ArchivePlannerI planner = null;
+    
     /**
      * Default no-arg constructor
      */
@@ -180,49 +193,13 @@ public class ArchiveJobFactory implements BundlerConstantsI {
             
             
             if ((decorated != null) && (decorated.size() > 0)) {
-                
-                int counter = 0;
-                Archive.ArchiveBuilder builder = new Archive.ArchiveBuilder();
-                
-                for (ExtendedFileEntry element : decorated) {
-                    
-                    // Will the file fit in the current archive?
-                    if ((builder.getSize() + element.getEstimatedCompressedSize()) <
-                            getTargetArchiveSize()) {
-                        
-                        
-                        // TODO: Remove the following
-                        LOGGER.info("Adding => " + element.getArchiveElement().toString());
-                        
-                        builder.element(
-                                element.getArchiveElement(), 
-                                element.getEstimatedCompressedSize());
-                    }
-                    else {
-                        
-                        builder.type(getArchiveType());
-                        builder.id(counter);
-                        builder.outputFileName(
-                                getFileNameGenerator().getOutputFile(counter));
-                        archives.add(builder.build());
-                        
-                        // TODO: Remove the following
-                        LOGGER.info("Generating new archive.");
-                        
-                        builder = new Archive.ArchiveBuilder();
-                        builder.element(
-                                element.getArchiveElement(), 
-                                element.getEstimatedCompressedSize());
-                        counter++;
-                    }
+                List<ArchiveElement> elements = new ArrayList<ArchiveElement>();
+                long[]               sizes    = new long[decorated.size()];
+                for (int i=0; i<sizes.length; i++) {
+                    elements.add(decorated.get(i).getArchiveElement());
+                    sizes[i] = decorated.get(i).getEstimatedCompressedSize();
                 }
-                // TODO: Remove the following
-                LOGGER.info("Flushing files to archive [ " + counter + " ].");
-                builder.type(getArchiveType());
-                builder.id(counter);
-                builder.outputFileName(
-                        getFileNameGenerator().getOutputFile(counter));
-                archives.add(builder.build());
+                archives = buildArchives(elements, sizes);
             }
             else {
                 LOGGER.error("Unable to estimate the size of the target "
@@ -271,33 +248,13 @@ public class ArchiveJobFactory implements BundlerConstantsI {
                     .getEstimatedCompressedSize(fileList, getArchiveType());
             
             if ((decorated != null) && (decorated.size() > 0)) {
-                
-                int counter = 0;
-                Archive.ArchiveBuilder builder = new Archive.ArchiveBuilder();
-                
-                for (ExtendedArchiveElement element : decorated) {
-                    
-                    // Will the file fit in the current archive?
-                    if ((builder.getSize() + element.getEstimatedCompressedSize()) <
-                            getTargetArchiveSize()) {
-                        
-                        builder.element(
-                                element.getArchiveElement(), 
-                                element.getEstimatedCompressedSize());
-                    }
-                    else {
-                        
-                        builder.type(getArchiveType());
-                        builder.id(counter);
-                        builder.outputFileName(getFileNameGenerator().getOutputFile(counter));
-                        archives.add(builder.build());
-                        builder = new Archive.ArchiveBuilder();
-                        builder.element(
-                                element.getArchiveElement(), 
-                                element.getEstimatedCompressedSize());
-                        counter++;
-                    }
+                List<ArchiveElement> elements = new ArrayList<ArchiveElement>();
+                long[]               sizes    = new long[decorated.size()];
+                for (int i=0; i<sizes.length; i++) {
+                    elements.add(decorated.get(i).getArchiveElement());
+                    sizes[i] = decorated.get(i).getEstimatedCompressedSize();
                 }
+                archives = buildArchives(elements, sizes);
             }
             else {
                 LOGGER.error("Unable to estimate the size of the target "
@@ -310,10 +267,47 @@ public class ArchiveJobFactory implements BundlerConstantsI {
                     + "empty.  The output list will be empty.");
         }
         
-        LOGGER.info("Archive job creation completed in [ "
+        LOGGER.info("Archive job creation resulted in [ "
+                + archives.size()
+                + " ] archive jobs and completed in [ "
                 + (System.currentTimeMillis() - startTime)
-                + " ].");
+                + " ] ms.");
+        
+        return archives;
+    }
+    
+    /**
+     * Construct the output archives from the plan produced by the archive
+     * planner.
+     * 
+     * @param elements The files to archive.
+     * @param sizes The estimated compressed size of each file.
+     * @return The list of individual archives to be constructed.
+     */
+    private List<Archive> buildArchives(
+            List<ArchiveElement> elements, 
+            long[] sizes) {
         
+        List<Archive> archives = new ArrayList<Archive>();
+        List<List<Integer>> plan = getPlanner().plan(
+                elements,
+                sizes, 
+                getTargetArchiveSize(), 
+                MAX_NUM_ARCHIVES);
+        
+        int counter = 0;
+        for (List<Integer> indexes : plan) {
+            Archive.ArchiveBuilder builder = new Archive.ArchiveBuilder();
+            for (int index : indexes) {
+                builder.element(elements.get(index), sizes[index]);
+            }
+            builder.type(getArchiveType());
+            builder.id(counter);
+            builder.outputFileName(
+                    getFileNameGenerator().getOutputFile(counter));
+            archives.add(builder.build());
+            counter++;
+        }
         return archives;
     }
     
@@ -336,6 +330,20 @@ public class ArchiveJobFactory implements BundlerConstantsI {
         return fnGenerator;
     }
     
+    /**
+     * Getter method for the strategy used to divide the files into 
+     * archives.
+     * 
+     * @return The archive planner.
+     */
+    public ArchivePlannerI getPlanner() {
+        if (planner == null) {
+            planner = ArchivePlannerFactory.getInstance().getPlanner(
+                    ArchiveSettings.getInstance().getPlannerType());
+        }
+        return planner;
+    }
+    
     /**
      * Getter method for the target archive size.
      * 
@@ -353,6 +361,17 @@ public class ArchiveJobFactory implements BundlerConstantsI {
         archiveType = type;
     }
     
+    /**
+     * Setter method for the strategy used to divide the files into 
+     * archives.  If not set, the strategy configured in the bundler 
+     * properties file is used.
+     * 
+     * @param value The archive planner.
+     */
+    public void setPlanner(ArchivePlannerI value) {
+        planner = value;
+    }
+    
     /**
      * Create the <code>FileNameGenerator</code> object that will be used in
      * constructing the output file names.  This method creates a 
@@ -1,17 +1,22 @@
 package mil.nga.bundler;
 
+import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import mil.nga.bundler.archive.ArchiveSettings;
 import mil.nga.bundler.interfaces.BundlerConstantsI;
 import mil.nga.bundler.model.ArchiveElement;
 import mil.nga.bundler.types.ArchiveType;
 import mil.nga.bundler.model.ExtendedArchiveElement;
 import mil.nga.bundler.model.ExtendedFileEntry;
 import mil.nga.bundler.model.FileEntry;
+import mil.nga.util.URIUtils;
 
 /**
  * In order to create an output archive that is close to the requested output
@@ -21,7 +26,17 @@ import mil.nga.bundler.model.FileEntry;
  * reasonable estimate of how much a file will compress based on extension 
  * and file type.
  * 
- * TODO: Need to actually implement the algorithm.
+ * By default every file is assumed to compress by 
+ * <code>AVERAGE_COMPRESSION_PERCENTAGE</code>.  If compression sampling is
+ * enabled, the ratio for each file is instead estimated by deflating 
+ * samples of its content (see <code>CompressionSampler</code>), and files
+ * going into uncompressed archive types are estimated at their full size.
+ * Files that cannot be sampled fall back to the average.
+ * 
+ * If a <code>CompressionModel</code> learned from completed archives has 
+ * been supplied, its ratio for the file's extension takes precedence over
+ * sampling, and its ratio for the archive type takes precedence over the 
+ * fixed average.
  * 
  * @author L. Craig Carpenter
  */
@@ -33,6 +48,40 @@ public class CompressionEstimator implements BundlerConstantsI {
     static final Logger LOGGER = LoggerFactory.getLogger(
             CompressionEstimator.class);
     
+    /**
+     * The sampler used to estimate per-file ratios (null if sampling is 
+     * disabled).
+     */
+    private final CompressionSampler sampler;
+    
+    /**
+     * The model learned from completed archives (null until one has been 
+     * built).
+     */
+    private volatile CompressionModel model = null;
+    
+    /**
+     * Default constructor.  The sampling settings are read from the 
+     * bundler properties file.
+     */
+    public CompressionEstimator() {
+        this(ArchiveSettings.getInstance());
+    }
+    
+    /**
+     * Alternate constructor allowing clients to supply the archive 
+     * settings.
+     * 
+     * @param settings The archive settings to apply.
+     */
+    public CompressionEstimator(ArchiveSettings settings) {
+        if ((settings != null) && (settings.isCompressionSampling())) {
+            sampler = new CompressionSampler(settings.getSamplingThreads());
+        }
+        else {
+            sampler = null;
+        }
+    }
     
     /**
      * Getter method for the singleton instance of the CompressionEstimator.
@@ -68,16 +117,37 @@ public class CompressionEstimator implements BundlerConstantsI {
                         + " ] objects.");
             }
             
-            for (FileEntry element : fileList) {
+            double[] ratios = null;
+            if ((sampler != null) || (getModel() != null)) {
+                List<String> paths = new ArrayList<String>();
+                List<URI>    files = new ArrayList<URI>();
+                long[]       sizes = new long[fileList.size()];
+                for (int i=0; i<sizes.length; i++) {
+                    FileEntry element = fileList.get(i);
+                    paths.add((element == null) ? 
+                            null : element.getEntryPath());
+                    files.add((sampler == null) ? null : getURI(element));
+                    sizes[i] = (element == null) ? 0L : element.getSize();
+                }
+                ratios = getRatios(paths, files, sizes, type);
+            }
+            
+            for (int i=0; i<fileList.size(); i++) {
+                FileEntry element = fileList.get(i);
                 try {
                     extendedList.add(
                                 new ExtendedFileEntry.ExtendedFileEntryBuilder()
                                     .fileEntry(element)
                                     .type(type)
                                     .estimatedCompressedSize(
-                                            getEstimatedCompressedFileSize(
+                                            ((ratios == null) || 
+                                                    (element == null)) ? 
+                                                getEstimatedCompressedFileSize(
                                                     element, 
-                                                    type))
+                                                    type) : 
+                                                getEstimatedSize(
+                                                    element.getSize(), 
+                                                    ratios[i]))
                                     .build()
                             );
                 }
@@ -130,16 +200,37 @@ public class CompressionEstimator implements BundlerConstantsI {
                         + " ] objects.");
             }
             
-            for (ArchiveElement element : fileList) {
+            double[] ratios = null;
+            if ((sampler != null) || (getModel() != null)) {
+                List<String> paths = new ArrayList<String>();
+                List<URI>    files = new ArrayList<URI>();
+                long[]       sizes = new long[fileList.size()];
+                for (int i=0; i<sizes.length; i++) {
+                    ArchiveElement element = fileList.get(i);
+                    paths.add((element == null) ? 
+                            null : element.getEntryPath());
+                    files.add((element == null) ? null : element.getURI());
+                    sizes[i] = (element == null) ? 0L : element.getSize();
+                }
+                ratios = getRatios(paths, files, sizes, type);
+            }
+            
+            for (int i=0; i<fileList.size(); i++) {
+                ArchiveElement element = fileList.get(i);
                 try {
                     extendedList.add(
                                 new ExtendedArchiveElement.ExtendedArchiveElementBuilder()
                                     .archiveElement(element)
                                     .type(type)
                                     .estimatedCompressedSize(
-                                            getEstimatedCompressedFileSize(
+                                            ((ratios == null) || 
+                                                    (element == null)) ? 
+                                                getEstimatedCompressedFileSize(
                                                     element, 
-                                                    type))
+                                                    type) : 
+                                                getEstimatedSize(
+                                                    element.getSize(), 
+                                                    ratios[i]))
                                     .build()
                             );
                 }
@@ -181,9 +272,13 @@ public class CompressionEstimator implements BundlerConstantsI {
         double estimatedSize = 0.0;
         
         if ((file != null) && (file.getSize() > 0)) {
-            double multiplier = 
-                    (100.0 - AVERAGE_COMPRESSION_PERCENTAGE) / 100.0;
-            estimatedSize = multiplier * (double)(file.getSize());
+            estimatedSize = getEstimatedSize(
+                    file.getSize(), 
+                    getRatio(
+                            file.getEntryPath(), 
+                            (sampler == null) ? null : getURI(file), 
+                            file.getSize(), 
+                            type));
         }
         else {
             LOGGER.warn("Null ArchiveElement received.  Returned estimated "
@@ -207,9 +302,13 @@ public class CompressionEstimator implements BundlerConstantsI {
         double estimatedSize = 0.0;
         
         if ((file != null) && (file.getSize() > 0)) {
-            double multiplier = 
-                    (100.0 - AVERAGE_COMPRESSION_PERCENTAGE) / 100.0;
-            estimatedSize = multiplier * (double)(file.getSize());
+            estimatedSize = getEstimatedSize(
+                    file.getSize(), 
+                    getRatio(
+                            file.getEntryPath(), 
+                            file.getURI(), 
+                            file.getSize(), 
+                            type));
         }
         else {
             LOGGER.warn("Null ArchiveElement received.  Returned estimated "
@@ -218,6 +317,160 @@ public class CompressionEstimator implements BundlerConstantsI {
         return (long)estimatedSize;
     }
     
+    /**
+     * Apply the compression ratio to the input file size.  If the ratio 
+     * is unknown, <code>AVERAGE_COMPRESSION_PERCENTAGE</code> is applied.
+     * 
+     * @param size The uncompressed file size.
+     * @param ratio The estimated compression ratio (negative if unknown).
+     * @return The estimated compressed size.
+     */
+    private long getEstimatedSize(long size, double ratio) {
+        if (size <= 0) {
+            return 0L;
+        }
+        double multiplier = (ratio < 0.0) ? 
+                (100.0 - AVERAGE_COMPRESSION_PERCENTAGE) / 100.0 : ratio;
+        return (long)(multiplier * (double)size);
+    }
+    
+    /**
+     * Get the estimated compression ratio of a single file.
+     * 
+     * @param entryPath The entry path of the file.
+     * @param file The file.
+     * @param size The size of the file.
+     * @param type The type of archive to create.
+     * @return The estimated ratio (negative if unknown).
+     */
+    private double getRatio(
+            String entryPath, 
+            URI file, 
+            long size, 
+            ArchiveType type) {
+        return getRatios(
+                Collections.singletonList(entryPath), 
+                Collections.singletonList(file), 
+                new long[] { size }, 
+                type)[0];
+    }
+    
+    /**
+     * Get the estimated compression ratio of each of the input files.  The
+     * learned ratio for a file's extension is used where there is one.  
+     * The remaining files are sampled in parallel (if sampling is enabled)
+     * and any still without a ratio get the learned ratio for the archive
+     * type.
+     * 
+     * @param paths The entry path of each file.
+     * @param files The files.
+     * @param sizes The size of each file.
+     * @param type The type of archive to create.
+     * @return The estimated ratio of each file (negative if unknown).
+     */
+    private double[] getRatios(
+            List<String> paths, 
+            List<URI> files, 
+            long[] sizes, 
+            ArchiveType type) {
+        
+        CompressionModel current  = getModel();
+        double[]         ratios   = new double[sizes.length];
+        List<Integer>    unknown  = new ArrayList<Integer>();
+        
+        for (int i=0; i<ratios.length; i++) {
+            ratios[i] = (current == null) ? 
+                    CompressionSampler.UNKNOWN_RATIO : 
+                    current.getExtensionRatio(type, paths.get(i));
+            if (ratios[i] < 0.0) {
+                unknown.add(i);
+            }
+        }
+        
+        if ((sampler != null) && (!unknown.isEmpty())) {
+            if (!isCompressed(type)) {
+                for (int i : unknown) {
+                    ratios[i] = 1.0;
+                }
+            }
+            else {
+                List<URI> sampled = new ArrayList<URI>();
+                long[]    lengths = new long[unknown.size()];
+                for (int i=0; i<lengths.length; i++) {
+                    sampled.add(files.get(unknown.get(i)));
+                    lengths[i] = sizes[unknown.get(i)];
+                }
+                double[] results = sampler.getRatios(sampled, lengths);
+                for (int i=0; i<results.length; i++) {
+                    ratios[unknown.get(i)] = results[i];
+                }
+            }
+        }
+        
+        if (current != null) {
+            double typeRatio = current.getTypeRatio(type);
+            for (int i : unknown) {
+                if (ratios[i] < 0.0) {
+                    ratios[i] = typeRatio;
+                }
+            }
+        }
+        return ratios;
+    }
+    
+    /**
+     * Getter method for the model learned from completed archives.
+     * @return The learned model (null if none has been supplied).
+     */
+    public CompressionModel getModel() {
+        return model;
+    }
+    
+    /**
+     * Setter method for the model learned from completed archives.  The 
+     * model is replaced as a whole, so estimates in progress keep using 
+     * the model they started with.
+     * @param value The learned model (null to stop using it).
+     */
+    public void setModel(CompressionModel value) {
+        model = value;
+    }
+    
+    /**
+     * Determine whether the input archive type compresses its contents.
+     * 
+     * @param type The type of archive to create.
+     * @return False for the uncompressed archive types (TAR, CPIO, AR).
+     */
+    private boolean isCompressed(ArchiveType type) {
+        return (type != ArchiveType.TAR) && 
+                (type != ArchiveType.CPIO) && 
+                (type != ArchiveType.AR);
+    }
+    
+    /**
+     * Convert the path of the input file entry to a URI.
+     * 
+     * @param file The file entry.
+     * @return The URI of the file, or null if it cannot be determined.
+     */
+    private URI getURI(FileEntry file) {
+        if ((file == null) || (file.getFilePath() == null)) {
+            return null;
+        }
+        try {
+            return URIUtils.getInstance().getURI(file.getFilePath());
+        }
+        catch (FileSystemNotFoundException fsnfe) {
+            LOGGER.warn("Unable to determine the URI of file [ "
+                    + file.getFilePath()
+                    + " ].  Exception message => [ "
+                    + fsnfe.getMessage()
+                    + " ].");
+        }
+        return null;
+    }
+    
     /** 
      * Static inner class used to construct the factory singleton.  This
      * class exploits that fact that inner classes are not loaded until they 
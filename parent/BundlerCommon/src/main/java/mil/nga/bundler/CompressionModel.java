@@ -0,0 +1,404 @@
+package mil.nga.bundler;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import mil.nga.bundler.interfaces.BundlerConstantsI;
+import mil.nga.bundler.model.ArchiveJob;
+import mil.nga.bundler.model.FileEntry;
+import mil.nga.bundler.types.ArchiveType;
+
+/**
+ * Compact model of the compression ratios actually achieved by completed
+ * archives.  Each completed <code>ArchiveJob</code> records the total size
+ * of its input files and the size of the output archive.  The model keeps
+ * the observed ratio (output bytes divided by input bytes) for each
+ * archive type, and for each file extension within an archive type.
+ *
+ * Only the archive as a whole has an observed output size, so the output
+ * bytes of an archive are attributed to its extensions in proportion to
+ * their input bytes.  Across many archives with different mixes of file
+ * types the per-extension ratios still separate (e.g. archives made up
+ * mostly of JPEG 2000 files pull the "jp2" ratio toward 1.0).
+ *
+ * Instances are immutable and are constructed using the
+ * <code>CompressionModelBuilder</code>.  Clients replace the model rather
+ * than updating it.
+ *
+ * @author L. Craig Carpenter
+ */
+public class CompressionModel implements BundlerConstantsI {
+
+    /**
+     * Value returned if the model has no ratio for the requested file.
+     */
+    public static final double UNKNOWN_RATIO = -1.0;
+
+    /**
+     * The minimum number of archives that must contribute to a ratio
+     * before it is used.
+     */
+    public static final int MIN_OBSERVATIONS = 10;
+
+    /**
+     * The observed ratio for each archive type.
+     */
+    private final Map<ArchiveType, Ratio> typeRatios;
+
+    /**
+     * The observed ratio for each extension, by archive type.
+     */
+    private final Map<ArchiveType, Map<String, Ratio>> extensionRatios;
+
+    /**
+     * The number of archives used to build the model.
+     */
+    private final int observations;
+
+    /**
+     * Mean absolute percentage error of the estimates that were in use
+     * when the model was built, measured against the archives used to
+     * build it.
+     */
+    private final double estimateError;
+
+    /**
+     * Time at which the model was built.
+     */
+    private final long buildTime;
+
+    /**
+     * Constructor used by the builder.
+     *
+     * @param builder Populated builder object.
+     */
+    protected CompressionModel(CompressionModelBuilder builder) {
+        typeRatios      = Collections.unmodifiableMap(builder.typeRatios);
+        extensionRatios = Collections.unmodifiableMap(builder.extensionRatios);
+        observations    = builder.observations;
+        estimateError   = (builder.observations > 0) ?
+                builder.error / (double)builder.observations : 0.0;
+        buildTime       = System.currentTimeMillis();
+    }
+
+    /**
+     * Get the learned compression ratio for a file.  The ratio for the
+     * file's extension is used if enough archives contained that
+     * extension, otherwise the ratio for the archive type.
+     *
+     * @param type The type of archive being created.
+     * @param entryPath The entry path (or file path) of the file.
+     * @return The ratio, or <code>UNKNOWN_RATIO</code> if the model has
+     * too little data.
+     */
+    public double getRatio(ArchiveType type, String entryPath) {
+        double ratio = getExtensionRatio(type, entryPath);
+        if (ratio < 0.0) {
+            ratio = getTypeRatio(type);
+        }
+        return ratio;
+    }
+
+    /**
+     * Get the learned compression ratio for a file extension.
+     *
+     * @param type The type of archive being created.
+     * @param entryPath The entry path (or file path) of the file.
+     * @return The ratio, or <code>UNKNOWN_RATIO</code> if too few archives
+     * contained the extension.
+     */
+    public double getExtensionRatio(ArchiveType type, String entryPath) {
+        return getRatioByExtension(type, getExtension(entryPath));
+    }
+
+    /**
+     * Get the learned compression ratio for a lower-case file extension.
+     *
+     * @param type The type of archive being created.
+     * @param extension The lower-case extension (with the "." separator).
+     * @return The ratio, or <code>UNKNOWN_RATIO</code> if too few archives
+     * contained the extension.
+     */
+    private double getRatioByExtension(ArchiveType type, String extension) {
+        Map<String, Ratio> ratios = extensionRatios.get(type);
+        if (ratios != null) {
+            Ratio ratio = ratios.get(extension);
+            if ((ratio != null) && (ratio.count >= MIN_OBSERVATIONS)) {
+                return ratio.getValue();
+            }
+        }
+        return UNKNOWN_RATIO;
+    }
+
+    /**
+     * Get the learned compression ratio for an archive type.
+     *
+     * @param type The type of archive being created.
+     * @return The ratio, or <code>UNKNOWN_RATIO</code> if too few archives
+     * of the type were observed.
+     */
+    public double getTypeRatio(ArchiveType type) {
+        Ratio ratio = typeRatios.get(type);
+        if ((ratio != null) && (ratio.count >= MIN_OBSERVATIONS)) {
+            return ratio.getValue();
+        }
+        return UNKNOWN_RATIO;
+    }
+
+    /**
+     * Getter method for the time the model was built.
+     * @return The build time (milliseconds since the epoch).
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    /**
+     * Getter method for the error of the estimates in use when the model
+     * was built.  This is the mean, over the observed archives, of the
+     * absolute difference between the estimated and actual archive sizes
+     * divided by the actual size.
+     * @return The mean absolute percentage error (0.0 - 1.0+).
+     */
+    public double getEstimateError() {
+        return estimateError;
+    }
+
+    /**
+     * Getter method for the number of archives used to build the model.
+     * @return The number of observed archives.
+     */
+    public int getObservations() {
+        return observations;
+    }
+
+    /**
+     * Extract the lower-case extension from the input path.
+     *
+     * @param path The entry path or file path.
+     * @return The extension (with the "." separator), or an empty string.
+     */
+    private static String getExtension(String path) {
+        return EntryPathFactory.getInstance()
+                .getExtension(path)
+                .toLowerCase(Locale.US);
+    }
+
+    /**
+     * Convert the object to a printable String.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        String newLine = System.getProperty("line.separator");
+        sb.append("Compression model : Observations => [ ");
+        sb.append(getObservations());
+        sb.append(" ], Estimate error => [ ");
+        sb.append(getEstimateError());
+        sb.append(" ]");
+        sb.append(newLine);
+        for (Map.Entry<ArchiveType, Ratio> entry : typeRatios.entrySet()) {
+            sb.append("    ");
+            sb.append(entry.getKey().getText());
+            sb.append(" => [ ");
+            sb.append(entry.getValue().getValue());
+            sb.append(" ], Extensions => [ ");
+            Map<String, Ratio> ratios = extensionRatios.get(entry.getKey());
+            sb.append((ratios == null) ? 0 : ratios.size());
+            sb.append(" ]");
+            sb.append(newLine);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Accumulator of input and output bytes.
+     */
+    private static class Ratio {
+
+        private double input  = 0.0;
+        private double output = 0.0;
+        private int    count  = 0;
+
+        private void add(double in, double out) {
+            input  += in;
+            output += out;
+            count++;
+        }
+
+        private double getValue() {
+            return (input > 0.0) ? output / input : UNKNOWN_RATIO;
+        }
+    }
+
+    /**
+     * Static inner class implementing the builder creation pattern for
+     * objects of type CompressionModel.
+     *
+     * @author L. Craig Carpenter
+     */
+    public static class CompressionModelBuilder {
+
+        private final Map<ArchiveType, Ratio> typeRatios =
+                new EnumMap<ArchiveType, Ratio>(ArchiveType.class);
+        private final Map<ArchiveType, Map<String, Ratio>> extensionRatios =
+                new EnumMap<ArchiveType, Map<String, Ratio>>(ArchiveType.class);
+        private CompressionModel previous = null;
+        private double error = 0.0;
+        private int observations = 0;
+
+        /**
+         * Add an observation for each of the completed archives.
+         *
+         * @param archives The completed archives.
+         * @return Reference to the parent builder object.
+         */
+        public CompressionModelBuilder archives(List<ArchiveJob> archives) {
+            if (archives != null) {
+                for (ArchiveJob archive : archives) {
+                    archive(archive);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Add an observation for a completed archive.  Archives with no
+         * output size or no input files are ignored.
+         *
+         * @param archive A completed archive.
+         * @return Reference to the parent builder object.
+         */
+        public CompressionModelBuilder archive(ArchiveJob archive) {
+            if ((archive == null) || (archive.getFiles() == null)) {
+                return this;
+            }
+            Map<String, Long> perExtension = new HashMap<String, Long>();
+            for (FileEntry file : archive.getFiles()) {
+                if (file.getSize() > 0) {
+                    String extension = getExtension(file.getEntryPath());
+                    Long bytes = perExtension.get(extension);
+                    perExtension.put(extension, (bytes == null) ?
+                            file.getSize() : bytes + file.getSize());
+                }
+            }
+            return archive(
+                    archive.getArchiveType(),
+                    archive.getSize(),
+                    perExtension);
+        }
+
+        /**
+         * Add an observation for a completed archive that has already been
+         * summarized (e.g. by an aggregate database query) into the input
+         * bytes for each file extension.  Archives with no output size or
+         * no input bytes are ignored.
+         *
+         * @param type The type of the completed archive.
+         * @param size The size of the output archive.
+         * @param perExtension The input bytes for each lower-case file
+         * extension (with the "." separator, or an empty string).
+         * @return Reference to the parent builder object.
+         */
+        public CompressionModelBuilder archive(
+                ArchiveType type,
+                long size,
+                Map<String, Long> perExtension) {
+            if ((type == null) || (size <= 0) || (perExtension == null)) {
+                return this;
+            }
+            long input = 0L;
+            for (Long bytes : perExtension.values()) {
+                if (bytes != null) {
+                    input += Math.max(0L, bytes);
+                }
+            }
+            if (input <= 0) {
+                return this;
+            }
+
+            double output = (double)size;
+            double ratio  = output / (double)input;
+
+            // Measure the estimate that would have been made for this
+            // archive before adding it to the model.
+            double estimate = 0.0;
+            for (Map.Entry<String, Long> entry : perExtension.entrySet()) {
+                if ((entry.getValue() != null) && (entry.getValue() > 0)) {
+                    estimate += getPreviousRatio(type, entry.getKey())
+                            * (double)entry.getValue();
+                }
+            }
+            error += Math.abs(estimate - output) / output;
+            observations++;
+
+            getRatio(typeRatios, type).add(input, output);
+            Map<String, Ratio> ratios = extensionRatios.get(type);
+            if (ratios == null) {
+                ratios = new HashMap<String, Ratio>();
+                extensionRatios.put(type, ratios);
+            }
+            for (Map.Entry<String, Long> entry : perExtension.entrySet()) {
+                if ((entry.getValue() != null) && (entry.getValue() > 0)) {
+                    getRatio(ratios, entry.getKey()).add(
+                            entry.getValue(), entry.getValue() * ratio);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * The model in use before this one (may be null).  Its estimates
+         * are used to measure the estimate error.
+         *
+         * @param value The previous model.
+         * @return Reference to the parent builder object.
+         */
+        public CompressionModelBuilder previous(CompressionModel value) {
+            previous = value;
+            return this;
+        }
+
+        /**
+         * Construct the CompressionModel object.
+         * @return The constructed model.
+         */
+        public CompressionModel build() {
+            return new CompressionModel(this);
+        }
+
+        /**
+         * Get the ratio estimated for an extension before this model
+         * existed (the previous model, or the fixed average).
+         */
+        private double getPreviousRatio(ArchiveType type, String extension) {
+            double ratio = UNKNOWN_RATIO;
+            if (previous != null) {
+                ratio = previous.getRatioByExtension(type, extension);
+                if (ratio < 0.0) {
+                    ratio = previous.getTypeRatio(type);
+                }
+            }
+            if (ratio < 0.0) {
+                ratio = (100.0 - AVERAGE_COMPRESSION_PERCENTAGE) / 100.0;
+            }
+            return ratio;
+        }
+
+        /**
+         * Get (creating if required) the accumulator for the input key.
+         */
+        private static <K> Ratio getRatio(Map<K, Ratio> map, K key) {
+            Ratio ratio = map.get(key);
+            if (ratio == null) {
+                ratio = new Ratio();
+                map.put(key, ratio);
+            }
+            return ratio;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package mil.nga.bundler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class used to estimate how well individual files will compress by
+ * deflating small samples of their content.  The first
+ * <code>SAMPLE_SIZE</code> bytes of each file are sampled, along with the
+ * same amount from the middle of the file if it is large enough.  The
+ * ratio of compressed to uncompressed sample bytes is then applied to the
+ * whole file.  Headers alone are a poor guide for many of the formats
+ * handled (e.g. NITF, where the header is text and the image data may or
+ * may not be compressed), hence the second sample.
+ *
+ * Deflate is used as a proxy for all of the compression algorithms.  The
+ * other algorithms generally do somewhat better on compressible data, and
+ * all of them do equally badly on already-compressed data, which is the
+ * case that matters most when planning archive sizes.
+ *
+ * Sampling a file requires two small reads, so files are sampled on
+ * several threads and the ratios are cached by path, size, and
+ * modification time so that files requested again are not re-read.
+ *
+ * @author L. Craig Carpenter
+ */
+public class CompressionSampler {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(
+            CompressionSampler.class);
+
+    /**
+     * The number of bytes read from each sampled region of a file.
+     */
+    public static final int SAMPLE_SIZE = 64 * 1024;
+
+    /**
+     * The maximum number of ratios held in the cache.  The least recently
+     * used ratios are discarded first.
+     */
+    public static final int MAX_CACHE_ENTRIES = 100000;
+
+    /**
+     * Value returned if a file could not be sampled.
+     */
+    public static final double UNKNOWN_RATIO = -1.0;
+
+    /**
+     * The number of threads used to sample a list of files.
+     */
+    private final int threads;
+
+    /**
+     * Cache of sampled ratios keyed by path, size, and modification time.
+     */
+    private final Map<String, Double> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, Double>(1024, 0.75f, true) {
+                private static final long serialVersionUID =
+                        -3806437318617036214L;
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<String, Double> eldest) {
+                    return size() > MAX_CACHE_ENTRIES;
+                }
+            });
+
+    /**
+     * Constructor.
+     *
+     * @param threads The number of threads used to sample a list of files
+     * (values less than 1 are set to 1).
+     */
+    public CompressionSampler(int threads) {
+        this.threads = (threads < 1) ? 1 : threads;
+    }
+
+    /**
+     * Getter method for the number of sampling threads.
+     * @return The number of threads used to sample a list of files.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Get the estimated compression ratio (compressed size divided by
+     * uncompressed size) of a single file.
+     *
+     * @param file The file to sample.
+     * @param size The size of the file.
+     * @return The estimated ratio (between 0 and 1), or
+     * <code>UNKNOWN_RATIO</code> if the file could not be sampled.
+     */
+    public double getRatio(URI file, long size) {
+        if ((file == null) || (size <= 0)) {
+            return UNKNOWN_RATIO;
+        }
+        String key = null;
+        try {
+            Path path = Paths.get(file);
+            key = file.toString()
+                    + "|"
+                    + size
+                    + "|"
+                    + Files.getLastModifiedTime(path).toMillis();
+            Double cached = cache.get(key);
+            if (cached != null) {
+                return cached.doubleValue();
+            }
+            double ratio = sample(path, size);
+            cache.put(key, ratio);
+            return ratio;
+        }
+        catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to sample file [ "
+                    + file.toString()
+                    + " ].  Exception message => [ "
+                    + e.getMessage()
+                    + " ].");
+        }
+        return UNKNOWN_RATIO;
+    }
+
+    /**
+     * Get the estimated compression ratio of each of the input files.  The
+     * files are sampled in parallel.
+     *
+     * @param files The files to sample.
+     * @param sizes The size of each file.
+     * @return The estimated ratio of each file (<code>UNKNOWN_RATIO</code>
+     * for files that could not be sampled).
+     */
+    public double[] getRatios(final List<URI> files, final long[] sizes) {
+
+        long     startTime = System.currentTimeMillis();
+        double[] ratios    = new double[files.size()];
+
+        if (ratios.length == 1) {
+            ratios[0] = getRatio(files.get(0), sizes[0]);
+            return ratios;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(threads, ratios.length)));
+        try {
+            List<Future<Double>> futures = new ArrayList<Future<Double>>();
+            for (int i=0; i<ratios.length; i++) {
+                final int index = i;
+                futures.add(executor.submit(new Callable<Double>() {
+                    @Override
+                    public Double call() {
+                        return getRatio(files.get(index), sizes[index]);
+                    }
+                }));
+            }
+            for (int i=0; i<ratios.length; i++) {
+                try {
+                    ratios[i] = futures.get(i).get();
+                }
+                catch (ExecutionException ee) {
+                    ratios[i] = UNKNOWN_RATIO;
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    for (int j=i; j<ratios.length; j++) {
+                        ratios[j] = UNKNOWN_RATIO;
+                    }
+                    break;
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Sampled [ "
+                    + ratios.length
+                    + " ] files in [ "
+                    + (System.currentTimeMillis() - startTime)
+                    + " ] ms.");
+        }
+        return ratios;
+    }
+
+    /**
+     * Read and deflate the samples of the target file.
+     *
+     * @param path The file to sample.
+     * @param size The size of the file.
+     * @return The ratio of compressed to uncompressed sample bytes.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    private double sample(Path path, long size) throws IOException {
+
+        long     sampled    = 0;
+        long     compressed = 0;
+        Deflater deflater   = new Deflater();
+
+        try (SeekableByteChannel channel = Files.newByteChannel(
+                path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(
+                    (int)Math.min(SAMPLE_SIZE, size));
+
+            int length = read(channel, buffer);
+            sampled    += length;
+            compressed += deflate(deflater, buffer.array(), length);
+
+            if (size >= 2L * SAMPLE_SIZE) {
+                channel.position(size / 2);
+                buffer.clear();
+                length      = read(channel, buffer);
+                sampled    += length;
+                compressed += deflate(deflater, buffer.array(), length);
+            }
+        }
+        finally {
+            deflater.end();
+        }
+
+        if (sampled <= 0) {
+            return UNKNOWN_RATIO;
+        }
+        // The archivers store data that does not compress, so the ratio
+        // never exceeds 1.
+        return Math.min(1.0, (double)compressed / (double)sampled);
+    }
+
+    /**
+     * Fill the buffer from the channel (or until the end of the channel).
+     *
+     * @return The number of bytes read.
+     */
+    private int read(SeekableByteChannel channel, ByteBuffer buffer)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    /**
+     * Deflate the input data, discarding the output.
+     *
+     * @param deflater The deflater to use (it is reset before use).
+     * @param data The data to compress.
+     * @param length The number of valid bytes in the data.
+     * @return The number of compressed bytes produced.
+     */
+    private long deflate(Deflater deflater, byte[] data, int length) {
+        if (length <= 0) {
+            return 0;
+        }
+        byte[] output = new byte[8192];
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+        long total = 0;
+        while (!deflater.finished()) {
+            total += deflater.deflate(output);
+        }
+        return total;
+    }
+}
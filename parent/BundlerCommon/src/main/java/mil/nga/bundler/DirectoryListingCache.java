@@ -0,0 +1,479 @@
+package mil.nga.bundler;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mil.nga.util.FileFinder;
+import mil.nga.util.ParallelFileWalker;
+import mil.nga.util.ParallelFileWalker.PathConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cache of the files found beneath the directories that clients request.
+ * Product directories rarely change, so rather than walking the whole
+ * tree on every request the cache keeps the listing of each directory in
+ * the tree along with the directory's modification time.  Adding,
+ * removing or renaming an entry updates the modification time of the
+ * directory holding it, so the modification times of the directories are
+ * a cheap fingerprint of the tree: a request for a cached directory
+ * reads the attributes of each directory (not each file) and re-lists
+ * only the directories that have changed.  New subdirectories are walked
+ * in full; subdirectories that have disappeared are dropped.
+ *
+ * File systems with a coarse timestamp granularity may not change the
+ * modification time of a directory that is modified twice within the
+ * same tick, so directories modified shortly before they were listed are
+ * always listed again.
+ *
+ * Only the local (default) file system is cached; S3 prefixes have no
+ * equivalent of a directory modification time.  The total number of files
+ * held is bounded; the least recently requested directories are evicted
+ * first.
+ *
+ * @author L. Craig Carpenter
+ */
+public class DirectoryListingCache {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            DirectoryListingCache.class);
+
+    /**
+     * Directories modified less than this many milliseconds before they
+     * were listed are listed again on the next request.
+     */
+    public static final long RACY_INTERVAL = 2000L;
+
+    // Private internal members
+    private final long                 maxFiles;
+    private final Map<String, Listing> listings =
+            new LinkedHashMap<String, Listing>(16, 0.75f, true);
+
+    // Statistics
+    private final AtomicLong hits          = new AtomicLong();
+    private final AtomicLong misses        = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong relisted      = new AtomicLong();
+    private final AtomicLong evictions     = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param maxFiles The maximum number of files held by the cache.
+     */
+    public DirectoryListingCache(long maxFiles) {
+        this.maxFiles = Math.max(1L, maxFiles);
+    }
+
+    /**
+     * Determine whether the listing of the input URI can be cached.
+     *
+     * @param uri The URI of a directory.
+     * @return True if the URI is on the local (default) file system.
+     */
+    public static boolean isCacheable(URI uri) {
+        return (uri != null) && ((uri.getScheme() == null) ||
+                ("file".equalsIgnoreCase(uri.getScheme())));
+    }
+
+    /**
+     * List every file beneath the input directory, revalidating the cached
+     * listing if there is one.
+     *
+     * @param uri URI identifying a target directory.
+     * @return List of URI objects pointing to files that fall below the
+     * target directory, sorted by path.
+     * @throws IOException Thrown if the directory cannot be read.
+     */
+    public List<URI> listFiles(URI uri) throws IOException {
+
+        long    startTime = System.currentTimeMillis();
+        String  key       = FileMetadataCache.getKey(uri);
+        Listing listing   = null;
+
+        synchronized (listings) {
+            listing = listings.get(key);
+            if (listing == null) {
+                listing = new Listing(uri);
+                listings.put(key, listing);
+            }
+        }
+
+        List<URI> files = null;
+        synchronized (listing) {
+            if (listing.isEmpty()) {
+                misses.incrementAndGet();
+                listing.build();
+            }
+            else {
+                int count = listing.revalidate();
+                if (count == 0) {
+                    hits.incrementAndGet();
+                }
+                else {
+                    revalidations.incrementAndGet();
+                    relisted.addAndGet(count);
+                }
+            }
+            files = listing.getFiles();
+        }
+
+        synchronized (listings) {
+            if (files.isEmpty()) {
+                listings.remove(key);
+            }
+            else if (!listings.containsKey(key)) {
+                listings.put(key, listing);
+            }
+            evict();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Listed [ "
+                    + files.size()
+                    + " ] files beneath [ "
+                    + uri.toString()
+                    + " ] in [ "
+                    + (System.currentTimeMillis() - startTime)
+                    + " ] ms.");
+        }
+        return files;
+    }
+
+    /**
+     * Remove all listings from the cache.
+     */
+    public void clear() {
+        synchronized (listings) {
+            listings.clear();
+        }
+    }
+
+    /**
+     * Getter method for the number of requests answered without re-listing
+     * any directory.
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Getter method for the number of requests that required a full walk.
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Getter method for the number of requests answered by re-listing only
+     * the directories that changed.
+     * @return The number of incremental revalidations.
+     */
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    /**
+     * Getter method for the number of directories re-listed during
+     * incremental revalidation.
+     * @return The number of directories re-listed.
+     */
+    public long getRelistedDirectories() {
+        return relisted.get();
+    }
+
+    /**
+     * Getter method for the number of listings evicted to respect the size
+     * limit.
+     * @return The number of evictions.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Getter method for the number of files held by the cache.
+     * @return The number of files.
+     */
+    public long getNumFiles() {
+        synchronized (listings) {
+            long count = 0L;
+            for (Listing listing : listings.values()) {
+                count += listing.getNumFiles();
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Evict the least recently requested listings until the number of
+     * files held is within the limit.  The caller must hold the lock on
+     * the listings.
+     */
+    private void evict() {
+        long count = 0L;
+        for (Listing listing : listings.values()) {
+            count += listing.getNumFiles();
+        }
+        Iterator<Listing> iter = listings.values().iterator();
+        while ((count > maxFiles) && (iter.hasNext())) {
+            count -= iter.next().getNumFiles();
+            iter.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * The contents of a single directory.
+     */
+    private static class DirectoryEntry {
+
+        private final long       lastModified;
+        private final long       listedAt;
+        private final List<Path> files   = new ArrayList<Path>();
+        private final List<Path> subdirs = new ArrayList<Path>();
+
+        private DirectoryEntry(long lastModified, long listedAt) {
+            this.lastModified = lastModified;
+            this.listedAt     = listedAt;
+        }
+
+        /**
+         * Determine whether the listing is still current given the
+         * directory's present modification time.
+         */
+        private boolean isCurrent(long modified) {
+            return (modified == lastModified) &&
+                    (lastModified < listedAt - RACY_INTERVAL);
+        }
+    }
+
+    /**
+     * A file or directory found while walking a tree.
+     */
+    private static class Found {
+
+        private final Path    path;
+        private final boolean directory;
+        private final long    lastModified;
+
+        private Found(Path path, BasicFileAttributes attrs) {
+            this.path         = path;
+            this.directory    = attrs.isDirectory();
+            this.lastModified = attrs.lastModifiedTime().toMillis();
+        }
+    }
+
+    /**
+     * The cached listing of a requested directory: the contents of every
+     * directory in its tree.
+     */
+    private static class Listing {
+
+        private final URI  uri;
+        private final Path root;
+        private final Map<Path, DirectoryEntry> dirs =
+                new HashMap<Path, DirectoryEntry>();
+        private List<URI>     files    = null;
+        private volatile long numFiles = 0L;
+
+        private Listing(URI uri) {
+            this.uri  = uri;
+            this.root = Paths.get(uri);
+        }
+
+        private boolean isEmpty() {
+            return dirs.isEmpty();
+        }
+
+        private long getNumFiles() {
+            return numFiles;
+        }
+
+        /**
+         * Walk the whole tree.
+         */
+        private void build() {
+            dirs.clear();
+            walk(root);
+            files = null;
+        }
+
+        /**
+         * Check the modification time of every directory in the tree,
+         * re-listing those that have changed.
+         *
+         * @return The number of directories re-listed.
+         */
+        private int revalidate() throws IOException {
+            int         count   = 0;
+            Deque<Path> pending = new ArrayDeque<Path>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Path dir = pending.pop();
+                BasicFileAttributes attrs = null;
+                try {
+                    attrs = Files.readAttributes(
+                            dir,
+                            BasicFileAttributes.class,
+                            LinkOption.NOFOLLOW_LINKS);
+                }
+                catch (NoSuchFileException nsfe) { }
+                if ((attrs == null) || (!attrs.isDirectory())) {
+                    removeTree(dir);
+                    count++;
+                    continue;
+                }
+                DirectoryEntry entry = dirs.get(dir);
+                long modified = attrs.lastModifiedTime().toMillis();
+                if ((entry != null) && (entry.isCurrent(modified))) {
+                    pending.addAll(entry.subdirs);
+                    continue;
+                }
+
+                // Re-list this directory alone; unchanged subdirectories
+                // are checked in turn and new ones are walked in full.
+                count++;
+                DirectoryEntry fresh = list(dir, modified);
+                if (entry != null) {
+                    Set<Path> current = new HashSet<Path>(fresh.subdirs);
+                    for (Path subdir : entry.subdirs) {
+                        if (!current.contains(subdir)) {
+                            removeTree(subdir);
+                        }
+                    }
+                }
+                dirs.put(dir, fresh);
+                for (Path subdir : fresh.subdirs) {
+                    if (dirs.containsKey(subdir)) {
+                        pending.push(subdir);
+                    }
+                    else {
+                        walk(subdir);
+                    }
+                }
+            }
+            if (count > 0) {
+                files = null;
+            }
+            return count;
+        }
+
+        /**
+         * Get the files in the tree.
+         */
+        private List<URI> getFiles() {
+            if (files == null) {
+                List<Path> paths = new ArrayList<Path>();
+                for (DirectoryEntry entry : dirs.values()) {
+                    paths.addAll(entry.files);
+                }
+                Collections.sort(paths);
+                files    = Collections.unmodifiableList(
+                        FileFinder.toURIList(paths, uri));
+                numFiles = files.size();
+            }
+            return files;
+        }
+
+        /**
+         * List the immediate contents of a single directory.
+         */
+        private DirectoryEntry list(Path dir, long modified)
+                throws IOException {
+            DirectoryEntry entry = new DirectoryEntry(
+                    modified, System.currentTimeMillis());
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    try {
+                        if (Files.readAttributes(
+                                path,
+                                BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS).isDirectory()) {
+                            entry.subdirs.add(path);
+                        }
+                        else {
+                            entry.files.add(path);
+                        }
+                    }
+                    catch (NoSuchFileException nsfe) { }
+                }
+            }
+            return entry;
+        }
+
+        /**
+         * Walk the tree below the input directory (concurrently) and
+         * record the contents of each directory found.
+         */
+        private void walk(Path start) {
+            final long        listedAt = System.currentTimeMillis();
+            final Queue<Found> found   = new ConcurrentLinkedQueue<Found>();
+            ParallelFileWalker.getInstance().walk(start, new PathConsumer() {
+                @Override
+                public void accept(Path path, BasicFileAttributes attrs) {
+                    found.add(new Found(path, attrs));
+                }
+            });
+            for (Found record : found) {
+                if (record.directory) {
+                    dirs.put(record.path, new DirectoryEntry(
+                            record.lastModified, listedAt));
+                }
+            }
+            for (Found record : found) {
+                if (record.path.equals(start)) {
+                    continue;
+                }
+                DirectoryEntry parent = dirs.get(record.path.getParent());
+                if (parent != null) {
+                    if (record.directory) {
+                        parent.subdirs.add(record.path);
+                    }
+                    else {
+                        parent.files.add(record.path);
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Remove a directory and everything beneath it.
+         */
+        private void removeTree(Path dir) {
+            DirectoryEntry entry = dirs.remove(dir);
+            if (entry != null) {
+                for (Path subdir : entry.subdirs) {
+                    removeTree(subdir);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,616 @@
+package mil.nga.bundler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Node-local cache of file metadata (existence, type, size and
+ * modification time) shared by all validation requests.  Users request
+ * overlapping sets of products throughout the day, and without the cache
+ * every request re-reads the attributes of every file.
+ *
+ * Entries are keyed by the normalized URI and expire after a configurable
+ * time to live.  Files found not to exist are cached as well (negative
+ * caching), with their own time to live.  The number of entries is
+ * bounded; the least recently used entries are evicted first.
+ *
+ * Optionally, the directories holding cached local files are registered
+ * with a <code>WatchService</code> so that entries are invalidated as soon
+ * as the files are created, modified or deleted rather than when they
+ * expire.  The number of watched directories is bounded; files in
+ * directories beyond that limit rely on the time to live alone.
+ *
+ * @author L. Craig Carpenter
+ */
+public class FileMetadataCache implements Closeable {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            FileMetadataCache.class);
+
+    /**
+     * Maximum number of directories registered with the WatchService
+     * (each consumes an inotify watch on Linux).
+     */
+    public static final int MAX_WATCHED_DIRECTORIES = 4096;
+
+    /**
+     * Prefix of the keys of local files.
+     */
+    private static final String FILE_KEY_PREFIX = "file:";
+
+    // Private internal members
+    private final long    timeToLive;
+    private final long    negativeTimeToLive;
+    private final int     maxEntries;
+    private final Map<String, CachedMetadata> cache;
+
+    // WatchService used to invalidate local files (null if not watching).
+    private final WatchService           watcher;
+    private final Map<WatchKey, Path>    watchedKeys =
+            new ConcurrentHashMap<WatchKey, Path>();
+    private final Map<Path, WatchKey>    watchedDirs =
+            new ConcurrentHashMap<Path, WatchKey>();
+
+    // Statistics
+    private final AtomicLong hits          = new AtomicLong();
+    private final AtomicLong negativeHits  = new AtomicLong();
+    private final AtomicLong misses        = new AtomicLong();
+    private final AtomicLong evictions     = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * Constructor used by the builder.
+     *
+     * @param builder Populated builder object.
+     */
+    private FileMetadataCache(FileMetadataCacheBuilder builder) {
+        timeToLive         = builder.timeToLive;
+        negativeTimeToLive = builder.negativeTimeToLive;
+        maxEntries         = builder.maxEntries;
+        cache = new LinkedHashMap<String, CachedMetadata>(16, 0.75f, true) {
+            private static final long serialVersionUID =
+                    -4036519563071426841L;
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, CachedMetadata> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        watcher = builder.watch ? newWatchService() : null;
+    }
+
+    /**
+     * Look up the metadata of a file.
+     *
+     * @param uri The URI of the file.
+     * @return The cached metadata, or null if the file is not cached (or
+     * the entry has expired).
+     */
+    public Metadata get(URI uri) {
+        String key = getKey(uri);
+        synchronized (cache) {
+            CachedMetadata entry = cache.get(key);
+            if (entry != null) {
+                if (entry.expires - System.nanoTime() > 0) {
+                    hits.incrementAndGet();
+                    if (!entry.metadata.exists()) {
+                        negativeHits.incrementAndGet();
+                    }
+                    return entry.metadata;
+                }
+                cache.remove(key);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Add the metadata of a file to the cache.
+     *
+     * @param uri The URI of the file.
+     * @param metadata The metadata.
+     */
+    public void put(URI uri, Metadata metadata) {
+        long ttl = metadata.exists() ? timeToLive : negativeTimeToLive;
+        if (ttl > 0) {
+            String key = getKey(uri);
+            synchronized (cache) {
+                cache.put(key, new CachedMetadata(
+                        metadata,
+                        System.nanoTime() +
+                                TimeUnit.MILLISECONDS.toNanos(ttl)));
+            }
+            if (watcher != null) {
+                watch(uri);
+            }
+        }
+    }
+
+    /**
+     * Remove the metadata of a file from the cache.
+     *
+     * @param uri The URI of the file.
+     */
+    public void invalidate(URI uri) {
+        invalidate(getKey(uri));
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Stop watching for changes.
+     */
+    @Override
+    public void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    /**
+     * Getter method for the number of lookups answered from the cache.
+     * @return The number of hits.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Getter method for the number of lookups answered from the cache
+     * with a file that does not exist.
+     * @return The number of negative hits (included in the hits).
+     */
+    public long getNegativeHits() {
+        return negativeHits.get();
+    }
+
+    /**
+     * Getter method for the number of lookups not answered from the cache.
+     * @return The number of misses.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Getter method for the number of entries evicted to respect the size
+     * limit.
+     * @return The number of evictions.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Getter method for the number of entries invalidated by changes to
+     * the file system.
+     * @return The number of invalidations.
+     */
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * Getter method for the fraction of lookups answered from the cache.
+     * @return The hit rate (0.0 if there have been no lookups).
+     */
+    public double getHitRate() {
+        long lookups = getHits() + getMisses();
+        return (lookups == 0) ? 0.0 : ((double)getHits() / (double)lookups);
+    }
+
+    /**
+     * Getter method for the number of entries in the cache (including
+     * any that have expired but have not been looked up since).
+     * @return The number of entries.
+     */
+    public int getNumEntries() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Getter method for the number of directories being watched.
+     * @return The number of watched directories.
+     */
+    public int getNumWatchedDirectories() {
+        return watchedDirs.size();
+    }
+
+    /**
+     * Calculate the cache key of a URI.  Local files are keyed by their
+     * normalized path so that equivalent URIs (e.g. <code>file:/a</code>
+     * and <code>file:///a/./b/../</code>) share an entry.  Other URIs are
+     * normalized.
+     *
+     * @param uri The URI.
+     * @return The cache key.
+     */
+    public static String getKey(URI uri) {
+        if ((uri.getScheme() == null) ||
+                ("file".equalsIgnoreCase(uri.getScheme()))) {
+            try {
+                return getKey(Paths.get(uri));
+            }
+            catch (IllegalArgumentException iae) { }
+        }
+        return uri.normalize().toString();
+    }
+
+    /**
+     * Calculate the cache key of a local file.
+     */
+    private static String getKey(Path path) {
+        return FILE_KEY_PREFIX + path.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Remove a single entry.
+     */
+    private void invalidate(String key) {
+        synchronized (cache) {
+            if (cache.remove(key) != null) {
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Remove the entries of the files directly in the input directory
+     * (used when the watch events for the directory have been lost).  The
+     * watch only reports changes to the immediate children, so entries in
+     * subdirectories, and in sibling directories sharing the name as a
+     * prefix (e.g. <code>/data/a2</code> for <code>/data/a</code>), are
+     * kept.
+     *
+     * Package-private to support jUnit testing.
+     */
+    void invalidateDirectory(Path dir) {
+        String prefix = getKey(dir);
+        if (!prefix.endsWith(File.separator)) {
+            prefix = prefix + File.separator;
+        }
+        synchronized (cache) {
+            Iterator<String> iter = cache.keySet().iterator();
+            while (iter.hasNext()) {
+                String key = iter.next();
+                if ((key.length() > prefix.length()) &&
+                        (key.startsWith(prefix)) &&
+                        (key.indexOf(File.separator, prefix.length()) < 0)) {
+                    iter.remove();
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the WatchService and start the thread processing its events.
+     *
+     * @return The WatchService, or null if the file system does not
+     * support it.
+     */
+    private WatchService newWatchService() {
+        try {
+            final WatchService service =
+                    FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    processEvents(service);
+                }
+            }, "FileMetadataCache-watcher");
+            thread.setDaemon(true);
+            thread.start();
+            return service;
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            LOGGER.warn("Unable to create a WatchService.  Cached file "
+                    + "metadata will be refreshed when it expires.  "
+                    + "Exception message => [ "
+                    + e.getMessage()
+                    + " ].");
+        }
+        return null;
+    }
+
+    /**
+     * Register the parent directory of a local file with the WatchService.
+     */
+    private void watch(URI uri) {
+        if ((uri.getScheme() != null) &&
+                (!"file".equalsIgnoreCase(uri.getScheme()))) {
+            return;
+        }
+        Path dir = Paths.get(uri).toAbsolutePath().normalize().getParent();
+        if ((dir == null) ||
+                (watchedDirs.containsKey(dir)) ||
+                (watchedDirs.size() >= MAX_WATCHED_DIRECTORIES)) {
+            return;
+        }
+        synchronized (watchedDirs) {
+            if (!watchedDirs.containsKey(dir)) {
+                try {
+                    WatchKey key = dir.register(
+                            watcher,
+                            StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE,
+                            StandardWatchEventKinds.ENTRY_MODIFY);
+                    watchedKeys.put(key, dir);
+                    watchedDirs.put(dir, key);
+                }
+                catch (IOException | RuntimeException e) {
+                    LOGGER.warn("Unable to watch directory [ "
+                            + dir.toString()
+                            + " ].  Exception message => [ "
+                            + e.getMessage()
+                            + " ].");
+                }
+            }
+        }
+    }
+
+    /**
+     * Invalidate the entries of the files that change until the
+     * WatchService is closed.
+     */
+    private void processEvents(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path     dir = watchedKeys.get(key);
+                if (dir != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            invalidateDirectory(dir);
+                        }
+                        else {
+                            invalidate(getKey(
+                                    dir.resolve((Path)event.context())));
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    watchedKeys.remove(key);
+                    if (dir != null) {
+                        watchedDirs.remove(dir);
+                        invalidateDirectory(dir);
+                    }
+                }
+            }
+        }
+        catch (ClosedWatchServiceException cwse) {
+            LOGGER.info("Metadata cache WatchService closed.");
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Convert the object to a printable String.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Metadata cache : Entries => [ ");
+        sb.append(getNumEntries());
+        sb.append(" ], Hits => [ ");
+        sb.append(getHits());
+        sb.append(" ], Negative hits => [ ");
+        sb.append(getNegativeHits());
+        sb.append(" ], Misses => [ ");
+        sb.append(getMisses());
+        sb.append(" ], Hit rate => [ ");
+        sb.append(String.format("%.2f", 100.0 * getHitRate()));
+        sb.append("% ], Evictions => [ ");
+        sb.append(getEvictions());
+        sb.append(" ], Invalidations => [ ");
+        sb.append(getInvalidations());
+        sb.append(" ], Watched directories => [ ");
+        sb.append(getNumWatchedDirectories());
+        sb.append(" ]");
+        return sb.toString();
+    }
+
+    /**
+     * The metadata held for each file.
+     */
+    public static class Metadata {
+
+        /**
+         * Metadata of a file that does not exist.
+         */
+        public static final Metadata MISSING =
+                new Metadata(false, false, 0L, 0L);
+
+        private final boolean exists;
+        private final boolean directory;
+        private final long    size;
+        private final long    lastModified;
+
+        /**
+         * Constructor.
+         *
+         * @param exists True if the file exists.
+         * @param directory True if the file is a directory.
+         * @param size The size of the file in bytes.
+         * @param lastModified The modification time (milliseconds since
+         * the epoch, or -1 if unknown).
+         */
+        public Metadata(
+                boolean exists,
+                boolean directory,
+                long size,
+                long lastModified) {
+            this.exists       = exists;
+            this.directory    = directory;
+            this.size         = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * Getter method for the modification time.
+         * @return Milliseconds since the epoch (-1 if unknown).
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Getter method for the size.
+         * @return The size of the file in bytes.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Determine whether the file is a directory.
+         * @return True for directories.
+         */
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        /**
+         * Determine whether the file exists.
+         * @return True if the file exists.
+         */
+        public boolean exists() {
+            return exists;
+        }
+    }
+
+    /**
+     * Cache entry recording when the metadata expires.
+     */
+    private static class CachedMetadata {
+        private final Metadata metadata;
+        private final long     expires;
+        private CachedMetadata(Metadata metadata, long expires) {
+            this.metadata = metadata;
+            this.expires  = expires;
+        }
+    }
+
+    /**
+     * Static inner class implementing the builder creation pattern for
+     * objects of type FileMetadataCache.
+     *
+     * @author L. Craig Carpenter
+     */
+    public static class FileMetadataCacheBuilder {
+
+        private long    timeToLive         = 0L;
+        private long    negativeTimeToLive = -1L;
+        private int     maxEntries         = 100000;
+        private boolean watch              = false;
+
+        /**
+         * Method used to actually construct the FileMetadataCache object.
+         * @return A constructed and validated FileMetadataCache object.
+         */
+        public FileMetadataCache build() throws IllegalStateException {
+            if (negativeTimeToLive < 0) {
+                negativeTimeToLive = timeToLive;
+            }
+            validate();
+            return new FileMetadataCache(this);
+        }
+
+        /**
+         * Setter method for the maximum number of entries.
+         * @param value The maximum number of entries.
+         * @return Reference to the parent builder object.
+         */
+        public FileMetadataCacheBuilder maxEntries(int value) {
+            maxEntries = value;
+            return this;
+        }
+
+        /**
+         * Setter method for the time to live of files that do not exist.
+         * Defaults to the time to live of files that do.
+         * @param value The time to live in milliseconds (0 disables
+         * negative caching).
+         * @return Reference to the parent builder object.
+         */
+        public FileMetadataCacheBuilder negativeTimeToLive(long value) {
+            negativeTimeToLive = value;
+            return this;
+        }
+
+        /**
+         * Setter method for the time to live of files that exist.
+         * @param value The time to live in milliseconds.
+         * @return Reference to the parent builder object.
+         */
+        public FileMetadataCacheBuilder timeToLive(long value) {
+            timeToLive = value;
+            return this;
+        }
+
+        /**
+         * Setter method determining whether local directories are watched
+         * for changes.
+         * @param value True to watch local directories.
+         * @return Reference to the parent builder object.
+         */
+        public FileMetadataCacheBuilder watch(boolean value) {
+            watch = value;
+            return this;
+        }
+
+        /**
+         * Validate that all required fields are populated.
+         */
+        private void validate() throws IllegalStateException {
+            if (timeToLive <= 0) {
+                throw new IllegalStateException("Attempted to build "
+                        + "FileMetadataCache object but the time to live "
+                        + "is not positive.");
+            }
+            if (maxEntries <= 0) {
+                throw new IllegalStateException("Attempted to build "
+                        + "FileMetadataCache object but the maximum number "
+                        + "of entries is not positive.");
+            }
+        }
+    }
+}
@@ -167,6 +167,35 @@ public class FileNameGenerator
         return getURI(sb.toString());
     }
     
+    /**
+     * Generate the name of an additional archive (volume) created when the
+     * archive identified by <code>archiveID</code> rolled over.  The new 
+     * name is the name <code>getOutputFile()</code> would have generated 
+     * for <code>volumeID</code> using the same staging area and template.
+     * 
+     * @param archive The name (String URI) of the archive that rolled over.
+     * @param archiveID The ID of the archive that rolled over.
+     * @param volumeID The ID of the new archive.
+     * @param type The type of output archive.
+     * @return The name of the new archive.
+     */
+    public static String getVolumeFile(
+            String      archive, 
+            long        archiveID, 
+            long        volumeID, 
+            ArchiveType type) {
+        String extension = "." + type.getText().toLowerCase();
+        String base      = archive;
+        if (base.endsWith(extension)) {
+            base = base.substring(0, base.length() - extension.length());
+        }
+        if ((archiveID > 0) && (base.endsWith("_" + archiveID))) {
+            base = base.substring(
+                    0, base.length() - ("_" + archiveID).length());
+        }
+        return base + "_" + volumeID + extension;
+    }
+    
     /**
      * Get the default name of the archive file to use.
      * 
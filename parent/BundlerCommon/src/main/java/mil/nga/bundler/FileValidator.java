@@ -3,20 +3,34 @@ package mil.nga.bundler;
 import mil.nga.bundler.messages.FileRequest;
 import mil.nga.bundler.model.FileEntry;
 import mil.nga.util.FileFinder;
+import mil.nga.util.S3MetadataProvider;
 import mil.nga.util.URIUtils;
 
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import mil.nga.bundler.archive.ArchiveSettings;
 import mil.nga.bundler.exceptions.InvalidRequestException;
 import mil.nga.bundler.exceptions.ValidationErrorCodes;
 
@@ -33,6 +47,21 @@ import org.slf4j.LoggerFactory;
  * 
  * During file visitation, the archive path is also calculated.
  * 
+ * Lists of files are validated (and requested paths checked for 
+ * directories) concurrently, with a separate, bounded pool of threads for
+ * each file system (URI scheme) so that slow remote file systems (e.g. 
+ * S3) can be given more concurrent requests than the local disk.  The 
+ * pools are shared by all requests, so the limits apply to the service 
+ * as a whole.  Results are always returned in request order.
+ * 
+ * If <code>bundler.metadata_cache_ttl_sec</code> is set, the metadata of 
+ * each file looked up is cached (see <code>FileMetadataCache</code>) so 
+ * that repeated requests for popular products need not stat the files 
+ * again.  Likewise, if <code>bundler.listing_cache_max_files</code> is 
+ * set, the expansion of requested directories is cached (see 
+ * <code>DirectoryListingCache</code>) and only the parts of the tree that 
+ * have changed are listed again.
+ * 
  * @author L. Craig Carpenter
  */
 public class FileValidator {
@@ -43,6 +72,44 @@ public class FileValidator {
     private static final Logger LOGGER = LoggerFactory.getLogger(
             FileValidator.class);
     
+    /**
+     * Cache of file metadata shared by all requests (null if disabled).
+     */
+    private volatile FileMetadataCache metadataCache = null;
+    
+    /**
+     * Cache of expanded directory listings (null if disabled).
+     */
+    private volatile DirectoryListingCache listingCache = null;
+    
+    /**
+     * Validation thread pools, by URI scheme (created on first use).
+     */
+    private final Map<String, ExecutorService> pools = 
+            new HashMap<String, ExecutorService>();
+    
+    /**
+     * Default constructor enabling the metadata cache if it has been 
+     * configured.
+     */
+    private FileValidator() {
+        ArchiveSettings settings = ArchiveSettings.getInstance();
+        if (settings.getMetadataCacheTTL() > 0) {
+            setMetadataCache(new FileMetadataCache.FileMetadataCacheBuilder()
+                    .timeToLive(TimeUnit.SECONDS.toMillis(
+                            settings.getMetadataCacheTTL()))
+                    .negativeTimeToLive(TimeUnit.SECONDS.toMillis(
+                            settings.getMetadataCacheNegativeTTL()))
+                    .maxEntries(settings.getMetadataCacheSize())
+                    .watch(settings.isMetadataCacheWatch())
+                    .build());
+        }
+        if (settings.getListingCacheSize() > 0) {
+            setListingCache(new DirectoryListingCache(
+                    settings.getListingCacheSize()));
+        }
+    }
+    
     /**
      * Method used to eliminate duplicate entries from the input List of 
      * String values.  This method was added for the benefit of the Nova-Tech
@@ -60,8 +127,9 @@ public class FileValidator {
         if (files != null) {
             
             // Stuff the list into a Set (which doesn't allow duplicates) then
-            // create a new List out of the Set.
-            Set<String> deDupSet = new HashSet<String>(files);
+            // create a new List out of the Set.  The Set preserves the 
+            // request order.
+            Set<String> deDupSet = new LinkedHashSet<String>(files);
             deDupList = new ArrayList<String>(deDupSet);
         }
         else {
@@ -86,12 +154,14 @@ public class FileValidator {
     private List<FileRequest> eliminateDuplicates(List<FileRequest> files) {
         
         List<FileRequest> deDupList = null;
-        HashMap<String, FileRequest> map = new HashMap<String, FileRequest>();
+        Map<String, FileRequest> map = new LinkedHashMap<String, FileRequest>();
         
         if ((files != null) && (files.size() > 0)) {
             
             // Stuff the keys from the FileRequest object into the key portion
-            // of the HashMap.  This will effectively eliminate the duplicates.
+            // of the Map.  This will effectively eliminate the duplicates 
+            // while keeping the files in the order in which they were 
+            // first requested.
             for (FileRequest file : files) {
                 map.put(file.getFile().trim(), file);
             }
@@ -116,6 +186,89 @@ public class FileValidator {
         return FileValidatorHolder.getFactorySingleton();
     }
     
+    /**
+     * Getter method for the cache of expanded directory listings.
+     * @return The listing cache (null if disabled).
+     */
+    public DirectoryListingCache getListingCache() {
+        return listingCache;
+    }
+    
+    /**
+     * Setter method for the cache of expanded directory listings.
+     * @param value The listing cache (null to disable caching).
+     */
+    public void setListingCache(DirectoryListingCache value) {
+        listingCache = value;
+    }
+    
+    /**
+     * Getter method for the cache of file metadata.
+     * @return The metadata cache (null if disabled).
+     */
+    public FileMetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+    
+    /**
+     * Setter method for the cache of file metadata.
+     * @param value The metadata cache (null to disable caching).
+     */
+    public void setMetadataCache(FileMetadataCache value) {
+        metadataCache = value;
+    }
+    
+    /**
+     * Obtain the metadata of a file, from the metadata cache if possible.
+     * S3 objects are looked up through the supplied provider; other files
+     * are read in a single call (a single round trip on remote file 
+     * systems).  Files that do not exist are reported (and cached) as 
+     * missing rather than raising an exception.
+     * 
+     * @param uri The URI of the file.
+     * @param s3 Metadata provider for S3 objects (may be null).
+     * @return The metadata of the file.
+     * @throws IOException Thrown if the file cannot be accessed.
+     */
+    private FileMetadataCache.Metadata getMetadata(
+            URI uri, 
+            S3MetadataProvider s3) throws IOException {
+        
+        FileMetadataCache          cache    = getMetadataCache();
+        FileMetadataCache.Metadata metadata = null;
+        
+        if (cache != null) {
+            metadata = cache.get(uri);
+        }
+        if (metadata == null) {
+            if ((s3 != null) && (S3MetadataProvider.isS3(uri))) {
+                S3MetadataProvider.ObjectEntry entry = s3.getMetadata(uri);
+                metadata = (entry == null) ? 
+                        FileMetadataCache.Metadata.MISSING : 
+                        new FileMetadataCache.Metadata(
+                                true, entry.isDirectory(), entry.getSize(), -1L);
+            }
+            else {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(
+                            Paths.get(uri), BasicFileAttributes.class);
+                    metadata = new FileMetadataCache.Metadata(
+                            true, 
+                            attrs.isDirectory(), 
+                            attrs.size(), 
+                            attrs.lastModifiedTime().toMillis());
+                }
+                catch (NoSuchFileException nsfe) {
+                    metadata = FileMetadataCache.Metadata.MISSING;
+                }
+            }
+            if (cache != null) {
+                cache.put(uri, metadata);
+            }
+        }
+        return metadata;
+    }
+    
     /**
      * Ensure that the file defined by the input <code>FileRequest</code> 
      * object exists on the file system and is accessible. 
@@ -125,35 +278,56 @@ public class FileValidator {
      * null otherwise.
      */
     public FileEntry validateOneFile(FileRequest requestedFile) {
+        return validateOneFile(requestedFile, null);
+    }
+    
+    /**
+     * Ensure that the file defined by the input <code>FileRequest</code> 
+     * object exists and is accessible.  S3 objects are looked up through 
+     * the supplied metadata provider, which answers from any listing of 
+     * the enclosing prefix before falling back to a HEAD request.
+     * 
+     * @param requestedFile File requested by the user.
+     * @param s3 Metadata provider for S3 objects (may be null).
+     * @return A populated FileEntry object if the file is valid, 
+     * null otherwise.
+     */
+    public FileEntry validateOneFile(
+            FileRequest requestedFile, 
+            S3MetadataProvider s3) {
         FileEntry validated = null;
         if ((requestedFile != null) && 
                 (requestedFile.getFile() != null) && 
                 (!requestedFile.getFile().isEmpty())) {
             
-            URI  uri  = URIUtils.getInstance().getURI(requestedFile.getFile());
-            Path file = Paths.get(uri);
+            URI uri = URIUtils.getInstance().getURI(requestedFile.getFile());
             
-            if (Files.exists(file)) {
-                try {
-                    long size = Files.size(file);
+            try {
+                FileMetadataCache.Metadata metadata = getMetadata(uri, s3);
+                if (!metadata.exists()) {
+                    LOGGER.warn("The requested file [ "
+                            + requestedFile.getFile()
+                            + " ] does not exist on the file system.");
+                }
+                else if (metadata.isDirectory()) {
+                    LOGGER.warn("The requested file [ "
+                            + requestedFile.getFile()
+                            + " ] is a directory.");
+                }
+                else {
                     validated = new FileEntry(
                             uri.toString(),
                             requestedFile.getArchivePath(),
-                            size);
-                }
-                catch (IOException ioe) {
-                    LOGGER.warn("Unexpected IOException accessing file [ "
-                            + requestedFile.getFile()
-                            + " ].  Error message [ "
-                            + ioe.getMessage()
-                            + " ].  No attempt will be made to bundle the "
-                            + "target file.");
+                            metadata.getSize());
                 }
             }
-            else {
-                LOGGER.warn("The requested file [ "
+            catch (IOException ioe) {
+                LOGGER.warn("Unexpected IOException accessing file [ "
                         + requestedFile.getFile()
-                        + " ] does not exist on the file system.");
+                        + " ].  Error message [ "
+                        + ioe.getMessage()
+                        + " ].  No attempt will be made to bundle the "
+                        + "target file.");
             }
         }
         return validated;
@@ -172,28 +346,32 @@ public class FileValidator {
         if ((requestedFile != null) && 
                 (!requestedFile.isEmpty())) {
             URI uri = URIUtils.getInstance().getURI(requestedFile);
-            Path file = Paths.get(uri);
-            if ((Files.exists(file)) && (!Files.isDirectory(file))) {
-                try {
-                    long size = Files.size(file);
+            try {
+                FileMetadataCache.Metadata metadata = getMetadata(uri, null);
+                if (!metadata.exists()) {
+                    LOGGER.warn("The requested file [ "
+                            + requestedFile
+                            + " ] does not exist on the file system.");
+                }
+                else if (!metadata.isDirectory()) {
                     validated = new FileEntry(
                             requestedFile,
                             null,
-                            size);
+                            metadata.getSize());
                 }
-                catch (IOException ioe) {
-                    LOGGER.warn("Unexpected IOException accessing file [ "
+                else {
+                    LOGGER.warn("The requested file [ "
                             + requestedFile
-                            + " ].  Error message [ "
-                            + ioe.getMessage()
-                            + " ].  No attempt will be made to bundle the "
-                            + "target file.");
+                            + " ] is a directory.");
                 }
             }
-            else {
-                LOGGER.warn("The requested file [ "
+            catch (IOException ioe) {
+                LOGGER.warn("Unexpected IOException accessing file [ "
                         + requestedFile
-                        + " ] does not exist on the file system.");
+                        + " ].  Error message [ "
+                        + ioe.getMessage()
+                        + " ].  No attempt will be made to bundle the "
+                        + "target file.");
             }
         }
         return validated;
@@ -220,14 +398,13 @@ public class FileValidator {
         filesRequested = expandStringList(filesRequested);
         
         if ((filesRequested != null) && (!filesRequested.isEmpty())) { 
+            List<ValidationTask> tasks = new ArrayList<ValidationTask>();
             for (String file : filesRequested) {
-                
-                
-                FileEntry obj = validateOneFile(file);
-                if (obj != null) {
-                    PathGenerator.getInstance().setOneEntry(obj);
-                    validated.add(obj);
-                }
+                tasks.add(new ValidationTask(file));
+            }
+            for (FileEntry obj : validateAll(tasks)) {
+                PathGenerator.getInstance().setOneEntry(obj);
+                validated.add(obj);
             }
         }
         return validated;
@@ -302,16 +479,59 @@ public class FileValidator {
      * @return A list of FileEntry objects.
      */
     public List<FileRequest> expand(List<FileRequest> filesRequested) {
+        return expand(filesRequested, new S3MetadataProvider());
+    }
+    
+    /**
+     * Variant of <code>expand()</code> that uses the supplied metadata 
+     * provider for S3 URIs.  S3 directories are listed once, so the 
+     * same provider can then validate the files found without further 
+     * requests.
+     * 
+     * @param filesRequested Original user-submitted list of files that 
+     * are to be bundled.
+     * @param s3 Metadata provider for S3 URIs (may be null).
+     * @return A list of FileEntry objects.
+     */
+    public List<FileRequest> expand(
+            List<FileRequest> filesRequested, 
+            S3MetadataProvider s3) {
         List<FileRequest> expandedList = new ArrayList<FileRequest>();
         if ((filesRequested != null) && (!filesRequested.isEmpty())) { 
+            
+            // Check which of the requested paths are directories 
+            // concurrently (null requests are skipped below).  S3 keys 
+            // are first grouped by parent so that a parent shared by 
+            // several of them is listed once rather than each key probed.
+            List<DirectoryCheckTask> checks = new ArrayList<DirectoryCheckTask>();
+            List<URI>                uris   = new ArrayList<URI>();
             for (FileRequest file : filesRequested) {
-               
+                checks.add(new DirectoryCheckTask(file, s3));
+                if ((s3 != null) && 
+                        (file != null) && 
+                        (file.getFile() != null) && 
+                        (!file.getFile().isEmpty())) {
+                    try {
+                        uris.add(URIUtils.getInstance().getURI(file.getFile()));
+                    }
+                    catch (RuntimeException re) {
+                        // Reported by the directory check itself.
+                    }
+                }
+            }
+            if (s3 != null) {
+                s3.groupByParent(uris);
+            }
+            List<Boolean> directories = runAll(checks);
+            
+            for (int i=0; i<filesRequested.size(); i++) {
+                
+                FileRequest file = filesRequested.get(i);
                 if ((file != null) && 
                         (file.getFile() != null) && 
                         (!file.getFile().isEmpty())) {
                     
-                    URI  uri = URIUtils.getInstance().getURI(file.getFile());
-                    Path p   = Paths.get(uri);
+                    URI uri = URIUtils.getInstance().getURI(file.getFile());
                     
                     if (LOGGER.isDebugEnabled()) {
                         LOGGER.debug("Validating [ "
@@ -319,7 +539,7 @@ public class FileValidator {
                                 + " ].");
                     }
                     
-                    if (Files.isDirectory(p)) {
+                    if (Boolean.TRUE.equals(directories.get(i))) {
                         
                         if (LOGGER.isDebugEnabled()) {
                             LOGGER.debug("File [ "
@@ -327,10 +547,17 @@ public class FileValidator {
                                     + " ] is a directory.");
                         }
                         
-                        String baseDir = p.toAbsolutePath().toString();
+                        String baseDir = S3MetadataProvider.isS3(uri) ? 
+                                uri.getPath() : 
+                                Paths.get(uri).toAbsolutePath().toString();
                         try {
                             
-                            List<URI> files = FileFinder.listFiles(uri);
+                            DirectoryListingCache cache = getListingCache();
+                            List<URI> files = 
+                                    ((cache != null) && 
+                                            (DirectoryListingCache.isCacheable(uri))) ?
+                                    cache.listFiles(uri) :
+                                    FileFinder.listFiles(uri, s3);
                             
                             if ((files != null) && (!files.isEmpty())) { 
                                 for (URI name : files) {
@@ -393,17 +620,17 @@ public class FileValidator {
                     ValidationErrorCodes.NO_INPUT_FILES_FOUND);
         }
         
+        // A single provider is used for the whole request so that S3 
+        // directories listed during expansion answer the validation of 
+        // the files they contain.
+        S3MetadataProvider s3 = new S3MetadataProvider();
         filesRequested = eliminateDuplicates(filesRequested);
-        filesRequested = expand(filesRequested);
+        filesRequested = expand(filesRequested, s3);
         
         if ((filesRequested != null) && (!filesRequested.isEmpty())) { 
-            for (FileRequest file : filesRequested) {
-                
-                FileEntry obj = validateOneFile(file);
-                if (obj != null) {
-                    PathGenerator.getInstance().setOneEntry(obj);
-                    validated.add(obj);
-                }
+            for (FileEntry obj : validateFiles(filesRequested, s3)) {
+                PathGenerator.getInstance().setOneEntry(obj);
+                validated.add(obj);
             }
         }
         if ((validated != null) && (validated.isEmpty())) { 
@@ -413,6 +640,302 @@ public class FileValidator {
         return validated;
     }
     
+    /**
+     * Validate a list of files concurrently.  Files that do not exist or 
+     * cannot be accessed are omitted from the output.  The archive paths
+     * are not calculated.
+     * 
+     * @param files The files to validate.
+     * @return The valid files, in the same order as the input list.
+     */
+    public List<FileEntry> validateFiles(List<FileRequest> files) {
+        return validateFiles(files, new S3MetadataProvider());
+    }
+    
+    /**
+     * Variant of <code>validateFiles()</code> that looks up S3 objects 
+     * through the supplied metadata provider.
+     * 
+     * @param files The files to validate.
+     * @param s3 Metadata provider for S3 objects (may be null).
+     * @return The valid files, in the same order as the input list.
+     */
+    public List<FileEntry> validateFiles(
+            List<FileRequest> files, 
+            S3MetadataProvider s3) {
+        List<ValidationTask> tasks = new ArrayList<ValidationTask>();
+        if (files != null) {
+            for (FileRequest file : files) {
+                tasks.add(new ValidationTask(file, s3));
+            }
+        }
+        return validateAll(tasks);
+    }
+    
+    /**
+     * Determine whether the input URI is a directory.  S3 URIs are 
+     * checked through the metadata provider.
+     * 
+     * @param uri The URI to check.
+     * @param s3 Metadata provider for S3 URIs (may be null).
+     * @return True if the URI is a directory.
+     */
+    private boolean isDirectory(URI uri, S3MetadataProvider s3) {
+        if ((s3 != null) && (S3MetadataProvider.isS3(uri))) {
+            try {
+                return s3.isDirectory(uri);
+            }
+            catch (IOException ioe) {
+                LOGGER.warn("Unexpected IOException checking whether [ "
+                        + uri.toString()
+                        + " ] is a directory.  Error message [ "
+                        + ioe.getMessage()
+                        + " ].");
+                return false;
+            }
+        }
+        return Files.isDirectory(Paths.get(uri));
+    }
+    
+    /**
+     * Run the validation tasks.
+     * 
+     * @param tasks The validation tasks.
+     * @return The valid files, in the same order as the tasks.
+     */
+    private List<FileEntry> validateAll(List<ValidationTask> tasks) {
+        
+        long            startTime = System.currentTimeMillis();
+        List<FileEntry> validated = new ArrayList<FileEntry>();
+        
+        for (FileEntry entry : runAll(tasks)) {
+            if (entry != null) {
+                validated.add(entry);
+            }
+        }
+        
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Validated [ "
+                    + validated.size()
+                    + " ] of [ "
+                    + tasks.size()
+                    + " ] files in [ "
+                    + (System.currentTimeMillis() - startTime)
+                    + " ] ms.");
+            if (getMetadataCache() != null) {
+                LOGGER.debug(getMetadataCache().toString());
+            }
+        }
+        return validated;
+    }
+    
+    /**
+     * Get the shared pool of threads for a file system (URI scheme), 
+     * sized by <code>ArchiveSettings.getValidationThreads()</code>.
+     * 
+     * @param scheme The URI scheme (lower case).
+     * @return The pool of threads.
+     */
+    private ExecutorService getPool(String scheme) {
+        synchronized (pools) {
+            ExecutorService pool = pools.get(scheme);
+            if (pool == null) {
+                pool = Executors.newFixedThreadPool(
+                        ArchiveSettings.getInstance().getValidationThreads(scheme), 
+                        new ValidationThreadFactory(scheme));
+                pools.put(scheme, pool);
+            }
+            return pool;
+        }
+    }
+    
+    /**
+     * Run a list of tasks on the shared pool of their file system.  Lists 
+     * of a single task are run on the calling thread.  Tasks that fail 
+     * (or are abandoned because the calling thread was interrupted) 
+     * produce a null result.
+     * 
+     * @param tasks The tasks.
+     * @return The results, in the same order as the tasks.
+     */
+    private <T> List<T> runAll(List<? extends SchemeTask<T>> tasks) {
+        
+        List<T> results = new ArrayList<T>();
+        
+        if (tasks.size() == 1) {
+            results.add(tasks.get(0).call());
+            return results;
+        }
+        
+        List<Future<T>> futures = new ArrayList<Future<T>>();
+        for (SchemeTask<T> task : tasks) {
+            futures.add(getPool(task.getScheme()).submit(task));
+        }
+        for (int i=0; i<futures.size(); i++) {
+            T result = null;
+            try {
+                result = futures.get(i).get();
+            }
+            catch (ExecutionException ee) {
+                LOGGER.warn("Unexpected exception validating file [ "
+                        + tasks.get(i).toString()
+                        + " ].  Error message [ "
+                        + ee.getCause().getMessage()
+                        + " ].  No attempt will be made to bundle the "
+                        + "target file.");
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                LOGGER.error("Interrupted while validating the "
+                        + "requested files.  Validation abandoned.");
+                for (int j=i; j<futures.size(); j++) {
+                    futures.get(j).cancel(true);
+                }
+                break;
+            }
+            results.add(result);
+        }
+        while (results.size() < tasks.size()) {
+            results.add(null);
+        }
+        return results;
+    }
+    
+    /**
+     * Task run on the pool of the file system holding the file it 
+     * concerns.
+     */
+    private abstract static class SchemeTask<T> implements Callable<T> {
+        
+        private final String scheme;
+        
+        SchemeTask(String file) {
+            this.scheme = getScheme(file);
+        }
+        
+        /**
+         * Get the URI scheme of the input file (an empty String if it 
+         * cannot be determined).
+         */
+        private static String getScheme(String value) {
+            if ((value != null) && (!value.isEmpty())) {
+                try {
+                    String scheme = URIUtils.getInstance()
+                            .getURI(value)
+                            .getScheme();
+                    if (scheme != null) {
+                        return scheme.toLowerCase();
+                    }
+                }
+                catch (RuntimeException re) { }
+            }
+            return "";
+        }
+        
+        /**
+         * Getter method for the URI scheme of the file.
+         * @return The URI scheme (lower case).
+         */
+        public String getScheme() {
+            return scheme;
+        }
+        
+        @Override
+        public abstract T call();
+    }
+    
+    /**
+     * Task validating a single requested file (supplied either as a 
+     * <code>FileRequest</code> or a String).
+     */
+    private class ValidationTask extends SchemeTask<FileEntry> {
+        
+        private final FileRequest        request;
+        private final String             file;
+        private final S3MetadataProvider s3;
+        
+        private ValidationTask(FileRequest request, S3MetadataProvider s3) {
+            super((request == null) ? null : request.getFile());
+            this.request = request;
+            this.file    = null;
+            this.s3      = s3;
+        }
+        
+        private ValidationTask(String file) {
+            super(file);
+            this.request = null;
+            this.file    = file;
+            this.s3      = null;
+        }
+        
+        @Override
+        public FileEntry call() {
+            if (request != null) {
+                return validateOneFile(request, s3);
+            }
+            return validateOneFile(file);
+        }
+        
+        @Override
+        public String toString() {
+            return (request != null) ? request.getFile() : file;
+        }
+    }
+    
+    /**
+     * Task determining whether a requested path is a directory.
+     */
+    private class DirectoryCheckTask extends SchemeTask<Boolean> {
+        
+        private final FileRequest        request;
+        private final S3MetadataProvider s3;
+        
+        private DirectoryCheckTask(FileRequest request, S3MetadataProvider s3) {
+            super((request == null) ? null : request.getFile());
+            this.request = request;
+            this.s3      = s3;
+        }
+        
+        @Override
+        public Boolean call() {
+            if ((request == null) || 
+                    (request.getFile() == null) || 
+                    (request.getFile().isEmpty())) {
+                return Boolean.FALSE;
+            }
+            return isDirectory(
+                    URIUtils.getInstance().getURI(request.getFile()), s3);
+        }
+        
+        @Override
+        public String toString() {
+            return (request != null) ? request.getFile() : null;
+        }
+    }
+    
+    /**
+     * Creates the (daemon) threads of the validation pools so that idle 
+     * pools do not prevent the JVM from exiting.
+     */
+    private static class ValidationThreadFactory implements ThreadFactory {
+        
+        private final String        prefix;
+        private final AtomicInteger count = new AtomicInteger();
+        
+        private ValidationThreadFactory(String scheme) {
+            this.prefix = "FileValidator-" 
+                    + (scheme.isEmpty() ? "default" : scheme) 
+                    + "-";
+        }
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+    
     /** 
      * Static inner class used to construct the factory singleton.  This
      * class exploits that fact that inner classes are not loaded until they 
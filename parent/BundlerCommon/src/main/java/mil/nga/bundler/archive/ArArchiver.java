@@ -3,9 +3,13 @@ package mil.nga.bundler.archive;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
@@ -41,9 +45,40 @@ public class ArArchiver extends Archiver implements BundlerI {
     final private ArchiveType type = ArchiveType.AR;
     
     /**
-     * Default constructor
+     * Global header written at the start of every AR archive.
      */
-    public ArArchiver( ) { }
+    private static final String AR_MAGIC = "!<arch>\n";
+    
+    /**
+     * Trailer terminating each AR entry header.
+     */
+    private static final String AR_HEADER_TRAILER = "`\n";
+    
+    /**
+     * Widths of the name, modification time, user ID, group ID, mode and 
+     * size fields of an AR entry header.
+     */
+    private static final int[] AR_FIELD_WIDTHS = { 16, 12, 6, 6, 8, 10 };
+    
+    /**
+     * Default constructor.  The zero-copy setting is read from the bundler
+     * properties file.
+     */
+    public ArArchiver( ) { 
+        this(ArchiveSettings.getInstance());
+    }
+    
+    /**
+     * Alternate constructor allowing clients to supply the archive 
+     * settings.
+     * 
+     * @param settings The archive settings to apply.
+     */
+    public ArArchiver(ArchiveSettings settings) {
+        if (settings != null) {
+            setZeroCopy(settings.isZeroCopy());
+        }
+    }
     
     /**
      * Required concrete method used to construct the type-appropriate 
@@ -100,34 +135,147 @@ public class ArArchiver extends Archiver implements BundlerI {
             // Ensure the target output file does not already exist.
             Files.deleteIfExists(Paths.get(getOutputFile()));
             
-            // Construct the output stream to the target archive file.
-            try (ArArchiveOutputStream aaos = 
-                    new ArArchiveOutputStream(
-                            new BufferedOutputStream(
-                                    Files.newOutputStream(
-                                            Paths.get(getOutputFile()), 
-                                            StandardOpenOption.CREATE, 
-                                            StandardOpenOption.WRITE)))) {
-                for (ArchiveElement element : files) {
-                    aaos.putArchiveEntry(
-                            getArchiveEntry(
-                                    element.getURI(),
-                                    element.getEntryPath()));
-                    copyOneFile(aaos, element.getURI());
-                    notify(element);
-                }
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Output archive [ "
-                            + getOutputFile()
-                            + " ] created in [ "
-                            + (System.currentTimeMillis() - startTime)
-                            + " ] ms.");
+            List<ArArchiveEntry> entries = getZeroCopyEntries(files);
+            if (entries != null) {
+                writeEntries(files, entries);
+            }
+            else {
+                // Construct the output stream to the target archive file.
+                try (ArArchiveOutputStream aaos = 
+                        new ArArchiveOutputStream(
+                                new BufferedOutputStream(
+                                        openOutputStream()))) {
+                    for (ArchiveElement element : files) {
+                        if (isVolumeFull(aaos)) {
+                            break;
+                        }
+                        aaos.putArchiveEntry(
+                                getArchiveEntry(
+                                        element.getURI(),
+                                        element.getEntryPath()));
+                        copyOneFile(aaos, element.getURI());
+                        notify(element);
+                    }
                 }
             }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Output archive [ "
+                        + getOutputFile()
+                        + " ] created in [ "
+                        + (System.currentTimeMillis() - startTime)
+                        + " ] ms.");
+            }
         }
         else {
             LOGGER.warn("There are no input files to process.  Output "
                     + "archive not created.");
         }
     }
+    
+    /**
+     * Build the AR entries for the input files if the archive can be 
+     * written using the zero-copy path.  The zero-copy path is used only 
+     * when it is enabled, the output file is on the local file system, 
+     * and every header field fits within its fixed width.  Anything else 
+     * (e.g. names longer than 16 characters) is left to the 
+     * <code>ArArchiveOutputStream</code>, which will report the problem.
+     * 
+     * @param files List of files to Archive.
+     * @return The entries to write, or null if the stream-based path must 
+     * be used.
+     * @throws IOException Thrown if the input files cannot be accessed.
+     */
+    private List<ArArchiveEntry> getZeroCopyEntries(List<ArchiveElement> files) 
+            throws IOException {
+        if (!isZeroCopy() || !isLocal(getOutputFile())) {
+            return null;
+        }
+        List<ArArchiveEntry> entries = new ArrayList<ArArchiveEntry>(files.size());
+        for (ArchiveElement element : files) {
+            ArArchiveEntry entry = (ArArchiveEntry)getArchiveEntry(
+                    element.getURI(), 
+                    element.getEntryPath());
+            if (getHeader(entry) == null) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Entry [ "
+                            + entry.getName()
+                            + " ] cannot be written directly.  Zero-copy "
+                            + "transfer disabled.");
+                }
+                return null;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+    
+    /**
+     * Construct the 60-byte header describing the input entry.
+     * 
+     * @param entry The entry to describe.
+     * @return The header, or null if any field does not fit within its 
+     * fixed width.
+     */
+    private String getHeader(ArArchiveEntry entry) {
+        CharsetEncoder encoder = StandardCharsets.US_ASCII.newEncoder();
+        String[] fields = new String[] {
+                entry.getName(),
+                Long.toString(entry.getLastModified()),
+                Integer.toString(entry.getUserId()),
+                Integer.toString(entry.getGroupId()),
+                Integer.toOctalString(entry.getMode()),
+                Long.toString(entry.getLength())
+        };
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i<fields.length; i++) {
+            if ((fields[i].length() > AR_FIELD_WIDTHS[i]) || 
+                    (!encoder.canEncode(fields[i]))) {
+                return null;
+            }
+            sb.append(fields[i]);
+            for (int j=fields[i].length(); j<AR_FIELD_WIDTHS[i]; j++) {
+                sb.append(' ');
+            }
+        }
+        sb.append(AR_HEADER_TRAILER);
+        return sb.toString();
+    }
+    
+    /**
+     * Write the input files directly to a channel opened on the output 
+     * file.  The archive header, entry headers and padding are identical 
+     * to those produced by the <code>ArArchiveOutputStream</code> while the
+     * file contents are moved with <code>transferOneFile()</code>.
+     * 
+     * @param files List of files to Archive.
+     * @param entries The pre-built AR entries (one per file).
+     * @throws IOException Thrown if there are problems writing to the 
+     * output file, or if an input file cannot be read in full.  The 
+     * archive is incomplete and the failed file is not reported as 
+     * archived.
+     */
+    private void writeEntries(
+            List<ArchiveElement> files, 
+            List<ArArchiveEntry> entries) throws IOException {
+        ByteBuffer newline = ByteBuffer.wrap(new byte[] { '\n' });
+        try (FileChannel out = openOutputChannel()) {
+            writeFully(out, ByteBuffer.wrap(
+                    AR_MAGIC.getBytes(StandardCharsets.US_ASCII)));
+            for (int i=0; i<files.size(); i++) {
+                if (isVolumeFull()) {
+                    break;
+                }
+                ArArchiveEntry entry = entries.get(i);
+                writeFully(out, ByteBuffer.wrap(
+                        getHeader(entry).getBytes(StandardCharsets.US_ASCII)));
+                transferOneFile(out, files.get(i).getURI(), entry.getLength());
+                // Entries are aligned on even byte boundaries.
+                if ((entry.getLength() % 2) != 0) {
+                    newline.rewind();
+                    writeFully(out, newline);
+                }
+                notify(files.get(i));
+            }
+        }
+    }
 }
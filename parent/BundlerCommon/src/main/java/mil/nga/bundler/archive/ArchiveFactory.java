@@ -91,6 +91,18 @@ public class ArchiveFactory {
             }
             return new BZip2Archiver();
         }
+        else if (type.equals(ArchiveType.ZSTD)) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(method + "Client requested ZSTD archive format.");
+            }
+            return new ZstdArchiver();
+        }
+        else if (type.equals(ArchiveType.LZ4)) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(method + "Client requested LZ4 archive format.");
+            }
+            return new LZ4Archiver();
+        }
         String msg = "An archive type was requested that is not yet supported!"
             + "  Archive supplied [ " 
             + type.getText()
@@ -0,0 +1,503 @@
+package mil.nga.bundler.archive;
+
+import java.util.EnumSet;
+import java.util.Properties;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.PropertyLoader;
+import mil.nga.bundler.exceptions.PropertiesNotLoadedException;
+import mil.nga.bundler.exceptions.UnknownHashTypeException;
+import mil.nga.bundler.exceptions.UnknownPlannerTypeException;
+import mil.nga.bundler.interfaces.BundlerConstantsI;
+import mil.nga.bundler.types.HashType;
+import mil.nga.bundler.types.PlannerType;
+
+/**
+ * Simple class used to encapsulate the tuning parameters used by the
+ * concrete archiver/compressor classes.  The settings are read from the
+ * bundler properties file.  If a setting is not supplied (or the
+ * properties file cannot be loaded) the archivers fall back to the
+ * original single-threaded behavior.
+ *
+ * @author L. Craig Carpenter
+ */
+public class ArchiveSettings
+        extends PropertyLoader
+        implements BundlerConstantsI {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(
+            ArchiveSettings.class);
+
+    /**
+     * The properties object from which the settings are read.
+     */
+    private Properties props = null;
+
+    /**
+     * Private constructor that forces the singleton design pattern and
+     * loads any relevant properties from an external file.
+     */
+    private ArchiveSettings() {
+        super(PROPERTY_FILE_NAME);
+        try {
+            props = getProperties();
+        }
+        catch (PropertiesNotLoadedException pnle) {
+            LOGGER.warn("An unexpected PropertiesNotLoadedException "
+                    + "was encountered.  Archiver default settings will be "
+                    + "used.  Exception message [ "
+                    + pnle.getMessage()
+                    + " ].");
+        }
+        if (props == null) {
+            props = new Properties();
+        }
+    }
+
+    /**
+     * Alternate private constructor added to support jUnit testing.  This
+     * constructor allows clients to supply a Properties object as opposed
+     * to loading an external properties file.
+     *
+     * @param props Populated properties file.
+     */
+    private ArchiveSettings(Properties props) {
+        if (props != null) {
+            this.props = props;
+        }
+        else {
+            LOGGER.warn("Input Properties object is null.  Archiver "
+                    + "default settings will be used.");
+            this.props = new Properties();
+        }
+    }
+
+    /**
+     * Getter method for the number of threads the archivers may use for
+     * CPU-bound work.  Defaults to the number of available processors.
+     *
+     * @return The number of archive worker threads (always &gt;= 1).
+     */
+    public int getArchiveThreads() {
+        int threads = getIntProperty(
+                ARCHIVE_THREADS_PROPERTY,
+                Runtime.getRuntime().availableProcessors());
+        if (threads < 1) {
+            threads = 1;
+        }
+        return threads;
+    }
+
+    /**
+     * Determine whether ZIP entries should be compressed in parallel.
+     *
+     * @return True if parallel ZIP compression is enabled.
+     */
+    public boolean isParallelZip() {
+        return getBooleanProperty(PARALLEL_ZIP_PROPERTY, false);
+    }
+
+    /**
+     * Determine whether GZip compression should be performed in parallel.
+     *
+     * @return True if parallel GZip compression is enabled.
+     */
+    public boolean isParallelGzip() {
+        return getBooleanProperty(PARALLEL_GZIP_PROPERTY, false);
+    }
+
+    /**
+     * Determine whether BZip2 compression should be performed in parallel.
+     *
+     * @return True if parallel BZip2 compression is enabled.
+     */
+    public boolean isParallelBZip2() {
+        return getBooleanProperty(PARALLEL_BZIP2_PROPERTY, false);
+    }
+
+    /**
+     * Determine whether Zstandard compression should use multiple worker 
+     * threads.
+     *
+     * @return True if parallel Zstandard compression is enabled.
+     */
+    public boolean isParallelZstd() {
+        return getBooleanProperty(PARALLEL_ZSTD_PROPERTY, false);
+    }
+
+    /**
+     * Getter method for the Zstandard compression level.  Defaults to 3.
+     *
+     * @return The Zstandard compression level (1 - 22).
+     */
+    public int getZstdLevel() {
+        return Math.max(1, Math.min(22, 
+                getIntProperty(ZSTD_LEVEL_PROPERTY, 3)));
+    }
+
+    /**
+     * Determine whether LZ4 compression should be performed in parallel.
+     *
+     * @return True if parallel LZ4 compression is enabled.
+     */
+    public boolean isParallelLZ4() {
+        return getBooleanProperty(PARALLEL_LZ4_PROPERTY, false);
+    }
+
+    /**
+     * Getter method for the LZ4 compression level.  Defaults to 1.
+     *
+     * @return The LZ4 compression level (1 - 9).
+     */
+    public int getLZ4Level() {
+        return Math.max(1, Math.min(9, 
+                getIntProperty(LZ4_LEVEL_PROPERTY, 1)));
+    }
+
+    /**
+     * Determine whether files containing already-compressed data should be
+     * stored rather than compressed.  Defaults to true.
+     *
+     * @return True if already-compressed files should be stored.
+     */
+    public boolean isStoreCompressedInputs() {
+        return getBooleanProperty(STORE_COMPRESSED_INPUTS_PROPERTY, true);
+    }
+
+    /**
+     * Determine whether uncompressed archives should move file contents
+     * using the channel-to-channel (zero-copy) transfer.  Defaults to true.
+     *
+     * @return True if zero-copy transfers are enabled.
+     */
+    public boolean isZeroCopy() {
+        return getBooleanProperty(ZERO_COPY_PROPERTY, true);
+    }
+
+    /**
+     * Determine whether archives should roll over to a new volume when the
+     * bytes written reach the target archive size.  Defaults to false.
+     *
+     * @return True if size-based rollover is enabled.
+     */
+    public boolean isRollover() {
+        return getBooleanProperty(ROLLOVER_PROPERTY, false);
+    }
+
+    /**
+     * Determine whether the entries of compressed TAR archives should be 
+     * grouped by content type rather than written in request order.  
+     * Defaults to false.
+     *
+     * @return True if entry ordering is enabled.
+     */
+    public boolean isOrderEntries() {
+        return getBooleanProperty(ORDER_ENTRIES_PROPERTY, false);
+    }
+
+    /**
+     * Determine whether compressed sizes should be estimated by sampling
+     * the file content.  Defaults to false.
+     *
+     * @return True if compression sampling is enabled.
+     */
+    public boolean isCompressionSampling() {
+        return getBooleanProperty(COMPRESSION_SAMPLING_PROPERTY, false);
+    }
+
+    /**
+     * Getter method for the number of threads used to sample files when 
+     * estimating compressed sizes.  Defaults to 8.
+     *
+     * @return The number of sampling threads.
+     */
+    public int getSamplingThreads() {
+        return Math.max(1, getIntProperty(SAMPLING_THREADS_PROPERTY, 8));
+    }
+
+    /**
+     * Determine whether compression ratios should be learned from the 
+     * completed archives.  Defaults to false.
+     *
+     * @return True if the learned compression model is enabled.
+     */
+    public boolean isLearnedCompression() {
+        return getBooleanProperty(LEARNED_COMPRESSION_PROPERTY, false);
+    }
+
+    /**
+     * Getter method for the strategy used to divide the files of a job 
+     * into archives.  Defaults to next-fit.
+     *
+     * @return The archive planning strategy.
+     */
+    public PlannerType getPlannerType() {
+        String value = props.getProperty(ARCHIVE_PLANNER_PROPERTY);
+        if ((value != null) && (!value.trim().isEmpty())) {
+            try {
+                return PlannerType.fromString(value);
+            }
+            catch (UnknownPlannerTypeException upte) {
+                LOGGER.warn(upte.getMessage()
+                        + "  Default planner will be used.");
+            }
+        }
+        return PlannerType.NEXT_FIT;
+    }
+
+    /**
+     * Determine whether archives with a pre-computable layout should be 
+     * assembled in parallel.  Defaults to false.
+     *
+     * @return True if parallel assembly is enabled.
+     */
+    public boolean isParallelAssembly() {
+        return getBooleanProperty(PARALLEL_ASSEMBLY_PROPERTY, false);
+    }
+
+    /**
+     * Getter method for the number of threads used to copy file contents 
+     * during parallel assembly.  Defaults to 4.
+     *
+     * @return The number of assembly threads (always &gt;= 1).
+     */
+    public int getAssemblyThreads() {
+        return Math.max(1, getIntProperty(ASSEMBLY_THREADS_PROPERTY, 4));
+    }
+
+    /**
+     * Getter method for the number of input files read ahead of the entry
+     * currently being written.  Defaults to zero (disabled).
+     *
+     * @return The read-ahead depth (always &gt;= 0).
+     */
+    public int getPrefetchDepth() {
+        return Math.max(0, getIntProperty(PREFETCH_DEPTH_PROPERTY, 0));
+    }
+
+    /**
+     * Getter method for the maximum amount of memory used to hold 
+     * read-ahead data.  Defaults to 32 MB.
+     *
+     * @return The read-ahead memory budget in bytes.
+     */
+    public long getPrefetchBufferSize() {
+        return Math.max(1, getIntProperty(PREFETCH_BUFFER_PROPERTY, 32))
+                * BYTES_PER_MEGABYTE;
+    }
+
+    /**
+     * Getter method for the number of files on a given file system that 
+     * are validated concurrently.  A value set for the URI scheme (e.g.
+     * <code>bundler.validation_threads.s3</code>) takes precedence over 
+     * the general value, which defaults to 8.
+     *
+     * @param scheme The URI scheme of the file system (e.g. "file", "s3").
+     * @return The number of validation threads (always &gt;= 1).
+     */
+    public int getValidationThreads(String scheme) {
+        int threads = getIntProperty(VALIDATION_THREADS_PROPERTY, 8);
+        if ((scheme != null) && (!scheme.isEmpty())) {
+            threads = getIntProperty(
+                    VALIDATION_THREADS_PROPERTY + "." + scheme, threads);
+        }
+        return Math.max(1, threads);
+    }
+
+    /**
+     * Getter method for the time for which file metadata is cached.  
+     * Defaults to 0 (no caching).
+     *
+     * @return The time to live in seconds.
+     */
+    public long getMetadataCacheTTL() {
+        return Math.max(0, getIntProperty(METADATA_CACHE_TTL_PROPERTY, 0));
+    }
+
+    /**
+     * Getter method for the time for which files that do not exist are 
+     * cached.  Defaults to the time to live of the files that do.
+     *
+     * @return The negative time to live in seconds.
+     */
+    public long getMetadataCacheNegativeTTL() {
+        return Math.max(0, getIntProperty(
+                METADATA_CACHE_NEGATIVE_TTL_PROPERTY, 
+                (int)getMetadataCacheTTL()));
+    }
+
+    /**
+     * Getter method for the maximum number of files held in the metadata
+     * cache.  Defaults to 100000.
+     *
+     * @return The maximum number of entries.
+     */
+    public int getMetadataCacheSize() {
+        return Math.max(1, getIntProperty(METADATA_CACHE_SIZE_PROPERTY, 100000));
+    }
+
+    /**
+     * Determine whether local directories are watched so that changed 
+     * files are removed from the metadata cache immediately.  Defaults to
+     * false.
+     *
+     * @return True if directories are watched.
+     */
+    public boolean isMetadataCacheWatch() {
+        return getBooleanProperty(METADATA_CACHE_WATCH_PROPERTY, false);
+    }
+
+    /**
+     * Getter method for the maximum number of files held in the cache of 
+     * expanded directory listings.  Defaults to 0 (no caching).
+     *
+     * @return The maximum number of files.
+     */
+    public long getListingCacheSize() {
+        return Math.max(0, getIntProperty(LISTING_CACHE_SIZE_PROPERTY, 0));
+    }
+
+    /**
+     * Getter method for the directory holding the cache of compressed ZIP
+     * entries.
+     *
+     * @return The cache directory, or null if caching is disabled.
+     */
+    public String getChunkCacheDir() {
+        String value = props.getProperty(CHUNK_CACHE_DIR_PROPERTY);
+        if ((value != null) && (!value.trim().isEmpty())) {
+            return value.trim();
+        }
+        return null;
+    }
+
+    /**
+     * Getter method for the maximum size of the cache of compressed ZIP 
+     * entries.  Defaults to 10 GB.
+     *
+     * @return The cache size limit in bytes.
+     */
+    public long getChunkCacheSize() {
+        return Math.max(1, getIntProperty(CHUNK_CACHE_SIZE_PROPERTY, 10240))
+                * BYTES_PER_MEGABYTE;
+    }
+
+    /**
+     * Get the types of hash that should be generated for each output 
+     * archive.  Unknown types are logged and ignored.  SHA-1 is always 
+     * included because the hash file advertised to clients (see 
+     * <code>ArchiveJob.getHash()</code>) is the SHA-1 hash file.
+     *
+     * @return The hash types (never empty).
+     */
+    public Set<HashType> getHashTypes() {
+        Set<HashType> types = EnumSet.noneOf(HashType.class);
+        String value = props.getProperty(HASH_TYPES_PROPERTY);
+        if ((value != null) && (!value.trim().isEmpty())) {
+            for (String token : value.split(",")) {
+                if (!token.trim().isEmpty()) {
+                    try {
+                        types.add(HashType.fromString(token));
+                    }
+                    catch (UnknownHashTypeException uhte) {
+                        LOGGER.warn(uhte.getMessage()
+                                + "  Value will be ignored.");
+                    }
+                }
+            }
+        }
+        types.add(HashType.SHA1);
+        return types;
+    }
+
+    /**
+     * Retrieve a boolean property.
+     *
+     * @param key The property name.
+     * @param defaultValue The value to return if the property is not set.
+     * @return The boolean value of the property.
+     */
+    protected boolean getBooleanProperty(String key, boolean defaultValue) {
+        String value = props.getProperty(key);
+        if ((value != null) && (!value.trim().isEmpty())) {
+            return Boolean.parseBoolean(value.trim());
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Retrieve an integer property.  If the property value cannot be
+     * parsed the default value is returned.
+     *
+     * @param key The property name.
+     * @param defaultValue The value to return if the property is not set.
+     * @return The integer value of the property.
+     */
+    protected int getIntProperty(String key, int defaultValue) {
+        String value = props.getProperty(key);
+        if ((value != null) && (!value.trim().isEmpty())) {
+            try {
+                return Integer.parseInt(value.trim());
+            }
+            catch (NumberFormatException nfe) {
+                LOGGER.warn("Invalid value for property [ "
+                        + key
+                        + " ] => [ "
+                        + value
+                        + " ].  Using the default value [ "
+                        + defaultValue
+                        + " ].");
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Getter method for the singleton instance of the ArchiveSettings.
+     * @return Handle to the singleton instance of the ArchiveSettings.
+     */
+    public static ArchiveSettings getInstance() {
+        return ArchiveSettingsHolder.getSingleton();
+    }
+
+    /**
+     * Construct an ArchiveSettings object from the input Properties
+     * object.  Added to support jUnit testing.
+     *
+     * @param props Properties object.
+     * @return ArchiveSettings backed by the input properties.
+     */
+    public static ArchiveSettings getInstance(Properties props) {
+        return new ArchiveSettings(props);
+    }
+
+    /**
+     * Static inner class used to construct the singleton.  This
+     * class exploits that fact that inner classes are not loaded until they
+     * referenced therefore enforcing thread safety without the performance
+     * hit imposed by the use of the "synchronized" keyword.
+     *
+     * @author L. Craig Carpenter
+     */
+    public static class ArchiveSettingsHolder {
+
+        /**
+         * Reference to the Singleton instance of the settings object.
+         */
+        private static ArchiveSettings settings = new ArchiveSettings();
+
+        /**
+         * Accessor method for the singleton instance of the settings object.
+         * @return The singleton instance of the settings object.
+         */
+        public static ArchiveSettings getSingleton() {
+            return settings;
+        }
+    }
+}
@@ -1,23 +1,54 @@
 package mil.nga.bundler.archive;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.ArchiveOutputStream;
+import org.apache.commons.compress.utils.CountingOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.codec.binary.Hex;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import mil.nga.bundler.archive.streams.DigestingOutputStream;
+import mil.nga.bundler.exceptions.ArchiveException;
 import mil.nga.bundler.interfaces.FileCompletionListenerI;
 import mil.nga.bundler.model.ArchiveElement;
 import mil.nga.bundler.types.ArchiveType;
+import mil.nga.bundler.types.HashType;
 
 /**
  * This is class was designed to encapsulate the logic used for creating the 
@@ -32,6 +63,30 @@ public abstract class Archiver {
      */
     public static final String DEFAULT_ARCHIVE_FILENAME = "archive";
     
+    /**
+     * Size of the buffer used when a file must be copied through the heap 
+     * into an output channel.
+     */
+    private static final int TRANSFER_BUFFER_SIZE = 8192;
+    
+    /**
+     * Size of the chunks in which file contents are digested while they 
+     * are copied (both by <code>transferOneFile()</code> and by the 
+     * parallel assembly workers).
+     */
+    private static final int DIGEST_CHUNK_SIZE = 128 * 1024;
+    
+    /**
+     * Number of chunks each parallel assembly worker may read ahead of the
+     * thread digesting the archive in order.
+     */
+    private static final int DIGEST_CHUNKS_IN_FLIGHT = 4;
+    
+    /**
+     * Marks the end of the chunks of a single file.
+     */
+    private static final ByteBuffer END_OF_FILE = ByteBuffer.allocate(0);
+    
     /**
      * Set up the Log4j system for use throughout the class
      */        
@@ -53,6 +108,85 @@ public abstract class Archiver {
      */
     private Object MUTEX = new Object();
     
+    /**
+     * Whether or not uncompressed archivers should use the channel-based
+     * (zero-copy) file transfer when possible.
+     */
+    private boolean zeroCopy = true;
+    
+    /**
+     * The types of hash to calculate while the output archive is written.
+     * Empty if no hash is required.
+     */
+    private Set<HashType> hashTypes = EnumSet.noneOf(HashType.class);
+    
+    /**
+     * Digests updated with every byte written to the current output 
+     * archive.  Null once the hashes have been finalized.
+     */
+    private Map<HashType, MessageDigest> digests = null;
+    
+    /**
+     * The hashes of the most recently completed output archive.
+     */
+    private Map<HashType, String> hashes = 
+            new EnumMap<HashType, String>(HashType.class);
+    
+    /**
+     * Target size (in bytes) of the output archive.  Once at least this 
+     * many bytes have reached the output file no further entries are 
+     * started.  Zero (the default) means no limit.
+     */
+    private long volumeSize = 0L;
+    
+    /**
+     * Counts the bytes written through the stream returned by 
+     * <code>openOutputStream()</code>.
+     */
+    private CountingOutputStream counter = null;
+    
+    /**
+     * Bytes written to the channel returned by 
+     * <code>openOutputChannel()</code>.
+     */
+    private long channelBytes = 0L;
+    
+    /**
+     * Direct buffer used by <code>transferOneFile()</code> to digest local
+     * files (allocated on first use).
+     */
+    private ByteBuffer transferBuffer = null;
+    
+    /**
+     * Number of input elements processed (i.e. for which listeners have 
+     * been notified) for the current output archive.
+     */
+    private int numBundled = 0;
+    
+    /**
+     * Number of input files read ahead of the entry currently being 
+     * written.  Zero disables the read-ahead.
+     */
+    private int prefetchDepth = 0;
+    
+    /**
+     * Maximum number of bytes of read-ahead data.
+     */
+    private long prefetchBufferSize = 32L * 1024L * 1024L;
+    
+    /**
+     * Whether archives whose layout can be computed up front (TAR and 
+     * all-STORED ZIP) should be assembled by copying the file contents to
+     * their final offsets in parallel.
+     */
+    private boolean parallelAssembly = false;
+    
+    /**
+     * Number of threads used to copy file contents during parallel 
+     * assembly.
+     */
+    private int assemblyThreads = 4;
+    
     /**
      * Default constructor.
      */
@@ -84,8 +218,11 @@ public abstract class Archiver {
      * 
      * @param out The target archive output stream.
      * @param file The file to copy.
+     * @throws IOException Thrown if the file cannot be copied.  The entry
+     * will have been left incomplete, so the archive must be abandoned.
      */
-    public void copyOneFile(ArchiveOutputStream out, URI file) {
+    public void copyOneFile(ArchiveOutputStream out, URI file)
+            throws IOException {
         if (file != null) {
             if (out != null) {
                 Path p = Paths.get(file);
@@ -101,6 +238,7 @@ public abstract class Archiver {
                             + "message => [ "
                             + ioe.getMessage()
                             + " ].");
+                    throw ioe;
                 }
             }
             else { 
@@ -113,6 +251,690 @@ public abstract class Archiver {
         }
     }
     
+    /**
+     * This method will copy the contents of the file identified by the 
+     * input URI into the input output stream object.  If a prefetcher is
+     * supplied the contents are taken from it (the prefetcher must be 
+     * consumed in the same order as the list it was built from).
+     * 
+     * @param out The target archive output stream.
+     * @param file The file to copy.
+     * @param prefetcher The read-ahead stage (may be null).
+     * @throws IOException Thrown if the file cannot be copied.
+     */
+    public void copyOneFile(
+            ArchiveOutputStream out, 
+            URI file, 
+            Prefetcher prefetcher) throws IOException {
+        if (prefetcher == null) {
+            copyOneFile(out, file);
+        }
+        else if (out != null) {
+            try (InputStream in = prefetcher.next()) {
+                IOUtils.copy(in, out, TRANSFER_BUFFER_SIZE);
+                out.closeArchiveEntry();
+            }
+            catch (IOException ioe) {
+                LOGGER.error("Unexpected IOException encountered while "
+                        + "copying file [ "
+                        + file.toString()
+                        + " ].  To the archive output stream.  Exception "
+                        + "message => [ "
+                        + ioe.getMessage()
+                        + " ].");
+                throw ioe;
+            }
+        }
+        else { 
+            LOGGER.error("Client supplied OutputStream is null.  Copy " 
+                    + "into archive will not occur.");
+        }
+    }
+    
+    /**
+     * Start reading the input files ahead of the archiver if read-ahead is
+     * enabled.  The caller is responsible for closing the returned object.
+     * 
+     * @param files The files that will be written (in order).
+     * @return The read-ahead stage, or null if read-ahead is disabled.
+     */
+    protected Prefetcher getPrefetcher(List<ArchiveElement> files) {
+        if ((prefetchDepth > 0) && (files != null) && (files.size() > 1)) {
+            return new Prefetcher(files, prefetchDepth, prefetchBufferSize);
+        }
+        return null;
+    }
+    
+    /**
+     * Determine whether the input URI resides on the default (i.e. local)
+     * file system.  Only files on the local file system support a true 
+     * channel-to-channel transfer.  Files served by other providers (e.g. 
+     * s3fs) are copied through the heap.
+     * 
+     * @param file The URI to check.
+     * @return True if the URI resolves to the default file system.
+     */
+    protected boolean isLocal(URI file) {
+        if (file != null) {
+            try {
+                return Paths.get(file).getFileSystem() == 
+                        FileSystems.getDefault();
+            }
+            catch (IllegalArgumentException | FileSystemNotFoundException e) { }
+        }
+        return false;
+    }
+    
+    /**
+     * Reset the byte and element counters in preparation for writing a new
+     * output archive.
+     */
+    private void startVolume() {
+        counter      = null;
+        channelBytes = 0L;
+        numBundled   = 0;
+        startHash();
+    }
+    
+    /**
+     * Reset the digests in preparation for writing a new output archive.
+     */
+    private void startHash() {
+        hashes  = new EnumMap<HashType, String>(HashType.class);
+        digests = null;
+        if (!hashTypes.isEmpty()) {
+            digests = new EnumMap<HashType, MessageDigest>(HashType.class);
+            for (HashType type : hashTypes) {
+                try {
+                    digests.put(type, 
+                            MessageDigest.getInstance(type.getAlgorithm()));
+                }
+                catch (NoSuchAlgorithmException nsae) {
+                    LOGGER.error("Unable to obtain a digest for hash type [ "
+                            + type.getText()
+                            + " ].  The archive hash will not be calculated.  "
+                            + "Exception message => [ "
+                            + nsae.getMessage()
+                            + " ].");
+                }
+            }
+        }
+    }
+    
+    /**
+     * Determine whether any digests are being updated for the current 
+     * output archive.
+     * 
+     * @return True if the output is being hashed.
+     */
+    private boolean isHashing() {
+        return (digests != null) && (!digests.isEmpty());
+    }
+    
+    /**
+     * Open an output stream to the target output file.  If any hash types
+     * have been requested, every byte written through the returned stream
+     * is also fed to the digests so the archive does not have to be read 
+     * back in order to hash it.  The caller is responsible for closing the
+     * stream.
+     * 
+     * @return Stream to the output file.
+     * @throws IOException Thrown if the output file cannot be opened.
+     */
+    protected OutputStream openOutputStream() throws IOException {
+        startVolume();
+        counter = new CountingOutputStream(Files.newOutputStream(
+                Paths.get(getOutputFile()), 
+                StandardOpenOption.CREATE, 
+                StandardOpenOption.WRITE));
+        OutputStream out = counter;
+        if (isHashing()) {
+            out = new DigestingOutputStream(out, digests.values());
+        }
+        return out;
+    }
+    
+    /**
+     * Open a channel to the target output file.  If any hash types have 
+     * been requested, data written with <code>writeFully()</code> is fed to
+     * the digests.  The channel is also readable so that regions written 
+     * out of order can be digested.  The caller is responsible for closing
+     * the channel.
+     * 
+     * @return Channel to the output file.
+     * @throws IOException Thrown if the output file cannot be opened.
+     */
+    protected FileChannel openOutputChannel() throws IOException {
+        startVolume();
+        return FileChannel.open(
+                Paths.get(getOutputFile()), 
+                StandardOpenOption.CREATE, 
+                StandardOpenOption.READ, 
+                StandardOpenOption.WRITE);
+    }
+    
+    /**
+     * Write the entire contents of the input buffer to the output channel
+     * (updating the archive digests if any are active).
+     * 
+     * @param out The target channel.
+     * @param buffer The data to write.
+     * @throws IOException Thrown if the data cannot be written.
+     */
+    protected void writeFully(FileChannel out, ByteBuffer buffer) 
+            throws IOException {
+        if (isHashing()) {
+            for (MessageDigest digest : digests.values()) {
+                digest.update(buffer.duplicate());
+            }
+        }
+        channelBytes += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+    
+    /**
+     * Write the requested number of zero bytes to the output channel.
+     * 
+     * @param out The target channel.
+     * @param count The number of zero bytes to write.
+     * @throws IOException Thrown if the data cannot be written.
+     */
+    protected void pad(FileChannel out, long count) throws IOException {
+        if (count > 0) {
+            ByteBuffer zeros = ByteBuffer.allocate(
+                    (int)Math.min(count, TRANSFER_BUFFER_SIZE));
+            while (count > 0) {
+                zeros.clear();
+                zeros.limit((int)Math.min(count, zeros.capacity()));
+                count -= zeros.remaining();
+                writeFully(out, zeros);
+            }
+        }
+    }
+    
+    /**
+     * Calculate the number of bytes required to pad the input length out 
+     * to the next multiple of the input boundary.
+     * 
+     * @param length The current length.
+     * @param boundary The alignment boundary.
+     * @return The number of padding bytes required.
+     */
+    protected static long getPadding(long length, int boundary) {
+        long remainder = length % boundary;
+        return (remainder == 0) ? 0 : (boundary - remainder);
+    }
+    
+    /**
+     * This method will move exactly <code>size</code> bytes from the file 
+     * identified by the input URI into the output channel.  Files on the 
+     * local file system are moved using <code>FileChannel.transferTo</code>
+     * which allows the operating system to copy the data without passing 
+     * it through the JVM heap.  If the archive is being hashed, local 
+     * files are instead read from their channel into a direct buffer that
+     * is digested and written to the output, so the data still does not 
+     * pass through the heap and the archive need not be read back.  Files 
+     * on other file system providers are copied through a small buffer.  
+     * Because the entry header (containing
+     * the size) has already been written, a file that cannot be read, or 
+     * that shrank after the header was built, leaves the entry incomplete.
+     * The error is thrown, as it is by <code>copyOneFile()</code>, so the 
+     * archive is abandoned rather than delivered with a padded entry.
+     * 
+     * @param out The target output channel.
+     * @param file The file to copy.
+     * @param size The number of bytes declared in the entry header.
+     * @throws IOException Thrown if the file cannot be read in full or the 
+     * output channel cannot be written.
+     */
+    protected void transferOneFile(FileChannel out, URI file, long size) 
+            throws IOException {
+        long written = 0;
+        try {
+            if (isLocal(file) && isHashing()) {
+                try (FileChannel in = FileChannel.open(
+                        Paths.get(file), 
+                        StandardOpenOption.READ)) {
+                    if (transferBuffer == null) {
+                        transferBuffer = ByteBuffer.allocateDirect(
+                                DIGEST_CHUNK_SIZE);
+                    }
+                    while (written < size) {
+                        transferBuffer.clear();
+                        transferBuffer.limit((int)Math.min(
+                                transferBuffer.capacity(), size - written));
+                        int count = in.read(transferBuffer);
+                        if (count <= 0) {
+                            break;
+                        }
+                        transferBuffer.flip();
+                        writeFully(out, transferBuffer);
+                        written += count;
+                    }
+                }
+            }
+            else if (isLocal(file)) {
+                try (FileChannel in = FileChannel.open(
+                        Paths.get(file), 
+                        StandardOpenOption.READ)) {
+                    while (written < size) {
+                        long count = in.transferTo(
+                                written, size - written, out);
+                        if (count <= 0) {
+                            break;
+                        }
+                        written += count;
+                        channelBytes += count;
+                    }
+                }
+            }
+            else {
+                try (InputStream in = Files.newInputStream(Paths.get(file))) {
+                    byte[] buffer = new byte[TRANSFER_BUFFER_SIZE];
+                    int count;
+                    while ((written < size) && 
+                            ((count = in.read(buffer, 0, 
+                                    (int)Math.min(buffer.length, size - written))) != -1)) {
+                        writeFully(out, ByteBuffer.wrap(buffer, 0, count));
+                        written += count;
+                    }
+                }
+            }
+        }
+        catch (IOException ioe) {
+            LOGGER.error("Unexpected IOException encountered while "
+                    + "transferring file [ "
+                    + file.toString()
+                    + " ] to the archive output channel.  Exception "
+                    + "message => [ "
+                    + ioe.getMessage()
+                    + " ].");
+            throw ioe;
+        }
+        if (written < size) {
+            throw getShortfallException(file, written, size);
+        }
+    }
+    
+    /**
+     * Construct (and log) the exception thrown when fewer bytes could be 
+     * read from an input file than were declared in its entry header 
+     * (i.e. the file shrank after the header was built).
+     * 
+     * @param file The input file.
+     * @param written The number of bytes copied.
+     * @param size The number of bytes declared in the entry header.
+     * @return The exception to throw.
+     */
+    private static IOException getShortfallException(
+            URI file, 
+            long written, 
+            long size) {
+        String msg = "Only [ "
+                + written
+                + " ] of [ "
+                + size
+                + " ] bytes could be read from file [ "
+                + file.toString()
+                + " ].  The archive entry is incomplete.";
+        LOGGER.error(msg);
+        return new IOException(msg);
+    }
+    
+    /**
+     * Extend the output file to its final length before the contents are 
+     * written out of order.  Regions that are never written (padding and
+     * end-of-archive records) read back as zeros.
+     * 
+     * @param out The target channel.
+     * @param length The final length of the output file.
+     * @throws IOException Thrown if the file cannot be extended.
+     */
+    protected void preallocate(FileChannel out, long length) 
+            throws IOException {
+        if (length > 0) {
+            writeAt(out, ByteBuffer.allocate(1), length - 1);
+        }
+        channelBytes = length;
+    }
+    
+    /**
+     * Write the entire contents of the input buffer to the output channel 
+     * starting at the input position.  The channel position is not 
+     * changed, so several threads may write to the same channel.
+     * 
+     * @param out The target channel.
+     * @param buffer The data to write.
+     * @param position The file offset at which to write the data.
+     * @throws IOException Thrown if the data cannot be written.
+     */
+    protected static void writeAt(
+            FileChannel out, 
+            ByteBuffer buffer, 
+            long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+    }
+    
+    /**
+     * Copy the contents of each input file to its pre-computed offset in 
+     * the output channel using a pool of threads, so one slow source file 
+     * does not stall the rest of the archive.  The output file must 
+     * already have been extended to its final length (see 
+     * <code>preallocate()</code>).  Listeners are notified in input order.
+     * 
+     * If the archive is being hashed, each task hands the chunks it has 
+     * written to the calling thread through a small bounded queue, and the
+     * calling thread feeds the whole archive to the digests in order: the 
+     * regions between the file contents (headers and padding, which must 
+     * already have been written) are read back from the output channel, 
+     * the file contents are taken from the queues.  The archive is 
+     * therefore never read back in full.  Because the tasks are started in
+     * input order, the task whose queue is being drained is always running
+     * or finished, so a worker blocked on a full queue cannot stall the 
+     * calling thread.
+     * 
+     * @param out The target channel.
+     * @param files The files to copy.
+     * @param offsets The offset of each file's contents in the output.
+     * @param sizes The number of bytes declared for each file.
+     * @param calculateCRC True if the CRC-32 of each file is required.
+     * @return The CRC-32 of each file (null if not requested).
+     * @throws ArchiveException Thrown if the calling thread is interrupted.
+     * @throws IOException Thrown if an input file cannot be read in full, 
+     * or the output channel cannot be written or (when hashing) read.  
+     * Listeners are not notified of the file that failed or of any file 
+     * following it.
+     */
+    protected long[] copyBodies(
+            FileChannel out, 
+            List<ArchiveElement> files, 
+            long[] offsets, 
+            long[] sizes, 
+            boolean calculateCRC) throws ArchiveException, IOException {
+        
+        long[] crcs = calculateCRC ? new long[files.size()] : null;
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(assemblyThreads, files.size())));
+        
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Assembling [ "
+                    + files.size()
+                    + " ] entries using [ "
+                    + assemblyThreads
+                    + " ] threads.");
+        }
+        
+        try {
+            List<Future<Long>> futures = new ArrayList<Future<Long>>();
+            List<BlockingQueue<ByteBuffer>> queues = 
+                    new ArrayList<BlockingQueue<ByteBuffer>>();
+            for (int i=0; i<files.size(); i++) {
+                BlockingQueue<ByteBuffer> queue = null;
+                if (isHashing()) {
+                    queue = new ArrayBlockingQueue<ByteBuffer>(
+                            DIGEST_CHUNKS_IN_FLIGHT);
+                }
+                queues.add(queue);
+                futures.add(executor.submit(new BodyCopyTask(
+                        out, 
+                        files.get(i).getURI(), 
+                        offsets[i], 
+                        sizes[i], 
+                        calculateCRC, 
+                        queue)));
+            }
+            long cursor = 0L;
+            for (int i=0; i<files.size(); i++) {
+                try {
+                    if (isHashing()) {
+                        digestRegion(out, cursor, offsets[i]);
+                        ByteBuffer chunk;
+                        while ((chunk = queues.get(i).take()) != END_OF_FILE) {
+                            digest(chunk);
+                        }
+                        cursor = offsets[i] + sizes[i];
+                    }
+                    long crc = futures.get(i).get();
+                    if (crcs != null) {
+                        crcs[i] = crc;
+                    }
+                }
+                catch (ExecutionException ee) {
+                    if (ee.getCause() instanceof IOException) {
+                        throw (IOException)ee.getCause();
+                    }
+                    throw new IOException(ee.getCause());
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new ArchiveException("Interrupted while "
+                            + "copying file [ "
+                            + files.get(i).getURI().toString()
+                            + " ].");
+                }
+                notify(files.get(i));
+            }
+            if (isHashing()) {
+                digestRegion(out, cursor, out.size());
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        return crcs;
+    }
+    
+    /**
+     * Feed a buffer to the archive digests.
+     * 
+     * @param buffer The data to digest.
+     */
+    private void digest(ByteBuffer buffer) {
+        for (MessageDigest digest : digests.values()) {
+            digest.update(buffer.duplicate());
+        }
+    }
+    
+    /**
+     * Read a region of the output channel back and feed it to the archive 
+     * digests.  Used for the (small) regions written before the file 
+     * contents during out-of-order assembly.
+     * 
+     * @param out The output channel.
+     * @param start The offset of the first byte of the region.
+     * @param end The offset following the last byte of the region.
+     * @throws IOException Thrown if the region cannot be read.
+     */
+    private void digestRegion(FileChannel out, long start, long end) 
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(TRANSFER_BUFFER_SIZE);
+        while (start < end) {
+            buffer.clear();
+            buffer.limit((int)Math.min(buffer.capacity(), end - start));
+            int count = out.read(buffer, start);
+            if (count <= 0) {
+                throw new IOException("Unexpected end of output file at "
+                        + "offset [ "
+                        + start
+                        + " ].");
+            }
+            buffer.flip();
+            digest(buffer);
+            start += count;
+        }
+    }
+    
+    /**
+     * Task copying a single input file to its offset in the output 
+     * channel.  Errors reading the input file (including a file that 
+     * shrank after its entry header was built) are thrown, as they are by 
+     * <code>transferOneFile()</code>, so the archive is abandoned.  If a 
+     * queue is supplied, every chunk written is also handed to it for 
+     * digesting, followed by <code>END_OF_FILE</code>.
+     */
+    private static class BodyCopyTask implements Callable<Long> {
+        
+        private final FileChannel out;
+        private final URI         file;
+        private final long        offset;
+        private final long        size;
+        private final boolean     calculateCRC;
+        private final BlockingQueue<ByteBuffer> queue;
+        
+        BodyCopyTask(
+                FileChannel out, 
+                URI file, 
+                long offset, 
+                long size, 
+                boolean calculateCRC, 
+                BlockingQueue<ByteBuffer> queue) {
+            this.out          = out;
+            this.file         = file;
+            this.offset       = offset;
+            this.size         = size;
+            this.calculateCRC = calculateCRC;
+            this.queue        = queue;
+        }
+        
+        @Override
+        public Long call() throws IOException {
+            if (queue == null) {
+                return copy();
+            }
+            try {
+                return copyAndQueue();
+            }
+            finally {
+                try {
+                    queue.put(END_OF_FILE);
+                }
+                catch (InterruptedException ie) {
+                    // The archive is being abandoned.
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        
+        /**
+         * Copy the file through a channel, handing each chunk written to 
+         * the queue.  A new buffer is used for each chunk as the calling 
+         * thread digests it after it has been written.
+         */
+        private long copyAndQueue() throws IOException {
+            CRC32 crc     = new CRC32();
+            long  written = 0;
+            try {
+                try (ReadableByteChannel in = 
+                        Files.newByteChannel(Paths.get(file))) {
+                    while (written < size) {
+                        ByteBuffer chunk = ByteBuffer.allocate(
+                                (int)Math.min(DIGEST_CHUNK_SIZE, size - written));
+                        while (chunk.hasRemaining()) {
+                            if (in.read(chunk) < 0) {
+                                break;
+                            }
+                        }
+                        chunk.flip();
+                        if (!chunk.hasRemaining()) {
+                            break;
+                        }
+                        crc.update(chunk.duplicate());
+                        writeAt(out, chunk.duplicate(), offset + written);
+                        written += chunk.remaining();
+                        queue.put(chunk);
+                    }
+                }
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while "
+                        + "copying file [ "
+                        + file.toString()
+                        + " ].");
+            }
+            catch (IOException ioe) {
+                logReadError(ioe);
+                throw ioe;
+            }
+            if (written < size) {
+                throw getShortfallException(file, written, size);
+            }
+            return crc.getValue();
+        }
+        
+        /**
+         * Copy the file without digesting it.
+         */
+        private long copy() throws IOException {
+            CRC32 crc     = new CRC32();
+            long  written = 0;
+            boolean local = false;
+            try {
+                local = Paths.get(file).getFileSystem() == 
+                        FileSystems.getDefault();
+            }
+            catch (IllegalArgumentException | FileSystemNotFoundException e) { }
+            try {
+                if (local && (!calculateCRC)) {
+                    try (FileChannel in = FileChannel.open(
+                            Paths.get(file), 
+                            StandardOpenOption.READ)) {
+                        while (written < size) {
+                            long count = out.transferFrom(
+                                    in, offset + written, size - written);
+                            if (count <= 0) {
+                                break;
+                            }
+                            written += count;
+                        }
+                    }
+                }
+                else {
+                    try (InputStream in = Files.newInputStream(Paths.get(file))) {
+                        byte[] buffer = new byte[TRANSFER_BUFFER_SIZE * 8];
+                        int count;
+                        while ((written < size) && 
+                                ((count = in.read(buffer, 0, 
+                                        (int)Math.min(buffer.length, size - written))) != -1)) {
+                            crc.update(buffer, 0, count);
+                            writeAt(out, ByteBuffer.wrap(buffer, 0, count), 
+                                    offset + written);
+                            written += count;
+                        }
+                    }
+                }
+            }
+            catch (IOException ioe) {
+                logReadError(ioe);
+                throw ioe;
+            }
+            if (written < size) {
+                throw getShortfallException(file, written, size);
+            }
+            return crc.getValue();
+        }
+        
+        /**
+         * Log an error copying the file.  Nothing is logged if the output 
+         * channel has been closed, as the archive is already being 
+         * abandoned.
+         */
+        private void logReadError(IOException ioe) {
+            if (out.isOpen()) {
+                LOGGER.error("Unexpected IOException encountered while "
+                        + "transferring file [ "
+                        + file.toString()
+                        + " ] to the archive output channel.  Exception "
+                        + "message => [ "
+                        + ioe.getMessage()
+                        + " ].");
+            }
+        }
+    }
     
     /**
      * This method is part of the implementation of the Observer design 
@@ -124,6 +946,7 @@ public abstract class Archiver {
      * it's internal state.
      */
     public void notify(ArchiveElement value) {
+        numBundled++;
         if ((listeners != null) && (listeners.size() > 0)) {
             List<FileCompletionListenerI> localListeners = null;
             synchronized(MUTEX) {
@@ -229,6 +1052,247 @@ public abstract class Archiver {
         }
     }
     
+    /**
+     * Getter method determining whether uncompressed archives should be 
+     * built using the channel-based (zero-copy) file transfer.
+     * 
+     * @return True if zero-copy transfers are enabled.
+     */
+    public boolean isZeroCopy() {
+        return zeroCopy;
+    }
+    
+    /**
+     * Setter method determining whether uncompressed archives should be 
+     * built using the channel-based (zero-copy) file transfer.
+     * 
+     * @param value True to enable zero-copy transfers.
+     */
+    public void setZeroCopy(boolean value) {
+        zeroCopy = value;
+    }
+    
+    /**
+     * Determine whether archives with a pre-computable layout are 
+     * assembled in parallel.
+     * 
+     * @return True if parallel assembly is enabled.
+     */
+    public boolean isParallelAssembly() {
+        return parallelAssembly;
+    }
+    
+    /**
+     * Setter method for the flag enabling parallel assembly.
+     * 
+     * @param value True to enable parallel assembly.
+     */
+    public void setParallelAssembly(boolean value) {
+        parallelAssembly = value;
+    }
+    
+    /**
+     * Setter method for the number of threads used to copy file contents
+     * during parallel assembly.
+     * 
+     * @param value The number of threads (values less than 1 are set to 1).
+     */
+    public void setAssemblyThreads(int value) {
+        assemblyThreads = (value < 1) ? 1 : value;
+    }
+    
+    /**
+     * Getter method for the number of input files read ahead of the entry
+     * currently being written.
+     * 
+     * @return The read-ahead depth (zero if disabled).
+     */
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+    
+    /**
+     * Setter method for the number of input files read ahead of the entry
+     * currently being written.
+     * 
+     * @param value The read-ahead depth.  Zero or less disables read-ahead.
+     */
+    public void setPrefetchDepth(int value) {
+        prefetchDepth = (value > 0) ? value : 0;
+    }
+    
+    /**
+     * Setter method for the maximum number of bytes of read-ahead data 
+     * held in memory.
+     * 
+     * @param value The read-ahead memory budget in bytes.
+     */
+    public void setPrefetchBufferSize(long value) {
+        if (value > 0) {
+            prefetchBufferSize = value;
+        }
+    }
+    
+    /**
+     * Getter method for the target size of the output archive.
+     * 
+     * @return The target size in bytes (zero means no limit).
+     */
+    public long getVolumeSize() {
+        return volumeSize;
+    }
+    
+    /**
+     * Setter method for the target size of the output archive.  When set,
+     * the archivers stop starting new entries once the number of bytes 
+     * actually written to the output file reaches the target.  Callers 
+     * use <code>getNumBundled()</code> to determine which of the input 
+     * elements were not included and must go into the next volume.
+     * 
+     * @param value The target size in bytes.  Zero or less disables the 
+     * limit.
+     */
+    public void setVolumeSize(long value) {
+        volumeSize = (value > 0) ? value : 0L;
+    }
+    
+    /**
+     * Getter method for the number of input elements included in the most 
+     * recently created output archive.  The included elements are always 
+     * the leading elements of the input list.
+     * 
+     * @return The number of elements bundled.
+     */
+    public int getNumBundled() {
+        return numBundled;
+    }
+    
+    /**
+     * Getter method for the number of bytes that have reached the current 
+     * output file.  Data still held in buffers (or inside a compressor) 
+     * above the output stream is not included.
+     * 
+     * @return The number of bytes written.
+     */
+    protected long getBytesWritten() {
+        long bytes = channelBytes;
+        if (counter != null) {
+            bytes += counter.getBytesWritten();
+        }
+        return bytes;
+    }
+    
+    /**
+     * Determine whether the current output archive has reached its target
+     * size.  At least one entry is always written to each archive so that
+     * a single file larger than the target still makes progress.
+     * 
+     * @return True if no further entries should be started.
+     */
+    protected boolean isVolumeFull() {
+        return (volumeSize > 0) && 
+                (numBundled > 0) && 
+                (getBytesWritten() >= volumeSize);
+    }
+    
+    /**
+     * Stream-based variant of <code>isVolumeFull()</code>.  When a target 
+     * size is set, the input stream is flushed first so that data held in
+     * buffers between the archive stream and the output file is counted.
+     * Data still inside a compressor cannot be flushed without hurting the
+     * compression ratio, so a compressed archive may exceed the target by 
+     * the compressor's internal buffer in addition to the last entry.
+     * 
+     * @param out The archive output stream.
+     * @return True if no further entries should be started.
+     * @throws IOException Thrown if the stream cannot be flushed.
+     */
+    protected boolean isVolumeFull(OutputStream out) throws IOException {
+        if ((volumeSize > 0) && (numBundled > 0) && (out != null)) {
+            out.flush();
+        }
+        return isVolumeFull();
+    }
+    
+    /**
+     * Getter method for the types of hash calculated while the archive is 
+     * written.
+     * 
+     * @return The hash types (may be empty).
+     */
+    public Set<HashType> getHashTypes() {
+        return Collections.unmodifiableSet(hashTypes);
+    }
+    
+    /**
+     * Convenience method used to request a single type of hash.
+     * 
+     * @param value The hash type.  Null disables hash calculation.
+     */
+    public void setHashType(HashType value) {
+        if (value != null) {
+            setHashTypes(EnumSet.of(value));
+        }
+        else {
+            setHashTypes(null);
+        }
+    }
+    
+    /**
+     * Setter method for the types of hash calculated while the archive is 
+     * written.  All of the requested hashes are calculated in the same 
+     * pass over the output data.
+     * 
+     * @param values The hash types.  Null or empty disables hash 
+     * calculation.
+     */
+    public void setHashTypes(Collection<HashType> values) {
+        hashTypes = EnumSet.noneOf(HashType.class);
+        if (values != null) {
+            for (HashType type : values) {
+                if (type != null) {
+                    hashTypes.add(type);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Getter method for the hashes of the most recently created output 
+     * archive.  The digests are finalized on the first call made after the
+     * archive output has been closed.
+     * 
+     * @return Map of hash type to lower-case hex string.  Empty if no hash
+     * types were requested.
+     */
+    public Map<HashType, String> getHashes() {
+        if (digests != null) {
+            for (Map.Entry<HashType, MessageDigest> entry : digests.entrySet()) {
+                hashes.put(
+                        entry.getKey(), 
+                        Hex.encodeHexString(entry.getValue().digest()));
+            }
+            digests = null;
+        }
+        return Collections.unmodifiableMap(hashes);
+    }
+    
+    /**
+     * Getter method for the hash of the most recently created output 
+     * archive.  If several hash types were requested, the first in 
+     * <code>HashType</code> order is returned.
+     * 
+     * @return The hash as a lower-case hex string, or null if no hash 
+     * type was requested.
+     */
+    public String getHash() {
+        Map<HashType, String> values = getHashes();
+        if (!values.isEmpty()) {
+            return values.values().iterator().next();
+        }
+        return null;
+    }
+    
     /**
      * Subclasses must provide a mechanism for creating the appropriate 
      * object of type ArchiveEntry.
@@ -2,16 +2,14 @@ package mil.nga.bundler.archive;
 
 import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.text.DecimalFormat;
-import java.util.List;
 
+import mil.nga.bundler.archive.streams.ParallelBZip2OutputStream;
 import mil.nga.bundler.interfaces.BundlerI;
-import mil.nga.bundler.exceptions.ArchiveException;
-import mil.nga.bundler.model.ArchiveElement;
 import mil.nga.bundler.types.ArchiveType;
 
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
@@ -22,9 +20,8 @@ import org.slf4j.LoggerFactory;
 /**
  * Concrete implementation of the Bundler class that will handle creation 
  * of an output compressed BZip2 archive.  This class is used in conjunction 
- * with the TAR archiver.  Compression is a two-step process.  First, the 
- * intermediate TAR archive is created, then the output TAR archive is run 
- * through BZip2 compressor.  
+ * with the TAR archiver.  The TAR stream is piped directly through the 
+ * BZip2 compressor so no intermediate TAR file is created.  
  * 
  * This compressor seems to be ever-so-slightly slower than the other compression
  * algorithms, but the output has better compression.
@@ -45,9 +42,29 @@ public class BZip2Archiver
     private ArchiveType _type = ArchiveType.BZIP2;
     
     /**
-     * Default constructor
+     * Default constructor.  The parallel settings are read from the 
+     * bundler properties file.
      */
-    public BZip2Archiver() { }
+    public BZip2Archiver() { 
+        this(ArchiveSettings.getInstance());
+    }
+    
+    /**
+     * Alternate constructor allowing clients to supply the archive 
+     * settings.
+     * 
+     * @param settings The archive settings to apply.
+     */
+    public BZip2Archiver(ArchiveSettings settings) {
+        if (settings != null) {
+            setParallel(settings.isParallelBZip2());
+            setThreads(settings.getArchiveThreads());
+            setStoreCompressed(settings.isStoreCompressedInputs());
+            setOrderEntries(settings.isOrderEntries());
+            setPrefetchDepth(settings.getPrefetchDepth());
+            setPrefetchBufferSize(settings.getPrefetchBufferSize());
+        }
+    }
     
     /**
      * Compress the data contained in the input file using the BZip2 
@@ -81,70 +98,29 @@ public class BZip2Archiver
     }
     
     /**
-     * Implementation of BundlerI interface.  It is responsible for driving 
-     * the creation of the output compressed file.  
+     * Getter method for the compression type.
+     * @return The compression type implemented by this class.
+     */
+    @Override
+    public ArchiveType getCompressionType() {
+        return _type;
+    }
+    
+    /**
+     * Wrap the input stream in a BZip2 compressor stream.  If parallel mode
+     * is enabled the 900 KB blocks are compressed concurrently.
      * 
-     * @param files List of files to Archive.
-     * @param outputFile The output file in which the input list of files 
-     * will be archived.
-     * @throws ArchiveException Thrown if there are problems creating either
-     * of the output archive files.
-     * @throws IOException Thrown if there are problems accessing any of the
-     * target files.
+     * @param out The stream to which the compressed data will be written.
+     * @return The compressor output stream.
+     * @throws IOException Thrown if the compressor stream cannot be 
+     * constructed.
      */
     @Override
-    public void bundle(List<ArchiveElement> files, URI outputFile) 
-            throws ArchiveException, IOException {
-        
-        long initialSize    = -1;
-        long compressedSize = -1;
-        long startTime      = System.currentTimeMillis();
-        
-        LOGGER.info(_type.getText() + " : Creating intermediate TAR file.");
-        super.bundle(files, outputFile);
-        
-        // Save a handle to the intermediate TAR file.
-        URI intermediateTARFile = getOutputFile();
-        if (Files.exists(Paths.get(intermediateTARFile))) {
-            initialSize = Files.size(Paths.get(intermediateTARFile));
-            LOGGER.info(_type.getText() 
-                    + " : Intermediate TAR file created successfully.  File "
-                    + "created [ " 
-                    + intermediateTARFile.toString()
-                    + " ]. Creating compressed output file.");
-            compress(intermediateTARFile, _type);
-            
-            if (Files.exists(Paths.get(getOutputFile()))) {
-                compressedSize = Files.size(Paths.get(getOutputFile()));
-            }
-            else {
-                LOGGER.error(_type.getText()
-                        + " : Unknown error occurred during compression.  Target "
-                        + "output file [ "
-                        + getOutputFile().toString()
-                        + " ] does not exist.");
-            }
-        }
-        
-        // Output the amount of compression obtained.
-        if ((initialSize > 0) && (compressedSize > 0)) {
-            double percentCompressed = ((double)initialSize - (double)compressedSize) /
-                    (double)initialSize;
-            DecimalFormat df = new DecimalFormat("##.##%");
-            LOGGER.info(_type.getText()
-                    + " : Output compressed file created [ "
-                    + getOutputFile().toString()
-                    + " ].  Compression percentage obtained [ "
-                    + df.format(percentCompressed)
-                    + " ].");
-            if (LOGGER.isDebugEnabled()) {
-                LOGGER.debug(_type.getText()
-                        + " : Output compressed file [ "
-                        + getOutputFile().toString()
-                        + " ] created in [ "
-                        + (System.currentTimeMillis() - startTime)
-                        + " ] ms.");
-            }
+    public OutputStream getCompressorOutputStream(OutputStream out) 
+            throws IOException {
+        if (isParallel() && (getThreads() > 1)) {
+            return new ParallelBZip2OutputStream(out, getThreads());
         }
+        return new BZip2CompressorOutputStream(out);
     }
 }
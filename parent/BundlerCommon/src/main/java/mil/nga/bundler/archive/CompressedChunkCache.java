@@ -0,0 +1,593 @@
+package mil.nga.bundler.archive;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded on-disk cache of the compressed form of frequently bundled
+ * files.  The same popular products are requested over and over by
+ * different users; rather than deflating the same bytes each time, the
+ * raw DEFLATE stream of each file is kept along with its CRC and size so
+ * that the <code>ZipArchiver</code> can splice it straight into the
+ * output archive.  A cache hit costs a single disk copy.
+ *
+ * Entries are keyed by the URI, size, and modification time of the file
+ * and the compression level, so a modified file is never served from the
+ * cache.  Each entry is a single file in the cache directory:
+ * <pre>
+ *   [8 bytes] CRC-32 of the uncompressed data
+ *   [8 bytes] uncompressed size
+ *   [n bytes] raw DEFLATE stream
+ * </pre>
+ * Entries are evicted least recently used first once the total size of
+ * the cache exceeds its limit.  The last-modified time of each entry is
+ * updated when it is used, so the LRU order survives a restart.  One
+ * instance is shared per cache directory (see <code>getInstance()</code>).
+ *
+ * @author L. Craig Carpenter
+ */
+public class CompressedChunkCache {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    final static Logger LOGGER = LoggerFactory.getLogger(
+            CompressedChunkCache.class);
+
+    /**
+     * File extension of the cached entries.
+     */
+    public static final String CHUNK_EXTENSION = ".chunk";
+
+    /**
+     * Files smaller than this are not worth caching (in bytes).
+     */
+    public static final long MIN_CACHED_SIZE = 64 * 1024;
+
+    /**
+     * Size of the header preceding the DEFLATE stream of each entry.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Buffer size used when compressing files into the cache.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The cache instances, by directory.
+     */
+    private static final Map<Path, CompressedChunkCache> instances =
+            new HashMap<Path, CompressedChunkCache>();
+
+    /**
+     * The directory holding the cached entries.
+     */
+    private final Path directory;
+
+    /**
+     * The maximum total size of the cached entries (in bytes).
+     */
+    private volatile long maxBytes;
+
+    /**
+     * Size of each cached entry by file name, in LRU order.
+     */
+    private final LinkedHashMap<String, Long> index =
+            new LinkedHashMap<String, Long>(1024, 0.75f, true);
+
+    /**
+     * The total size of the cached entries.
+     */
+    private long totalBytes = 0L;
+
+    /**
+     * Counters.
+     */
+    private final AtomicLong hits      = new AtomicLong();
+    private final AtomicLong misses    = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /**
+     * Constructor.  Loads the index of any entries already in the cache
+     * directory.
+     *
+     * @param directory The directory holding the cached entries.
+     * @param maxBytes The maximum total size of the cached entries.
+     * @throws IOException Thrown if the directory cannot be created or
+     * read.
+     */
+    protected CompressedChunkCache(Path directory, long maxBytes)
+            throws IOException {
+        this.directory = directory;
+        this.maxBytes  = maxBytes;
+        Files.createDirectories(directory);
+        load();
+    }
+
+    /**
+     * Get the cache for the input directory, creating it if required.
+     *
+     * @param directory The directory holding the cached entries.
+     * @param maxBytes The maximum total size of the cached entries.  If
+     * the cache already exists its limit is updated.
+     * @return The shared cache instance.
+     * @throws IOException Thrown if the directory cannot be created or
+     * read.
+     */
+    public static CompressedChunkCache getInstance(
+            String directory,
+            long maxBytes) throws IOException {
+        Path path = Paths.get(directory).toAbsolutePath().normalize();
+        synchronized (instances) {
+            CompressedChunkCache cache = instances.get(path);
+            if (cache == null) {
+                cache = new CompressedChunkCache(path, maxBytes);
+                instances.put(path, cache);
+            }
+            else {
+                cache.maxBytes = maxBytes;
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Get the compressed form of a file from the cache, compressing the
+     * file into the cache first if it is not already there.
+     *
+     * @param file The file to compress.
+     * @param level The DEFLATE compression level.
+     * @return The cached entry, opened for reading.  The caller must close
+     * it.
+     * @throws IOException Thrown if the file cannot be read or the entry
+     * cannot be written.
+     */
+    public Chunk get(URI file, int level) throws IOException {
+        Path   path = Paths.get(file);
+        long   size = Files.size(path);
+        String name = getName(file, size,
+                Files.getLastModifiedTime(path).toMillis(), level);
+        Chunk  chunk = open(name, size);
+        if (chunk != null) {
+            hits.incrementAndGet();
+        }
+        else {
+            misses.incrementAndGet();
+            put(path, name, level);
+            chunk = open(name, size);
+            if (chunk == null) {
+                throw new IOException("Cache entry for file [ "
+                        + file.toString()
+                        + " ] was evicted before it could be read.");
+            }
+        }
+        bytesRead.addAndGet(chunk.getCompressedSize());
+        return chunk;
+    }
+
+    /**
+     * Getter method for the cache directory.
+     * @return The directory holding the cached entries.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Getter method for the number of entries evicted.
+     * @return The eviction count.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Getter method for the number of requests served from the cache.
+     * @return The hit count.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Getter method for the fraction of requests served from the cache.
+     * @return The hit rate (0.0 - 1.0).
+     */
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return (total > 0) ? (double)hits.get() / (double)total : 0.0;
+    }
+
+    /**
+     * Getter method for the number of requests that required the file to
+     * be compressed.
+     * @return The miss count.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Getter method for the total size of the cached entries.
+     * @return The size of the cache in bytes.
+     */
+    public synchronized long getSize() {
+        return totalBytes;
+    }
+
+    /**
+     * Getter method for the number of cached entries.
+     * @return The number of entries.
+     */
+    public synchronized int getNumEntries() {
+        return index.size();
+    }
+
+    /**
+     * Open a cached entry for reading.
+     *
+     * @param name The name of the entry.
+     * @param size The expected uncompressed size.
+     * @return The opened entry, or null if it is not in the cache.
+     */
+    private Chunk open(String name, long size) throws IOException {
+        // get() (not containsKey()) so the entry becomes the most 
+        // recently used.
+        synchronized (this) {
+            if (index.get(name) == null) {
+                return null;
+            }
+        }
+        Path path = directory.resolve(name);
+        InputStream is = null;
+        try {
+            is = Files.newInputStream(path);
+            DataInputStream header = new DataInputStream(is);
+            long crc    = header.readLong();
+            long length = header.readLong();
+            if (length != size) {
+                throw new IOException("Cache entry [ "
+                        + name
+                        + " ] is corrupt.");
+            }
+            long compressed = Files.size(path) - HEADER_SIZE;
+            try {
+                Files.setLastModifiedTime(path,
+                        FileTime.fromMillis(System.currentTimeMillis()));
+            }
+            catch (IOException ioe) { }
+            return new Chunk(is, crc, length, compressed);
+        }
+        catch (NoSuchFileException nsfe) {
+            remove(name);
+        }
+        catch (IOException ioe) {
+            LOGGER.warn("Unable to read cache entry [ "
+                    + path.toString()
+                    + " ].  The entry will be discarded.  Exception "
+                    + "message => [ "
+                    + ioe.getMessage()
+                    + " ].");
+            remove(name);
+            Files.deleteIfExists(path);
+        }
+        if (is != null) {
+            is.close();
+        }
+        return null;
+    }
+
+    /**
+     * Compress a file into the cache.  The entry is written to a
+     * temporary file and moved into place so readers never see a partial
+     * entry.
+     *
+     * @param file The file to compress.
+     * @param name The name of the entry.
+     * @param level The DEFLATE compression level.
+     */
+    private void put(Path file, String name, int level) throws IOException {
+
+        Path     temp     = Files.createTempFile(directory, "chunk_", ".tmp");
+        Deflater deflater = new Deflater(level, true);
+        CRC32    crc      = new CRC32();
+        long     size     = 0L;
+
+        try {
+            try (OutputStream os = Files.newOutputStream(temp)) {
+                // Reserve the header, then write the raw DEFLATE stream.
+                os.write(new byte[HEADER_SIZE]);
+                DeflaterOutputStream dos = new DeflaterOutputStream(
+                        new BufferedOutputStream(os, BUFFER_SIZE),
+                        deflater,
+                        BUFFER_SIZE);
+                try (InputStream is = Files.newInputStream(file)) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int n;
+                    while ((n = is.read(buffer)) != -1) {
+                        crc.update(buffer, 0, n);
+                        dos.write(buffer, 0, n);
+                        size += n;
+                    }
+                }
+                dos.finish();
+                dos.flush();
+            }
+            // Fill in the header now that the CRC and size are known.
+            try (FileChannel channel = FileChannel.open(
+                    temp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putLong(crc.getValue()).putLong(size);
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+            }
+            Files.move(temp, directory.resolve(name),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            deflater.end();
+            Files.deleteIfExists(temp);
+        }
+        add(name, Files.size(directory.resolve(name)));
+    }
+
+    /**
+     * Add an entry to the index and evict the least recently used entries
+     * until the cache is within its limit.  The new entry itself is never
+     * evicted here, so an entry larger than the limit survives until the
+     * next addition.
+     *
+     * @param name The name of the entry.
+     * @param length The size of the entry file.
+     */
+    private void add(String name, long length) {
+        List<String> evicted = new ArrayList<String>();
+        synchronized (this) {
+            Long previous = index.put(name, length);
+            if (previous != null) {
+                totalBytes -= previous;
+            }
+            totalBytes += length;
+            Iterator<Map.Entry<String, Long>> iter =
+                    index.entrySet().iterator();
+            while ((totalBytes > maxBytes) && iter.hasNext()) {
+                Map.Entry<String, Long> eldest = iter.next();
+                if (eldest.getKey().equals(name)) {
+                    continue;
+                }
+                totalBytes -= eldest.getValue();
+                evicted.add(eldest.getKey());
+                iter.remove();
+            }
+        }
+        for (String key : evicted) {
+            try {
+                Files.deleteIfExists(directory.resolve(key));
+                evictions.incrementAndGet();
+            }
+            catch (IOException ioe) {
+                LOGGER.warn("Unable to delete evicted cache entry [ "
+                        + key
+                        + " ].  Exception message => [ "
+                        + ioe.getMessage()
+                        + " ].");
+            }
+        }
+    }
+
+    /**
+     * Remove an entry from the index.
+     *
+     * @param name The name of the entry.
+     */
+    private synchronized void remove(String name) {
+        Long length = index.remove(name);
+        if (length != null) {
+            totalBytes -= length;
+        }
+    }
+
+    /**
+     * Load the index from the entries already in the cache directory,
+     * oldest first.  Left-over temporary files are removed.
+     */
+    private void load() throws IOException {
+        final Map<Path, Long> modified = new HashMap<Path, Long>();
+        List<Path> entries = new ArrayList<Path>();
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(CHUNK_EXTENSION)) {
+                    entries.add(path);
+                    modified.put(path,
+                            Files.getLastModifiedTime(path).toMillis());
+                }
+                else if (name.startsWith("chunk_") && name.endsWith(".tmp")) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+        Collections.sort(entries, new Comparator<Path>() {
+            @Override
+            public int compare(Path p1, Path p2) {
+                return Long.compare(modified.get(p1), modified.get(p2));
+            }
+        });
+        for (Path path : entries) {
+            add(path.getFileName().toString(), Files.size(path));
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Loaded [ "
+                    + index.size()
+                    + " ] entries ([ "
+                    + totalBytes
+                    + " ] bytes) from chunk cache [ "
+                    + directory.toString()
+                    + " ].");
+        }
+    }
+
+    /**
+     * Construct the file name of the cache entry for the input key.
+     *
+     * @return The hex-encoded SHA-1 digest of the key plus the chunk
+     * extension.
+     */
+    private static String getName(URI file, long size, long mtime, int level) {
+        String key = file.toString() + "|" + size + "|" + mtime + "|" + level;
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+                    key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.append(CHUNK_EXTENSION).toString();
+        }
+        catch (NoSuchAlgorithmException nsae) {
+            // SHA-1 is required of every Java platform.
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    /**
+     * Convert the object to a printable String.
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Chunk cache [ ");
+        sb.append(directory.toString());
+        sb.append(" ] : Entries => [ ");
+        sb.append(getNumEntries());
+        sb.append(" ], Size => [ ");
+        sb.append(getSize());
+        sb.append(" ], Hits => [ ");
+        sb.append(getHits());
+        sb.append(" ], Misses => [ ");
+        sb.append(getMisses());
+        sb.append(" ], Hit rate => [ ");
+        sb.append(String.format("%.2f", 100.0 * getHitRate()));
+        sb.append("% ], Evictions => [ ");
+        sb.append(getEvictions());
+        sb.append(" ], Bytes read => [ ");
+        sb.append(bytesRead.get());
+        sb.append(" ]");
+        return sb.toString();
+    }
+
+    /**
+     * A cached entry opened for reading.  The stream is opened when the
+     * entry is looked up so that a concurrent eviction cannot remove it
+     * before it is copied.
+     */
+    public static class Chunk implements Closeable {
+
+        private final InputStream stream;
+        private final long        crc;
+        private final long        size;
+        private final long        compressedSize;
+
+        private Chunk(
+                InputStream stream,
+                long crc,
+                long size,
+                long compressedSize) {
+            this.stream         = stream;
+            this.crc            = crc;
+            this.size           = size;
+            this.compressedSize = compressedSize;
+        }
+
+        /**
+         * Getter method for the CRC-32 of the uncompressed data.
+         * @return The CRC.
+         */
+        public long getCrc() {
+            return crc;
+        }
+
+        /**
+         * Getter method for the size of the DEFLATE stream.
+         * @return The compressed size in bytes.
+         */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * Getter method for the uncompressed size.
+         * @return The uncompressed size in bytes.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Append the cached DEFLATE stream to the output archive as the
+         * data of the input entry.
+         *
+         * @param zaos The output archive stream.
+         * @param entry The entry (its method, CRC and sizes are set from
+         * the cached data).
+         * @throws IOException Thrown if the entry cannot be written.
+         */
+        public void writeTo(ZipArchiveOutputStream zaos, ZipArchiveEntry entry)
+                throws IOException {
+            entry.setMethod(ZipArchiveEntry.DEFLATED);
+            entry.setCrc(crc);
+            entry.setSize(size);
+            entry.setCompressedSize(compressedSize);
+            zaos.addRawArchiveEntry(entry, stream);
+        }
+
+        /**
+         * Close the underlying stream.
+         */
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+}
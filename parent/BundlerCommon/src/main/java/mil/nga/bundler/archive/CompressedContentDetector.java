@@ -0,0 +1,390 @@
+package mil.nga.bundler.archive;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class used to determine whether or not a file contains data that is
+ * already compressed (e.g. JPEG2000, JPEG, NITF with a compressed image
+ * payload, ZIP, GZip, etc.).  Running DEFLATE over that data burns CPU
+ * for almost no reduction in size so the archivers use this class to
+ * decide when an entry should simply be stored.
+ *
+ * The decision is made using the following steps:
+ *
+ * 1.  If the file extension identifies a format that is always compressed
+ *     (or always uncompressed) the answer is returned without reading the
+ *     file.
+ * 2.  Otherwise the first few KB of the file are read and compared against
+ *     a table of well-known "magic" signatures.
+ * 3.  For container formats that may or may not hold compressed data
+ *     (NITF 2.1/NSIF 1.0 and TIFF) the relevant header field is parsed
+ *     (the IC field of the first image subheader, and the Compression tag
+ *     of the first IFD respectively).
+ *
+ * @author L. Craig Carpenter
+ */
+public class CompressedContentDetector {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(
+            CompressedContentDetector.class);
+
+    /**
+     * The maximum number of bytes read from the head of a file.  This is
+     * large enough to hold the NITF file header (including typical TREs)
+     * and the first image subheader.
+     */
+    public static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    /**
+     * Extensions of formats that are always compressed.
+     */
+    private static final Set<String> COMPRESSED_EXTENSIONS =
+            new HashSet<String>(Arrays.asList(
+                    "7z", "bz2", "cab", "gif", "gz", "j2c", "j2k", "jp2",
+                    "jpeg", "jpf", "jpg", "jpx", "kmz", "lz4", "mp3", "mp4",
+                    "mpeg", "mpg", "png", "rar", "tbz", "tbz2", "tgz", "xz",
+                    "z", "zip", "zst"));
+
+    /**
+     * Extensions of formats that are never compressed (i.e. text formats).
+     */
+    private static final Set<String> UNCOMPRESSED_EXTENSIONS =
+            new HashSet<String>(Arrays.asList(
+                    "csv", "htm", "html", "json", "kml", "log", "prj",
+                    "tfw", "txt", "xml"));
+
+    /**
+     * Magic signatures of compressed formats (all at offset 0).
+     */
+    private static final byte[][] SIGNATURES = new byte[][] {
+        { (byte)0x1f, (byte)0x8b },                                 // GZip
+        { 'B', 'Z', 'h' },                                          // BZip2
+        { 'P', 'K', 0x03, 0x04 },                                   // ZIP
+        { 'P', 'K', 0x05, 0x06 },                                   // ZIP (empty)
+        { (byte)0xfd, '7', 'z', 'X', 'Z', 0x00 },                   // XZ
+        { '7', 'z', (byte)0xbc, (byte)0xaf, 0x27, 0x1c },           // 7-Zip
+        { 'R', 'a', 'r', '!' },                                     // RAR
+        { 0x28, (byte)0xb5, 0x2f, (byte)0xfd },                     // Zstandard
+        { 0x04, 0x22, 0x4d, 0x18 },                                 // LZ4 frame
+        { (byte)0xff, (byte)0xd8, (byte)0xff },                     // JPEG
+        { (byte)0xff, 0x4f, (byte)0xff, 0x51 },                     // JPEG2000 codestream
+        { 0x00, 0x00, 0x00, 0x0c, 'j', 'P', ' ', ' ',
+          0x0d, 0x0a, (byte)0x87, 0x0a },                           // JPEG2000 (JP2)
+        { (byte)0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a },      // PNG
+        { 'G', 'I', 'F', '8' }                                      // GIF
+    };
+
+    /**
+     * Offsets of the fields in the NITF 2.1/NSIF 1.0 file header.
+     */
+    private static final int NITF_HL_OFFSET   = 354;
+    private static final int NITF_HL_LENGTH   = 6;
+    private static final int NITF_NUMI_OFFSET = 360;
+
+    /**
+     * Offsets of the fields in the NITF 2.1/NSIF 1.0 image subheader
+     * (relative to the start of the subheader).
+     */
+    private static final int NITF_ICORDS_OFFSET = 371;
+    private static final int NITF_IGEOLO_LENGTH = 60;
+    private static final int NITF_ICOM_LENGTH   = 80;
+
+    /**
+     * TIFF tag identifying the compression scheme.
+     */
+    private static final int TIFF_COMPRESSION_TAG = 259;
+
+    /**
+     * Default constructor.
+     */
+    private CompressedContentDetector() { }
+
+    /**
+     * Return a singleton instance to the CompressedContentDetector object.
+     * @return The CompressedContentDetector
+     */
+    public static CompressedContentDetector getInstance() {
+        return CompressedContentDetectorHolder.getSingleton();
+    }
+
+    /**
+     * Determine whether the target file contains already-compressed data.
+     * If the file cannot be read, false is returned (i.e. the file will be
+     * compressed as usual).
+     *
+     * @param file The file to check.
+     * @return True if the file content is already compressed.
+     */
+    public boolean isCompressed(URI file) {
+        boolean compressed = false;
+        if (file != null) {
+            String extension = getExtension(file.getPath());
+            if (COMPRESSED_EXTENSIONS.contains(extension)) {
+                compressed = true;
+            }
+            else if (!UNCOMPRESSED_EXTENSIONS.contains(extension)) {
+                try (InputStream is = Files.newInputStream(Paths.get(file))) {
+                    byte[] header = new byte[MAX_HEADER_SIZE];
+                    int length = readFully(is, header);
+                    compressed = isCompressed(header, length);
+                }
+                catch (IOException ioe) {
+                    LOGGER.warn("Unable to read the header of file [ "
+                            + file.toString()
+                            + " ].  Exception message => [ "
+                            + ioe.getMessage()
+                            + " ].");
+                }
+            }
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("File [ "
+                    + file
+                    + " ] compressed => [ "
+                    + compressed
+                    + " ].");
+        }
+        return compressed;
+    }
+
+    /**
+     * Determine whether the input header bytes identify a compressed
+     * format.
+     *
+     * @param header The bytes read from the start of the file.
+     * @param length The number of valid bytes in the header.
+     * @return True if the header identifies compressed content.
+     */
+    public boolean isCompressed(byte[] header, int length) {
+        if ((header == null) || (length <= 0)) {
+            return false;
+        }
+        for (byte[] signature : SIGNATURES) {
+            if (startsWith(header, length, signature)) {
+                return true;
+            }
+        }
+        if (startsWith(header, length, "NITF02.10".getBytes()) ||
+                startsWith(header, length, "NSIF01.00".getBytes())) {
+            return isCompressedNITF(header, length);
+        }
+        if (startsWith(header, length, new byte[] { 'I', 'I', 42, 0 })) {
+            return isCompressedTIFF(header, length, true);
+        }
+        if (startsWith(header, length, new byte[] { 'M', 'M', 0, 42 })) {
+            return isCompressedTIFF(header, length, false);
+        }
+        return false;
+    }
+
+    /**
+     * Parse the IC (image compression) field of the first image subheader
+     * of a NITF 2.1/NSIF 1.0 file.  IC values NC and NM identify
+     * uncompressed image data; all other values identify compressed data.
+     *
+     * @param header The bytes read from the start of the file.
+     * @param length The number of valid bytes in the header.
+     * @return True if the first image is compressed.
+     */
+    private boolean isCompressedNITF(byte[] header, int length) {
+        int hl   = parseInt(header, length, NITF_HL_OFFSET, NITF_HL_LENGTH);
+        int numi = parseInt(header, length, NITF_NUMI_OFFSET, 3);
+        if ((hl > 0) && (numi > 0)) {
+            int pos = hl + NITF_ICORDS_OFFSET;
+            if (pos < length) {
+                if (header[pos] != ' ') {
+                    pos += NITF_IGEOLO_LENGTH;
+                }
+                pos++;
+                int nicom = parseInt(header, length, pos, 1);
+                if (nicom >= 0) {
+                    pos += 1 + (nicom * NITF_ICOM_LENGTH);
+                    if (pos + 2 <= length) {
+                        return (header[pos] != 'N');
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Look up the Compression tag in the first IFD of a TIFF file.  A
+     * value of 1 identifies uncompressed data.
+     *
+     * @param header The bytes read from the start of the file.
+     * @param length The number of valid bytes in the header.
+     * @param littleEndian True if the TIFF is little-endian ("II").
+     * @return True if the image data is compressed.
+     */
+    private boolean isCompressedTIFF(
+            byte[] header,
+            int length,
+            boolean littleEndian) {
+        long ifd = readUnsigned(header, length, 4, 4, littleEndian);
+        if ((ifd > 0) && (ifd + 2 <= length)) {
+            int entries = (int)readUnsigned(
+                    header, length, (int)ifd, 2, littleEndian);
+            for (int i=0; i<entries; i++) {
+                int entry = (int)ifd + 2 + (i * 12);
+                if (entry + 12 > length) {
+                    break;
+                }
+                int tag = (int)readUnsigned(
+                        header, length, entry, 2, littleEndian);
+                if (tag == TIFF_COMPRESSION_TAG) {
+                    long value = readUnsigned(
+                            header, length, entry + 8, 2, littleEndian);
+                    return (value != 1);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Extract the lower-case file extension from the input path.
+     *
+     * @param path The file path.
+     * @return The extension (may be empty).
+     */
+    private String getExtension(String path) {
+        String extension = "";
+        if (path != null) {
+            int slash = path.lastIndexOf('/');
+            int dot   = path.lastIndexOf('.');
+            if (dot > slash) {
+                extension = path.substring(dot + 1).toLowerCase(Locale.US);
+            }
+        }
+        return extension;
+    }
+
+    /**
+     * Parse a space-padded ASCII integer field.
+     *
+     * @param header The bytes read from the start of the file.
+     * @param length The number of valid bytes in the header.
+     * @param offset The offset of the field.
+     * @param size The size of the field.
+     * @return The parsed value, or -1 if the field is not available or
+     * not numeric.
+     */
+    private int parseInt(byte[] header, int length, int offset, int size) {
+        if ((offset < 0) || (offset + size > length)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(
+                    new String(header, offset, size, "US-ASCII").trim());
+        }
+        catch (NumberFormatException | UnsupportedEncodingException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Read an unsigned binary integer of the specified size.
+     *
+     * @param header The bytes read from the start of the file.
+     * @param length The number of valid bytes in the header.
+     * @param offset The offset of the field.
+     * @param size The size of the field (in bytes).
+     * @param littleEndian True if the value is little-endian.
+     * @return The value, or -1 if the field is not available.
+     */
+    private long readUnsigned(
+            byte[] header,
+            int length,
+            int offset,
+            int size,
+            boolean littleEndian) {
+        if ((offset < 0) || (offset + size > length)) {
+            return -1;
+        }
+        long value = 0;
+        for (int i=0; i<size; i++) {
+            int b = header[littleEndian ? offset + size - 1 - i : offset + i] & 0xff;
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    /**
+     * Determine whether the header starts with the input signature.
+     *
+     * @param header The bytes read from the start of the file.
+     * @param length The number of valid bytes in the header.
+     * @param signature The signature to match.
+     * @return True if the header starts with the signature.
+     */
+    private boolean startsWith(byte[] header, int length, byte[] signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i=0; i<signature.length; i++) {
+            if (header[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fill the buffer from the input stream (or read until end of stream).
+     *
+     * @param is The input stream.
+     * @param buffer The target buffer.
+     * @return The number of bytes read.
+     * @throws IOException Thrown if the stream cannot be read.
+     */
+    private int readFully(InputStream is, byte[] buffer) throws IOException {
+        int total = 0;
+        int n;
+        while ((total < buffer.length) &&
+                ((n = is.read(buffer, total, buffer.length - total)) != -1)) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Static inner class used to construct the singleton.  This
+     * class exploits that fact that inner classes are not loaded until they
+     * referenced therefore enforcing thread safety without the performance
+     * hit imposed by the use of the "synchronized" keyword.
+     *
+     * @author L. Craig Carpenter
+     */
+    public static class CompressedContentDetectorHolder {
+
+        /**
+         * Reference to the Singleton instance of the detector.
+         */
+        private static CompressedContentDetector detector =
+                new CompressedContentDetector();
+
+        /**
+         * Accessor method for the singleton instance of the detector.
+         * @return The singleton instance of the detector.
+         */
+        public static CompressedContentDetector getSingleton() {
+            return detector;
+        }
+    }
+}
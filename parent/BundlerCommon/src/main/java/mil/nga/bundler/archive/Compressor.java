@@ -1,22 +1,35 @@
 package mil.nga.bundler.archive;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
+import mil.nga.bundler.exceptions.ArchiveException;
+import mil.nga.bundler.interfaces.AdaptiveCompressionI;
+import mil.nga.bundler.model.ArchiveElement;
 import mil.nga.bundler.types.ArchiveType;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.utils.CountingOutputStream;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Abstract intermediate class used in conjunction with the compression-based
- * algorithms that rely on the creation of an intermediate archive before 
- * proceeding with compression.  
+ * algorithms that operate on a TAR archive.  The TAR stream is piped 
+ * directly into the compressor stream supplied by the concrete subclass so
+ * each input byte is read once and the compressed output is written once.
+ * No intermediate TAR file is written to the staging area.  
  * 
  * @author L. Craig Carpenter
  */
@@ -33,6 +46,36 @@ public abstract class Compressor extends TarArchiver {
      */
     protected static final int BUFFER_SIZE = 8192;
     
+    /**
+     * Flag indicating whether or not the TAR stream should be compressed 
+     * in parallel.
+     */
+    private boolean parallel = false;
+    
+    /**
+     * The number of worker threads to use when compressing in parallel.
+     */
+    private int threads = 1;
+    
+    /**
+     * Flag indicating whether files containing already-compressed data 
+     * should be stored (where the compressor supports it).
+     */
+    private boolean storeCompressed = false;
+    
+    /**
+     * Flag indicating whether the entries should be grouped by content 
+     * type (see <code>EntryOrderComparator</code>) rather than written in
+     * request order.
+     */
+    private boolean orderEntries = false;
+    
+    /**
+     * The compressor stream used by the current <code>bundle()</code> 
+     * operation.
+     */
+    private OutputStream compressorStream = null;
+    
     /**
      * Default no-arg constructor
      */
@@ -94,6 +137,207 @@ public abstract class Compressor extends TarArchiver {
         }
     }
     
+    /**
+     * Implementation of BundlerI interface.  It is responsible for driving 
+     * the creation of the output compressed file.  The TAR archive is 
+     * written straight into the compressor stream.  If entry ordering is 
+     * enabled the entries are written in the order defined by 
+     * <code>EntryOrderComparator</code>; the value returned by 
+     * <code>getNumBundled()</code> then refers to the leading elements of
+     * that order.
+     * 
+     * @param files List of files to Archive.
+     * @param outputFile The output file in which the input list of files 
+     * will be archived.
+     * @throws ArchiveException Thrown if there are problems creating the 
+     * output archive file.
+     * @throws IOException Thrown if there are problems accessing any of the
+     * target files.
+     */
+    @Override
+    public void bundle(List<ArchiveElement> files, URI outputFile) 
+            throws ArchiveException, IOException {
+        
+        long initialSize    = -1;
+        long compressedSize = -1;
+        long startTime      = System.currentTimeMillis();
+        ArchiveType type    = getCompressionType();
+        
+        // Build the output file name (e.g. archive.tar.gz)
+        setOutputFile(outputFile);
+        setOutputFile(getOutputFile(), type.getText());
+        
+        if ((files != null) && (files.size() > 0)) {
+            
+            LOGGER.info(type.getText() 
+                    + " : Creating compressed output file [ "
+                    + getOutputFile().toString()
+                    + " ].");
+            
+            // Ensure the target output file does not already exist.
+            Files.deleteIfExists(Paths.get(getOutputFile()));
+            
+            List<ArchiveElement> entries = orderEntries(files);
+            
+            try (OutputStream out = new BufferedOutputStream(
+                        openOutputStream(), 
+                        BUFFER_SIZE);
+                 OutputStream compressor = getCompressorOutputStream(out);
+                 CountingOutputStream tarBytes = 
+                         new CountingOutputStream(compressor);
+                 TarArchiveOutputStream taos = 
+                         new TarArchiveOutputStream(tarBytes)) {
+                compressorStream = compressor;
+                writeEntries(entries, taos);
+                taos.finish();
+                initialSize = tarBytes.getBytesWritten();
+            }
+            finally {
+                compressorStream = null;
+            }
+            
+            if (Files.exists(Paths.get(getOutputFile()))) {
+                compressedSize = Files.size(Paths.get(getOutputFile()));
+            }
+            else {
+                LOGGER.error(type.getText()
+                        + " : Unknown error occurred during compression.  "
+                        + "Target output file [ "
+                        + getOutputFile().toString()
+                        + " ] does not exist.");
+            }
+        }
+        else {
+            LOGGER.warn("There are no input files to process.  Output "
+                    + "archive not created.");
+        }
+        
+        // Output the amount of compression obtained.
+        if ((initialSize > 0) && (compressedSize > 0)) {
+            double percentCompressed = 
+                    ((double)initialSize - (double)compressedSize) /
+                    (double)initialSize;
+            DecimalFormat df = new DecimalFormat("##.##%");
+            LOGGER.info(type.getText()
+                    + " : Output compressed file created [ "
+                    + getOutputFile().toString()
+                    + " ].  Compression percentage obtained [ "
+                    + df.format(percentCompressed)
+                    + " ].");
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(type.getText()
+                        + " : Output compressed file [ "
+                        + getOutputFile().toString()
+                        + " ] created in [ "
+                        + (System.currentTimeMillis() - startTime)
+                        + " ] ms.");
+            }
+        }
+    }
+    
+    /**
+     * If the compressor stream is able to adjust its compression effort, 
+     * tell it whether the next entry contains already-compressed data.  
+     * Not all compressors support this (e.g. BZip2 has no "stored" mode).
+     * 
+     * @param element The element about to be written.
+     */
+    @Override
+    protected void prepareEntry(ArchiveElement element) {
+        if (isStoreCompressed() && 
+                (compressorStream instanceof AdaptiveCompressionI)) {
+            ((AdaptiveCompressionI)compressorStream).setCompressible(
+                    !CompressedContentDetector.getInstance().isCompressed(
+                            element.getURI()));
+        }
+    }
+    
+    /**
+     * Get the input files in the order they will be written.  If entry 
+     * ordering is disabled the input list is returned unchanged, 
+     * otherwise a sorted copy is returned.  The sort is stable so entries
+     * that compare equal stay in request order.
+     * 
+     * @param files List of files to Archive.
+     * @return The files in the order they will be written.
+     */
+    protected List<ArchiveElement> orderEntries(List<ArchiveElement> files) {
+        if ((!isOrderEntries()) || (files == null) || (files.size() < 2)) {
+            return files;
+        }
+        List<ArchiveElement> ordered = new ArrayList<ArchiveElement>(files);
+        Collections.sort(ordered, new EntryOrderComparator());
+        return ordered;
+    }
+    
+    /**
+     * Determine whether already-compressed files will be stored.
+     * @return True if already-compressed files will be stored.
+     */
+    public boolean isStoreCompressed() {
+        return storeCompressed;
+    }
+    
+    /**
+     * Setter method for the flag controlling whether already-compressed 
+     * files are stored (where the compressor supports it).
+     * @param value True if already-compressed files should be stored.
+     */
+    public void setStoreCompressed(boolean value) {
+        storeCompressed = value;
+    }
+    
+    /**
+     * Determine whether the entries will be grouped by content type.
+     * @return True if entry ordering is enabled.
+     */
+    public boolean isOrderEntries() {
+        return orderEntries;
+    }
+    
+    /**
+     * Setter method for the flag controlling whether the entries are 
+     * grouped by extension, directory, and size rather than written in 
+     * request order.
+     * @param value True if the entries should be ordered.
+     */
+    public void setOrderEntries(boolean value) {
+        orderEntries = value;
+    }
+    
+    /**
+     * Getter method for the number of worker threads used in parallel mode.
+     * @return The number of worker threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Determine whether the TAR stream will be compressed in parallel.
+     * @return True if parallel mode is enabled.
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+    
+    /**
+     * Setter method for the parallel compression flag.
+     * @param value True if the TAR stream should be compressed in parallel.
+     */
+    public void setParallel(boolean value) {
+        parallel = value;
+    }
+    
+    /**
+     * Setter method for the number of worker threads used in parallel mode.
+     * @param value The number of worker threads (values less than 1 are 
+     * set to 1).
+     */
+    public void setThreads(int value) {
+        threads = (value < 1) ? 1 : value;
+    }
+    
     /**
      * Compress the data contained in the input file using the specified 
      * compression algorithms storing the compressed data in the file
@@ -104,4 +348,25 @@ public abstract class Compressor extends TarArchiver {
      */
     public abstract void compress(URI inputFile, URI outputFile) throws 
             IOException;
+    
+    /**
+     * Subclasses must identify the compression algorithm they implement.
+     * The text of the type is used as the final output file extension.
+     * 
+     * @return The compression type.
+     */
+    public abstract ArchiveType getCompressionType();
+    
+    /**
+     * Subclasses must wrap the input stream in the type-appropriate 
+     * compressor stream.  Closing the returned stream must finish the 
+     * compressed output and close the wrapped stream.
+     * 
+     * @param out The stream to which the compressed data will be written.
+     * @return The compressor output stream.
+     * @throws IOException Thrown if the compressor stream cannot be 
+     * constructed.
+     */
+    public abstract OutputStream getCompressorOutputStream(OutputStream out) 
+            throws IOException;
 }
@@ -3,14 +3,21 @@ package mil.nga.bundler.archive;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.cpio.CpioArchiveEntry;
 import org.apache.commons.compress.archivers.cpio.CpioArchiveOutputStream;
+import org.apache.commons.compress.archivers.cpio.CpioConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,9 +45,29 @@ public class CpioArchiver extends Archiver implements BundlerI {
     final private ArchiveType type = ArchiveType.CPIO;
     
     /**
-     * Default constructor
+     * Width of each numeric field in a "new" ASCII CPIO header.
      */
-    public CpioArchiver( ) { }
+    private static final int FIELD_WIDTH = 8;
+    
+    /**
+     * Default constructor.  The zero-copy setting is read from the bundler
+     * properties file.
+     */
+    public CpioArchiver( ) { 
+        this(ArchiveSettings.getInstance());
+    }
+    
+    /**
+     * Alternate constructor allowing clients to supply the archive 
+     * settings.
+     * 
+     * @param settings The archive settings to apply.
+     */
+    public CpioArchiver(ArchiveSettings settings) {
+        if (settings != null) {
+            setZeroCopy(settings.isZeroCopy());
+        }
+    }
     
     /**
      * Required concrete method used to construct the type-appropriate 
@@ -96,34 +123,193 @@ public class CpioArchiver extends Archiver implements BundlerI {
             // Ensure the target output file does not already exist.
             Files.deleteIfExists(Paths.get(getOutputFile()));
             
-            // Construct the output stream to the target archive file.
-            try (CpioArchiveOutputStream cpioaos = 
-                    new CpioArchiveOutputStream(
-                            new BufferedOutputStream(
-                                    Files.newOutputStream(
-                                            Paths.get(getOutputFile()), 
-                                            StandardOpenOption.CREATE, 
-                                            StandardOpenOption.WRITE)))) {
-                for (ArchiveElement element : files) {
-                    cpioaos.putArchiveEntry(
-                            getArchiveEntry(
-                                    element.getURI(),
-                                    element.getEntryPath()));
-                    copyOneFile(cpioaos, element.getURI());
-                    notify(element);
-                }
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Output archive [ "
-                            + getOutputFile()
-                            + " ] created in [ "
-                            + (System.currentTimeMillis() - startTime)
-                            + " ] ms.");
+            List<CpioArchiveEntry> entries = getZeroCopyEntries(files);
+            if (entries != null) {
+                writeEntries(files, entries);
+            }
+            else {
+                // Construct the output stream to the target archive file.
+                try (CpioArchiveOutputStream cpioaos = 
+                        new CpioArchiveOutputStream(
+                                new BufferedOutputStream(
+                                        openOutputStream()))) {
+                    for (ArchiveElement element : files) {
+                        if (isVolumeFull(cpioaos)) {
+                            break;
+                        }
+                        cpioaos.putArchiveEntry(
+                                getArchiveEntry(
+                                        element.getURI(),
+                                        element.getEntryPath()));
+                        copyOneFile(cpioaos, element.getURI());
+                        notify(element);
+                    }
                 }
             }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Output archive [ "
+                        + getOutputFile()
+                        + " ] created in [ "
+                        + (System.currentTimeMillis() - startTime)
+                        + " ] ms.");
+            }
         }
         else {
             LOGGER.warn("There are no input files to process.  Output "
                     + "archive not created.");
         }
     }
+    
+    /**
+     * Build the CPIO entries for the input files if the archive can be 
+     * written using the zero-copy path.  The zero-copy path is used only 
+     * when it is enabled, the output file is on the local file system, 
+     * and every entry name is a unique US-ASCII string.  Anything else is 
+     * left to the <code>CpioArchiveOutputStream</code>, which will report 
+     * the problem.
+     * 
+     * @param files List of files to Archive.
+     * @return The entries to write, or null if the stream-based path must 
+     * be used.
+     * @throws IOException Thrown if the input files cannot be accessed.
+     */
+    private List<CpioArchiveEntry> getZeroCopyEntries(List<ArchiveElement> files) 
+            throws IOException {
+        if (!isZeroCopy() || !isLocal(getOutputFile())) {
+            return null;
+        }
+        CharsetEncoder encoder = StandardCharsets.US_ASCII.newEncoder();
+        Set<String> names = new HashSet<String>();
+        List<CpioArchiveEntry> entries = new ArrayList<CpioArchiveEntry>(files.size());
+        for (ArchiveElement element : files) {
+            CpioArchiveEntry entry = (CpioArchiveEntry)getArchiveEntry(
+                    element.getURI(), 
+                    element.getEntryPath());
+            if ((entry.getFormat() != CpioConstants.FORMAT_NEW) || 
+                    (!encoder.canEncode(entry.getName())) ||
+                    (!names.add(entry.getName()))) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Entry [ "
+                            + entry.getName()
+                            + " ] cannot be written directly.  Zero-copy "
+                            + "transfer disabled.");
+                }
+                return null;
+            }
+            if (entry.getTime() == -1) {
+                entry.setTime(System.currentTimeMillis() / 1000);
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+    
+    /**
+     * Write the input files directly to a channel opened on the output 
+     * file.  The headers, padding and trailer written are identical to 
+     * those produced by the default <code>CpioArchiveOutputStream</code> 
+     * (i.e. "new" ASCII format, 512-byte blocks) while the file contents 
+     * are moved with <code>transferOneFile()</code>.
+     * 
+     * @param files List of files to Archive.
+     * @param entries The pre-built CPIO entries (one per file).
+     * @throws IOException Thrown if there are problems writing to the 
+     * output file, or if an input file cannot be read in full.  The 
+     * archive is incomplete and the failed file is not reported as 
+     * archived.
+     */
+    private void writeEntries(
+            List<ArchiveElement> files, 
+            List<CpioArchiveEntry> entries) throws IOException {
+        long nextInode = 1;
+        try (FileChannel out = openOutputChannel()) {
+            for (int i=0; i<files.size(); i++) {
+                if (isVolumeFull()) {
+                    break;
+                }
+                CpioArchiveEntry entry = entries.get(i);
+                long inode = entry.getInode();
+                long devMin = entry.getDeviceMin();
+                // Assign artificial inode numbers in the same manner as 
+                // CpioArchiveOutputStream so hard links are not implied.
+                if ((inode == 0) && (devMin == 0)) {
+                    inode = nextInode & 0xFFFFFFFFL;
+                    devMin = (nextInode++ >> 32) & 0xFFFFFFFFL;
+                }
+                else {
+                    nextInode = Math.max(
+                            nextInode, inode + 0x100000000L * devMin) + 1;
+                }
+                writeHeader(out, entry, inode, devMin);
+                transferOneFile(out, files.get(i).getURI(), entry.getSize());
+                pad(out, entry.getDataPadCount());
+                notify(files.get(i));
+            }
+            CpioArchiveEntry trailer = new CpioArchiveEntry(
+                    CpioConstants.FORMAT_NEW);
+            trailer.setName(CpioConstants.CPIO_TRAILER);
+            trailer.setNumberOfLinks(1);
+            writeHeader(out, trailer, 0, 0);
+            pad(out, getPadding(
+                    out.position(), CpioConstants.BLOCK_SIZE));
+        }
+    }
+    
+    /**
+     * Write a "new" ASCII format CPIO header (including the entry name and
+     * header padding) for the input entry.
+     * 
+     * @param out The target output channel.
+     * @param entry The entry to describe.
+     * @param inode The inode number to record.
+     * @param devMin The minor device number to record.
+     * @throws IOException Thrown if the header cannot be written.
+     */
+    private void writeHeader(
+            FileChannel out, 
+            CpioArchiveEntry entry, 
+            long inode, 
+            long devMin) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(CpioConstants.MAGIC_NEW);
+        appendField(sb, inode);
+        appendField(sb, entry.getMode());
+        appendField(sb, entry.getUID());
+        appendField(sb, entry.getGID());
+        appendField(sb, entry.getNumberOfLinks());
+        appendField(sb, entry.getTime());
+        appendField(sb, entry.getSize());
+        appendField(sb, entry.getDeviceMaj());
+        appendField(sb, devMin);
+        appendField(sb, entry.getRemoteDeviceMaj());
+        appendField(sb, entry.getRemoteDeviceMin());
+        appendField(sb, entry.getName().length() + 1);
+        appendField(sb, entry.getChksum());
+        sb.append(entry.getName());
+        sb.append('\0');
+        writeFully(out, ByteBuffer.wrap(
+                sb.toString().getBytes(StandardCharsets.US_ASCII)));
+        pad(out, entry.getHeaderPadCount());
+    }
+    
+    /**
+     * Append the input value as a zero-padded 8 character hexadecimal 
+     * field.  Values too large for the field are truncated to the low-order
+     * digits (matching <code>CpioArchiveOutputStream</code>).
+     * 
+     * @param sb The header being constructed.
+     * @param value The value to append.
+     */
+    private static void appendField(StringBuilder sb, long value) {
+        String hex = Long.toHexString(value);
+        if (hex.length() <= FIELD_WIDTH) {
+            for (int i=hex.length(); i<FIELD_WIDTH; i++) {
+                sb.append('0');
+            }
+            sb.append(hex);
+        }
+        else {
+            sb.append(hex.substring(hex.length() - FIELD_WIDTH));
+        }
+    }
 }
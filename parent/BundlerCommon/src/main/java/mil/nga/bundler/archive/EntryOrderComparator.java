@@ -0,0 +1,98 @@
+package mil.nga.bundler.archive;
+
+import java.util.Comparator;
+import java.util.Locale;
+
+import mil.nga.bundler.model.ArchiveElement;
+
+/**
+ * Comparator used to order the entries written to a compressed TAR stream
+ * so that similar content sits next to each other.  Entries are grouped by
+ * extension, then by directory, then by size (smallest first).  The
+ * compressor can only match data within its window (32 KB for GZip, 900 KB
+ * for BZip2) so files of the same type that are far apart in request order
+ * gain nothing from each other.
+ *
+ * The ordering depends only on the entry path and size, so any list sorted
+ * with it (using a stable sort) ends up in the same order.  The entry paths
+ * themselves are not changed.
+ *
+ * @author L. Craig Carpenter
+ */
+public class EntryOrderComparator implements Comparator<ArchiveElement> {
+
+    /**
+     * Compare two archive elements.
+     *
+     * @param e1 The first element.
+     * @param e2 The second element.
+     * @return Negative, zero, or positive as the first element is ordered
+     * before, with, or after the second.
+     */
+    @Override
+    public int compare(ArchiveElement e1, ArchiveElement e2) {
+        return compare(
+                e1.getEntryPath(), e1.getSize(),
+                e2.getEntryPath(), e2.getSize());
+    }
+
+    /**
+     * Compare two entries by extension, then directory, then size.  This
+     * is exposed so that clients holding other representations of the same
+     * entries (e.g. the persisted file entries) can order them consistently
+     * with the archiver.
+     *
+     * @param path1 The entry path of the first entry.
+     * @param size1 The size of the first entry.
+     * @param path2 The entry path of the second entry.
+     * @param size2 The size of the second entry.
+     * @return Negative, zero, or positive as the first entry is ordered
+     * before, with, or after the second.
+     */
+    public static int compare(
+            String path1, long size1,
+            String path2, long size2) {
+        int result = getExtension(path1).compareTo(getExtension(path2));
+        if (result == 0) {
+            result = getDirectory(path1).compareTo(getDirectory(path2));
+            if (result == 0) {
+                result = Long.compare(size1, size2);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Extract the lower-case extension (without the "." separator) from
+     * the file name portion of an entry path.
+     *
+     * @param path The entry path.
+     * @return The extension, or an empty string if there is none.
+     */
+    private static String getExtension(String path) {
+        if (path == null) {
+            return "";
+        }
+        int slashPos = path.lastIndexOf('/');
+        int dotPos   = path.lastIndexOf('.');
+        if ((dotPos <= slashPos + 1) || (dotPos == path.length() - 1)) {
+            return "";
+        }
+        return path.substring(dotPos + 1).toLowerCase(Locale.US);
+    }
+
+    /**
+     * Extract the directory portion of an entry path.
+     *
+     * @param path The entry path.
+     * @return The directory, or an empty string if the entry is at the top
+     * level.
+     */
+    private static String getDirectory(String path) {
+        if (path == null) {
+            return "";
+        }
+        int slashPos = path.lastIndexOf('/');
+        return (slashPos < 0) ? "" : path.substring(0, slashPos);
+    }
+}
@@ -0,0 +1,180 @@
+package mil.nga.bundler.archive;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import mil.nga.bundler.archive.streams.ParallelLZ4OutputStream;
+import mil.nga.bundler.interfaces.BundlerI;
+import mil.nga.bundler.types.ArchiveType;
+
+import org.apache.commons.compress.compressors.lz4.BlockLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream.BlockSize;
+import org.apache.commons.compress.compressors.lz77support.Parameters;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concrete implementation of the Bundler class that will handle creation
+ * of an output LZ4 compressed TAR archive (i.e. .tar.lz4).  The TAR
+ * stream is piped directly through the LZ4 frame compressor so no
+ * intermediate TAR file is created.
+ *
+ * LZ4 trades compression ratio for speed.  It is a good choice for large
+ * jobs where the time spent compressing matters more than the size of
+ * the output.
+ *
+ * @author L. Craig Carpenter
+ */
+public class LZ4Archiver extends Compressor implements BundlerI {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    final static Logger LOGGER = LoggerFactory.getLogger(LZ4Archiver.class);
+
+    /**
+     * Compression level tuned for speed (the default).
+     */
+    public static final int FAST_LEVEL = 1;
+
+    /**
+     * Compression level tuned for compression ratio.
+     */
+    public static final int HIGH_LEVEL = 9;
+
+    /**
+     * The archive type handled by this class
+     */
+    private ArchiveType _type = ArchiveType.LZ4;
+
+    /**
+     * The LZ4 compression level.
+     */
+    private int level = FAST_LEVEL;
+
+    /**
+     * Default constructor.  The compression settings are read from the
+     * bundler properties file.
+     */
+    public LZ4Archiver() {
+        this(ArchiveSettings.getInstance());
+    }
+
+    /**
+     * Alternate constructor allowing clients to supply the archive
+     * settings.
+     *
+     * @param settings The archive settings to apply.
+     */
+    public LZ4Archiver(ArchiveSettings settings) {
+        if (settings != null) {
+            setParallel(settings.isParallelLZ4());
+            setThreads(settings.getArchiveThreads());
+            setLevel(settings.getLZ4Level());
+            setStoreCompressed(settings.isStoreCompressedInputs());
+            setOrderEntries(settings.isOrderEntries());
+            setPrefetchDepth(settings.getPrefetchDepth());
+            setPrefetchBufferSize(settings.getPrefetchBufferSize());
+        }
+    }
+
+    /**
+     * Compress the data contained in the input file using the LZ4
+     * compression algorithm storing the compressed data in the file
+     * specified by the outputFile parameter.
+     *
+     * @param inputFile The input TAR archive.
+     * @param outputFile The compressed output file.
+     */
+    @Override
+    public void compress(URI inputFile, URI outputFile)
+            throws IOException {
+
+        try (BufferedInputStream bIn = new BufferedInputStream(
+                    Files.newInputStream(Paths.get(inputFile)));
+             OutputStream lz4Out = getCompressorOutputStream(
+                    Files.newOutputStream(
+                            Paths.get(outputFile),
+                            StandardOpenOption.CREATE,
+                            StandardOpenOption.WRITE))) {
+            // Pipe the input stream to the output stream
+            compress(bIn, lz4Out);
+        }
+    }
+
+    /**
+     * Getter method for the compression type.
+     * @return The compression type implemented by this class.
+     */
+    @Override
+    public ArchiveType getCompressionType() {
+        return _type;
+    }
+
+    /**
+     * Getter method for the LZ4 compression level.
+     * @return The compression level.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Setter method for the LZ4 compression level.
+     * @param value The compression level (values outside the range 1 - 9
+     * are clamped).
+     */
+    public void setLevel(int value) {
+        level = Math.max(FAST_LEVEL, Math.min(HIGH_LEVEL, value));
+    }
+
+    /**
+     * Construct the LZ4 frame parameters matching the compression level.
+     * Frames use the largest (4 MB) block size and carry a content
+     * checksum.
+     *
+     * @return The LZ4 frame parameters.
+     */
+    protected FramedLZ4CompressorOutputStream.Parameters getParameters() {
+        Parameters.Builder builder =
+                BlockLZ4CompressorOutputStream.createParameterBuilder();
+        if (getLevel() <= FAST_LEVEL) {
+            builder.tunedForSpeed();
+        }
+        else if (getLevel() >= HIGH_LEVEL) {
+            builder.tunedForCompressionRatio();
+        }
+        return new FramedLZ4CompressorOutputStream.Parameters(
+                BlockSize.M4, builder.build());
+    }
+
+    /**
+     * Wrap the input stream in an LZ4 frame compressor stream.  If
+     * parallel mode is enabled 4 MB chunks of the TAR stream are
+     * compressed concurrently into independent, concatenated LZ4 frames.
+     *
+     * @param out The stream to which the compressed data will be written.
+     * @return The compressor output stream.
+     * @throws IOException Thrown if the compressor stream cannot be
+     * constructed.
+     */
+    @Override
+    public OutputStream getCompressorOutputStream(OutputStream out)
+            throws IOException {
+        if (isParallel() && (getThreads() > 1)) {
+            return new ParallelLZ4OutputStream(
+                    out,
+                    getThreads(),
+                    ParallelLZ4OutputStream.DEFAULT_BLOCK_SIZE,
+                    getParameters());
+        }
+        return new FramedLZ4CompressorOutputStream(out, getParameters());
+    }
+}
@@ -0,0 +1,475 @@
+package mil.nga.bundler.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.bundler.model.ArchiveElement;
+
+/**
+ * Bounded read-ahead stage used by the archivers to overlap reading the
+ * input files with writing (and compressing) the output archive.  A small
+ * pool of reader threads reads the upcoming input files into pooled
+ * fixed-size buffers while the archiver is busy with the current entry,
+ * hiding the first-byte latency of S3 and NFS backed inputs.
+ * <p>
+ * The archiver calls <code>next()</code> once for each input element, in
+ * list order, and reads the entry contents from the returned stream.  The
+ * total amount of buffered data is capped by the memory budget supplied
+ * on construction.  A few buffers are always held back for the element
+ * currently being consumed so the readers working ahead can never starve
+ * it.
+ *
+ * @author L. Craig Carpenter
+ */
+public class Prefetcher implements Closeable {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    final static Logger LOGGER = LoggerFactory.getLogger(Prefetcher.class);
+
+    /**
+     * Default size of each pooled read buffer (256 KB).
+     */
+    public static final int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Number of buffers reserved for the element currently being consumed.
+     */
+    private static final int HEAD_RESERVE = 2;
+
+    /**
+     * The elements to read, in the order they will be consumed.
+     */
+    private final List<ArchiveElement> files;
+
+    /**
+     * Buffered data for each of the input elements.
+     */
+    private final Slot[] slots;
+
+    /**
+     * Reader threads.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Buffers available for re-use.
+     */
+    private final Deque<byte[]> pool = new ArrayDeque<byte[]>();
+
+    /**
+     * Size of each buffer.
+     */
+    private final int chunkSize;
+
+    /**
+     * Number of buffers that may still be handed out to the readers.
+     */
+    private int available;
+
+    /**
+     * Index of the element currently being consumed.
+     */
+    private int head = 0;
+
+    /**
+     * Index of the element that will be returned by the next call to
+     * <code>next()</code>.
+     */
+    private int next = 0;
+
+    /**
+     * Set once the prefetcher has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Constructor.  Reading starts immediately.
+     *
+     * @param files The elements that will be consumed (in order).
+     * @param depth The number of files that may be read concurrently.
+     * @param budget The maximum number of bytes to buffer.
+     */
+    public Prefetcher(List<ArchiveElement> files, int depth, long budget) {
+        this(files, depth, budget, CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor allowing the buffer size to be supplied.  Added to
+     * support jUnit testing.
+     *
+     * @param files The elements that will be consumed (in order).
+     * @param depth The number of files that may be read concurrently.
+     * @param budget The maximum number of bytes to buffer.
+     * @param chunkSize The size of each pooled buffer.
+     */
+    Prefetcher(
+            List<ArchiveElement> files,
+            int depth,
+            long budget,
+            int chunkSize) {
+
+        this.files     = new ArrayList<ArchiveElement>(files);
+        this.chunkSize = chunkSize;
+        this.available = (int)Math.max(
+                HEAD_RESERVE + 1,
+                Math.min(Integer.MAX_VALUE, budget / chunkSize));
+
+        slots = new Slot[this.files.size()];
+        for (int i=0; i<slots.length; i++) {
+            slots[i] = new Slot();
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Prefetching [ "
+                    + slots.length
+                    + " ] files using [ "
+                    + depth
+                    + " ] reader threads and [ "
+                    + available
+                    + " ] buffers of [ "
+                    + chunkSize
+                    + " ] bytes.");
+        }
+
+        executor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(depth, Math.max(1, slots.length))));
+        for (int i=0; i<slots.length; i++) {
+            executor.submit(new ReadTask(i));
+        }
+    }
+
+    /**
+     * Obtain the stream containing the contents of the next input element.
+     * Any stream previously returned is abandoned (i.e. its unread data is
+     * discarded).  The caller should close the returned stream.
+     *
+     * @return Stream containing the contents of the next element.
+     * @throws IOException Thrown if all of the elements have already been
+     * returned or the prefetcher has been closed.
+     */
+    public synchronized InputStream next() throws IOException {
+        if (closed) {
+            throw new IOException("Prefetcher has been closed.");
+        }
+        if (next >= slots.length) {
+            throw new IOException("All [ "
+                    + slots.length
+                    + " ] prefetched files have already been consumed.");
+        }
+        if (next > 0) {
+            abandon(next - 1);
+        }
+        head = next;
+        notifyAll();
+        return new SlotInputStream(next++);
+    }
+
+    /**
+     * Stop the reader threads and release all buffered data.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            for (int i=0; i<slots.length; i++) {
+                abandon(i);
+            }
+            notifyAll();
+        }
+        executor.shutdownNow();
+    }
+
+    /**
+     * Discard the buffered data of the element at the input index and stop
+     * any further reading of it.  Must be called while holding the lock.
+     *
+     * @param index The element index.
+     */
+    private void abandon(int index) {
+        Slot slot = slots[index];
+        slot.abandoned = true;
+        Chunk chunk;
+        while ((chunk = slot.chunks.poll()) != null) {
+            pool.push(chunk.buffer);
+            available++;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Obtain a buffer for the reader of the element at the input index,
+     * waiting until the memory budget allows it.  Readers working ahead of
+     * the element being consumed may not use the reserved buffers.
+     *
+     * @param index The element index.
+     * @return The buffer, or null if the element no longer needs reading.
+     * @throws InterruptedException Thrown if the reader is interrupted.
+     */
+    private synchronized byte[] acquire(int index)
+            throws InterruptedException {
+        while ((!closed) && (!slots[index].abandoned) &&
+                (available <= ((index <= head) ? 0 : HEAD_RESERVE))) {
+            wait();
+        }
+        if (closed || slots[index].abandoned) {
+            return null;
+        }
+        available--;
+        byte[] buffer = pool.poll();
+        return (buffer != null) ? buffer : new byte[chunkSize];
+    }
+
+    /**
+     * Return a buffer to the pool.
+     *
+     * @param buffer The buffer to return.
+     */
+    private synchronized void release(byte[] buffer) {
+        pool.push(buffer);
+        available++;
+        notifyAll();
+    }
+
+    /**
+     * Hand a filled buffer over to the consumer of the element at the
+     * input index.
+     *
+     * @param index The element index.
+     * @param buffer The buffer.
+     * @param length The number of valid bytes in the buffer.
+     * @return False if the element no longer needs reading (in which case
+     * the buffer was returned to the pool).
+     */
+    private synchronized boolean add(int index, byte[] buffer, int length) {
+        Slot slot = slots[index];
+        if (closed || slot.abandoned) {
+            release(buffer);
+            return false;
+        }
+        slot.chunks.add(new Chunk(buffer, length));
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Record that reading of the element at the input index has finished.
+     *
+     * @param index The element index.
+     * @param error The exception that stopped the read (null on success).
+     */
+    private synchronized void finish(int index, IOException error) {
+        slots[index].done  = true;
+        slots[index].error = error;
+        notifyAll();
+    }
+
+    /**
+     * Wait for the next buffer of the element at the input index.
+     *
+     * @param index The element index.
+     * @return The next buffer, or null at the end of the element.
+     * @throws IOException Thrown if the element could not be read.
+     */
+    private synchronized Chunk take(int index) throws IOException {
+        Slot slot = slots[index];
+        try {
+            while ((slot.chunks.isEmpty()) && (!slot.done) &&
+                    (!slot.abandoned)) {
+                wait();
+            }
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting "
+                    + "for file [ "
+                    + files.get(index).getURI().toString()
+                    + " ].");
+        }
+        if (slot.abandoned) {
+            throw new IOException("Prefetched data for file [ "
+                    + files.get(index).getURI().toString()
+                    + " ] is no longer available.");
+        }
+        Chunk chunk = slot.chunks.poll();
+        if ((chunk == null) && (slot.error != null)) {
+            throw slot.error;
+        }
+        return chunk;
+    }
+
+    /**
+     * Read from the input stream until the buffer is full or the end of
+     * the stream is reached.
+     *
+     * @param in The input stream.
+     * @param buffer The target buffer.
+     * @return The number of bytes read.
+     * @throws IOException Thrown if the stream cannot be read.
+     */
+    private static int readFully(InputStream in, byte[] buffer)
+            throws IOException {
+        int total = 0;
+        int n;
+        while ((total < buffer.length) &&
+                ((n = in.read(buffer, total, buffer.length - total)) != -1)) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * A buffer containing part of an input file.
+     */
+    private static class Chunk {
+
+        final byte[] buffer;
+        final int    length;
+
+        Chunk(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The buffered state of a single input element.
+     */
+    private static class Slot {
+
+        final Deque<Chunk> chunks    = new ArrayDeque<Chunk>();
+        boolean            done      = false;
+        boolean            abandoned = false;
+        IOException        error     = null;
+    }
+
+    /**
+     * Task reading a single input file into pooled buffers.
+     */
+    private class ReadTask implements Runnable {
+
+        private final int index;
+
+        ReadTask(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void run() {
+            IOException error = null;
+            try (InputStream in = Files.newInputStream(
+                    Paths.get(files.get(index).getURI()))) {
+                byte[] buffer;
+                while ((buffer = acquire(index)) != null) {
+                    int n = readFully(in, buffer);
+                    if (n == 0) {
+                        release(buffer);
+                        break;
+                    }
+                    if ((!add(index, buffer, n)) || (n < buffer.length)) {
+                        break;
+                    }
+                }
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            catch (IOException ioe) {
+                error = ioe;
+            }
+            catch (RuntimeException re) {
+                error = new IOException(re);
+            }
+            finish(index, error);
+        }
+    }
+
+    /**
+     * Stream returning the buffered contents of a single input element.
+     * Each buffer is returned to the pool as soon as it has been read.
+     */
+    private class SlotInputStream extends InputStream {
+
+        private final int index;
+        private Chunk     current  = null;
+        private int       position = 0;
+        private boolean   eof      = false;
+
+        SlotInputStream(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Ensure there is unread data in the current buffer.
+         *
+         * @return False at the end of the element.
+         */
+        private boolean fill() throws IOException {
+            if (eof) {
+                return false;
+            }
+            if ((current != null) && (position < current.length)) {
+                return true;
+            }
+            if (current != null) {
+                release(current.buffer);
+                current = null;
+            }
+            current  = take(index);
+            position = 0;
+            if (current == null) {
+                eof = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return current.buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current.buffer, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            if (current != null) {
+                release(current.buffer);
+                current = null;
+            }
+            eof = true;
+            synchronized (Prefetcher.this) {
+                abandon(index);
+            }
+        }
+    }
+}
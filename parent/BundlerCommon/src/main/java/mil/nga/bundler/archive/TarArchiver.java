@@ -3,10 +3,12 @@ package mil.nga.bundler.archive;
 import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
 
 import mil.nga.bundler.types.ArchiveType;
@@ -17,6 +19,9 @@ import mil.nga.bundler.model.ArchiveElement;
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.apache.commons.compress.archivers.zip.ZipEncoding;
+import org.apache.commons.compress.archivers.zip.ZipEncodingHelper;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,9 +46,28 @@ public class TarArchiver
     final private ArchiveType type = ArchiveType.TAR;
     
     /**
-     * Default constructor
+     * Default constructor.  The zero-copy setting is read from the bundler
+     * properties file.
      */
-    public TarArchiver( ) { }
+    public TarArchiver( ) { 
+        this(ArchiveSettings.getInstance());
+    }
+    
+    /**
+     * Alternate constructor allowing clients to supply the archive 
+     * settings.
+     * 
+     * @param settings The archive settings to apply.
+     */
+    public TarArchiver(ArchiveSettings settings) {
+        if (settings != null) {
+            setZeroCopy(settings.isZeroCopy());
+            setPrefetchDepth(settings.getPrefetchDepth());
+            setPrefetchBufferSize(settings.getPrefetchBufferSize());
+            setParallelAssembly(settings.isParallelAssembly());
+            setAssemblyThreads(settings.getAssemblyThreads());
+        }
+    }
     
     /**
      * Required concrete method used to construct the type-appropriate 
@@ -98,34 +122,205 @@ public class TarArchiver
             // Ensure the target output file does not already exist.
             Files.deleteIfExists(Paths.get(getOutputFile()));
             
-            // Construct the output stream to the target archive file.
-            try (TarArchiveOutputStream taos = 
-                    new TarArchiveOutputStream(
-                            new BufferedOutputStream(
-                                    Files.newOutputStream(
-                                            Paths.get(getOutputFile()), 
-                                            StandardOpenOption.CREATE, 
-                                            StandardOpenOption.WRITE)))) {
-                for (ArchiveElement element : files) {
-                    taos.putArchiveEntry(
-                            getArchiveEntry(
-                                    element.getURI(),
-                                    element.getEntryPath()));
-                    copyOneFile(taos, element.getURI());
-                    notify(element);
-                }
-                if (LOGGER.isDebugEnabled()) {
-                    LOGGER.debug("Output archive [ "
-                            + getOutputFile()
-                            + " ] created in [ "
-                            + (System.currentTimeMillis() - startTime)
-                            + " ] ms.");
+            List<TarArchiveEntry> entries = getZeroCopyEntries(files);
+            if ((entries != null) && isParallelAssembly() && (files.size() > 1)) {
+                assembleEntries(files, entries);
+            }
+            else if (entries != null) {
+                writeEntries(files, entries);
+            }
+            else {
+                // Construct the output stream to the target archive file.
+                try (TarArchiveOutputStream taos = 
+                        new TarArchiveOutputStream(
+                                new BufferedOutputStream(
+                                        openOutputStream()))) {
+                    writeEntries(files, taos);
                 }
             }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Output archive [ "
+                        + getOutputFile()
+                        + " ] created in [ "
+                        + (System.currentTimeMillis() - startTime)
+                        + " ] ms.");
+            }
         }
         else {
             LOGGER.warn("There are no input files to process.  Output "
                     + "archive not created.");
         }
     }
+    
+    /**
+     * Build the TAR entries for the input files if the archive can be 
+     * written using the zero-copy path.  The zero-copy path is used only 
+     * when it is enabled, the output file is on the local file system, and
+     * every entry can be described by a plain ustar header (i.e. the 
+     * default <code>TarArchiveOutputStream</code> would not need to emit 
+     * GNU long name or POSIX extended headers).
+     * 
+     * @param files List of files to Archive.
+     * @return The entries to write, or null if the stream-based path must 
+     * be used.
+     * @throws IOException Thrown if the input files cannot be accessed.
+     */
+    private List<TarArchiveEntry> getZeroCopyEntries(List<ArchiveElement> files) 
+            throws IOException {
+        if (!isZeroCopy() || !isLocal(getOutputFile())) {
+            return null;
+        }
+        ZipEncoding encoding = ZipEncodingHelper.getZipEncoding(null);
+        List<TarArchiveEntry> entries = new ArrayList<TarArchiveEntry>(files.size());
+        for (ArchiveElement element : files) {
+            TarArchiveEntry entry = (TarArchiveEntry)getArchiveEntry(
+                    element.getURI(), 
+                    element.getEntryPath());
+            if ((encoding.encode(entry.getName()).limit() >= TarConstants.NAMELEN) ||
+                    (entry.getSize() > TarConstants.MAXSIZE) || 
+                    ((entry.getModTime().getTime() / 1000) > TarConstants.MAXSIZE)) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Entry [ "
+                            + entry.getName()
+                            + " ] requires extended TAR headers.  Zero-copy "
+                            + "transfer disabled.");
+                }
+                return null;
+            }
+            entries.add(entry);
+        }
+        return entries;
+    }
+    
+    /**
+     * Write the input files directly to a channel opened on the output 
+     * file.  Each 512-byte header is generated by the entry itself, the 
+     * file contents are moved with <code>transferOneFile()</code>, and the
+     * end-of-archive records and block padding match the output of the 
+     * default <code>TarArchiveOutputStream</code>.
+     * 
+     * @param files List of files to Archive.
+     * @param entries The pre-built TAR entries (one per file).
+     * @throws IOException Thrown if there are problems writing to the 
+     * output file, or if an input file cannot be read in full.  The 
+     * archive is incomplete and the failed file is not reported as 
+     * archived.
+     */
+    private void writeEntries(
+            List<ArchiveElement> files, 
+            List<TarArchiveEntry> entries) throws IOException {
+        ZipEncoding encoding = ZipEncodingHelper.getZipEncoding(null);
+        byte[] header = new byte[TarConstants.DEFAULT_RCDSIZE];
+        try (FileChannel out = openOutputChannel()) {
+            for (int i=0; i<files.size(); i++) {
+                if (isVolumeFull()) {
+                    break;
+                }
+                TarArchiveEntry entry = entries.get(i);
+                prepareEntry(files.get(i));
+                entry.writeEntryHeader(header, encoding, false);
+                writeFully(out, ByteBuffer.wrap(header));
+                transferOneFile(out, files.get(i).getURI(), entry.getSize());
+                pad(out, getPadding(entry.getSize(), TarConstants.DEFAULT_RCDSIZE));
+                notify(files.get(i));
+            }
+            // Two end-of-archive records, then pad out the final block.
+            pad(out, 2 * TarConstants.DEFAULT_RCDSIZE);
+            pad(out, getPadding(out.position(), TarConstants.DEFAULT_BLKSIZE));
+        }
+    }
+    
+    /**
+     * Assemble the TAR archive out of order.  Every header and file offset
+     * follows from the entry sizes, so the output file is extended to its
+     * final length, the headers are written, and the file contents are 
+     * copied to their offsets on several threads.  The output is identical
+     * to that of <code>writeEntries()</code>, including the volume size 
+     * cut-off.
+     * 
+     * @param files List of files to Archive.
+     * @param entries The pre-built TAR entries (one per file).
+     * @throws ArchiveException Thrown if the assembly is interrupted.
+     * @throws IOException Thrown if there are problems writing to the 
+     * output file, or if an input file cannot be read in full.  The 
+     * archive is incomplete and neither the failed file nor any file 
+     * after it is reported as archived.
+     */
+    private void assembleEntries(
+            List<ArchiveElement> files, 
+            List<TarArchiveEntry> entries) 
+                    throws ArchiveException, IOException {
+        
+        ZipEncoding encoding = ZipEncodingHelper.getZipEncoding(null);
+        long[] offsets  = new long[files.size()];
+        long[] sizes    = new long[files.size()];
+        long   position = 0;
+        int    count    = 0;
+        
+        for (TarArchiveEntry entry : entries) {
+            if ((getVolumeSize() > 0) && (count > 0) && 
+                    (position >= getVolumeSize())) {
+                break;
+            }
+            offsets[count] = position + TarConstants.DEFAULT_RCDSIZE;
+            sizes[count]   = entry.getSize();
+            position = offsets[count] + entry.getSize() + 
+                    getPadding(entry.getSize(), TarConstants.DEFAULT_RCDSIZE);
+            count++;
+        }
+        // Two end-of-archive records, then pad out the final block.
+        long length = position + 2 * TarConstants.DEFAULT_RCDSIZE;
+        length += getPadding(length, TarConstants.DEFAULT_BLKSIZE);
+        
+        try (FileChannel out = openOutputChannel()) {
+            preallocate(out, length);
+            for (int i=0; i<count; i++) {
+                byte[] header = new byte[TarConstants.DEFAULT_RCDSIZE];
+                prepareEntry(files.get(i));
+                entries.get(i).writeEntryHeader(header, encoding, false);
+                writeAt(out, ByteBuffer.wrap(header), 
+                        offsets[i] - TarConstants.DEFAULT_RCDSIZE);
+            }
+            copyBodies(out, files.subList(0, count), offsets, sizes, false);
+        }
+    }
+    
+    /**
+     * Hook invoked immediately before each element is written to the TAR 
+     * stream.  The default implementation does nothing.
+     * 
+     * @param element The element about to be written.
+     */
+    protected void prepareEntry(ArchiveElement element) { }
+    
+    /**
+     * Write each of the input files to the supplied TAR output stream 
+     * notifying the file completion listeners as each file is completed.
+     * This method was separated from <code>bundle()</code> so that 
+     * subclasses can write the TAR stream into something other than a 
+     * file on disk (i.e. directly into a compressor stream).
+     * 
+     * @param files List of files to Archive.
+     * @param taos The target TAR output stream.
+     * @throws IOException Thrown if there are problems writing to the 
+     * output stream.
+     */
+    protected void writeEntries(
+            List<ArchiveElement> files, 
+            TarArchiveOutputStream taos) throws IOException {
+        try (Prefetcher prefetcher = getPrefetcher(files)) {
+            for (ArchiveElement element : files) {
+                if (isVolumeFull(taos)) {
+                    break;
+                }
+                prepareEntry(element);
+                taos.putArchiveEntry(
+                        getArchiveEntry(
+                                element.getURI(),
+                                element.getEntryPath()));
+                copyOneFile(taos, element.getURI(), prefetcher);
+                notify(element);
+            }
+        }
+    }
 }
@@ -2,15 +2,35 @@ package mil.nga.bundler.archive;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
 
 import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ScatterZipOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntryRequest;
+import org.apache.commons.compress.archivers.zip.ZipUtil;
+import org.apache.commons.compress.parallel.InputStreamSupplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,9 +58,115 @@ public class ZipArchiver extends Archiver implements BundlerI {
     final private ArchiveType type = ArchiveType.ZIP;
     
     /**
-     * Default constructor
+     * The number of entries that may be compressed ahead of the entry 
+     * currently being written to the output archive (per worker thread).  
+     * This bounds the amount of scratch disk space in use at any one time.
      */
-    public ZipArchiver( ) { }
+    public static final int ENTRIES_IN_FLIGHT_PER_THREAD = 2;
+    
+    /**
+     * Buffer size used when calculating the CRC of STORED entries.
+     */
+    private static final int BUFFER_SIZE = 8192;
+    
+    /**
+     * Fixed portion of a ZIP local file header.
+     */
+    private static final int LFH_SIZE = 30;
+    
+    /**
+     * Fixed portion of a ZIP central directory file header.
+     */
+    private static final int CFH_SIZE = 46;
+    
+    /**
+     * Size of the ZIP end of central directory record (without comment).
+     */
+    private static final int EOCD_SIZE = 22;
+    
+    /**
+     * Sizes and offsets at or above this value require ZIP64 records, 
+     * which the parallel assembler does not write.
+     */
+    private static final long ZIP32_LIMIT = 0xFFFFFFFFL;
+    
+    /**
+     * ZIP general purpose flag indicating UTF-8 encoded entry names.
+     */
+    private static final int UTF8_FLAG = 0x0800;
+    
+    /**
+     * ZIP version needed to extract a STORED entry (1.0).
+     */
+    private static final int STORED_VERSION = 10;
+    
+    /**
+     * ZIP version made by (2.0), combined with the entry platform.
+     */
+    private static final int MADE_BY_VERSION = 20;
+    
+    /**
+     * Flag indicating whether or not the entries should be compressed in 
+     * parallel.
+     */
+    private boolean parallel = false;
+    
+    /**
+     * The number of worker threads to use when compressing in parallel.
+     */
+    private int threads = 1;
+    
+    /**
+     * Flag indicating whether files containing already-compressed data 
+     * should be written using the STORED method.
+     */
+    private boolean storeCompressed = false;
+    
+    /**
+     * Cache of compressed entries (null if caching is disabled).
+     */
+    private CompressedChunkCache chunkCache = null;
+    
+    /**
+     * Default constructor.  The parallel settings are read from the 
+     * bundler properties file.
+     */
+    public ZipArchiver( ) { 
+        this(ArchiveSettings.getInstance());
+    }
+    
+    /**
+     * Alternate constructor allowing clients to supply the archive 
+     * settings.
+     * 
+     * @param settings The archive settings to apply.
+     */
+    public ZipArchiver(ArchiveSettings settings) {
+        if (settings != null) {
+            setParallel(settings.isParallelZip());
+            setThreads(settings.getArchiveThreads());
+            setStoreCompressed(settings.isStoreCompressedInputs());
+            setPrefetchDepth(settings.getPrefetchDepth());
+            setPrefetchBufferSize(settings.getPrefetchBufferSize());
+            setParallelAssembly(settings.isParallelAssembly());
+            setAssemblyThreads(settings.getAssemblyThreads());
+            if (settings.getChunkCacheDir() != null) {
+                try {
+                    setChunkCache(CompressedChunkCache.getInstance(
+                            settings.getChunkCacheDir(), 
+                            settings.getChunkCacheSize()));
+                }
+                catch (IOException ioe) {
+                    LOGGER.warn("Unable to open the chunk cache [ "
+                            + settings.getChunkCacheDir()
+                            + " ].  Entries will not be cached.  "
+                            + "Exception message => [ "
+                            + ioe.getMessage()
+                            + " ].");
+                }
+            }
+        }
+    }
     
     /**
      * Required concrete method used to construct the type-appropriate 
@@ -56,6 +182,114 @@ public class ZipArchiver extends Archiver implements BundlerI {
         return new ZipArchiveEntry(file, entryPath);
     }
     
+    /**
+     * Construct the ZIP entry for the input element.  If the element 
+     * contains data that is already compressed the entry will use the 
+     * STORED method.  A streamed ZIP file requires the size and CRC of a 
+     * STORED entry to be known before the entry is written so, if 
+     * requested, they are calculated up front.  If the CRC cannot be 
+     * calculated the entry falls back to DEFLATED.
+     * 
+     * @param element The element to be added to the archive.
+     * @param calculateCRC True if the size and CRC of STORED entries should
+     * be calculated.
+     * @return The ZIP entry.
+     * @throws IOException Thrown if the entry cannot be constructed.
+     */
+    protected ZipArchiveEntry getZipArchiveEntry(
+            ArchiveElement element, 
+            boolean calculateCRC) throws IOException {
+        
+        ZipArchiveEntry entry = (ZipArchiveEntry)getArchiveEntry(
+                element.getURI(), 
+                element.getEntryPath());
+        entry.setMethod(ZipArchiveEntry.DEFLATED);
+        
+        if (isStoreCompressed() && 
+                CompressedContentDetector.getInstance().isCompressed(
+                        element.getURI())) {
+            if (calculateCRC) {
+                try {
+                    calculateCRC(element, entry);
+                    entry.setMethod(ZipArchiveEntry.STORED);
+                }
+                catch (IOException ioe) {
+                    LOGGER.warn("Unable to calculate the CRC for file [ "
+                            + element.getURI().toString()
+                            + " ].  The file will be compressed.  "
+                            + "Exception message => [ "
+                            + ioe.getMessage()
+                            + " ].");
+                }
+            }
+            else {
+                entry.setMethod(ZipArchiveEntry.STORED);
+            }
+        }
+        return entry;
+    }
+    
+    /**
+     * Read the input element in full, recording its size and CRC on the 
+     * input entry.
+     * 
+     * @param element The element to be added to the archive.
+     * @param entry The ZIP entry for the element.
+     * @throws IOException Thrown if the element cannot be read.
+     */
+    protected void calculateCRC(
+            ArchiveElement element, 
+            ZipArchiveEntry entry) throws IOException {
+        CRC32 crc = new CRC32();
+        long size = 0;
+        try (CheckedInputStream is = new CheckedInputStream(
+                Files.newInputStream(Paths.get(element.getURI())), 
+                crc)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                size += n;
+            }
+        }
+        entry.setSize(size);
+        entry.setCrc(crc.getValue());
+    }
+    
+    /**
+     * Get the cached compressed form of the input element.  Only DEFLATED
+     * entries for local files of at least 
+     * <code>CompressedChunkCache.MIN_CACHED_SIZE</code> bytes are cached.
+     * If the cache cannot be used the file is simply compressed as normal.
+     * 
+     * @param element The element to be added to the archive.
+     * @param entry The ZIP entry for the element.
+     * @return The opened cache entry, or null if the element should be 
+     * compressed.
+     */
+    protected CompressedChunkCache.Chunk getCachedChunk(
+            ArchiveElement element, 
+            ZipArchiveEntry entry) {
+        if ((getChunkCache() != null) && 
+                (entry.getMethod() == ZipArchiveEntry.DEFLATED) && 
+                (element.getSize() >= CompressedChunkCache.MIN_CACHED_SIZE) && 
+                isLocal(element.getURI())) {
+            try {
+                return getChunkCache().get(
+                        element.getURI(), 
+                        Deflater.DEFAULT_COMPRESSION);
+            }
+            catch (IOException ioe) {
+                LOGGER.warn("Unable to use the chunk cache for file [ "
+                        + element.getURI().toString()
+                        + " ].  The file will be compressed.  Exception "
+                        + "message => [ "
+                        + ioe.getMessage()
+                        + " ].");
+            }
+        }
+        return null;
+    }
+    
     /**
      * Getter method for the archive type.
      * @return The archive type that this concrete class will create.
@@ -65,6 +299,72 @@ public class ZipArchiver extends Archiver implements BundlerI {
         return type;
     }
     
+    /**
+     * Getter method for the cache of compressed entries.
+     * @return The chunk cache (null if caching is disabled).
+     */
+    public CompressedChunkCache getChunkCache() {
+        return chunkCache;
+    }
+    
+    /**
+     * Getter method for the number of worker threads used in parallel mode.
+     * @return The number of worker threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+    
+    /**
+     * Determine whether already-compressed files will be STORED.
+     * @return True if already-compressed files will be STORED.
+     */
+    public boolean isStoreCompressed() {
+        return storeCompressed;
+    }
+    
+    /**
+     * Setter method for the flag controlling whether already-compressed 
+     * files are STORED rather than DEFLATED.
+     * @param value True if already-compressed files should be STORED.
+     */
+    public void setStoreCompressed(boolean value) {
+        storeCompressed = value;
+    }
+    
+    /**
+     * Setter method for the cache of compressed entries.
+     * @param value The chunk cache (null to disable caching).
+     */
+    public void setChunkCache(CompressedChunkCache value) {
+        chunkCache = value;
+    }
+    
+    /**
+     * Determine whether the entries will be compressed in parallel.
+     * @return True if parallel mode is enabled.
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+    
+    /**
+     * Setter method for the parallel compression flag.
+     * @param value True if entries should be compressed in parallel.
+     */
+    public void setParallel(boolean value) {
+        parallel = value;
+    }
+    
+    /**
+     * Setter method for the number of worker threads used in parallel mode.
+     * @param value The number of worker threads (values less than 1 are 
+     * set to 1).
+     */
+    public void setThreads(int value) {
+        threads = (value < 1) ? 1 : value;
+    }
+    
     /**
      * Execute the "bundle" operation to ZIP all of the required input files 
      * into a single output Archive.
@@ -95,21 +395,45 @@ public class ZipArchiver extends Archiver implements BundlerI {
             // Ensure the target output file does not already exist.
             Files.deleteIfExists(Paths.get(getOutputFile()));
             
-            // Construct the output stream to the target archive file.
-            try (ZipArchiveOutputStream zaos = 
-                    new ZipArchiveOutputStream(
-                            new BufferedOutputStream(
-                                    Files.newOutputStream(
-                                            Paths.get(getOutputFile()), 
-                                            StandardOpenOption.CREATE, 
-                                            StandardOpenOption.WRITE)))) {
-                for (ArchiveElement element : files) {
-                    zaos.putArchiveEntry(
-                            getArchiveEntry(
-                                    element.getURI(),
-                                    element.getEntryPath()));
-                    copyOneFile(zaos, element.getURI());
-                    notify(element);
+            if (!assembleStoredEntries(files)) {
+                
+                // Construct the output stream to the target archive file.
+                try (ZipArchiveOutputStream zaos = 
+                        new ZipArchiveOutputStream(
+                                new BufferedOutputStream(
+                                        openOutputStream()))) {
+                    if (isParallel() && (getThreads() > 1) && (files.size() > 1)) {
+                        bundleParallel(files, zaos);
+                    }
+                    else {
+                        // Cached entries are not read from the source, so
+                        // read-ahead is not used with the chunk cache.
+                        try (Prefetcher prefetcher = (getChunkCache() == null) ?
+                                getPrefetcher(files) : null) {
+                            for (ArchiveElement element : files) {
+                                if (isVolumeFull(zaos)) {
+                                    break;
+                                }
+                                ZipArchiveEntry entry = 
+                                        getZipArchiveEntry(element, true);
+                                CompressedChunkCache.Chunk chunk = 
+                                        getCachedChunk(element, entry);
+                                if (chunk != null) {
+                                    try {
+                                        chunk.writeTo(zaos, entry);
+                                    }
+                                    finally {
+                                        chunk.close();
+                                    }
+                                }
+                                else {
+                                    zaos.putArchiveEntry(entry);
+                                    copyOneFile(zaos, element.getURI(), prefetcher);
+                                }
+                                notify(element);
+                            }
+                        }
+                    }
                 }
             }
             if (LOGGER.isDebugEnabled()) {
@@ -118,6 +442,9 @@ public class ZipArchiver extends Archiver implements BundlerI {
                         + " ] created in [ "
                         + (System.currentTimeMillis() - startTime)
                         + " ] ms.");
+                if (getChunkCache() != null) {
+                    LOGGER.debug(getChunkCache().toString());
+                }
             }
         }
         else {
@@ -125,4 +452,512 @@ public class ZipArchiver extends Archiver implements BundlerI {
                     + "archive not created.");
         }
     }
+    
+    /**
+     * Assemble the ZIP archive out of order if every entry will be STORED.
+     * The local headers of STORED entries have a fixed size, so every file
+     * offset follows from the entry names and sizes.  The output file is 
+     * extended to its final length, the file contents are copied to their
+     * offsets on several threads (calculating the CRCs as they go), and 
+     * finally the local headers, central directory and end of central 
+     * directory record are written.
+     * 
+     * If the archive is being hashed it must be digested in order, so the
+     * headers have to be written before the file contents.  The CRC of 
+     * each entry is then calculated up front (as the serial path does for
+     * STORED entries) and the CRCs calculated while the contents are 
+     * copied are checked against them.  Whether the archive can be 
+     * assembled is decided from the entry methods, names and sizes alone,
+     * so the files are only read for their CRCs once every entry is known
+     * to fit; otherwise the serial path would read them all a second time.
+     * 
+     * @param files List of files to Archive.
+     * @return False (with nothing written) if parallel assembly is 
+     * disabled, the output is not on the local file system, any entry 
+     * would be DEFLATED, the archive would require ZIP64 records, or a 
+     * file could not be read (or changed size) while its CRC was 
+     * calculated.  Package-private to support jUnit testing.
+     * @throws ArchiveException Thrown if the assembly is interrupted.
+     * @throws IOException Thrown if there are problems writing to the 
+     * output file, or a file changed while it was being copied.
+     */
+    boolean assembleStoredEntries(List<ArchiveElement> files) 
+            throws ArchiveException, IOException {
+        
+        if ((!isParallelAssembly()) || (!isStoreCompressed()) || 
+                (files.size() < 2) || (!isLocal(getOutputFile()))) {
+            return false;
+        }
+        
+        boolean               hashing  = !getHashTypes().isEmpty();
+        List<ZipArchiveEntry> entries  = new ArrayList<ZipArchiveEntry>();
+        List<byte[]>          names    = new ArrayList<byte[]>();
+        long[]                offsets  = new long[files.size()];
+        long[]                sizes    = new long[files.size()];
+        long[]                crcs     = new long[files.size()];
+        long                  position = 0;
+        int                   count    = 0;
+        
+        for (ArchiveElement element : files) {
+            if ((getVolumeSize() > 0) && (count > 0) && 
+                    (position >= getVolumeSize())) {
+                break;
+            }
+            ZipArchiveEntry entry = getZipArchiveEntry(element, false);
+            byte[] name = entry.getName().getBytes(StandardCharsets.UTF_8);
+            long   size = (entry.getSize() >= 0) ? 
+                    entry.getSize() : element.getSize();
+            if ((entry.getMethod() != ZipArchiveEntry.STORED) || 
+                    (size >= ZIP32_LIMIT) || 
+                    (name.length > 0xFFFF)) {
+                return false;
+            }
+            entries.add(entry);
+            names.add(name);
+            offsets[count] = position + LFH_SIZE + name.length;
+            sizes[count]   = size;
+            position = offsets[count] + size;
+            count++;
+        }
+        
+        long centralDirectoryOffset = position;
+        long centralDirectorySize   = 0;
+        for (byte[] name : names) {
+            centralDirectorySize += CFH_SIZE + name.length;
+        }
+        long length = centralDirectoryOffset + centralDirectorySize + EOCD_SIZE;
+        if ((length >= ZIP32_LIMIT) || (count > 0xFFFF)) {
+            return false;
+        }
+        
+        if (hashing) {
+            for (int i=0; i<count; i++) {
+                try {
+                    calculateCRC(files.get(i), entries.get(i));
+                }
+                catch (IOException ioe) {
+                    LOGGER.warn("Unable to calculate the CRC for file [ "
+                            + files.get(i).getURI().toString()
+                            + " ].  The archive will not be assembled.  "
+                            + "Exception message => [ "
+                            + ioe.getMessage()
+                            + " ].");
+                    return false;
+                }
+                if (entries.get(i).getSize() != sizes[i]) {
+                    LOGGER.warn("File [ "
+                            + files.get(i).getURI().toString()
+                            + " ] is [ "
+                            + entries.get(i).getSize()
+                            + " ] bytes, expected [ "
+                            + sizes[i]
+                            + " ].  The archive will not be assembled.");
+                    return false;
+                }
+                crcs[i] = entries.get(i).getCrc();
+            }
+        }
+        
+        try (FileChannel out = openOutputChannel()) {
+            preallocate(out, length);
+            if (hashing) {
+                writeHeaders(out, entries, names, offsets, sizes, crcs, 
+                        centralDirectoryOffset, centralDirectorySize);
+            }
+            long[] copied = copyBodies(
+                    out, files.subList(0, count), offsets, sizes, true);
+            if (hashing) {
+                for (int i=0; i<count; i++) {
+                    if (copied[i] != crcs[i]) {
+                        throw new IOException("File [ "
+                                + files.get(i).getURI().toString()
+                                + " ] changed or could not be read while "
+                                + "it was being archived.  The CRC of the "
+                                + "contents copied does not match the CRC "
+                                + "calculated up front.");
+                    }
+                }
+            }
+            else {
+                writeHeaders(out, entries, names, offsets, sizes, copied, 
+                        centralDirectoryOffset, centralDirectorySize);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Write the local headers, central directory and end of central 
+     * directory record of an archive assembled by 
+     * <code>assembleStoredEntries()</code>.
+     * 
+     * @param out The output channel.
+     * @param entries The STORED entries.
+     * @param names The UTF-8 encoded name of each entry.
+     * @param offsets The offset of the contents of each entry.
+     * @param sizes The size of each entry.
+     * @param crcs The CRC-32 of each entry.
+     * @param centralDirectoryOffset The offset of the central directory.
+     * @param centralDirectorySize The size of the central directory.
+     * @throws IOException Thrown if the output file cannot be written.
+     */
+    private void writeHeaders(
+            FileChannel out, 
+            List<ZipArchiveEntry> entries, 
+            List<byte[]> names, 
+            long[] offsets, 
+            long[] sizes, 
+            long[] crcs, 
+            long centralDirectoryOffset, 
+            long centralDirectorySize) throws IOException {
+        
+        int        count     = entries.size();
+        ByteBuffer directory = ByteBuffer.allocate(
+                (int)(centralDirectorySize + EOCD_SIZE))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i=0; i<count; i++) {
+            ZipArchiveEntry entry  = entries.get(i);
+            byte[]          name   = names.get(i);
+            long            header = offsets[i] - LFH_SIZE - name.length;
+            byte[]          time   = ZipUtil.toDosTime(entry.getTime());
+            
+            ByteBuffer local = ByteBuffer.allocate(LFH_SIZE + name.length)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            local.putInt(0x04034b50)
+                 .putShort((short)STORED_VERSION)
+                 .putShort((short)UTF8_FLAG)
+                 .putShort((short)ZipArchiveEntry.STORED)
+                 .put(time)
+                 .putInt((int)crcs[i])
+                 .putInt((int)sizes[i])
+                 .putInt((int)sizes[i])
+                 .putShort((short)name.length)
+                 .putShort((short)0)
+                 .put(name);
+            local.flip();
+            writeAt(out, local, header);
+            
+            directory.putInt(0x02014b50)
+                     .putShort((short)((entry.getPlatform() << 8) | MADE_BY_VERSION))
+                     .putShort((short)STORED_VERSION)
+                     .putShort((short)UTF8_FLAG)
+                     .putShort((short)ZipArchiveEntry.STORED)
+                     .put(time)
+                     .putInt((int)crcs[i])
+                     .putInt((int)sizes[i])
+                     .putInt((int)sizes[i])
+                     .putShort((short)name.length)
+                     .putShort((short)0)
+                     .putShort((short)0)
+                     .putShort((short)0)
+                     .putShort((short)entry.getInternalAttributes())
+                     .putInt((int)entry.getExternalAttributes())
+                     .putInt((int)header)
+                     .put(name);
+        }
+        directory.putInt(0x06054b50)
+                 .putShort((short)0)
+                 .putShort((short)0)
+                 .putShort((short)count)
+                 .putShort((short)count)
+                 .putInt((int)centralDirectorySize)
+                 .putInt((int)centralDirectoryOffset)
+                 .putShort((short)0);
+        directory.flip();
+        writeAt(out, directory, centralDirectoryOffset);
+    }
+    
+    /**
+     * Compress the input files on a pool of worker threads.  Each worker 
+     * deflates a single entry into its own scratch file (the "scatter" 
+     * phase).  The calling thread then appends the pre-compressed entries
+     * to the output archive (the "gather" phase) in the same order as the 
+     * input list, so the entry order and the order of the file completion 
+     * notifications are identical to the serial implementation.
+     * 
+     * @param files List of files to Archive.
+     * @param zaos The output archive stream.
+     * @throws ArchiveException Thrown if the calling thread is interrupted
+     * while waiting on a worker.
+     * @throws IOException Thrown if there are problems writing to the 
+     * output archive.
+     */
+    private void bundleParallel(
+            List<ArchiveElement> files, 
+            ZipArchiveOutputStream zaos) 
+                    throws ArchiveException, IOException {
+        
+        int window = getThreads() * ENTRIES_IN_FLIGHT_PER_THREAD;
+        Path scratchDir = getScratchDirectory();
+        Deque<Future<ScatterEntry>> pending = 
+                new ArrayDeque<Future<ScatterEntry>>();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(getThreads(), files.size()));
+        
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Compressing [ "
+                    + files.size()
+                    + " ] entries using [ "
+                    + getThreads()
+                    + " ] threads.");
+        }
+        
+        try {
+            int next = 0;
+            for (ArchiveElement element : files) {
+                
+                // Entries already submitted are discarded (and their 
+                // scratch files released) below.
+                if (isVolumeFull(zaos)) {
+                    break;
+                }
+                
+                // Keep the worker pool busy up to the window size.
+                while ((next < files.size()) && (pending.size() < window)) {
+                    pending.add(executor.submit(
+                            new ScatterTask(files.get(next), scratchDir)));
+                    next++;
+                }
+                
+                ScatterEntry entry = null;
+                try {
+                    entry = pending.poll().get();
+                    entry.writeTo(zaos);
+                }
+                catch (ExecutionException ee) {
+                    // Fail the archive as the serial path does (see
+                    // Archiver.copyOneFile()) rather than silently leaving
+                    // the entry out of it.
+                    if (ee.getCause() instanceof IOException) {
+                        throw (IOException)ee.getCause();
+                    }
+                    throw new IOException("Unexpected exception encountered "
+                            + "while compressing file [ "
+                            + element.getURI().toString()
+                            + " ].  Exception message => [ "
+                            + ee.getCause().getMessage()
+                            + " ].", ee.getCause());
+                }
+                catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new ArchiveException("Interrupted while "
+                            + "compressing file [ "
+                            + element.getURI().toString()
+                            + " ].");
+                }
+                finally {
+                    if (entry != null) {
+                        entry.close();
+                    }
+                }
+                notify(element);
+            }
+        }
+        finally {
+            // Workers that never started are returned by shutdownNow() 
+            // without completing, so they must be cancelled or the get() 
+            // below would block forever.
+            for (Runnable task : executor.shutdownNow()) {
+                if (task instanceof Future) {
+                    ((Future<?>)task).cancel(false);
+                }
+            }
+            // Release the scratch files held by any outstanding workers.
+            for (Future<ScatterEntry> future : pending) {
+                try {
+                    if (!future.isCancelled()) {
+                        future.get().close();
+                    }
+                }
+                catch (Exception e) { }
+            }
+        }
+    }
+    
+    /**
+     * The scratch files are written alongside the output archive so they 
+     * land on the same (staging) file system.
+     * 
+     * @return The directory in which to create scratch files.
+     */
+    private Path getScratchDirectory() {
+        Path parent = Paths.get(getOutputFile()).getParent();
+        if (parent == null) {
+            parent = Paths.get(System.getProperty("java.io.tmpdir"));
+        }
+        return parent;
+    }
+    
+    /**
+     * Simple container class pairing a compressed scatter stream with the 
+     * scratch file that backs it, or holding an entry taken from the chunk
+     * cache.
+     */
+    private static class ScatterEntry {
+        
+        /**
+         * The cached entry (null if the entry was compressed).
+         */
+        private final CompressedChunkCache.Chunk chunk;
+        
+        /**
+         * The ZIP entry written from the cached data.
+         */
+        private final ZipArchiveEntry entry;
+        
+        /**
+         * The scratch file backing the scatter stream.
+         */
+        private final Path scratchFile;
+        
+        /**
+         * The stream holding the compressed entry.
+         */
+        private final ScatterZipOutputStream stream;
+        
+        /**
+         * Constructor.
+         * @param scratchFile The scratch file backing the scatter stream.
+         * @param stream The stream holding the compressed entry.
+         */
+        public ScatterEntry(Path scratchFile, ScatterZipOutputStream stream) {
+            this.scratchFile = scratchFile;
+            this.stream = stream;
+            this.chunk = null;
+            this.entry = null;
+        }
+        
+        /**
+         * Constructor used for entries taken from the chunk cache.
+         * @param chunk The opened cache entry.
+         * @param entry The ZIP entry to write.
+         */
+        public ScatterEntry(
+                CompressedChunkCache.Chunk chunk, 
+                ZipArchiveEntry entry) {
+            this.scratchFile = null;
+            this.stream = null;
+            this.chunk = chunk;
+            this.entry = entry;
+        }
+        
+        /**
+         * Append the compressed entry to the output archive.
+         * @param zaos The output archive stream.
+         * @throws IOException Thrown if the entry cannot be written.
+         */
+        public void writeTo(ZipArchiveOutputStream zaos) throws IOException {
+            if (chunk != null) {
+                chunk.writeTo(zaos, entry);
+            }
+            else {
+                stream.writeTo(zaos);
+            }
+        }
+        
+        /**
+         * Close the scatter stream and remove the scratch file.
+         */
+        public void close() {
+            if (chunk != null) {
+                try {
+                    chunk.close();
+                }
+                catch (IOException ioe) { }
+                return;
+            }
+            try {
+                stream.close();
+            }
+            catch (IOException ioe) { }
+            try {
+                Files.deleteIfExists(scratchFile);
+            }
+            catch (IOException ioe) {
+                LOGGER.warn("Unable to delete scratch file [ "
+                        + scratchFile.toString()
+                        + " ].  Exception message => [ "
+                        + ioe.getMessage()
+                        + " ].");
+            }
+        }
+    }
+    
+    /**
+     * Worker task that deflates a single input file into a scratch file.
+     */
+    private class ScatterTask implements Callable<ScatterEntry> {
+        
+        /**
+         * The element to compress.
+         */
+        private final ArchiveElement element;
+        
+        /**
+         * The directory in which the scratch file will be created.
+         */
+        private final Path scratchDir;
+        
+        /**
+         * Constructor.
+         * @param element The element to compress.
+         * @param scratchDir The directory in which the scratch file will be 
+         * created.
+         */
+        public ScatterTask(ArchiveElement element, Path scratchDir) {
+            this.element = element;
+            this.scratchDir = scratchDir;
+        }
+        
+        /**
+         * Compress the target element.
+         * @return The compressed entry.
+         * @throws IOException Thrown if the input file cannot be read or the 
+         * scratch file cannot be written.
+         */
+        @Override
+        public ScatterEntry call() throws IOException {
+            
+            // The scatter stream calculates the size and CRC of STORED 
+            // entries itself.
+            ZipArchiveEntry entry = getZipArchiveEntry(element, false);
+            
+            CompressedChunkCache.Chunk chunk = getCachedChunk(element, entry);
+            if (chunk != null) {
+                return new ScatterEntry(chunk, entry);
+            }
+            
+            Path scratchFile = Files.createTempFile(
+                    scratchDir, "scatter_", ".tmp");
+            ScatterZipOutputStream stream = null;
+            try {
+                stream = ScatterZipOutputStream.fileBased(
+                        scratchFile.toFile(), 
+                        Deflater.DEFAULT_COMPRESSION);
+                final InputStream is = Files.newInputStream(
+                        Paths.get(element.getURI()));
+                // The scatter stream closes the payload stream once the 
+                // entry has been deflated.
+                stream.addArchiveEntry(
+                        ZipArchiveEntryRequest.createZipArchiveEntryRequest(
+                                entry, 
+                                new InputStreamSupplier() {
+                                    @Override
+                                    public InputStream get() {
+                                        return is;
+                                    }
+                                }));
+                return new ScatterEntry(scratchFile, stream);
+            }
+            catch (IOException | RuntimeException e) {
+                if (stream != null) {
+                    new ScatterEntry(scratchFile, stream).close();
+                }
+                else {
+                    Files.deleteIfExists(scratchFile);
+                }
+                throw e;
+            }
+        }
+    }
 }
@@ -0,0 +1,65 @@
+package mil.nga.bundler.archive.streams;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Output stream that feeds every byte written through it to any number of
+ * <code>MessageDigest</code> objects before passing it on to the
+ * underlying stream.  This is the multi-algorithm equivalent of
+ * <code>java.security.DigestOutputStream</code>, allowing several hashes
+ * of the same data to be calculated in a single pass.
+ *
+ * @author L. Craig Carpenter
+ */
+public class DigestingOutputStream extends FilterOutputStream {
+
+    /**
+     * The digests to update.
+     */
+    private final List<MessageDigest> digests;
+
+    /**
+     * Constructor.
+     *
+     * @param out The underlying output stream.
+     * @param digests The digests to update as data is written.
+     */
+    public DigestingOutputStream(
+            OutputStream out,
+            Collection<MessageDigest> digests) {
+        super(out);
+        this.digests = new ArrayList<MessageDigest>(digests);
+    }
+
+    /**
+     * Update the digests with a single byte and write it to the underlying
+     * stream.
+     */
+    @Override
+    public void write(int b) throws IOException {
+        for (MessageDigest digest : digests) {
+            digest.update((byte)b);
+        }
+        out.write(b);
+    }
+
+    /**
+     * Update the digests with the input bytes and write them to the
+     * underlying stream.  Overridden because the
+     * <code>FilterOutputStream</code> implementation writes one byte at a
+     * time.
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (MessageDigest digest : digests) {
+            digest.update(b, off, len);
+        }
+        out.write(b, off, len);
+    }
+}
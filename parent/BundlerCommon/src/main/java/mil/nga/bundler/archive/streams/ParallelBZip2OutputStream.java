@@ -0,0 +1,116 @@
+package mil.nga.bundler.archive.streams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+/**
+ * Output stream producing BZip2 data in the same manner as
+ * <code>pbzip2</code>.  The input is split into 900 KB chunks and each
+ * chunk is compressed into a complete, independent BZip2 stream on a
+ * worker thread.  The streams are concatenated in order.  Standard
+ * <code>bunzip2</code> decompresses concatenated streams as a single file;
+ * Java clients must enable concatenated stream support (i.e.
+ * <code>new BZip2CompressorInputStream(in, true)</code>).
+ *
+ * @author L. Craig Carpenter
+ */
+public class ParallelBZip2OutputStream extends ParallelBlockOutputStream {
+
+    /**
+     * Default uncompressed chunk size.  This matches the BZip2 block size
+     * used at the maximum block size setting.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 900 * 1000;
+
+    /**
+     * The BZip2 block size setting (1 - 9, in units of 100 KB).
+     */
+    private final int blockSizeSetting;
+
+    /**
+     * The number of chunks submitted so far.
+     */
+    private long chunks = 0;
+
+    /**
+     * Construct a stream using the default chunk size and the maximum
+     * BZip2 block size.
+     *
+     * @param out The stream to which the BZip2 data is written.
+     * @param threads The number of worker threads.
+     */
+    public ParallelBZip2OutputStream(OutputStream out, int threads) {
+        this(out, threads, DEFAULT_BLOCK_SIZE,
+                BZip2CompressorOutputStream.MAX_BLOCKSIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param out The stream to which the BZip2 data is written.
+     * @param threads The number of worker threads.
+     * @param chunkSize The uncompressed chunk size.
+     * @param blockSizeSetting The BZip2 block size setting (1 - 9).
+     */
+    public ParallelBZip2OutputStream(
+            OutputStream out,
+            int threads,
+            int chunkSize,
+            int blockSizeSetting) {
+        super(out, chunkSize, threads);
+        if ((blockSizeSetting < BZip2CompressorOutputStream.MIN_BLOCKSIZE) ||
+                (blockSizeSetting > BZip2CompressorOutputStream.MAX_BLOCKSIZE)) {
+            throw new IllegalArgumentException("Invalid block size setting [ "
+                    + blockSizeSetting
+                    + " ].");
+        }
+        this.blockSizeSetting = blockSizeSetting;
+    }
+
+    /**
+     * Construct the task to compress the input chunk into a stand-alone
+     * BZip2 stream.  An empty final chunk produces no output unless it is
+     * the only chunk, in which case an empty BZip2 stream is written so the
+     * output is always a valid BZip2 file.
+     */
+    @Override
+    protected Callable<byte[]> createTask(
+            final byte[] data,
+            final int length,
+            boolean last) {
+        final boolean skip = (length == 0) && (chunks > 0);
+        chunks++;
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                if (skip) {
+                    return new byte[0];
+                }
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(
+                        (length / 2) + 64);
+                try (BZip2CompressorOutputStream bzOut =
+                        new BZip2CompressorOutputStream(
+                                baos, blockSizeSetting)) {
+                    bzOut.write(data, 0, length);
+                }
+                return baos.toByteArray();
+            }
+        };
+    }
+
+    /**
+     * Each chunk carries its own BZip2 stream header.
+     */
+    @Override
+    protected void writeHeader(OutputStream out) { }
+
+    /**
+     * Each chunk carries its own BZip2 stream trailer.
+     */
+    @Override
+    protected void writeTrailer(OutputStream out) { }
+}
@@ -0,0 +1,292 @@
+package mil.nga.bundler.archive.streams;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Abstract output stream that splits the data written to it into fixed
+ * size blocks and compresses the blocks on a pool of worker threads.  The
+ * compressed blocks are written to the wrapped output stream in the order
+ * in which the blocks were written.  The number of blocks in flight is
+ * bounded so memory use does not depend on the size of the input.
+ *
+ * Subclasses supply the block compression task along with any header and
+ * trailer required by the target format.  Subclasses are not thread-safe
+ * with respect to the caller; a single thread is expected to write to the
+ * stream.
+ *
+ * @author L. Craig Carpenter
+ */
+public abstract class ParallelBlockOutputStream extends OutputStream {
+
+    /**
+     * The number of blocks that may be queued (per worker thread) before
+     * the caller blocks waiting on the oldest block.
+     */
+    public static final int BLOCKS_IN_FLIGHT_PER_THREAD = 2;
+
+    /**
+     * The stream to which the compressed data is written.
+     */
+    private final OutputStream out;
+
+    /**
+     * The size of the uncompressed blocks.
+     */
+    private final int blockSize;
+
+    /**
+     * The maximum number of blocks in flight.
+     */
+    private final int window;
+
+    /**
+     * Worker pool used to compress the blocks.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Compressed blocks that have not yet been written to the output
+     * stream, in the order in which they were submitted.
+     */
+    private final Deque<Future<byte[]>> pending =
+            new ArrayDeque<Future<byte[]>>();
+
+    /**
+     * The block currently being filled.
+     */
+    private byte[] block;
+
+    /**
+     * The number of bytes in the current block.
+     */
+    private int count = 0;
+
+    /**
+     * Flag indicating that the header has been written.
+     */
+    private boolean started = false;
+
+    /**
+     * Flag indicating that the stream has been finished.
+     */
+    private boolean finished = false;
+
+    /**
+     * Flag indicating that the stream has been closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * Constructor.
+     *
+     * @param out The stream to which the compressed data is written.
+     * @param blockSize The size of the uncompressed blocks.
+     * @param threads The number of worker threads.
+     */
+    protected ParallelBlockOutputStream(
+            OutputStream out,
+            int blockSize,
+            int threads) {
+        if (out == null) {
+            throw new IllegalArgumentException("Output stream is null.");
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Invalid block size [ "
+                    + blockSize
+                    + " ].");
+        }
+        int workers = (threads < 1) ? 1 : threads;
+        this.out       = out;
+        this.blockSize = blockSize;
+        this.window    = workers * BLOCKS_IN_FLIGHT_PER_THREAD;
+        this.executor  = Executors.newFixedThreadPool(workers);
+        this.block     = new byte[blockSize];
+    }
+
+    /**
+     * Getter method for the uncompressed block size.
+     * @return The uncompressed block size.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte)b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Stream has already been finished.");
+        }
+        if ((off < 0) || (len < 0) || (off + len > b.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            int n = Math.min(len, blockSize - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off   += n;
+            len   -= n;
+            if (count == blockSize) {
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * Write any completed blocks to the output stream and flush it.  This
+     * does not force a block boundary; partially filled blocks are held
+     * until they are full or the stream is finished.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (!closed) {
+            while ((!pending.isEmpty()) && (pending.peek().isDone())) {
+                writeNextBlock();
+            }
+            out.flush();
+        }
+    }
+
+    /**
+     * Compress any remaining data, write the trailer and wait for all
+     * outstanding blocks to be written.  The wrapped stream is not closed.
+     *
+     * @throws IOException Thrown if any of the blocks could not be
+     * compressed or written.
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            submitBlock(true);
+            finished = true;
+            while (!pending.isEmpty()) {
+                writeNextBlock();
+            }
+            writeTrailer(out);
+            out.flush();
+        }
+    }
+
+    /**
+     * Finish the compressed output, release the worker pool and close the
+     * wrapped stream.  Calling this method more than once has no effect.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            try {
+                finish();
+            }
+            finally {
+                closed = true;
+                executor.shutdownNow();
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Hand the current block to the worker pool and start a new block.
+     * If the number of blocks in flight has reached the window size, the
+     * oldest block is written before returning.
+     *
+     * @param last True if this is the final block of the stream.
+     * @throws IOException Thrown if a block could not be compressed or
+     * written.
+     */
+    private void submitBlock(boolean last) throws IOException {
+        if (!started) {
+            writeHeader(out);
+            started = true;
+        }
+        blockComplete(block, count);
+        pending.add(executor.submit(createTask(block, count, last)));
+        block = new byte[blockSize];
+        count = 0;
+        while (pending.size() >= window) {
+            writeNextBlock();
+        }
+    }
+
+    /**
+     * Wait on the oldest outstanding block and write it to the output
+     * stream.
+     *
+     * @throws IOException Thrown if the block could not be compressed or
+     * written.
+     */
+    private void writeNextBlock() throws IOException {
+        try {
+            out.write(pending.poll().get());
+        }
+        catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            throw new IOException("Unexpected exception encountered while "
+                    + "compressing block.  Exception message => [ "
+                    + cause.getMessage()
+                    + " ].", cause);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting on "
+                    + "a compressed block.");
+        }
+    }
+
+    /**
+     * Called on the writing thread, in order, for each block before it is
+     * handed to the worker pool.  The block array is never modified after
+     * this call so subclasses may retain a reference to it (e.g. for use as
+     * a dictionary for the following block).  The default implementation
+     * does nothing.
+     *
+     * @param data The block data.
+     * @param length The number of valid bytes in the block.
+     */
+    protected void blockComplete(byte[] data, int length) { }
+
+    /**
+     * Construct the task that will compress a single block.
+     *
+     * @param data The block data.
+     * @param length The number of valid bytes in the block.
+     * @param last True if this is the final block of the stream.  The final
+     * block may be empty.
+     * @return Task returning the compressed block.
+     */
+    protected abstract Callable<byte[]> createTask(
+            byte[] data,
+            int length,
+            boolean last);
+
+    /**
+     * Write any data that must precede the first compressed block.
+     *
+     * @param out The target output stream.
+     * @throws IOException Thrown if the header cannot be written.
+     */
+    protected abstract void writeHeader(OutputStream out) throws IOException;
+
+    /**
+     * Write any data that must follow the last compressed block.
+     *
+     * @param out The target output stream.
+     * @throws IOException Thrown if the trailer cannot be written.
+     */
+    protected abstract void writeTrailer(OutputStream out) throws IOException;
+}
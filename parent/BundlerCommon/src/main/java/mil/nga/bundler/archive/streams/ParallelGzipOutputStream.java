@@ -0,0 +1,297 @@
+package mil.nga.bundler.archive.streams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import mil.nga.bundler.interfaces.AdaptiveCompressionI;
+
+/**
+ * Output stream producing a single standard gzip member (RFC 1952) whose
+ * deflate data is produced in parallel in the same manner as
+ * <code>pigz</code>.  The input is split into fixed size blocks and each
+ * block is compressed as raw deflate data on a worker thread.  Each
+ * block's compressor is primed with the last 32 KB of the preceding block
+ * so matches may span block boundaries.  Non-final blocks are terminated
+ * with a sync flush (leaving the output byte-aligned) so the compressed
+ * blocks can simply be concatenated.  The CRC-32 is calculated on the
+ * writing thread.
+ *
+ * When notified that the data that follows is not compressible, blocks 
+ * are written at level 0 (stored deflate blocks) until notified otherwise.
+ *
+ * @author L. Craig Carpenter
+ */
+public class ParallelGzipOutputStream 
+        extends ParallelBlockOutputStream 
+        implements AdaptiveCompressionI {
+
+    /**
+     * Default uncompressed block size (128 KB, matching pigz).
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    /**
+     * The size of the deflate sliding window.
+     */
+    public static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * Operating system identifier for the gzip header (unknown).
+     */
+    private static final int OS_UNKNOWN = 255;
+
+    /**
+     * CRC of the uncompressed data.
+     */
+    private final CRC32 crc = new CRC32();
+
+    /**
+     * Total number of uncompressed bytes.
+     */
+    private long size = 0;
+
+    /**
+     * The preceding block (used as the dictionary for the next block).
+     */
+    private byte[] previous = null;
+
+    /**
+     * The number of valid bytes in the preceding block.
+     */
+    private int previousLength = 0;
+
+    /**
+     * The compression level applied to newly submitted blocks.
+     */
+    private volatile int level = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Flag indicating whether the data currently being written is worth
+     * compressing.
+     */
+    private volatile boolean compressible = true;
+
+    /**
+     * Construct a stream using the default block size and compression
+     * level.
+     *
+     * @param out The stream to which the gzip data is written.
+     * @param threads The number of worker threads.
+     */
+    public ParallelGzipOutputStream(OutputStream out, int threads) {
+        this(out, threads, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param out The stream to which the gzip data is written.
+     * @param threads The number of worker threads.
+     * @param blockSize The uncompressed block size.
+     * @param level The deflate compression level.
+     */
+    public ParallelGzipOutputStream(
+            OutputStream out,
+            int threads,
+            int blockSize,
+            int level) {
+        super(out, blockSize, threads);
+        setLevel(level);
+    }
+
+    /**
+     * Getter method for the current compression level.
+     * @return The deflate compression level.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Setter method for the compression level applied to blocks that are
+     * completed after this call.
+     *
+     * @param value The deflate compression level (-1 through 9).
+     */
+    public void setLevel(int value) {
+        if ((value < Deflater.DEFAULT_COMPRESSION) ||
+                (value > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level [ "
+                    + value
+                    + " ].");
+        }
+        level = value;
+    }
+
+    /**
+     * Identify whether the data that follows is worth compressing.  Blocks
+     * completed while this is false are written at level 0.
+     *
+     * @param value False if the data that follows is already compressed.
+     */
+    @Override
+    public void setCompressible(boolean value) {
+        compressible = value;
+    }
+
+    /**
+     * Update the CRC and uncompressed size on the writing thread.
+     */
+    @Override
+    protected void blockComplete(byte[] data, int length) {
+        crc.update(data, 0, length);
+        size += length;
+    }
+
+    /**
+     * Construct the task to deflate the input block, primed with the 
+     * preceding block.
+     */
+    @Override
+    protected Callable<byte[]> createTask(byte[] data, int length, boolean last) {
+        Callable<byte[]> task = new DeflateTask(
+                data,
+                length,
+                previous,
+                previousLength,
+                compressible ? level : Deflater.NO_COMPRESSION,
+                last);
+        previous       = data;
+        previousLength = length;
+        return task;
+    }
+
+    /**
+     * Write the 10-byte gzip header (no file name, no modification time).
+     */
+    @Override
+    protected void writeHeader(OutputStream out) throws IOException {
+        out.write(new byte[] {
+                (byte)0x1f, (byte)0x8b,   // Magic
+                Deflater.DEFLATED,        // Compression method
+                0,                        // Flags
+                0, 0, 0, 0,               // Modification time
+                0,                        // Extra flags
+                (byte)OS_UNKNOWN });
+    }
+
+    /**
+     * Write the gzip trailer (CRC-32 and uncompressed size modulo 2^32,
+     * both little-endian).
+     */
+    @Override
+    protected void writeTrailer(OutputStream out) throws IOException {
+        writeInt(out, crc.getValue());
+        writeInt(out, size);
+    }
+
+    /**
+     * Write the low-order 4 bytes of the input value in little-endian order.
+     *
+     * @param out The target stream.
+     * @param value The value to write.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    private static void writeInt(OutputStream out, long value)
+            throws IOException {
+        out.write((int)(value & 0xff));
+        out.write((int)((value >> 8) & 0xff));
+        out.write((int)((value >> 16) & 0xff));
+        out.write((int)((value >> 24) & 0xff));
+    }
+
+    /**
+     * Task that compresses a single block to raw deflate data.
+     */
+    private static class DeflateTask implements Callable<byte[]> {
+
+        /**
+         * The block data and the number of valid bytes in it.
+         */
+        private final byte[]  data;
+        private final int     length;
+        
+        /**
+         * The preceding block and the number of valid bytes in it.
+         */
+        private final byte[]  dictionary;
+        private final int     dictionaryLength;
+        
+        /**
+         * The compression level to apply.
+         */
+        private final int     level;
+        
+        /**
+         * True if this is the final block of the stream.
+         */
+        private final boolean last;
+
+        /**
+         * Constructor.
+         *
+         * @param data The block data.
+         * @param length The number of valid bytes in the block.
+         * @param dictionary The preceding block (may be null).
+         * @param dictionaryLength The number of valid bytes in the preceding
+         * block.
+         * @param level The compression level.
+         * @param last True if this is the final block of the stream.
+         */
+        public DeflateTask(
+                byte[] data,
+                int length,
+                byte[] dictionary,
+                int dictionaryLength,
+                int level,
+                boolean last) {
+            this.data             = data;
+            this.length           = length;
+            this.dictionary       = dictionary;
+            this.dictionaryLength = dictionaryLength;
+            this.level            = level;
+            this.last             = last;
+        }
+
+        @Override
+        public byte[] call() {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if ((dictionary != null) && (dictionaryLength > 0)) {
+                    int n = Math.min(DICTIONARY_SIZE, dictionaryLength);
+                    deflater.setDictionary(
+                            dictionary, dictionaryLength - n, n);
+                }
+                deflater.setInput(data, 0, length);
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(
+                        (length / 2) + 64);
+                byte[] buffer = new byte[16 * 1024];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int n = deflater.deflate(buffer);
+                        baos.write(buffer, 0, n);
+                    }
+                }
+                else {
+                    // A sync flush is complete once the deflater returns
+                    // less than a full buffer.
+                    int n;
+                    do {
+                        n = deflater.deflate(
+                                buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        baos.write(buffer, 0, n);
+                    } while (n == buffer.length);
+                }
+                return baos.toByteArray();
+            }
+            finally {
+                deflater.end();
+            }
+        }
+    }
+}
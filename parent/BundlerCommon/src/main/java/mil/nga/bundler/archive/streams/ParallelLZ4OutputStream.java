@@ -0,0 +1,112 @@
+package mil.nga.bundler.archive.streams;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+
+/**
+ * Output stream producing LZ4 data in the same manner as the
+ * <code>ParallelBZip2OutputStream</code>.  The input is split into 4 MB
+ * chunks and each chunk is compressed into a complete, independent LZ4
+ * frame on a worker thread.  The frames are concatenated in order.  The
+ * <code>lz4</code> command line tool decompresses concatenated frames as a
+ * single file; Java clients must enable concatenated frame support (i.e.
+ * <code>new FramedLZ4CompressorInputStream(in, true)</code>).
+ *
+ * @author L. Craig Carpenter
+ */
+public class ParallelLZ4OutputStream extends ParallelBlockOutputStream {
+
+    /**
+     * Default uncompressed chunk size.  This matches the largest LZ4 frame
+     * block size so each chunk is a single LZ4 block.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The LZ4 frame parameters used for each chunk.
+     */
+    private final FramedLZ4CompressorOutputStream.Parameters parameters;
+
+    /**
+     * The number of chunks submitted so far.
+     */
+    private long chunks = 0;
+
+    /**
+     * Construct a stream using the default chunk size and LZ4 settings.
+     *
+     * @param out The stream to which the LZ4 data is written.
+     * @param threads The number of worker threads.
+     */
+    public ParallelLZ4OutputStream(OutputStream out, int threads) {
+        this(out, threads, DEFAULT_BLOCK_SIZE,
+                FramedLZ4CompressorOutputStream.Parameters.DEFAULT);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param out The stream to which the LZ4 data is written.
+     * @param threads The number of worker threads.
+     * @param chunkSize The uncompressed chunk size.
+     * @param parameters The LZ4 frame parameters.
+     */
+    public ParallelLZ4OutputStream(
+            OutputStream out,
+            int threads,
+            int chunkSize,
+            FramedLZ4CompressorOutputStream.Parameters parameters) {
+        super(out, chunkSize, threads);
+        if (parameters == null) {
+            throw new IllegalArgumentException("LZ4 parameters are null.");
+        }
+        this.parameters = parameters;
+    }
+
+    /**
+     * Construct the task to compress the input chunk into a stand-alone
+     * LZ4 frame.  An empty final chunk produces no output unless it is the
+     * only chunk, in which case an empty LZ4 frame is written so the output
+     * is always a valid LZ4 file.
+     */
+    @Override
+    protected Callable<byte[]> createTask(
+            final byte[] data,
+            final int length,
+            boolean last) {
+        final boolean skip = (length == 0) && (chunks > 0);
+        chunks++;
+        return new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                if (skip) {
+                    return new byte[0];
+                }
+                ByteArrayOutputStream baos = new ByteArrayOutputStream(
+                        (length / 2) + 64);
+                try (FramedLZ4CompressorOutputStream lz4Out =
+                        new FramedLZ4CompressorOutputStream(
+                                baos, parameters)) {
+                    lz4Out.write(data, 0, length);
+                }
+                return baos.toByteArray();
+            }
+        };
+    }
+
+    /**
+     * Each chunk carries its own LZ4 frame header.
+     */
+    @Override
+    protected void writeHeader(OutputStream out) { }
+
+    /**
+     * Each chunk carries its own LZ4 frame end mark and checksum.
+     */
+    @Override
+    protected void writeTrailer(OutputStream out) { }
+}
@@ -0,0 +1,24 @@
+package mil.nga.bundler.exceptions;
+
+/**
+ * Exception raised when an unsupported archive planning strategy is 
+ * requested.
+ * 
+ * @author L. Craig Carpenter
+ */
+public class UnknownPlannerTypeException extends Exception {
+
+    /**
+     * Eclipse-generated serialVersionUID
+     */
+    private static final long serialVersionUID = 4721685902361047793L;
+
+    /** 
+     * Default constructor requiring a message String.
+     * @param msg Information identifying why the exception was raised.
+     */
+    public UnknownPlannerTypeException(String msg) {
+        super(msg);
+    }
+    
+}
@@ -0,0 +1,22 @@
+package mil.nga.bundler.interfaces;
+
+/**
+ * Interface implemented by compressor streams that are able to change the
+ * amount of effort spent compressing the data written to them.  The
+ * compressed TAR archivers use this interface to tell the compressor when
+ * the next archive entry contains data that is already compressed (and
+ * should therefore simply be stored).
+ *
+ * @author L. Craig Carpenter
+ */
+public interface AdaptiveCompressionI {
+
+    /**
+     * Identify whether or not the data that follows is worth compressing.
+     *
+     * @param compressible False if the data that follows is already
+     * compressed.
+     */
+    public void setCompressible(boolean compressible);
+
+}
@@ -0,0 +1,57 @@
+package mil.nga.bundler.interfaces;
+
+import java.util.List;
+
+import mil.nga.bundler.model.ArchiveElement;
+
+/**
+ * Interface implemented by the strategies used to divide the files of a 
+ * job into output archives.  Most planners work on the estimated 
+ * compressed size of each file only; planners that also consider where 
+ * the files are located use the files supplied to the second form of 
+ * <code>plan()</code>.
+ *
+ * @author L. Craig Carpenter
+ */
+public interface ArchivePlannerI {
+
+    /**
+     * Divide the input files into archives.  Each archive should stay 
+     * under the target size, except that a file larger than the target 
+     * size gets an archive of its own.  No more than 
+     * <code>maxArchives</code> archives may be produced; if the files 
+     * cannot fit in that many archives of the target size, the archives 
+     * grow beyond it.
+     *
+     * @param sizes The estimated compressed size of each file.
+     * @param targetSize The target size of each archive in bytes.
+     * @param maxArchives The maximum number of archives.
+     * @return The indexes (into <code>sizes</code>) of the files in each
+     * archive.  Every index appears exactly once, in ascending order 
+     * within each archive.
+     */
+    public List<List<Integer>> plan(
+            long[] sizes, 
+            long targetSize, 
+            long maxArchives);
+
+    /**
+     * Divide the input files into archives.  The limits are the same as 
+     * above, but the planner may use the files themselves (e.g. their 
+     * location) and may list the files of each archive in the order in 
+     * which they should be written rather than in ascending order.
+     *
+     * @param files The files to archive.
+     * @param sizes The estimated compressed size of each file.
+     * @param targetSize The target size of each archive in bytes.
+     * @param maxArchives The maximum number of archives.
+     * @return The indexes (into <code>files</code>) of the files in each
+     * archive.  Every index appears exactly once.
+     */
+    public List<List<Integer>> plan(
+            List<ArchiveElement> files,
+            long[] sizes, 
+            long targetSize, 
+            long maxArchives);
+
+}
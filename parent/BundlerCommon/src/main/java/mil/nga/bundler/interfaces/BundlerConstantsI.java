@@ -187,4 +187,244 @@ public interface BundlerConstantsI {
     public static final String TRACKER_DEST_Q = "queue/TrackerMessageQ";
     //public static final String TRACKER_DEST_Q = "queue/TrackerMessageQ_TEST";
     
+    /**
+     * Property identifying the number of worker threads the archivers may
+     * use for CPU-bound work (i.e. compression).  If not supplied, the
+     * number of available processors is used.
+     */
+    public static final String ARCHIVE_THREADS_PROPERTY =
+            "bundler.archive_threads";
+    
+    /**
+     * If this property is set to true, ZIP archives will be created by
+     * compressing the individual entries in parallel.
+     */
+    public static final String PARALLEL_ZIP_PROPERTY =
+            "bundler.parallel_zip";
+    
+    /**
+     * If this property is set to true, GZip compressed TAR archives will 
+     * be created by compressing blocks of the TAR stream in parallel.
+     */
+    public static final String PARALLEL_GZIP_PROPERTY =
+            "bundler.parallel_gzip";
+    
+    /**
+     * If this property is set to true, BZip2 compressed TAR archives will 
+     * be created by compressing the 900 KB BZip2 blocks in parallel.
+     */
+    public static final String PARALLEL_BZIP2_PROPERTY =
+            "bundler.parallel_bzip2";
+    
+    /**
+     * If this property is set to true, Zstandard compressed TAR archives 
+     * will be created using the native Zstandard worker threads.
+     */
+    public static final String PARALLEL_ZSTD_PROPERTY =
+            "bundler.parallel_zstd";
+    
+    /**
+     * Zstandard compression level (1 - 22).  Defaults to 3, which gives 
+     * ratios close to GZip at several times the throughput.
+     */
+    public static final String ZSTD_LEVEL_PROPERTY =
+            "bundler.zstd_level";
+    
+    /**
+     * If this property is set to true, LZ4 compressed TAR archives will be
+     * created by compressing blocks of the TAR stream in parallel.
+     */
+    public static final String PARALLEL_LZ4_PROPERTY =
+            "bundler.parallel_lz4";
+    
+    /**
+     * LZ4 compression level (1 - 9).  Level 1 (the default) is tuned for 
+     * speed, level 9 is tuned for compression ratio and anything in 
+     * between uses the balanced LZ4 settings.
+     */
+    public static final String LZ4_LEVEL_PROPERTY =
+            "bundler.lz4_level";
+    
+    /**
+     * Files that already contain compressed data (JPEG2000, NITF with a 
+     * compressed payload, ZIP, etc.) are stored rather than compressed 
+     * again.  Set this property to false to compress every file.
+     */
+    public static final String STORE_COMPRESSED_INPUTS_PROPERTY =
+            "bundler.store_compressed_inputs";
+    
+    /**
+     * Uncompressed archives (TAR, CPIO and AR) built on the local file 
+     * system move file contents with <code>FileChannel.transferTo</code>
+     * rather than copying them through the JVM heap.  Set this property 
+     * to false to always use the stream-based copy.
+     */
+    public static final String ZERO_COPY_PROPERTY =
+            "bundler.zero_copy";
+    
+    /**
+     * Comma-separated list of the hash types (e.g. "sha1,sha256,md5") 
+     * generated for each output archive.  A separate hash file is written
+     * for each type.  The SHA-1 hash is always generated, since that is
+     * the hash file returned to clients.
+     */
+    public static final String HASH_TYPES_PROPERTY =
+            "bundler.hash_types";
+    
+    /**
+     * When true, each archive is closed once the bytes actually written 
+     * reach the job's target archive size, and the files that did not fit
+     * are moved into a new archive (volume) for the same job.  This keeps
+     * the output sizes close to the target regardless of how well the 
+     * data compresses.
+     */
+    public static final String ROLLOVER_PROPERTY =
+            "bundler.rollover";
+    
+    /**
+     * Number of input files the ZIP and TAR (including compressed TAR) 
+     * archivers read ahead of the entry currently being written.  Reading 
+     * ahead overlaps the first-byte latency of S3 and NFS inputs with 
+     * writing the archive.  Zero (the default) disables the read-ahead.
+     */
+    public static final String PREFETCH_DEPTH_PROPERTY =
+            "bundler.prefetch_depth";
+    
+    /**
+     * Maximum amount of memory (in MB) used to hold read-ahead data for a 
+     * single archive.  Defaults to 32 MB.
+     */
+    public static final String PREFETCH_BUFFER_PROPERTY =
+            "bundler.prefetch_buffer_mb";
+    
+    /**
+     * When true, TAR archives (and ZIP archives in which every entry is 
+     * STORED) built on the local file system are assembled by computing 
+     * every header and offset up front and copying the file contents to 
+     * their offsets on several threads.  Defaults to false.
+     */
+    public static final String PARALLEL_ASSEMBLY_PROPERTY =
+            "bundler.parallel_assembly";
+    
+    /**
+     * Number of threads used to copy file contents during parallel 
+     * assembly.  The work is I/O bound so this is independent of the 
+     * number of processors.  Defaults to 4.
+     */
+    public static final String ASSEMBLY_THREADS_PROPERTY =
+            "bundler.assembly_threads";
+    
+    /**
+     * When true, the entries of compressed TAR archives are written 
+     * grouped by extension, then directory, then size rather than in 
+     * request order so that similar files fall within the compressor 
+     * window.  The entry paths are unchanged.  Defaults to false.
+     */
+    public static final String ORDER_ENTRIES_PROPERTY =
+            "bundler.order_entries";
+    
+    /**
+     * When true, the compressed size of each file is estimated by 
+     * deflating samples of its content rather than applying 
+     * <code>AVERAGE_COMPRESSION_PERCENTAGE</code> to every file.  Defaults
+     * to false.
+     */
+    public static final String COMPRESSION_SAMPLING_PROPERTY =
+            "bundler.compression_sampling";
+    
+    /**
+     * Number of threads used to sample files when estimating compressed 
+     * sizes.  The work is I/O bound so this is independent of the number 
+     * of processors.  Defaults to 8.
+     */
+    public static final String SAMPLING_THREADS_PROPERTY =
+            "bundler.sampling_threads";
+    
+    /**
+     * When true, the compression ratios achieved by completed archives are
+     * periodically learned (per archive type and file extension) and used
+     * by the compressed size estimates.  Defaults to false.
+     */
+    public static final String LEARNED_COMPRESSION_PROPERTY =
+            "bundler.learned_compression";
+    
+    /**
+     * Strategy used to divide the files of a job into archives.  One of 
+     * next_fit (the default, files are added in request order and an 
+     * archive is closed as soon as a file does not fit), 
+     * first_fit_decreasing, best_fit_decreasing, longest_processing_time, 
+     * or locality.  The bin-packing strategies produce fewer, fuller 
+     * archives.  The longest_processing_time strategy uses as few archives
+     * but balances their sizes so that archives processed in parallel 
+     * finish at about the same time.  The locality strategy groups files 
+     * by source directory (or S3 key prefix) and size before packing.
+     */
+    public static final String ARCHIVE_PLANNER_PROPERTY =
+            "bundler.archive_planner";
+    
+    /**
+     * Directory holding the cache of compressed ZIP entries.  Frequently 
+     * bundled files are deflated once and their compressed form is copied
+     * into later archives.  If not supplied, entries are not cached.
+     */
+    public static final String CHUNK_CACHE_DIR_PROPERTY =
+            "bundler.chunk_cache_dir";
+    
+    /**
+     * Maximum total size (in MB) of the cache of compressed ZIP entries.  
+     * The least recently used entries are evicted first.  Defaults to 
+     * 10240 (10 GB).
+     */
+    public static final String CHUNK_CACHE_SIZE_PROPERTY =
+            "bundler.chunk_cache_size_mb";
+    
+    /**
+     * Number of requested files validated concurrently on each file 
+     * system.  Defaults to 8.  The value may be set per URI scheme by 
+     * appending the scheme to the property name (e.g. 
+     * bundler.validation_threads.s3=32).
+     */
+    public static final String VALIDATION_THREADS_PROPERTY =
+            "bundler.validation_threads";
+    
+    /**
+     * Time (in seconds) for which the metadata (existence, size and 
+     * modification time) of validated files is cached and reused by later
+     * requests.  Defaults to 0, which disables the cache.
+     */
+    public static final String METADATA_CACHE_TTL_PROPERTY =
+            "bundler.metadata_cache_ttl_sec";
+    
+    /**
+     * Time (in seconds) for which files found not to exist are cached.  
+     * Defaults to the value of bundler.metadata_cache_ttl_sec.  A value 
+     * of 0 disables negative caching.
+     */
+    public static final String METADATA_CACHE_NEGATIVE_TTL_PROPERTY =
+            "bundler.metadata_cache_negative_ttl_sec";
+    
+    /**
+     * Maximum number of files held in the metadata cache.  The least 
+     * recently used entries are evicted first.  Defaults to 100000.
+     */
+    public static final String METADATA_CACHE_SIZE_PROPERTY =
+            "bundler.metadata_cache_size";
+    
+    /**
+     * If true, the directories of cached local files are watched and the
+     * entries of files that change are invalidated immediately.  Defaults
+     * to false.
+     */
+    public static final String METADATA_CACHE_WATCH_PROPERTY =
+            "bundler.metadata_cache_watch";
+    
+    /**
+     * Maximum number of files held in the cache of expanded directory 
+     * listings.  Requests for a cached directory only check the 
+     * modification times of the directories in the tree and re-list those
+     * that changed.  Defaults to 0, which disables the cache.
+     */
+    public static final String LISTING_CACHE_SIZE_PROPERTY =
+            "bundler.listing_cache_max_files";
+    
 }
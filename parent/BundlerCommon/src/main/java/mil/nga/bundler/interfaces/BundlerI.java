@@ -2,10 +2,13 @@ package mil.nga.bundler.interfaces;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import mil.nga.bundler.exceptions.ArchiveException;
 import mil.nga.bundler.model.ArchiveElement;
+import mil.nga.bundler.types.HashType;
 
 /**
  * Interface implemented by all of the archive/compressor classes.
@@ -39,4 +42,60 @@ public interface BundlerI {
     public void bundle(List<ArchiveElement> files, URI outputFile) 
             throws ArchiveException, IOException;
     
+    /**
+     * Request that a hash of the output archive be calculated as the 
+     * archive is written.  Must be called before <code>bundle()</code>.
+     * 
+     * @param hashType The type of hash to calculate.  Null disables hash 
+     * calculation (the default).
+     */
+    public void setHashType(HashType hashType);
+    
+    /**
+     * Request that several hashes of the output archive be calculated (in 
+     * a single pass) as the archive is written.  Must be called before 
+     * <code>bundle()</code>.
+     * 
+     * @param hashTypes The types of hash to calculate.  Null or empty 
+     * disables hash calculation.
+     */
+    public void setHashTypes(Collection<HashType> hashTypes);
+    
+    /**
+     * Retrieve the hash of the most recently created output archive.
+     * 
+     * @return The hash as a lower-case hex string, or null if no hash type
+     * was requested or the hash could not be calculated.
+     */
+    public String getHash();
+    
+    /**
+     * Retrieve all of the hashes of the most recently created output 
+     * archive.
+     * 
+     * @return Map of hash type to lower-case hex string.  Empty if no hash
+     * types were requested.
+     */
+    public Map<HashType, String> getHashes();
+    
+    /**
+     * Set the target size of the output archive.  Once the bytes written 
+     * to the output file reach the target, no further entries are added.
+     * Must be called before <code>bundle()</code>.
+     * 
+     * @param volumeSize The target size in bytes.  Zero (the default) 
+     * means no limit.
+     */
+    public void setVolumeSize(long volumeSize);
+    
+    /**
+     * Retrieve the number of input files included in the most recently 
+     * created output archive.  If this is less than the size of the input
+     * list, the trailing files did not fit in the target volume size and 
+     * must be bundled into another archive.
+     * 
+     * @return The number of files bundled.
+     */
+    public int getNumBundled();
+    
 }
@@ -0,0 +1,170 @@
+package mil.nga.bundler.planner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import mil.nga.bundler.interfaces.ArchivePlannerI;
+import mil.nga.bundler.model.ArchiveElement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Abstract base class for the archive planning strategies.  Subclasses 
+ * implement <code>pack()</code>, which divides the files into archives of
+ * a fixed capacity.  This class enforces the limit on the number of 
+ * archives by repacking with a larger capacity when required, and puts 
+ * the output into a stable order (files in request order within each 
+ * archive, archives ordered by their first file).
+ * 
+ * @author L. Craig Carpenter
+ */
+public abstract class ArchivePlanner implements ArchivePlannerI {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */        
+    static final Logger LOGGER = LoggerFactory.getLogger(
+            ArchivePlanner.class);
+    
+    /**
+     * Divide the input files into archives.  See 
+     * <code>ArchivePlannerI</code>.
+     * 
+     * @param sizes The estimated compressed size of each file.
+     * @param targetSize The target size of each archive in bytes.
+     * @param maxArchives The maximum number of archives (values less than
+     * 1 disable the limit).
+     * @return The indexes of the files in each archive.
+     */
+    @Override
+    public List<List<Integer>> plan(
+            long[] sizes, 
+            long targetSize, 
+            long maxArchives) {
+        
+        long                startTime = System.currentTimeMillis();
+        List<List<Integer>> archives  = new ArrayList<List<Integer>>();
+        
+        if ((sizes != null) && (sizes.length > 0)) {
+            
+            long capacity = Math.max(1L, targetSize);
+            archives = pack(sizes, capacity);
+            
+            if ((maxArchives > 0) && (archives.size() > maxArchives)) {
+                long total = 0L;
+                for (long size : sizes) {
+                    total += Math.max(0L, size);
+                }
+                capacity = Math.max(capacity, (total / maxArchives) + 1L);
+                archives = pack(sizes, capacity);
+                while (archives.size() > maxArchives) {
+                    capacity += (capacity / 10L) + 1L;
+                    archives = pack(sizes, capacity);
+                }
+                LOGGER.warn("The files do not fit in [ "
+                        + maxArchives
+                        + " ] archives of the target size [ "
+                        + targetSize
+                        + " ].  Archive size increased to [ "
+                        + capacity
+                        + " ].");
+            }
+            
+            for (List<Integer> archive : archives) {
+                Collections.sort(archive);
+            }
+            Collections.sort(archives, new Comparator<List<Integer>>() {
+                @Override
+                public int compare(List<Integer> a1, List<Integer> a2) {
+                    return a1.get(0).compareTo(a2.get(0));
+                }
+            });
+        }
+        
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug(getClass().getSimpleName()
+                    + " planned [ "
+                    + archives.size()
+                    + " ] archives for [ "
+                    + ((sizes == null) ? 0 : sizes.length)
+                    + " ] files in [ "
+                    + (System.currentTimeMillis() - startTime)
+                    + " ] ms.");
+        }
+        return archives;
+    }
+    
+    /**
+     * Divide the input files into archives.  By default the files 
+     * themselves are not considered.  See <code>ArchivePlannerI</code>.
+     * 
+     * @param files The files to archive.
+     * @param sizes The estimated compressed size of each file.
+     * @param targetSize The target size of each archive in bytes.
+     * @param maxArchives The maximum number of archives.
+     * @return The indexes of the files in each archive.
+     */
+    @Override
+    public List<List<Integer>> plan(
+            List<ArchiveElement> files,
+            long[] sizes, 
+            long targetSize, 
+            long maxArchives) {
+        return plan(sizes, targetSize, maxArchives);
+    }
+    
+    /**
+     * Divide the input files into archives of the input capacity.  A file
+     * that does not fit in an empty archive must get an archive of its 
+     * own.
+     * 
+     * @param sizes The estimated compressed size of each file.
+     * @param capacity The capacity of each archive in bytes.
+     * @return The indexes of the files in each archive (in any order).
+     */
+    protected abstract List<List<Integer>> pack(long[] sizes, long capacity);
+    
+    /**
+     * Determine whether a file fits in an archive.  As in the original 
+     * planner, an archive must stay strictly below its capacity, but an 
+     * empty archive accepts any file.
+     * 
+     * @param archive The files already in the archive.
+     * @param load The estimated size of the archive.
+     * @param size The estimated size of the file.
+     * @param capacity The capacity of the archive.
+     * @return True if the file fits.
+     */
+    protected static boolean fits(
+            List<Integer> archive, 
+            long load, 
+            long size, 
+            long capacity) {
+        return archive.isEmpty() || (load + size < capacity);
+    }
+    
+    /**
+     * Get the indexes of the input sizes ordered from largest to 
+     * smallest.  Files of equal size stay in request order.
+     * 
+     * @param sizes The estimated compressed size of each file.
+     * @return The indexes in decreasing size order.
+     */
+    protected static Integer[] getDecreasingOrder(final long[] sizes) {
+        Integer[] order = new Integer[sizes.length];
+        for (int i=0; i<order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                return Long.compare(sizes[i2], sizes[i1]);
+            }
+        });
+        return order;
+    }
+}
@@ -0,0 +1,101 @@
+package mil.nga.bundler.planner;
+
+import mil.nga.bundler.interfaces.ArchivePlannerI;
+import mil.nga.bundler.types.PlannerType;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simple factory class that returns the concrete archive planner for the
+ * requested planning strategy.
+ * 
+ * @author L. Craig Carpenter
+ */
+public class ArchivePlannerFactory {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */        
+    static final Logger LOGGER = LoggerFactory.getLogger(
+            ArchivePlannerFactory.class);
+    
+    /**
+     * Hidden constructor enforcing the singleton design pattern.
+     */
+    private ArchivePlannerFactory() { }
+    
+    /**
+     * Getter method for the singleton instance of the ArchivePlannerFactory.
+     * @return Handle to the singleton instance of the ArchivePlannerFactory.
+     */
+    public static ArchivePlannerFactory getInstance() {
+        return ArchivePlannerFactoryHolder.getFactorySingleton();
+    }
+    
+    /**
+     * Construct the planner for the requested strategy.
+     * 
+     * @param type The planning strategy.  If null, the original 
+     * next-fit strategy is used.
+     * @return The concrete planner.
+     */
+    public ArchivePlannerI getPlanner(PlannerType type) {
+        
+        ArchivePlannerI planner = null;
+        
+        if (type == null) {
+            type = PlannerType.NEXT_FIT;
+        }
+        switch (type) {
+            case FIRST_FIT_DECREASING:
+                planner = new FirstFitDecreasingPlanner();
+                break;
+            case BEST_FIT_DECREASING:
+                planner = new BestFitDecreasingPlanner();
+                break;
+            case LONGEST_PROCESSING_TIME:
+                planner = new LongestProcessingTimePlanner();
+                break;
+            case LOCALITY:
+                planner = new LocalityPlanner();
+                break;
+            default:
+                planner = new NextFitPlanner();
+                break;
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Archive planner [ "
+                    + planner.getClass().getSimpleName()
+                    + " ] selected for strategy [ "
+                    + type.getText()
+                    + " ].");
+        }
+        return planner;
+    }
+    
+    /** 
+     * Static inner class used to construct the factory singleton.  This
+     * class exploits that fact that inner classes are not loaded until they 
+     * referenced therefore enforcing thread safety without the performance 
+     * hit imposed by the use of the "synchronized" keyword.
+     * 
+     * @author L. Craig Carpenter
+     */
+    public static class ArchivePlannerFactoryHolder {
+        
+        /**
+         * Reference to the Singleton instance of the factory
+         */
+        private static ArchivePlannerFactory factory = 
+                new ArchivePlannerFactory();
+        
+        /**
+         * Accessor method for the singleton instance of the factory object.
+         * @return The singleton instance of the factory.
+         */
+        public static ArchivePlannerFactory getFactorySingleton() {
+            return factory;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package mil.nga.bundler.planner;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Best-fit-decreasing bin packing.  Files are taken from largest to 
+ * smallest and each is added to the archive with the least room left that 
+ * can still hold it.  This has the same worst case as first-fit-decreasing
+ * but tends to leave fewer, fuller archives.  Open archives are indexed by
+ * their remaining room so each file is placed in O(log n) time.
+ * 
+ * @author L. Craig Carpenter
+ */
+public class BestFitDecreasingPlanner extends ArchivePlanner {
+
+    /**
+     * Pack the files largest first into the tightest archive with room.
+     * 
+     * @param sizes The estimated compressed size of each file.
+     * @param capacity The capacity of each archive in bytes.
+     * @return The indexes of the files in each archive.
+     */
+    @Override
+    protected List<List<Integer>> pack(long[] sizes, long capacity) {
+        
+        List<List<Integer>> archives = new ArrayList<List<Integer>>();
+        List<Long>          loads    = new ArrayList<Long>();
+        
+        // Archives with room left, keyed by the room left.
+        TreeMap<Long, Deque<Integer>> open = 
+                new TreeMap<Long, Deque<Integer>>();
+        
+        for (int index : getDecreasingOrder(sizes)) {
+            long size = Math.max(0L, sizes[index]);
+            
+            // A file fits if the archive's load plus the file stays 
+            // strictly below the capacity, i.e. room > size.
+            int target = -1;
+            Map.Entry<Long, Deque<Integer>> entry = open.higherEntry(size);
+            if (entry != null) {
+                target = entry.getValue().removeFirst();
+                if (entry.getValue().isEmpty()) {
+                    open.remove(entry.getKey());
+                }
+            }
+            else {
+                archives.add(new ArrayList<Integer>());
+                loads.add(0L);
+                target = archives.size() - 1;
+            }
+            
+            archives.get(target).add(index);
+            loads.set(target, loads.get(target) + size);
+            long room = capacity - loads.get(target);
+            if (room > 0) {
+                Deque<Integer> bins = open.get(room);
+                if (bins == null) {
+                    bins = new ArrayDeque<Integer>();
+                    open.put(room, bins);
+                }
+                bins.addLast(target);
+            }
+        }
+        return archives;
+    }
+}
@@ -0,0 +1,46 @@
+package mil.nga.bundler.planner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * First-fit-decreasing bin packing.  Files are taken from largest to 
+ * smallest and each is added to the first archive it fits in, starting a
+ * new archive only when it fits in none of them.  The small files fill 
+ * the space left over by the large ones, so the number of archives is 
+ * never more than 11/9 of the optimum (plus one).
+ * 
+ * @author L. Craig Carpenter
+ */
+public class FirstFitDecreasingPlanner extends ArchivePlanner {
+
+    /**
+     * Pack the files largest first into the first archive with room.
+     * 
+     * @param sizes The estimated compressed size of each file.
+     * @param capacity The capacity of each archive in bytes.
+     * @return The indexes of the files in each archive.
+     */
+    @Override
+    protected List<List<Integer>> pack(long[] sizes, long capacity) {
+        List<List<Integer>> archives = new ArrayList<List<Integer>>();
+        List<Long>          loads    = new ArrayList<Long>();
+        for (int index : getDecreasingOrder(sizes)) {
+            int target = -1;
+            for (int i=0; i<archives.size(); i++) {
+                if (fits(archives.get(i), loads.get(i), sizes[index], capacity)) {
+                    target = i;
+                    break;
+                }
+            }
+            if (target < 0) {
+                archives.add(new ArrayList<Integer>());
+                loads.add(0L);
+                target = archives.size() - 1;
+            }
+            archives.get(target).add(index);
+            loads.set(target, loads.get(target) + sizes[index]);
+        }
+        return archives;
+    }
+}
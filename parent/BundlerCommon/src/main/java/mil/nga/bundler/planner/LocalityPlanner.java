@@ -0,0 +1,112 @@
+package mil.nga.bundler.planner;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import mil.nga.bundler.model.ArchiveElement;
+
+/**
+ * Locality-aware planning.  Files are grouped by the directory (or S3 key
+ * prefix) that contains them, and by size within each group, before being
+ * packed in that order.  Each archive then reads from as few source 
+ * directories as possible, and reads them contiguously, which helps 
+ * file system readahead, NFS attribute caching and S3 connection reuse 
+ * on the archiver side.  The files within each archive are listed in the
+ * same grouped order.  If the files are not supplied, the planner falls 
+ * back to packing in request order.
+ * 
+ * @author L. Craig Carpenter
+ */
+public class LocalityPlanner extends NextFitPlanner {
+
+    /**
+     * Divide the input files into archives, grouping them by location.
+     * 
+     * @param files The files to archive.
+     * @param sizes The estimated compressed size of each file.
+     * @param targetSize The target size of each archive in bytes.
+     * @param maxArchives The maximum number of archives.
+     * @return The indexes of the files in each archive, in grouped order.
+     */
+    @Override
+    public List<List<Integer>> plan(
+            List<ArchiveElement> files,
+            long[] sizes, 
+            long targetSize, 
+            long maxArchives) {
+        
+        if ((files == null) || (sizes == null) || 
+                (files.size() != sizes.length)) {
+            return plan(sizes, targetSize, maxArchives);
+        }
+        
+        Integer[] order   = getLocalityOrder(files, sizes);
+        long[]    ordered = new long[sizes.length];
+        for (int i=0; i<order.length; i++) {
+            ordered[i] = sizes[order[i]];
+        }
+        List<List<Integer>> archives = plan(ordered, targetSize, maxArchives);
+        for (List<Integer> archive : archives) {
+            for (int i=0; i<archive.size(); i++) {
+                archive.set(i, order[archive.get(i)]);
+            }
+        }
+        return archives;
+    }
+    
+    /**
+     * Get the location of a file.  This is the URI of the file up to and 
+     * including the last "/", i.e. the parent directory of a file on disk
+     * or the key prefix of an S3 object.
+     * 
+     * @param element The file.
+     * @return The location of the file (an empty String if unknown).
+     */
+    public static String getLocation(ArchiveElement element) {
+        URI uri = element.getURI();
+        if (uri == null) {
+            return "";
+        }
+        String path = uri.toString();
+        return path.substring(0, path.lastIndexOf('/') + 1);
+    }
+    
+    /**
+     * Get the indexes of the input files ordered by location, then size, 
+     * then URI.
+     * 
+     * @param files The files to archive.
+     * @param sizes The estimated compressed size of each file.
+     * @return The indexes in grouped order.
+     */
+    private static Integer[] getLocalityOrder(
+            List<ArchiveElement> files, 
+            final long[] sizes) {
+        
+        final String[] locations = new String[sizes.length];
+        final String[] uris      = new String[sizes.length];
+        Integer[]      order     = new Integer[sizes.length];
+        for (int i=0; i<order.length; i++) {
+            order[i]     = i;
+            locations[i] = getLocation(files.get(i));
+            uris[i]      = (files.get(i).getURI() == null) ? 
+                    "" : files.get(i).getURI().toString();
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer i1, Integer i2) {
+                int result = locations[i1].compareTo(locations[i2]);
+                if (result == 0) {
+                    result = Long.compare(sizes[i1], sizes[i2]);
+                }
+                if (result == 0) {
+                    result = uris[i1].compareTo(uris[i2]);
+                }
+                return result;
+            }
+        });
+        return order;
+    }
+}
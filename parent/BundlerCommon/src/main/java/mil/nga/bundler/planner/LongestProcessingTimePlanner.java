@@ -0,0 +1,111 @@
+package mil.nga.bundler.planner;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Makespan-balanced planning.  A job is not complete until its largest 
+ * archive is complete, so rather than filling each archive in turn this 
+ * planner spreads the estimated compressed bytes evenly across the 
+ * archives.  The number of archives is the number needed by 
+ * first-fit-decreasing; files are then taken from largest to smallest and
+ * each is added to the archive with the least data so far 
+ * (longest-processing-time-first scheduling).  If a file would push the 
+ * least-loaded archive to the target size, the files are spread across 
+ * one more archive and the process is repeated.
+ * 
+ * @author L. Craig Carpenter
+ */
+public class LongestProcessingTimePlanner extends ArchivePlanner {
+
+    /**
+     * Balance the files across the fewest archives that hold them.
+     * 
+     * @param sizes The estimated compressed size of each file.
+     * @param capacity The capacity of each archive in bytes.
+     * @return The indexes of the files in each archive.
+     */
+    @Override
+    protected List<List<Integer>> pack(long[] sizes, long capacity) {
+        Integer[]           order    = getDecreasingOrder(sizes);
+        int                 count    = new FirstFitDecreasingPlanner()
+                                            .pack(sizes, capacity).size();
+        List<List<Integer>> archives = balance(sizes, order, capacity, count);
+        while (archives == null) {
+            count++;
+            archives = balance(sizes, order, capacity, count);
+        }
+        return archives;
+    }
+    
+    /**
+     * Assign the files (largest first) to the least-loaded of a fixed 
+     * number of archives.
+     * 
+     * @param sizes The estimated compressed size of each file.
+     * @param order The file indexes in decreasing size order.
+     * @param capacity The capacity of each archive in bytes.
+     * @param count The number of archives.
+     * @return The indexes of the files in each archive, or null if a file 
+     * did not fit in the least-loaded archive.
+     */
+    private List<List<Integer>> balance(
+            long[] sizes, 
+            Integer[] order, 
+            long capacity, 
+            int count) {
+        
+        PriorityQueue<Bin> bins = new PriorityQueue<Bin>(
+                Math.max(1, count), 
+                new Comparator<Bin>() {
+                    @Override
+                    public int compare(Bin b1, Bin b2) {
+                        int result = Long.compare(b1.load, b2.load);
+                        if (result == 0) {
+                            result = Integer.compare(
+                                    b1.files.size(), b2.files.size());
+                        }
+                        if (result == 0) {
+                            result = Integer.compare(b1.id, b2.id);
+                        }
+                        return result;
+                    }
+                });
+        for (int i=0; i<count; i++) {
+            bins.add(new Bin(i));
+        }
+        for (int index : order) {
+            Bin bin = bins.poll();
+            if (!fits(bin.files, bin.load, sizes[index], capacity)) {
+                return null;
+            }
+            bin.files.add(index);
+            bin.load += sizes[index];
+            bins.add(bin);
+        }
+        
+        List<List<Integer>> archives = new ArrayList<List<Integer>>();
+        for (Bin bin : bins) {
+            if (!bin.files.isEmpty()) {
+                archives.add(bin.files);
+            }
+        }
+        return archives;
+    }
+    
+    /**
+     * An archive under construction.
+     */
+    private static class Bin {
+        
+        private final int           id;
+        private final List<Integer> files = new ArrayList<Integer>();
+        private long                load  = 0L;
+        
+        private Bin(int id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package mil.nga.bundler.planner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The original planning strategy.  Files are taken in request order and 
+ * added to the current archive until one does not fit, at which point the
+ * current archive is closed and a new one started.  Closed archives are 
+ * never revisited, so a job can end up with many partly-filled archives.
+ * 
+ * @author L. Craig Carpenter
+ */
+public class NextFitPlanner extends ArchivePlanner {
+
+    /**
+     * Pack the files in request order.
+     * 
+     * @param sizes The estimated compressed size of each file.
+     * @param capacity The capacity of each archive in bytes.
+     * @return The indexes of the files in each archive.
+     */
+    @Override
+    protected List<List<Integer>> pack(long[] sizes, long capacity) {
+        List<List<Integer>> archives = new ArrayList<List<Integer>>();
+        List<Integer>       current  = new ArrayList<Integer>();
+        long                load     = 0L;
+        for (int i=0; i<sizes.length; i++) {
+            if (!fits(current, load, sizes[i], capacity)) {
+                archives.add(current);
+                current = new ArrayList<Integer>();
+                load    = 0L;
+            }
+            current.add(i);
+            load += sizes[i];
+        }
+        archives.add(current);
+        return archives;
+    }
+}
@@ -14,7 +14,9 @@ public enum ArchiveType {
     GZIP("gz"),
     BZIP2("bz2"),
     CPIO("cpio"),
-    AR("ar");
+    AR("ar"),
+    ZSTD("zst"),
+    LZ4("lz4");
     
     /**
      * The text field.
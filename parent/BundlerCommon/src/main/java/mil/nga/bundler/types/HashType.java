@@ -8,24 +8,41 @@ import mil.nga.bundler.exceptions.UnknownHashTypeException;
  * @author L. Craig Carpenter
  */
 public enum HashType {
-    MD5("md5"),
-    SHA1("sha1"),
-    SHA256("sha256"),
-    SHA384("sha384"),
-    SHA512("sha512");
+    MD5("md5", "MD5"),
+    SHA1("sha1", "SHA-1"),
+    SHA256("sha256", "SHA-256"),
+    SHA384("sha384", "SHA-384"),
+    SHA512("sha512", "SHA-512");
     
     /**
      * The text field.
      */
     private final String text;
     
+    /**
+     * The JCA algorithm name.
+     */
+    private final String algorithm;
+    
     /**
      * Default constructor.
      * 
      * @param text Text associated with the enumeration value.
+     * @param algorithm The JCA name of the digest algorithm.
      */
-    private HashType(String text) {
+    private HashType(String text, String algorithm) {
         this.text = text;
+        this.algorithm = algorithm;
+    }
+    
+    /**
+     * Getter method for the name of the algorithm as expected by 
+     * <code>java.security.MessageDigest.getInstance()</code>.
+     * 
+     * @return The JCA algorithm name.
+     */
+    public String getAlgorithm() {
+        return this.algorithm;
     }
     
     /**
@@ -0,0 +1,64 @@
+package mil.nga.bundler.types;
+
+import mil.nga.bundler.exceptions.UnknownPlannerTypeException;
+
+/**
+ * Enumeration type identifying the strategies available for dividing the 
+ * files of a job into output archives.
+ * 
+ * @author L. Craig Carpenter
+ */
+public enum PlannerType {
+    NEXT_FIT("next_fit"),
+    FIRST_FIT_DECREASING("first_fit_decreasing"),
+    BEST_FIT_DECREASING("best_fit_decreasing"),
+    LONGEST_PROCESSING_TIME("longest_processing_time"),
+    LOCALITY("locality");
+    
+    /**
+     * The text field.
+     */
+    private final String text;
+    
+    /**
+     * Default constructor
+     * @param text Text associated with the enumeration value.
+     */
+    private PlannerType(String text) {
+        this.text = text;
+    }
+    
+    /**
+     * Getter method for the text associated with the enumeration value.
+     * 
+     * @return The text associated with the instanced enumeration type.
+     */
+    public String getText() {
+        return this.text;
+    }
+    
+    /**
+     * Convert an input String to it's associated enumeration type.  There
+     * is no default type, if an unknown value is supplied an exception is
+     * raised.
+     * 
+     * @param text Input text information
+     * @return The appropriate PlannerType enum value.
+     * @throws UnknownPlannerTypeException Thrown if the caller submitted a 
+     * String that did not match one of the existing PlannerTypes. 
+     */
+    public static PlannerType fromString(String text) 
+            throws UnknownPlannerTypeException {
+        if (text != null) {
+            for (PlannerType type : PlannerType.values()) {
+                if (text.trim().equalsIgnoreCase(type.getText())) {
+                    return type;
+                }
+            }
+        }
+        throw new UnknownPlannerTypeException("Unknown planner type "
+                + "requested!  Planner requested [ " 
+                + text
+                + " ].");
+    }
+}
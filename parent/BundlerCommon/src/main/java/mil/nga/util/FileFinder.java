@@ -5,22 +5,32 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 
+import mil.nga.util.ParallelFileWalker.PathConsumer;
+
 /**
  * This class implements logic that works much like the UNIX "find" command.
  * Clients must supply a starting path location and a pattern to match.  
  * This class will then walk through the file tree looking for files that
  * match the input pattern.
  * 
+ * The file tree is walked concurrently by the 
+ * <code>ParallelFileWalker</code>.  The methods accepting a 
+ * <code>PathConsumer</code> stream their results as they are found; the 
+ * methods returning lists sort the results so their output does not 
+ * depend on the order in which the workers complete.
+ * 
  * Note: This class will only work in Java 1.7 or above.
  * 
  * @author L. Craig Carpenter
@@ -38,13 +48,47 @@ public class FileFinder {
     public static List<Path> find(URI uri, String pattern) 
             throws IOException {
         
-        Path start = null;
-
-        start = Paths.get(uri);
+        final Queue<Path> matches = new ConcurrentLinkedQueue<Path>();
+        find(uri, pattern, new PathConsumer() {
+            @Override
+            public void accept(Path path, BasicFileAttributes attrs) {
+                matches.add(path);
+            }
+        });
+        if (matches.isEmpty()) {
+            return null;
+        }
+        List<Path> results = new ArrayList<Path>(matches);
+        Collections.sort(results);
+        return results;
+    }
+    
+    /**
+     * Execute a search on the filesystem for files and directories that 
+     * match the input pattern, passing each match to the consumer as it 
+     * is found.
+     * 
+     * @param uri The starting location for the search.
+     * @param pattern The file pattern to look for.
+     * @param consumer The (thread safe) consumer of the matches.
+     * @exception IOException Thrown if the pattern is not defined.
+     */
+    public static void find(
+            URI uri, 
+            String pattern, 
+            final PathConsumer consumer) throws IOException {
         
-        Finder finder = new Finder(uri, pattern);
-        Files.walkFileTree(start, finder);
-        return finder.getResults();
+        final Finder finder = new Finder(uri, pattern);
+        ParallelFileWalker.getInstance().walk(
+                Paths.get(uri), 
+                new PathConsumer() {
+                    @Override
+                    public void accept(Path path, BasicFileAttributes attrs) {
+                        if (finder.matches(path)) {
+                            consumer.accept(path, attrs);
+                        }
+                    }
+                });
     }
     
     /**
@@ -115,8 +159,7 @@ public class FileFinder {
          * @param file The file to perform the comparison against.
          */
         public void find(Path file) {
-            Path name = file.getFileName();
-            if ((name != null) && (_matcher.matches(name))) {
+            if (matches(file)) {
                 if (_matches == null) {
                     _matches = new ArrayList<Path>();
                 }
@@ -124,6 +167,18 @@ public class FileFinder {
             }
         }
         
+        /**
+         * Compares the glob pattern against the file and/or directory name 
+         * without recording the result.  This method is thread safe.
+         * 
+         * @param file The file to perform the comparison against.
+         * @return True if the name of the file matches the pattern.
+         */
+        public boolean matches(Path file) {
+            Path name = file.getFileName();
+            return ((name != null) && (_matcher.matches(name)));
+        }
+        
         /**
          * Accessor method for the results of the search.
          * 
@@ -241,24 +296,63 @@ public class FileFinder {
      * @throws IOException Thrown in conjunction with any issues walking the 
      * file tree.
      */
-    public static List<URI> listFiles(URI uri) throws IOException {
-        Path path= Paths.get(uri);
-        final List<Path> files=new ArrayList<>();
-        try {
-             Files.walkFileTree(path, new SimpleFileVisitor<Path>(){
-             @Override
-             public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                  if(!attrs.isDirectory()){
-                       files.add(file);
-                  }
-                  return FileVisitResult.CONTINUE;
-              }
-             });
-        } 
-        catch (IOException e) {
-             e.printStackTrace();
+    public static List<URI> listFiles(final URI uri) throws IOException {
+        final Queue<URI> files = new ConcurrentLinkedQueue<URI>();
+        listFiles(uri, new PathConsumer() {
+            @Override
+            public void accept(Path path, BasicFileAttributes attrs) {
+                files.add(getURI(path, uri));
+            }
+        });
+        List<URI> uris = new ArrayList<URI>(files);
+        Collections.sort(uris);
+        return uris;
+    }
+    
+    /**
+     * Walk the directory tree identified by the input <code>URI</code>, 
+     * passing each file (but not the directories) to the consumer as it 
+     * is found.
+     * 
+     * @param uri URI identifying a target directory. 
+     * @param consumer The (thread safe) consumer of the files.
+     * @throws IOException Thrown in conjunction with any issues walking the 
+     * file tree.
+     */
+    public static void listFiles(URI uri, final PathConsumer consumer) 
+            throws IOException {
+        ParallelFileWalker.getInstance().walk(
+                Paths.get(uri), 
+                new PathConsumer() {
+                    @Override
+                    public void accept(Path path, BasicFileAttributes attrs) {
+                        if (!attrs.isDirectory()) {
+                            consumer.accept(path, attrs);
+                        }
+                    }
+                });
+    }
+    
+    /**
+     * Variant of <code>listFiles()</code> that lists S3 directories with 
+     * the supplied metadata provider (one bulk listing of the prefix 
+     * rather than a walk of the file tree).  The provider retains the 
+     * size of each object listed so subsequent validation of those 
+     * objects requires no further requests.  Other URIs are walked as 
+     * before.
+     * 
+     * @param uri URI identifying a target directory. 
+     * @param provider Metadata provider for S3 URIs (may be null).
+     * @return List of URI objects pointing to files that fall below the 
+     * target directory.  
+     * @throws IOException Thrown in conjunction with any issues listing 
+     * the files.
+     */
+    public static List<URI> listFiles(URI uri, S3MetadataProvider provider) 
+            throws IOException {
+        if ((provider != null) && (S3MetadataProvider.isS3(uri))) {
+            return provider.listFiles(uri);
         }
-              
-        return toURIList(files, uri);
+        return listFiles(uri);
     }
 }
@@ -0,0 +1,207 @@
+package mil.nga.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walks a file tree using a <code>ForkJoinPool</code>.  Each directory is
+ * listed by its own task; the subdirectories found are forked onto the
+ * deque of the worker that found them, so each worker descends depth
+ * first while idle workers steal the shallowest pending directories
+ * from the others.  On high latency file systems (e.g. NFS) this keeps
+ * several directory listings in flight at once, where
+ * <code>Files.walkFileTree()</code> issues them one at a time.
+ *
+ * Results are streamed to a <code>PathConsumer</code> as they are found
+ * rather than accumulated.  The consumer is invoked concurrently from the
+ * worker threads, in no particular order, so it must be thread safe.
+ * As with <code>Files.walkFileTree()</code>, symbolic links are not
+ * followed and entries that cannot be read are logged and skipped.
+ *
+ * @author L. Craig Carpenter
+ */
+public class ParallelFileWalker {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            ParallelFileWalker.class);
+
+    /**
+     * Default number of directories listed concurrently.  Listing is
+     * I/O bound, so this is independent of the number of processors.
+     */
+    public static final int DEFAULT_PARALLELISM = 8;
+
+    /**
+     * The pool executing the directory tasks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Default constructor.
+     */
+    private ParallelFileWalker() {
+        this(DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Alternate constructor allowing clients to set the number of
+     * directories listed concurrently.
+     *
+     * @param parallelism The number of worker threads.
+     */
+    public ParallelFileWalker(int parallelism) {
+        pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+    /**
+     * Accessor method for the singleton instance of the ParallelFileWalker.
+     * @return Handle to the singleton instance of the ParallelFileWalker.
+     */
+    public static ParallelFileWalker getInstance() {
+        return ParallelFileWalkerHolder.getSingleton();
+    }
+
+    /**
+     * Walk the file tree below the input path.  The consumer is invoked for
+     * the starting directory, every directory below it, and every file.
+     * If the starting path is a file only that file is reported.
+     *
+     * @param start The starting location of the walk.
+     * @param consumer The (thread safe) consumer of the results.
+     */
+    public void walk(Path start, PathConsumer consumer) {
+        long startTime = System.currentTimeMillis();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(
+                    start,
+                    BasicFileAttributes.class,
+                    LinkOption.NOFOLLOW_LINKS);
+            consumer.accept(start, attrs);
+            if (attrs.isDirectory()) {
+                pool.invoke(new DirectoryTask(start, consumer));
+            }
+        }
+        catch (IOException ioe) {
+            visitFailed(start, ioe);
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Walk of [ "
+                    + start.toString()
+                    + " ] completed in [ "
+                    + (System.currentTimeMillis() - startTime)
+                    + " ] ms.");
+        }
+    }
+
+    /**
+     * Log an entry that could not be read.
+     */
+    private static void visitFailed(Path path, IOException ioe) {
+        LOGGER.warn("Unable to read [ "
+                + path.toString()
+                + " ] while walking the file tree.  Error message [ "
+                + ioe.getMessage()
+                + " ].");
+    }
+
+    /**
+     * Interface implemented by the consumers of the walk results.
+     * Implementations are invoked concurrently and must be thread safe.
+     */
+    public interface PathConsumer {
+
+        /**
+         * Invoked for each file and directory found.
+         *
+         * @param path The file or directory.
+         * @param attrs Its attributes (symbolic links are not followed).
+         */
+        void accept(Path path, BasicFileAttributes attrs);
+    }
+
+    /**
+     * Task listing a single directory.  Files are passed straight to the
+     * consumer; subdirectories become new tasks.
+     */
+    private static class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = -2750165462331085930L;
+
+        private final Path         dir;
+        private final PathConsumer consumer;
+
+        private DirectoryTask(Path dir, PathConsumer consumer) {
+            this.dir      = dir;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirs = new ArrayList<DirectoryTask>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(
+                                entry,
+                                BasicFileAttributes.class,
+                                LinkOption.NOFOLLOW_LINKS);
+                        consumer.accept(entry, attrs);
+                        if (attrs.isDirectory()) {
+                            subdirs.add(new DirectoryTask(entry, consumer));
+                        }
+                    }
+                    catch (IOException ioe) {
+                        visitFailed(entry, ioe);
+                    }
+                }
+            }
+            catch (IOException ioe) {
+                visitFailed(dir, ioe);
+            }
+            // The stream is closed before descending so that open handles
+            // are bounded by the number of workers rather than the depth.
+            if (!subdirs.isEmpty()) {
+                invokeAll(subdirs);
+            }
+        }
+    }
+
+    /**
+     * Static inner class used to construct the Singleton object.  This class
+     * exploits the fact that classes are not loaded until they referenced
+     * therefore enforcing thread safety without the performance hit imposed
+     * by the <code>synchronized</code> keyword.
+     *
+     * @author L. Craig Carpenter
+     */
+    public static class ParallelFileWalkerHolder {
+
+        /**
+         * Reference to the Singleton instance of the ParallelFileWalker
+         */
+        private static ParallelFileWalker _instance = new ParallelFileWalker();
+
+        /**
+         * Accessor method for the singleton instance of the
+         * ParallelFileWalker.
+         * @return The Singleton instance of the ParallelFileWalker.
+         */
+        public static ParallelFileWalker getSingleton() {
+            return _instance;
+        }
+    }
+}
@@ -0,0 +1,639 @@
+package mil.nga.util;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.upplication.s3fs.S3Path;
+
+/**
+ * Answers existence, size and directory questions for S3 objects from bulk
+ * <code>ListObjectsV2</code> listings rather than one HEAD request per
+ * object.  S3 returns the size and ETag of every object in each listing
+ * page, so once a prefix has been listed every key beneath it can be
+ * answered locally (including the keys that do not exist).  HEAD requests
+ * are only issued for keys outside the prefixes that have been listed.
+ *
+ * Checking whether a requested key is a directory costs a one-key
+ * listing of the key's children plus (for files) a HEAD request.  When
+ * several requested keys share a parent (see <code>groupByParent()</code>)
+ * the parent level is listed once instead, with the number of pages
+ * bounded by the number of requests the probes would have cost.
+ *
+ * The answers are not refreshed, so an instance should be used for a
+ * single request (validation of one job) and then discarded.  Instances
+ * are thread safe.  URIs follow the s3fs convention of
+ * <code>s3://[endpoint]/[bucket]/[key]</code>.
+ *
+ * @author L. Craig Carpenter
+ */
+public class S3MetadataProvider {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(
+            S3MetadataProvider.class);
+
+    /**
+     * URI scheme of the S3 file system.
+     */
+    public static final String S3_SCHEME = "s3";
+
+    /**
+     * The minimum number of requested keys that must share a parent
+     * before the parent level is listed rather than each key probed.
+     */
+    public static final int MIN_SHARED_KEYS = 2;
+
+    /**
+     * The number of listing pages allowed for a parent level, per
+     * requested key sharing it.  Probing a key costs two requests, so the
+     * level listing never costs more requests than the probes it replaces.
+     */
+    public static final int PAGES_PER_SHARED_KEY = 2;
+
+    /**
+     * Key separator.
+     */
+    private static final String SEPARATOR = "/";
+
+    /**
+     * The S3 client (null if it is obtained from the s3fs file system).
+     */
+    private final AmazonS3 client;
+
+    /**
+     * Objects seen in any listing or HEAD, keyed by bucket/key.
+     */
+    private final Map<String, ObjectEntry> objects =
+            new ConcurrentHashMap<String, ObjectEntry>();
+
+    /**
+     * Directories (common prefixes) seen, as bucket/key without the
+     * trailing separator.
+     */
+    private final Set<String> directories =
+            ConcurrentHashMap.<String>newKeySet();
+
+    /**
+     * Keys (bucket/key) known not to exist.
+     */
+    private final Set<String> missing =
+            ConcurrentHashMap.<String>newKeySet();
+
+    /**
+     * The complete listings, by bucket/prefix (the prefix ends with the
+     * separator).
+     */
+    private final Map<String, List<String>> listings =
+            new ConcurrentHashMap<String, List<String>>();
+
+    /**
+     * The prefixes whose immediate children have been listed (with a
+     * delimiter), by bucket/prefix (the prefix ends with the separator
+     * unless it is the root of the bucket).
+     */
+    private final Set<String> levels =
+            ConcurrentHashMap.<String>newKeySet();
+
+    /**
+     * The number of requested keys sharing each parent level (bucket/
+     * prefix), for levels shared by at least
+     * <code>MIN_SHARED_KEYS</code> keys.  Set to 0 once the level has
+     * been listed (whether or not the listing was complete).
+     */
+    private final Map<String, Integer> sharedLevels =
+            new ConcurrentHashMap<String, Integer>();
+
+    /**
+     * Locks ensuring each level is listed once when its children are
+     * looked up concurrently.
+     */
+    private final ConcurrentHashMap<String, Object> levelLocks =
+            new ConcurrentHashMap<String, Object>();
+
+    /**
+     * Request counters.
+     */
+    private final AtomicLong listRequests = new AtomicLong();
+    private final AtomicLong headRequests = new AtomicLong();
+
+    /**
+     * Default constructor.  The S3 client is taken from the s3fs file
+     * system of each URI.
+     */
+    public S3MetadataProvider() {
+        this(null);
+    }
+
+    /**
+     * Alternate constructor allowing clients (e.g. tests running against a
+     * local S3 stand-in) to supply the S3 client.
+     *
+     * @param client The S3 client.
+     */
+    public S3MetadataProvider(AmazonS3 client) {
+        this.client = client;
+    }
+
+    /**
+     * Determine whether the input URI refers to S3.
+     *
+     * @param uri The URI to check.
+     * @return True if the URI uses the s3 scheme.
+     */
+    public static boolean isS3(URI uri) {
+        return (uri != null) && S3_SCHEME.equalsIgnoreCase(uri.getScheme());
+    }
+
+    /**
+     * Get the metadata of an S3 object.
+     *
+     * @param uri The URI of the object.
+     * @return The object metadata, or null if the object does not exist.
+     * @throws IOException Thrown if S3 cannot be reached.
+     */
+    public ObjectEntry getMetadata(URI uri) throws IOException {
+
+        String[] location = split(uri);
+        String   bucket   = location[0];
+        String   key      = location[1];
+        String   name     = bucket + SEPARATOR + key;
+
+        ObjectEntry entry = objects.get(name);
+        if (entry != null) {
+            return entry;
+        }
+        if (key.isEmpty() || directories.contains(name)) {
+            return ObjectEntry.DIRECTORY;
+        }
+        if (missing.contains(name) || isListed(name)) {
+            return null;
+        }
+
+        try {
+            headRequests.incrementAndGet();
+            ObjectMetadata metadata = getClient(uri).getObjectMetadata(
+                    bucket, key);
+            entry = new ObjectEntry(
+                    metadata.getContentLength(),
+                    metadata.getETag(),
+                    false);
+            objects.put(name, entry);
+            return entry;
+        }
+        catch (AmazonS3Exception ase) {
+            if (ase.getStatusCode() == 404) {
+                missing.add(name);
+                return null;
+            }
+            throw new IOException(getMessage(uri, ase), ase);
+        }
+        catch (AmazonClientException ace) {
+            throw new IOException(getMessage(uri, ace), ace);
+        }
+    }
+
+    /**
+     * Record the keys that are about to be checked with
+     * <code>isDirectory()</code>, grouped by their parent prefix.  Parents
+     * shared by at least <code>MIN_SHARED_KEYS</code> of the keys are
+     * then listed once rather than each key probed individually.  URIs
+     * that do not refer to S3 are ignored.
+     *
+     * @param uris The URIs about to be checked.
+     */
+    public void groupByParent(Collection<URI> uris) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        if (uris != null) {
+            for (URI uri : uris) {
+                if (isS3(uri)) {
+                    try {
+                        String[] location = split(uri);
+                        if (!location[1].isEmpty()) {
+                            String level = getLevel(location[0], location[1]);
+                            Integer count = counts.get(level);
+                            counts.put(level, (count == null) ? 1 : count + 1);
+                        }
+                    }
+                    catch (IOException ioe) {
+                        // Invalid URIs are reported when they are checked.
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() >= MIN_SHARED_KEYS) {
+                sharedLevels.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Determine whether the input URI refers to a directory (i.e. there
+     * are objects beneath it).  Unless already known, this is answered by
+     * a delimited listing of the parent prefix if that parent is shared
+     * by several requested keys (see <code>groupByParent()</code>), which
+     * records every object and subdirectory at that level.  Otherwise the
+     * key is probed with a one-key listing of its children and, if it is
+     * not a directory, a HEAD request recording its existence and size.
+     *
+     * @param uri The URI to check.
+     * @return True if the URI is a directory.
+     * @throws IOException Thrown if S3 cannot be reached.
+     */
+    public boolean isDirectory(URI uri) throws IOException {
+
+        String[] location = split(uri);
+        String   bucket   = location[0];
+        String   key      = location[1];
+        String   name     = bucket + SEPARATOR + key;
+
+        if (key.isEmpty() || directories.contains(name)) {
+            return true;
+        }
+        if (objects.containsKey(name) ||
+                missing.contains(name) ||
+                isListed(name)) {
+            return false;
+        }
+
+        String level = getLevel(bucket, key);
+        if (sharedLevels.containsKey(level)) {
+            levelLocks.putIfAbsent(level, new Object());
+            synchronized (levelLocks.get(level)) {
+                int shared = sharedLevels.get(level);
+                if ((shared > 0) && (!levels.contains(level))) {
+                    sharedLevels.put(level, 0);
+                    List<String> prefixes = new ArrayList<String>();
+                    boolean complete = list(
+                            uri,
+                            bucket,
+                            level.substring(bucket.length() + 1),
+                            SEPARATOR,
+                            shared * PAGES_PER_SHARED_KEY,
+                            new ArrayList<String>(),
+                            prefixes);
+                    for (String prefix : prefixes) {
+                        directories.add(bucket + SEPARATOR + trim(prefix));
+                    }
+                    if (complete) {
+                        levels.add(level);
+                    }
+                }
+            }
+            if (directories.contains(name)) {
+                return true;
+            }
+            if (objects.containsKey(name) || isListed(name)) {
+                return false;
+            }
+        }
+
+        // Probe the key: one listing for its first child, then a HEAD.
+        List<String> children = new ArrayList<String>();
+        List<String> prefixes = new ArrayList<String>();
+        list(uri, bucket, key + SEPARATOR, SEPARATOR, 1, children, prefixes);
+        if ((!children.isEmpty()) || (!prefixes.isEmpty())) {
+            directories.add(name);
+            return true;
+        }
+        getMetadata(uri);
+        return false;
+    }
+
+    /**
+     * List every object beneath the input directory.  The listing is
+     * performed once; the size and ETag of each object are retained so
+     * that later lookups of those keys need no further requests.
+     * Directory placeholder objects (keys ending with the separator) are
+     * not returned.
+     *
+     * @param uri The URI of the directory.
+     * @return The URIs of the objects, in key order.
+     * @throws IOException Thrown if S3 cannot be reached.
+     */
+    public List<URI> listFiles(URI uri) throws IOException {
+
+        String[] location = split(uri);
+        String   bucket   = location[0];
+        String   prefix   = location[1].isEmpty() ?
+                "" : location[1] + SEPARATOR;
+        String   name     = bucket + SEPARATOR + prefix;
+
+        List<String> keys = listings.get(name);
+        if (keys == null) {
+            keys = new ArrayList<String>();
+            list(uri, bucket, prefix, null, 0, keys, null);
+            for (String key : keys) {
+                // Record the directories between the prefix and each key.
+                int index = key.indexOf(SEPARATOR, prefix.length());
+                while (index >= 0) {
+                    directories.add(bucket + SEPARATOR + key.substring(0, index));
+                    index = key.indexOf(SEPARATOR, index + 1);
+                }
+            }
+            if (!prefix.isEmpty()) {
+                if (keys.isEmpty()) {
+                    missing.add(bucket + SEPARATOR + trim(prefix));
+                }
+                else {
+                    directories.add(bucket + SEPARATOR + trim(prefix));
+                }
+            }
+            listings.put(name, keys);
+        }
+
+        List<URI> uris = new ArrayList<URI>();
+        for (String key : keys) {
+            if (!key.endsWith(SEPARATOR)) {
+                uris.add(getURI(uri, bucket, key));
+            }
+        }
+        return uris;
+    }
+
+    /**
+     * Getter method for the number of HEAD requests issued.
+     * @return The number of HEAD requests.
+     */
+    public long getHeadRequests() {
+        return headRequests.get();
+    }
+
+    /**
+     * Getter method for the number of listing requests (pages) issued.
+     * @return The number of listing requests.
+     */
+    public long getListRequests() {
+        return listRequests.get();
+    }
+
+    /**
+     * List the objects with the input prefix, recording each one.
+     *
+     * @param uri The URI being looked up (used to find the client).
+     * @param bucket The bucket.
+     * @param prefix The key prefix.
+     * @param delimiter The delimiter (null for a recursive listing).
+     * @param maxPages The maximum number of pages to request (0 for no
+     * limit).  A value of 1 requests a single key.
+     * @param keys Populated with the keys listed, in key order.
+     * @param prefixes Populated with the common prefixes (may be null).
+     * @return True if the listing is complete, false if it was stopped
+     * by the page limit.
+     */
+    private boolean list(
+            URI uri,
+            String bucket,
+            String prefix,
+            String delimiter,
+            int maxPages,
+            List<String> keys,
+            List<String> prefixes) throws IOException {
+
+        long    startTime = System.currentTimeMillis();
+        int     pages     = 0;
+        boolean complete  = true;
+
+        try {
+            AmazonS3 s3 = getClient(uri);
+            ListObjectsV2Request request = new ListObjectsV2Request()
+                    .withBucketName(bucket)
+                    .withPrefix(prefix);
+            if (delimiter != null) {
+                request.setDelimiter(delimiter);
+            }
+            if (maxPages == 1) {
+                request.setMaxKeys(1);
+            }
+            ListObjectsV2Result result = null;
+            do {
+                if ((maxPages > 0) && (pages++ == maxPages)) {
+                    complete = false;
+                    break;
+                }
+                listRequests.incrementAndGet();
+                result = s3.listObjectsV2(request);
+                for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                    keys.add(summary.getKey());
+                    objects.put(
+                            bucket + SEPARATOR + summary.getKey(),
+                            new ObjectEntry(
+                                    summary.getSize(),
+                                    summary.getETag(),
+                                    false));
+                }
+                if ((prefixes != null) &&
+                        (result.getCommonPrefixes() != null)) {
+                    prefixes.addAll(result.getCommonPrefixes());
+                }
+                request.setContinuationToken(
+                        result.getNextContinuationToken());
+            } while (result.isTruncated() && (maxPages != 1));
+        }
+        catch (AmazonClientException ace) {
+            throw new IOException(getMessage(uri, ace), ace);
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Listed [ "
+                    + keys.size()
+                    + " ] objects with prefix [ s3://"
+                    + bucket
+                    + SEPARATOR
+                    + prefix
+                    + " ] in [ "
+                    + (System.currentTimeMillis() - startTime)
+                    + " ] ms.");
+        }
+        return complete;
+    }
+
+    /**
+     * Determine whether the input bucket/key falls under a prefix that
+     * has been listed in full, or is an immediate child of a prefix whose
+     * level has been listed.
+     */
+    private boolean isListed(String name) {
+        for (String prefix : listings.keySet()) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        int index = name.lastIndexOf(SEPARATOR);
+        return (index >= 0) && 
+                levels.contains(name.substring(0, index + 1));
+    }
+
+    /**
+     * Get the parent level (bucket/prefix) of the input key.  The prefix
+     * ends with the separator unless it is the root of the bucket.
+     */
+    private static String getLevel(String bucket, String key) {
+        int index = key.lastIndexOf(SEPARATOR);
+        return bucket + SEPARATOR +
+                ((index < 0) ? "" : key.substring(0, index + 1));
+    }
+
+    /**
+     * Get the S3 client for the input URI.
+     */
+    private AmazonS3 getClient(URI uri) throws IOException {
+        if (client != null) {
+            return client;
+        }
+        Path path = Paths.get(uri);
+        if (path instanceof S3Path) {
+            return ((S3Path)path).getFileSystem().getClient();
+        }
+        throw new IOException("Unable to obtain the S3 client for URI [ "
+                + uri.toString()
+                + " ].");
+    }
+
+    /**
+     * Split an S3 URI into its bucket and key.
+     *
+     * @param uri The URI.
+     * @return The bucket and the key (without leading or trailing
+     * separators).
+     */
+    private static String[] split(URI uri) throws IOException {
+        if (!isS3(uri) || (uri.getPath() == null)) {
+            throw new IOException("Not an S3 URI [ "
+                    + String.valueOf(uri)
+                    + " ].");
+        }
+        String path = uri.getPath();
+        while (path.startsWith(SEPARATOR)) {
+            path = path.substring(1);
+        }
+        path = trim(path);
+        int index = path.indexOf(SEPARATOR);
+        if (index < 0) {
+            return new String[] { path, "" };
+        }
+        return new String[] {
+                path.substring(0, index), path.substring(index + 1) };
+    }
+
+    /**
+     * Remove any trailing separators.
+     */
+    private static String trim(String key) {
+        while (key.endsWith(SEPARATOR)) {
+            key = key.substring(0, key.length() - 1);
+        }
+        return key;
+    }
+
+    /**
+     * Construct the URI of an object, keeping the scheme and endpoint of
+     * the URI that was requested.
+     */
+    private static URI getURI(URI base, String bucket, String key)
+            throws IOException {
+        try {
+            return new URI(
+                    base.getScheme(),
+                    base.getAuthority(),
+                    SEPARATOR + bucket + SEPARATOR + key,
+                    null,
+                    null);
+        }
+        catch (URISyntaxException use) {
+            throw new IOException("Unable to construct the URI for key [ "
+                    + key
+                    + " ].  Exception message => [ "
+                    + use.getMessage()
+                    + " ].");
+        }
+    }
+
+    /**
+     * Construct the message of the exception raised when S3 cannot be
+     * reached.
+     */
+    private static String getMessage(URI uri, Exception e) {
+        return "Unexpected exception accessing S3 object [ "
+                + uri.toString()
+                + " ].  Exception message => [ "
+                + e.getMessage()
+                + " ].";
+    }
+
+    /**
+     * The metadata held for each S3 object.
+     */
+    public static class ObjectEntry {
+
+        /**
+         * Entry returned for directories.
+         */
+        public static final ObjectEntry DIRECTORY =
+                new ObjectEntry(0L, null, true);
+
+        private final long    size;
+        private final String  eTag;
+        private final boolean directory;
+
+        /**
+         * Constructor.
+         * @param size The size of the object.
+         * @param eTag The ETag of the object.
+         * @param directory True if the entry is a directory.
+         */
+        public ObjectEntry(long size, String eTag, boolean directory) {
+            this.size      = size;
+            this.eTag      = eTag;
+            this.directory = directory;
+        }
+
+        /**
+         * Getter method for the ETag.
+         * @return The ETag (null for directories).
+         */
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * Getter method for the size.
+         * @return The size of the object in bytes.
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * Determine whether the entry is a directory.
+         * @return True for directories.
+         */
+        public boolean isDirectory() {
+            return directory;
+        }
+    }
+}
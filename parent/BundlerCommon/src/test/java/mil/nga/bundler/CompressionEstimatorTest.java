@@ -0,0 +1,220 @@
+package mil.nga.bundler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import mil.nga.bundler.archive.ArchiveSettings;
+import mil.nga.bundler.interfaces.BundlerConstantsI;
+import mil.nga.bundler.model.ArchiveElement;
+import mil.nga.bundler.model.ArchiveJob;
+import mil.nga.bundler.model.ExtendedArchiveElement;
+import mil.nga.bundler.model.FileEntry;
+import mil.nga.bundler.types.ArchiveType;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * jUnit tests for the sampled and learned compressed size estimates.
+ *
+ * @author L. Craig Carpenter
+ */
+public class CompressionEstimatorTest implements BundlerConstantsI {
+
+    private static Path _text   = null;
+    private static Path _random = null;
+
+    /**
+     * Create one highly compressible file and one incompressible file,
+     * each large enough to be sampled twice.
+     */
+    @BeforeClass
+    public static void init() throws IOException {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"),
+                "estimator");
+        Files.createDirectories(dir);
+        StringBuilder sb = new StringBuilder();
+        int line = 0;
+        while (sb.length() < 256 * 1024) {
+            sb.append("line ").append(line++)
+              .append(" : the quick brown fox jumps over the lazy dog\n");
+        }
+        _text = dir.resolve("compressible.txt");
+        Files.write(_text, sb.toString().getBytes(StandardCharsets.UTF_8));
+        byte[] data = new byte[256 * 1024];
+        new Random(7L).nextBytes(data);
+        _random = dir.resolve("incompressible.dat");
+        Files.write(_random, data);
+    }
+
+    private ArchiveElement element(Path p) throws IOException {
+        return new ArchiveElement.ArchiveElementBuilder()
+                .uri(p.toUri())
+                .entryPath(p.getFileName().toString())
+                .size(Files.size(p))
+                .build();
+    }
+
+    /**
+     * Test the per-file ratios, including the parallel and cached paths.
+     */
+    @Test
+    public void testSampler() throws IOException {
+        CompressionSampler sampler = new CompressionSampler(2);
+        double text   = sampler.getRatio(_text.toUri(), Files.size(_text));
+        double random = sampler.getRatio(
+                _random.toUri(), Files.size(_random));
+        assertTrue(text < 0.2);
+        assertTrue(random > 0.95);
+        assertTrue(random <= 1.0);
+        assertEquals(CompressionSampler.UNKNOWN_RATIO,
+                sampler.getRatio(Paths.get(_text.toString() + ".missing")
+                        .toUri(), 100L), 0.0);
+
+        List<URI> files = Arrays.asList(_text.toUri(), _random.toUri());
+        double[] ratios = sampler.getRatios(files, new long[] {
+                Files.size(_text), Files.size(_random) });
+        assertEquals(text, ratios[0], 0.0);
+        assertEquals(random, ratios[1], 0.0);
+    }
+
+    /**
+     * Test that the estimator applies the sampled ratios when sampling is
+     * enabled and the fixed average otherwise.
+     */
+    @Test
+    public void testEstimates() throws IOException {
+        List<ArchiveElement> elems = new ArrayList<ArchiveElement>();
+        elems.add(element(_text));
+        elems.add(element(_random));
+        long size = Files.size(_text);
+
+        CompressionEstimator average = new CompressionEstimator(
+                ArchiveSettings.getInstance(new Properties()));
+        long expected = (long)(size
+                * (100.0 - AVERAGE_COMPRESSION_PERCENTAGE) / 100.0);
+        assertEquals(expected, average.getEstimatedCompressedFileSize(
+                elems.get(0), ArchiveType.GZIP));
+
+        Properties props = new Properties();
+        props.setProperty(COMPRESSION_SAMPLING_PROPERTY, "true");
+        CompressionEstimator sampled = new CompressionEstimator(
+                ArchiveSettings.getInstance(props));
+        List<ExtendedArchiveElement> estimates =
+                sampled.getEstimatedCompressedSize(elems, ArchiveType.ZIP);
+        assertEquals(2, estimates.size());
+        assertTrue(estimates.get(0).getEstimatedCompressedSize() < size / 5);
+        assertTrue(estimates.get(1).getEstimatedCompressedSize()
+                > expected);
+        assertEquals(size, sampled.getEstimatedCompressedFileSize(
+                elems.get(0), ArchiveType.TAR));
+    }
+
+    /**
+     * Test that the learned model separates the ratios of the extensions
+     * and archive types it has observed, reports the error of the previous
+     * estimates, and is used by the estimator.
+     */
+    @Test
+    public void testLearnedModel() {
+        List<ArchiveJob> archives = new ArrayList<ArchiveJob>();
+        for (int i=0; i<20; i++) {
+            ArchiveJob archive = new ArchiveJob("job", i, ArchiveType.GZIP);
+            String extension = ((i % 2) == 0) ? ".jp2" : ".txt";
+            archive.add(new FileEntry("/data/a" + extension,
+                    "data/a" + extension, 1000L));
+            archive.add(new FileEntry("/data/b" + extension,
+                    "data/b" + extension, 1000L));
+            archive.setSize(((i % 2) == 0) ? 2000L : 400L);
+            archives.add(archive);
+        }
+
+        CompressionModel model = new CompressionModel.CompressionModelBuilder()
+                .archives(archives)
+                .build();
+        assertEquals(20, model.getObservations());
+        assertEquals(1.0, model.getRatio(ArchiveType.GZIP, "x/y.JP2"), 1e-9);
+        assertEquals(0.2, model.getRatio(ArchiveType.GZIP, "x/y.txt"), 1e-9);
+        assertEquals(0.6, model.getRatio(ArchiveType.GZIP, "x/y.dat"), 1e-9);
+        assertEquals(CompressionModel.UNKNOWN_RATIO,
+                model.getRatio(ArchiveType.ZIP, "x/y.txt"), 0.0);
+        double average = (100.0 - AVERAGE_COMPRESSION_PERCENTAGE) / 100.0;
+        assertEquals(((1.0 - average) + (average * 2000.0 - 400.0) / 400.0) / 2.0,
+                model.getEstimateError(), 1e-9);
+
+        CompressionModel next = new CompressionModel.CompressionModelBuilder()
+                .previous(model)
+                .archives(archives)
+                .build();
+        assertEquals(0.0, next.getEstimateError(), 1e-9);
+
+        CompressionEstimator estimator = new CompressionEstimator(
+                ArchiveSettings.getInstance(new Properties()));
+        estimator.setModel(next);
+        assertEquals(200L, estimator.getEstimatedCompressedFileSize(
+                new FileEntry("/other/c.txt", "other/c.txt", 1000L),
+                ArchiveType.GZIP));
+        assertEquals(600L, estimator.getEstimatedCompressedFileSize(
+                new FileEntry("/other/c.dat", "other/c.dat", 1000L),
+                ArchiveType.GZIP));
+        assertEquals((long)(average * 1000.0),
+                estimator.getEstimatedCompressedFileSize(
+                        new FileEntry("/other/c.txt", "other/c.txt", 1000L),
+                        ArchiveType.ZIP));
+    }
+
+    /**
+     * Test that archives summarized into input bytes per extension (as
+     * returned by the aggregate database query) build the same model as
+     * the archives themselves.
+     */
+    @Test
+    public void testSummarizedArchives() {
+        List<ArchiveJob> archives = new ArrayList<ArchiveJob>();
+        CompressionModel.CompressionModelBuilder summarized =
+                new CompressionModel.CompressionModelBuilder();
+        for (int i=0; i<20; i++) {
+            ArchiveJob archive = new ArchiveJob("job", i, ArchiveType.GZIP);
+            archive.add(new FileEntry("/data/a.JP2", "data/a.JP2", 1000L));
+            archive.add(new FileEntry("/data/b.jp2", "data/b.jp2", 500L));
+            archive.add(new FileEntry("/data/c.txt", "data/c.txt", 2000L));
+            archive.add(new FileEntry("/data/README", "data/README", 100L));
+            archive.setSize(1500L + i);
+            archives.add(archive);
+
+            Map<String, Long> perExtension = new HashMap<String, Long>();
+            perExtension.put(".jp2", 1500L);
+            perExtension.put(".txt", 2000L);
+            perExtension.put("", 100L);
+            summarized.archive(ArchiveType.GZIP, 1500L + i, perExtension);
+        }
+        summarized.archive(ArchiveType.GZIP, 0L, new HashMap<String, Long>());
+        summarized.archive(null, 100L, new HashMap<String, Long>());
+
+        CompressionModel expected = new CompressionModel.CompressionModelBuilder()
+                .archives(archives)
+                .build();
+        CompressionModel actual = summarized.build();
+        assertEquals(expected.getObservations(), actual.getObservations());
+        assertEquals(expected.getEstimateError(),
+                actual.getEstimateError(), 1e-9);
+        for (String path : Arrays.asList("x.jp2", "x.txt", "x", "x.dat")) {
+            assertEquals(expected.getRatio(ArchiveType.GZIP, path),
+                    actual.getRatio(ArchiveType.GZIP, path), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package mil.nga.bundler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import mil.nga.bundler.messages.FileRequest;
+import mil.nga.util.FileFinder;
+
+import org.junit.Test;
+
+/**
+ * jUnit tests for the cache of expanded directory listings.
+ *
+ * @author L. Craig Carpenter
+ */
+public class DirectoryListingCacheTest {
+
+    /**
+     * Modification time given to the test directories (well before the
+     * racy interval).
+     */
+    private static long _time = System.currentTimeMillis() - 3600000L;
+
+    /**
+     * Delete a tree.
+     */
+    private static void delete(Path start) throws IOException {
+        if (Files.exists(start)) {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(
+                        Path file, BasicFileAttributes attrs)
+                        throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+                @Override
+                public FileVisitResult postVisitDirectory(
+                        Path dir, IOException ioe) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+    }
+
+    /**
+     * Give a directory an old (and unique) modification time.
+     */
+    private static void age(Path dir) throws IOException {
+        Files.setLastModifiedTime(dir, FileTime.fromMillis(_time));
+        _time += 1000L;
+    }
+
+    /**
+     * Create a directory holding the input number of files.
+     */
+    private static void createDir(Path dir, int files) throws IOException {
+        Files.createDirectories(dir);
+        for (int i=0; i<files; i++) {
+            Files.write(dir.resolve("file_" + i + ".dat"), new byte[i + 1]);
+        }
+    }
+
+    /**
+     * Create the test tree with old modification times.
+     */
+    private static Path createTree(String name) throws IOException {
+        Path root = Paths.get(System.getProperty("java.io.tmpdir"), name);
+        delete(root);
+        createDir(root, 2);
+        createDir(root.resolve("a"), 3);
+        createDir(root.resolve("a").resolve("b"), 4);
+        createDir(root.resolve("c"), 5);
+        age(root.resolve("a").resolve("b"));
+        age(root.resolve("a"));
+        age(root.resolve("c"));
+        age(root);
+        return root;
+    }
+
+    /**
+     * Test that unchanged trees are answered from the cache, and that
+     * added, modified and removed directories are detected and re-listed
+     * individually.
+     */
+    @Test
+    public void testRevalidation() throws IOException {
+        Path root = createTree("listing_cache");
+        URI  uri  = root.toUri();
+        DirectoryListingCache cache = new DirectoryListingCache(1000L);
+
+        List<URI> files = cache.listFiles(uri);
+        assertEquals(14, files.size());
+        assertEquals(FileFinder.listFiles(uri), files);
+        assertEquals(1, cache.getMisses());
+        assertEquals(files, cache.listFiles(uri));
+        assertEquals(1, cache.getHits());
+
+        // A file added to a nested directory.
+        Path b = root.resolve("a").resolve("b");
+        Files.write(b.resolve("added.dat"), new byte[10]);
+        age(b);
+        assertEquals(15, cache.listFiles(uri).size());
+        assertEquals(1, cache.getRevalidations());
+        assertEquals(1, cache.getRelistedDirectories());
+
+        // A new subdirectory, and a removed one.
+        createDir(root.resolve("a").resolve("d"), 6);
+        age(root.resolve("a").resolve("d"));
+        age(root.resolve("a"));
+        delete(root.resolve("c"));
+        age(root);
+        files = cache.listFiles(uri);
+        assertEquals(16, files.size());
+        assertEquals(FileFinder.listFiles(uri), files);
+        assertEquals(3, cache.getRelistedDirectories());
+        assertEquals(16, cache.getNumFiles());
+
+        cache.listFiles(uri);
+        assertEquals(2, cache.getHits());
+    }
+
+    /**
+     * Test that recently modified directories are always re-listed, and
+     * that the least recently used listings are evicted.
+     */
+    @Test
+    public void testRacyAndEviction() throws IOException {
+        Path fresh = Paths.get(System.getProperty("java.io.tmpdir"),
+                "listing_cache_fresh");
+        delete(fresh);
+        createDir(fresh, 3);
+        DirectoryListingCache cache = new DirectoryListingCache(16L);
+        cache.listFiles(fresh.toUri());
+        cache.listFiles(fresh.toUri());
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getRevalidations());
+
+        Path root = createTree("listing_cache_lru");
+        cache.listFiles(root.toUri());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(14, cache.getNumFiles());
+        cache.listFiles(fresh.toUri());
+        assertEquals(2, cache.getEvictions());
+        assertEquals(3, cache.getNumFiles());
+    }
+
+    /**
+     * Test that the validator expands directories through the cache.
+     */
+    @Test
+    public void testExpand() throws IOException {
+        Path root = createTree("listing_cache_expand");
+        List<FileRequest> requests = new ArrayList<FileRequest>();
+        requests.add(new FileRequest.FileRequestBuilder()
+                .file(root.toString())
+                .archivePath("products")
+                .build());
+
+        FileValidator validator = FileValidator.getInstance();
+        List<FileRequest> expected = validator.expand(requests);
+        DirectoryListingCache cache = new DirectoryListingCache(1000L);
+        validator.setListingCache(cache);
+        try {
+            validator.expand(requests);
+            List<FileRequest> expanded = validator.expand(requests);
+            assertEquals(1, cache.getHits());
+            assertEquals(expected.size(), expanded.size());
+            for (int i=0; i<expected.size(); i++) {
+                assertEquals(expected.get(i).getFile(),
+                        expanded.get(i).getFile());
+                assertEquals(expected.get(i).getArchivePath(),
+                        expanded.get(i).getArchivePath());
+                assertTrue(expanded.get(i).getArchivePath()
+                        .startsWith("products"));
+            }
+        }
+        finally {
+            validator.setListingCache(null);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package mil.nga.bundler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import mil.nga.bundler.archive.ArchiveSettings;
+import mil.nga.bundler.interfaces.BundlerConstantsI;
+import mil.nga.bundler.messages.FileRequest;
+
+import org.junit.Test;
+
+/**
+ * jUnit tests for the shared cache of file metadata.
+ *
+ * @author L. Craig Carpenter
+ */
+public class FileMetadataCacheTest implements BundlerConstantsI {
+
+    private static final FileMetadataCache.Metadata FILE =
+            new FileMetadataCache.Metadata(true, false, 10L, 1000L);
+
+    /**
+     * Test that entries expire, that files which do not exist are cached
+     * with their own time to live, and the hit rate.
+     */
+    @Test
+    public void testTimeToLive() throws InterruptedException {
+        FileMetadataCache cache = new FileMetadataCache.FileMetadataCacheBuilder()
+                .timeToLive(60000L)
+                .negativeTimeToLive(50L)
+                .build();
+        URI file    = URI.create("file:///data/a.ntf");
+        URI missing = URI.create("file:///data/missing.ntf");
+        assertNull(cache.get(file));
+        cache.put(file, FILE);
+        cache.put(missing, FileMetadataCache.Metadata.MISSING);
+        assertEquals(10L, cache.get(file).getSize());
+        assertFalse(cache.get(missing).exists());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getNegativeHits());
+        Thread.sleep(100L);
+        assertNull(cache.get(missing));
+        assertNotNull(cache.get(file));
+        assertEquals(0.6, cache.getHitRate(), 1e-9);
+
+        FileMetadataCache positive = new FileMetadataCache.FileMetadataCacheBuilder()
+                .timeToLive(60000L)
+                .negativeTimeToLive(0L)
+                .build();
+        positive.put(missing, FileMetadataCache.Metadata.MISSING);
+        assertEquals(0, positive.getNumEntries());
+    }
+
+    /**
+     * Test the key normalization and the eviction of the least recently
+     * used entries.
+     */
+    @Test
+    public void testEviction() {
+        assertEquals(FileMetadataCache.getKey(URI.create("file:/data/b")),
+                FileMetadataCache.getKey(URI.create("file:///data/x/../b")));
+        assertEquals(FileMetadataCache.getKey(URI.create("s3://h/b/k")),
+                FileMetadataCache.getKey(URI.create("s3://h/b/./k")));
+
+        FileMetadataCache cache = new FileMetadataCache.FileMetadataCacheBuilder()
+                .timeToLive(60000L)
+                .maxEntries(3)
+                .build();
+        for (int i=0; i<3; i++) {
+            cache.put(URI.create("file:///data/" + i), FILE);
+        }
+        cache.get(URI.create("file:///data/0"));
+        cache.put(URI.create("file:///data/3"), FILE);
+        assertEquals(3, cache.getNumEntries());
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.get(URI.create("file:///data/0")));
+        assertNull(cache.get(URI.create("file:///data/1")));
+    }
+
+    /**
+     * Test that a lost-events invalidation of a directory removes only the
+     * files directly in it, and the printed statistics.
+     */
+    @Test
+    public void testInvalidateDirectory() {
+        FileMetadataCache cache = new FileMetadataCache.FileMetadataCacheBuilder()
+                .timeToLive(60000L)
+                .build();
+        URI child   = URI.create("file:///data/a/1.ntf");
+        URI nested  = URI.create("file:///data/a/b/2.ntf");
+        URI sibling = URI.create("file:///data/a2/3.ntf");
+        URI self    = URI.create("file:///data/a");
+        cache.put(child, FILE);
+        cache.put(nested, FILE);
+        cache.put(sibling, FILE);
+        cache.put(self, FILE);
+        cache.invalidateDirectory(Paths.get(self));
+        assertEquals(1, cache.getInvalidations());
+        assertNull(cache.get(child));
+        assertNotNull(cache.get(nested));
+        assertNotNull(cache.get(sibling));
+        assertNotNull(cache.get(self));
+        assertTrue(cache.toString().contains(
+                "Hits => [ 3 ], Negative hits => [ 0 ], Misses => [ 1 ]"));
+    }
+
+    /**
+     * Test that the validator answers repeated requests from the cache and
+     * that watched files are invalidated when they change.
+     */
+    @Test
+    public void testValidatorCache() throws IOException, InterruptedException {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"),
+                "metadata_cache");
+        Files.createDirectories(dir);
+        Path file = dir.resolve("product.ntf");
+        Files.write(file, new byte[100]);
+        FileRequest request = new FileRequest.FileRequestBuilder()
+                .file(file.toString())
+                .build();
+
+        FileValidator validator = FileValidator.getInstance();
+        FileMetadataCache cache = new FileMetadataCache.FileMetadataCacheBuilder()
+                .timeToLive(60000L)
+                .watch(true)
+                .build();
+        validator.setMetadataCache(cache);
+        try {
+            assertEquals(100L, validator.validateOneFile(request).getSize());
+            assertEquals(100L, validator.validateOneFile(request).getSize());
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getNumWatchedDirectories());
+            assertNull(validator.validateOneFile(dir.toString()));
+
+            Files.write(file, new byte[200]);
+            for (int i=0; (i<100) && (cache.getInvalidations() == 0); i++) {
+                Thread.sleep(50L);
+            }
+            assertTrue(cache.getInvalidations() > 0);
+            assertEquals(200L, validator.validateOneFile(request).getSize());
+        }
+        finally {
+            validator.setMetadataCache(null);
+            cache.close();
+        }
+    }
+
+    /**
+     * Test the metadata cache settings.
+     */
+    @Test
+    public void testSettings() {
+        Properties props = new Properties();
+        ArchiveSettings settings = ArchiveSettings.getInstance(props);
+        assertEquals(0, settings.getMetadataCacheTTL());
+        assertFalse(settings.isMetadataCacheWatch());
+        props.setProperty(METADATA_CACHE_TTL_PROPERTY, "300");
+        settings = ArchiveSettings.getInstance(props);
+        assertEquals(300, settings.getMetadataCacheNegativeTTL());
+        props.setProperty(METADATA_CACHE_NEGATIVE_TTL_PROPERTY, "30");
+        props.setProperty(METADATA_CACHE_SIZE_PROPERTY, "50");
+        settings = ArchiveSettings.getInstance(props);
+        assertEquals(30, settings.getMetadataCacheNegativeTTL());
+        assertEquals(50, settings.getMetadataCacheSize());
+    }
+}
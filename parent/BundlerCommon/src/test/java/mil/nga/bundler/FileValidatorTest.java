@@ -1,7 +1,86 @@
 package mil.nga.bundler;
 
-public class FileValidatorTest {
+import static org.junit.Assert.assertEquals;
 
-    
-    
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import mil.nga.bundler.archive.ArchiveSettings;
+import mil.nga.bundler.interfaces.BundlerConstantsI;
+import mil.nga.bundler.messages.FileRequest;
+import mil.nga.bundler.model.FileEntry;
+
+import org.junit.Test;
+
+/**
+ * jUnit tests for the concurrent validation of the requested files.
+ *
+ * @author L. Craig Carpenter
+ */
+public class FileValidatorTest implements BundlerConstantsI {
+
+    /**
+     * Number of files to create.
+     */
+    public static final int NUM_FILES = 50;
+
+    /**
+     * Test that the files are validated in request order, that missing
+     * files are dropped, and that the sizes are correct.
+     */
+    @Test
+    public void testValidateFiles() throws IOException {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"),
+                "validator");
+        Files.createDirectories(dir);
+        List<FileRequest> requests = new ArrayList<FileRequest>();
+        for (int i=NUM_FILES; i>0; i--) {
+            Path file = dir.resolve("file_" + i + ".dat");
+            Files.write(file, new byte[i]);
+            requests.add(new FileRequest.FileRequestBuilder()
+                    .file(file.toString())
+                    .archivePath("data")
+                    .build());
+            if ((i % 10) == 0) {
+                requests.add(new FileRequest.FileRequestBuilder()
+                        .file(dir.resolve("missing_" + i).toString())
+                        .build());
+            }
+        }
+
+        List<FileEntry> entries = FileValidator.getInstance()
+                .validateFiles(requests);
+        assertEquals(NUM_FILES, entries.size());
+        for (int i=0; i<NUM_FILES; i++) {
+            assertEquals(NUM_FILES - i, entries.get(i).getSize());
+            assertEquals(dir.resolve("file_" + (NUM_FILES - i) + ".dat"),
+                    Paths.get(URI.create(entries.get(i).getFilePath())));
+        }
+        assertEquals(0, FileValidator.getInstance()
+                .validateFiles(new ArrayList<FileRequest>()).size());
+    }
+
+    /**
+     * Test the per-file-system validation concurrency settings.
+     */
+    @Test
+    public void testValidationThreads() {
+        Properties props = new Properties();
+        assertEquals(8, ArchiveSettings.getInstance(props)
+                .getValidationThreads("s3"));
+        props.setProperty(VALIDATION_THREADS_PROPERTY, "4");
+        props.setProperty(VALIDATION_THREADS_PROPERTY + ".s3", "32");
+        ArchiveSettings settings = ArchiveSettings.getInstance(props);
+        assertEquals(32, settings.getValidationThreads("s3"));
+        assertEquals(4, settings.getValidationThreads("file"));
+        props.setProperty(VALIDATION_THREADS_PROPERTY, "0");
+        assertEquals(1, ArchiveSettings.getInstance(props)
+                .getValidationThreads("file"));
+    }
 }
@@ -2,6 +2,7 @@ package mil.nga.bundler.archive;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.util.ArrayList;
 import java.util.List;
@@ -9,10 +10,15 @@ import java.util.Properties;
 
 import mil.nga.bundler.archive.Archiver;
 import mil.nga.bundler.interfaces.BundlerConstantsI;
+import mil.nga.bundler.model.ArchiveElement;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.junit.Test;
 import org.junit.BeforeClass;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 public class ArchiveTest implements BundlerConstantsI {
     
@@ -155,4 +161,33 @@ public class ArchiveTest implements BundlerConstantsI {
                 "file6.txt");
         return list;
     }
+    
+    /**
+     * Read the TAR stream from the input (already decompressed) stream and 
+     * verify that it contains the input elements, in order, with the 
+     * expected sizes.
+     * 
+     * @param in Stream containing the uncompressed TAR data.
+     * @param elems The elements expected in the archive.
+     * @throws IOException Thrown if the TAR data cannot be read.
+     */
+    protected void assertTarContents(InputStream in, List<ArchiveElement> elems) 
+            throws IOException {
+        try (TarArchiveInputStream tais = new TarArchiveInputStream(in)) {
+            for (ArchiveElement elem : elems) {
+                TarArchiveEntry entry = tais.getNextTarEntry();
+                assertNotNull(entry);
+                assertEquals(elem.getEntryPath(), entry.getName());
+                assertEquals(elem.getSize(), entry.getSize());
+                long read = 0;
+                byte[] buffer = new byte[4096];
+                int n;
+                while ((n = tais.read(buffer)) != -1) {
+                    read += n;
+                }
+                assertEquals(elem.getSize(), read);
+            }
+            assertNull(tais.getNextTarEntry());
+        }
+    }
 }
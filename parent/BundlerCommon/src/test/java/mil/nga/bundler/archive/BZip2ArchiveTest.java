@@ -2,12 +2,14 @@ package mil.nga.bundler.archive;
 
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Properties;
 
 import mil.nga.bundler.ArchiveElementFactory;
 import mil.nga.bundler.archive.ArchiveFactory;
@@ -17,12 +19,14 @@ import mil.nga.bundler.model.ArchiveElement;
 import mil.nga.bundler.exceptions.ArchiveException;
 import mil.nga.bundler.exceptions.UnknownArchiveTypeException;
 
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.junit.Test;
 
 public class BZip2ArchiveTest extends ArchiveTest {
 
     public String _archiveFilename1 = "bzip2_archive_1";
     public String _archiveFilename2 = "bzip2_archive_2";
+    public String _archiveFilename3 = "bzip2_archive_3";
     
     /**
      * This method tests that the GZIP archiver can archive a directory 
@@ -116,4 +120,40 @@ public class BZip2ArchiveTest extends ArchiveTest {
             uae.printStackTrace();
         }
     }
+    
+    /**
+     * This method tests that the BZip2 archiver produces a valid archive 
+     * when the parallel block compressor is enabled.
+     * 
+     * @throws ArchiveException Thrown if there are problems validating the
+     * input data.  Exceptions will fail the test.
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testParallelBundler() throws ArchiveException, IOException {
+        
+        Path p = Paths.get(ArchiveTest._tempDir, this._archiveFilename3);
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                super.getFileList());
+        
+        Properties props = new Properties();
+        props.setProperty(PARALLEL_BZIP2_PROPERTY, "true");
+        props.setProperty(ARCHIVE_THREADS_PROPERTY, "2");
+        BZip2Archiver bundler = new BZip2Archiver(
+                ArchiveSettings.getInstance(props));
+        assertTrue(bundler.isParallel());
+        bundler.bundle(elems, p.toUri());
+        
+        Path p2 = Paths.get(p.toString() + "." 
+                + ArchiveType.TAR.getText() 
+                + "." + ArchiveType.BZIP2.getText());
+        assertTrue(Files.exists(p2));
+        assertTarContents(
+                new BZip2CompressorInputStream(
+                        new BufferedInputStream(Files.newInputStream(p2)), 
+                        true), 
+                elems);
+    }
 }
@@ -0,0 +1,197 @@
+package mil.nga.bundler.archive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Properties;
+
+import mil.nga.bundler.exceptions.ArchiveException;
+import mil.nga.bundler.model.ArchiveElement;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.Test;
+
+/**
+ * jUnit tests for the cache of compressed ZIP entries.
+ *
+ * @author L. Craig Carpenter
+ */
+public class ChunkCacheTest extends ArchiveTest {
+
+    /**
+     * Number of files to create.
+     */
+    public static final int NUM_FILES = 4;
+
+    /**
+     * Create an empty directory beneath the temporary directory.
+     */
+    private Path getEmptyDir(String name) throws IOException {
+        Path dir = Paths.get(ArchiveTest._tempDir, name);
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                Files.delete(path);
+            }
+        }
+        return dir;
+    }
+
+    /**
+     * Create a set of compressible files large enough to be cached, plus
+     * one small file that is not.
+     */
+    private List<ArchiveElement> getElements(Path dir) throws IOException {
+        List<ArchiveElement> elems = new ArrayList<ArchiveElement>();
+        for (int i=0; i<=NUM_FILES; i++) {
+            StringBuilder sb = new StringBuilder();
+            int lines = (i == NUM_FILES) ? 10 : 4000;
+            for (int j=0; j<lines; j++) {
+                sb.append("product ").append(i)
+                  .append(" record ").append(j)
+                  .append(" : lat=38.9, lon=-77.0, status=OK\n");
+            }
+            Path file = dir.resolve("product_" + i + ".txt");
+            Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+            elems.add(new ArchiveElement.ArchiveElementBuilder()
+                    .uri(file.toUri())
+                    .entryPath("products/" + file.getFileName().toString())
+                    .size(Files.size(file))
+                    .build());
+        }
+        return elems;
+    }
+
+    /**
+     * Verify that the archive holds the original bytes of every element.
+     */
+    private void verifyArchive(Path zipFile, List<ArchiveElement> elems)
+            throws IOException {
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            Enumeration<ZipArchiveEntry> entries =
+                    zip.getEntriesInPhysicalOrder();
+            for (ArchiveElement elem : elems) {
+                ZipArchiveEntry entry = entries.nextElement();
+                assertEquals(elem.getEntryPath(), entry.getName());
+                assertEquals(ZipArchiveEntry.DEFLATED, entry.getMethod());
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                try (InputStream is = zip.getInputStream(entry)) {
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = is.read(buffer)) != -1) {
+                        baos.write(buffer, 0, n);
+                    }
+                }
+                assertArrayEquals(
+                        Files.readAllBytes(Paths.get(elem.getURI())),
+                        baos.toByteArray());
+            }
+        }
+    }
+
+    /**
+     * Test that the first archive populates the cache, that later archives
+     * (serial and parallel) are built from it, and that both produce valid
+     * archives.
+     *
+     * @throws ArchiveException Thrown if there are problems validating the
+     * input data.  Exceptions will fail the test.
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testCachedArchives() throws ArchiveException, IOException {
+
+        Path cacheDir = getEmptyDir("chunk_cache");
+        List<ArchiveElement> elems = getElements(
+                getEmptyDir("chunk_cache_input"));
+
+        Properties props = new Properties();
+        props.setProperty(CHUNK_CACHE_DIR_PROPERTY, cacheDir.toString());
+        ZipArchiver archiver = new ZipArchiver(
+                ArchiveSettings.getInstance(props));
+        CompressedChunkCache cache = archiver.getChunkCache();
+        long hits   = cache.getHits();
+        long misses = cache.getMisses();
+
+        archiver.bundle(elems, Paths.get(
+                ArchiveTest._tempDir, "zip_cache_1").toUri());
+        assertEquals(misses + NUM_FILES, cache.getMisses());
+        assertEquals(hits, cache.getHits());
+        assertEquals(NUM_FILES, cache.getNumEntries());
+        verifyArchive(Paths.get(archiver.getOutputFile()), elems);
+
+        archiver.bundle(elems, Paths.get(
+                ArchiveTest._tempDir, "zip_cache_2").toUri());
+        assertEquals(hits + NUM_FILES, cache.getHits());
+        verifyArchive(Paths.get(archiver.getOutputFile()), elems);
+
+        props.setProperty(PARALLEL_ZIP_PROPERTY, "true");
+        props.setProperty(ARCHIVE_THREADS_PROPERTY, "3");
+        ZipArchiver parallel = new ZipArchiver(
+                ArchiveSettings.getInstance(props));
+        assertTrue(parallel.getChunkCache() == cache);
+        parallel.bundle(elems, Paths.get(
+                ArchiveTest._tempDir, "zip_cache_3").toUri());
+        assertEquals(hits + (2 * NUM_FILES), cache.getHits());
+        assertEquals(elems.size(), parallel.getNumBundled());
+        verifyArchive(Paths.get(parallel.getOutputFile()), elems);
+    }
+
+    /**
+     * Test that the least recently used entries are evicted once the cache
+     * exceeds its limit, and that a modified file is not served from the
+     * cache.
+     */
+    @Test
+    public void testEviction() throws IOException {
+
+        Path cacheDir = getEmptyDir("chunk_cache_lru");
+        List<ArchiveElement> elems = getElements(
+                getEmptyDir("chunk_cache_lru_input"));
+        CompressedChunkCache cache = CompressedChunkCache.getInstance(
+                cacheDir.toString(), Long.MAX_VALUE);
+
+        long largest = 0L;
+        for (int i=0; i<NUM_FILES; i++) {
+            try (CompressedChunkCache.Chunk chunk = cache.get(
+                    elems.get(i).getURI(), -1)) {
+                assertEquals(elems.get(i).getSize(), chunk.getSize());
+                largest = Math.max(largest, chunk.getCompressedSize() + 16);
+            }
+        }
+        assertEquals(NUM_FILES, cache.getNumEntries());
+
+        // Use the first file so that the second is the oldest, then shrink
+        // the cache to hold two entries.
+        cache.get(elems.get(0).getURI(), -1).close();
+        long hits = cache.getHits();
+        cache = CompressedChunkCache.getInstance(
+                cacheDir.toString(), 2 * largest);
+        Path modified = Paths.get(elems.get(3).getURI());
+        Files.write(modified, "changed".getBytes(StandardCharsets.UTF_8));
+        cache.get(modified.toUri(), -1).close();
+        assertTrue(cache.getSize() <= 2 * largest);
+        assertTrue(cache.getEvictions() >= 2);
+        assertEquals(hits, cache.getHits());
+
+        cache.get(elems.get(0).getURI(), -1).close();
+        assertEquals(hits + 1, cache.getHits());
+        long misses = cache.getMisses();
+        cache.get(elems.get(1).getURI(), -1).close();
+        assertEquals(misses + 1, cache.getMisses());
+    }
+}
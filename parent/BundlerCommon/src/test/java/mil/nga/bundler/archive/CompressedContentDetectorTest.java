@@ -0,0 +1,103 @@
+package mil.nga.bundler.archive;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * jUnit tests for the compressed content detector.
+ *
+ * @author L. Craig Carpenter
+ */
+public class CompressedContentDetectorTest {
+
+    /**
+     * Construct a minimal NITF 2.1 header containing a single image
+     * subheader with the input IC value.
+     *
+     * @param ic The image compression value.
+     * @param icords The ICORDS value (' ' means no IGEOLO field).
+     * @return The header bytes.
+     */
+    private byte[] getNITFHeader(String ic, char icords) {
+        int hl = 400;
+        byte[] header = new byte[hl + 600];
+        Arrays.fill(header, (byte)' ');
+        put(header, 0, "NITF02.10");
+        put(header, 354, String.format("%06d", hl));
+        put(header, 360, "001");
+        put(header, hl, "IM");
+        int pos = hl + 371;
+        header[pos] = (byte)icords;
+        if (icords != ' ') {
+            pos += 60;
+        }
+        pos++;
+        put(header, pos, "1");       // NICOM
+        pos += 1 + 80;
+        put(header, pos, ic);
+        return header;
+    }
+
+    /**
+     * Copy the input ASCII string into the buffer.
+     */
+    private void put(byte[] buffer, int offset, String value) {
+        byte[] bytes = value.getBytes();
+        System.arraycopy(bytes, 0, buffer, offset, bytes.length);
+    }
+
+    /**
+     * Test the well-known magic signatures.
+     */
+    @Test
+    public void testSignatures() {
+        CompressedContentDetector detector =
+                CompressedContentDetector.getInstance();
+        byte[] gzip = new byte[] { 0x1f, (byte)0x8b, 8, 0 };
+        assertTrue(detector.isCompressed(gzip, gzip.length));
+        byte[] jp2 = new byte[] { 0, 0, 0, 0x0c, 'j', 'P', ' ', ' ',
+                0x0d, 0x0a, (byte)0x87, 0x0a, 0, 0 };
+        assertTrue(detector.isCompressed(jp2, jp2.length));
+        byte[] text = "Plain old text".getBytes();
+        assertFalse(detector.isCompressed(text, text.length));
+        assertFalse(detector.isCompressed(new byte[0], 0));
+    }
+
+    /**
+     * Test that the NITF image compression field is honored.
+     */
+    @Test
+    public void testNITF() {
+        CompressedContentDetector detector =
+                CompressedContentDetector.getInstance();
+        byte[] c8 = getNITFHeader("C8", ' ');
+        assertTrue(detector.isCompressed(c8, c8.length));
+        byte[] c3 = getNITFHeader("C3", 'G');
+        assertTrue(detector.isCompressed(c3, c3.length));
+        byte[] nc = getNITFHeader("NC", 'G');
+        assertFalse(detector.isCompressed(nc, nc.length));
+        // Truncated header
+        assertFalse(detector.isCompressed(c8, 380));
+    }
+
+    /**
+     * Test that the TIFF compression tag is honored.
+     */
+    @Test
+    public void testTIFF() {
+        CompressedContentDetector detector =
+                CompressedContentDetector.getInstance();
+        // Little-endian TIFF, IFD at offset 8 with one entry (tag 259).
+        byte[] tiff = new byte[] { 'I', 'I', 42, 0, 8, 0, 0, 0,
+                1, 0,
+                3, 1, 3, 0, 1, 0, 0, 0, 5, 0, 0, 0,
+                0, 0, 0, 0 };
+        assertTrue(detector.isCompressed(tiff, tiff.length));
+        tiff[18] = 1;
+        assertFalse(detector.isCompressed(tiff, tiff.length));
+    }
+}
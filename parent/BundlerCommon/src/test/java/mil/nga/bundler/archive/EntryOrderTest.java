@@ -0,0 +1,155 @@
+package mil.nga.bundler.archive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import mil.nga.bundler.exceptions.ArchiveException;
+import mil.nga.bundler.model.ArchiveElement;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.Test;
+
+/**
+ * jUnit tests for the content-aware ordering of compressed TAR entries.
+ *
+ * @author L. Craig Carpenter
+ */
+public class EntryOrderTest extends ArchiveTest {
+
+    /**
+     * Number of text/binary file pairs to create.
+     */
+    public static final int NUM_PAIRS = 16;
+
+    /**
+     * Construct an archive element for the input path.
+     */
+    private ArchiveElement element(String entryPath, long size) {
+        return new ArchiveElement.ArchiveElementBuilder()
+                .uri(Paths.get(ArchiveTest._tempDir, "unused").toUri())
+                .entryPath(entryPath)
+                .size(size)
+                .build();
+    }
+
+    /**
+     * Create a set of small, similar text files interleaved with binary
+     * files larger than the GZip window.
+     *
+     * @param dir The directory in which to create the files.
+     * @return The input elements in request order.
+     */
+    private List<ArchiveElement> getElements(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        Random random = new Random(42L);
+        List<ArchiveElement> elems = new ArrayList<ArchiveElement>();
+        for (int i=0; i<NUM_PAIRS; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j=0; j<40; j++) {
+                sb.append("record ").append(j)
+                  .append(" of file ").append(i)
+                  .append(" : status=OK, classification=UNCLASSIFIED\n");
+            }
+            Path text = dir.resolve("report_" + i + ".txt");
+            Files.write(text, sb.toString().getBytes(StandardCharsets.UTF_8));
+            byte[] data = new byte[40 * 1024];
+            random.nextBytes(data);
+            Path binary = dir.resolve("image_" + i + ".dat");
+            Files.write(binary, data);
+            elems.add(new ArchiveElement.ArchiveElementBuilder()
+                    .uri(binary.toUri())
+                    .entryPath("data/" + binary.getFileName().toString())
+                    .size(Files.size(binary))
+                    .build());
+            elems.add(new ArchiveElement.ArchiveElementBuilder()
+                    .uri(text.toUri())
+                    .entryPath("data/" + text.getFileName().toString())
+                    .size(Files.size(text))
+                    .build());
+        }
+        return elems;
+    }
+
+    /**
+     * Test that entries are grouped by extension, then directory, then
+     * size, and that entries which compare equal keep their order.
+     */
+    @Test
+    public void testComparator() {
+        List<ArchiveElement> elems = new ArrayList<ArchiveElement>();
+        elems.add(element("b/large.xml", 300));
+        elems.add(element("a/image.TIF", 10));
+        elems.add(element("a/small.xml", 100));
+        elems.add(element("README", 5));
+        elems.add(element("b/small.xml", 100));
+        elems.add(element("a.dir/noext", 1));
+        elems.add(element("b/other.xml", 100));
+        Collections.sort(elems, new EntryOrderComparator());
+        assertEquals("README", elems.get(0).getEntryPath());
+        assertEquals("a.dir/noext", elems.get(1).getEntryPath());
+        assertEquals("a/image.TIF", elems.get(2).getEntryPath());
+        assertEquals("a/small.xml", elems.get(3).getEntryPath());
+        assertEquals("b/small.xml", elems.get(4).getEntryPath());
+        assertEquals("b/other.xml", elems.get(5).getEntryPath());
+        assertEquals("b/large.xml", elems.get(6).getEntryPath());
+    }
+
+    /**
+     * Test that an ordered GZip archive contains the same entries (in the
+     * sorted order), leaves the input list untouched, and is smaller than
+     * the archive written in request order.
+     *
+     * @throws ArchiveException Thrown if there are problems validating the
+     * input data.  Exceptions will fail the test.
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testOrderedArchive() throws ArchiveException, IOException {
+
+        List<ArchiveElement> elems = getElements(
+                Paths.get(ArchiveTest._tempDir, "entry_order"));
+        List<ArchiveElement> original = new ArrayList<ArchiveElement>(elems);
+
+        Properties props = new Properties();
+        props.setProperty(ORDER_ENTRIES_PROPERTY, "true");
+        GZipArchiver ordered = new GZipArchiver(
+                ArchiveSettings.getInstance(props));
+        assertTrue(ordered.isOrderEntries());
+        ordered.bundle(elems, Paths.get(
+                ArchiveTest._tempDir, "gzip_ordered").toUri());
+        assertEquals(original, elems);
+
+        GZipArchiver unordered = new GZipArchiver(
+                ArchiveSettings.getInstance(new Properties()));
+        assertFalse(unordered.isOrderEntries());
+        unordered.bundle(elems, Paths.get(
+                ArchiveTest._tempDir, "gzip_unordered").toUri());
+
+        Path p1 = Paths.get(ordered.getOutputFile());
+        Path p2 = Paths.get(unordered.getOutputFile());
+        assertTrue(Files.size(p1) < Files.size(p2));
+
+        List<ArchiveElement> sorted = new ArrayList<ArchiveElement>(elems);
+        Collections.sort(sorted, new EntryOrderComparator());
+        assertEquals("data/image_0.dat", sorted.get(0).getEntryPath());
+        assertTarContents(
+                new GzipCompressorInputStream(
+                        new BufferedInputStream(Files.newInputStream(p1))),
+                sorted);
+        assertEquals(elems.size(), ordered.getNumBundled());
+    }
+}
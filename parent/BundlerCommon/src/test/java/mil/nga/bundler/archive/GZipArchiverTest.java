@@ -1,28 +1,39 @@
 package mil.nga.bundler.archive;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.Properties;
 
 import mil.nga.bundler.ArchiveElementFactory;
 import mil.nga.bundler.archive.ArchiveFactory;
 import mil.nga.bundler.types.ArchiveType;
+import mil.nga.bundler.types.HashType;
 import mil.nga.bundler.interfaces.BundlerI;
 import mil.nga.bundler.model.ArchiveElement;
 import mil.nga.bundler.exceptions.ArchiveException;
 import mil.nga.bundler.exceptions.UnknownArchiveTypeException;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
 import org.junit.Test;
 
 public class GZipArchiverTest extends ArchiveTest {
 
     public String _archiveFilename1 = "gzip_archive_1";
     public String _archiveFilename2 = "gzip_archive_2";
+    public String _archiveFilename3 = "gzip_archive_3";
+    public String _archiveFilename4 = "gzip_archive_4";
+    public String _archiveFilename5 = "gzip_archive_5";
 
     
     /**
@@ -117,4 +128,99 @@ public class GZipArchiverTest extends ArchiveTest {
             uae.printStackTrace();
         }
     }
+    
+    /**
+     * This method tests that the GZIP archiver streams the TAR data 
+     * directly into the compressor (i.e. no intermediate TAR file is 
+     * left in the output location) and that the output decompresses to 
+     * the expected TAR contents.
+     * 
+     * @throws ArchiveException Thrown if there are problems validating the
+     * input data.  Exceptions will fail the test.
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testStreamingBundler() throws ArchiveException, IOException {
+        
+        Path p = Paths.get(ArchiveTest._tempDir, this._archiveFilename3);
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                super.getFileList());
+        
+        GZipArchiver bundler = new GZipArchiver();
+        bundler.bundle(elems, p.toUri());
+        
+        Path tar = Paths.get(p.toString() + "." + ArchiveType.TAR.getText());
+        Path p2 = Paths.get(tar.toString() + "." + ArchiveType.GZIP.getText());
+        assertTrue(Files.exists(p2));
+        assertFalse(Files.exists(tar));
+        
+        assertTarContents(
+                new GzipCompressorInputStream(
+                        new BufferedInputStream(Files.newInputStream(p2))), 
+                elems);
+    }
+    
+    /**
+     * This method tests that the GZIP archiver produces a valid gzip 
+     * archive when the parallel block compressor is enabled.
+     * 
+     * @throws ArchiveException Thrown if there are problems validating the
+     * input data.  Exceptions will fail the test.
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testParallelBundler() throws ArchiveException, IOException {
+        
+        Path p = Paths.get(ArchiveTest._tempDir, this._archiveFilename4);
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                super.getFileList());
+        
+        Properties props = new Properties();
+        props.setProperty(PARALLEL_GZIP_PROPERTY, "true");
+        props.setProperty(ARCHIVE_THREADS_PROPERTY, "4");
+        GZipArchiver bundler = new GZipArchiver(
+                ArchiveSettings.getInstance(props));
+        assertTrue(bundler.isParallel());
+        bundler.bundle(elems, p.toUri());
+        
+        Path p2 = Paths.get(p.toString() + "." 
+                + ArchiveType.TAR.getText() 
+                + "." + ArchiveType.GZIP.getText());
+        assertTrue(Files.exists(p2));
+        assertTarContents(
+                new GzipCompressorInputStream(
+                        new BufferedInputStream(Files.newInputStream(p2))), 
+                elems);
+    }
+    
+    /**
+     * Test that the hash calculated while the archive is written matches 
+     * the hash of the completed output file.
+     * 
+     * @throws ArchiveException Thrown if there are problems validating the
+     * input data.  Exceptions will fail the test.
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testHash() throws ArchiveException, IOException {
+        
+        Path p = Paths.get(ArchiveTest._tempDir, this._archiveFilename5);
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                super.getFileList());
+        
+        GZipArchiver bundler = new GZipArchiver();
+        bundler.setHashType(HashType.SHA1);
+        bundler.bundle(elems, p.toUri());
+        
+        try (InputStream is = Files.newInputStream(
+                Paths.get(bundler.getOutputFile()))) {
+            assertEquals(DigestUtils.sha1Hex(is), bundler.getHash());
+        }
+    }
 }
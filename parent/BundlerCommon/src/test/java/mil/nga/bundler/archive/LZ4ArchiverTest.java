@@ -0,0 +1,86 @@
+package mil.nga.bundler.archive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+
+import mil.nga.bundler.ArchiveElementFactory;
+import mil.nga.bundler.exceptions.ArchiveException;
+import mil.nga.bundler.exceptions.UnknownArchiveTypeException;
+import mil.nga.bundler.interfaces.BundlerI;
+import mil.nga.bundler.model.ArchiveElement;
+import mil.nga.bundler.types.ArchiveType;
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+
+import org.junit.Test;
+
+/**
+ * jUnit tests for the LZ4 archiver.
+ *
+ * @author L. Craig Carpenter
+ */
+public class LZ4ArchiverTest extends ArchiveTest {
+
+    /**
+     * Create the archive and verify the TAR entries it contains.
+     *
+     * @param bundler The archiver to test.
+     * @param name Base name of the output file.
+     */
+    private void verify(BundlerI bundler, String name) 
+            throws ArchiveException, IOException {
+        
+        Path p = Paths.get(ArchiveTest._tempDir, name);
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                super.getFileList());
+        bundler.bundle(elems, p.toUri());
+        
+        Path p2 = Paths.get(p.toString() + "." 
+                + ArchiveType.TAR.getText() 
+                + "." + ArchiveType.LZ4.getText());
+        assertTrue(Files.exists(p2));
+        assertTarContents(
+                new FramedLZ4CompressorInputStream(
+                        new BufferedInputStream(Files.newInputStream(p2)), true), 
+                elems);
+    }
+    
+    /**
+     * This method tests that the factory supplies a LZ4 archiver 
+     * and that it produces a valid archive.
+     */
+    @Test
+    public void testBundler() 
+            throws ArchiveException, IOException, UnknownArchiveTypeException {
+        BundlerI bundler = ArchiveFactory.getInstance().getBundler(
+                ArchiveType.LZ4);
+        assertTrue(bundler instanceof LZ4Archiver);
+        verify(bundler, "lz4_archive_1");
+    }
+    
+    /**
+     * This method tests that the LZ4 archiver produces a valid 
+     * archive when the level is changed and the parallel frame compressor is enabled.
+     */
+    @Test
+    public void testParallelBundler() throws ArchiveException, IOException {
+        Properties props = new Properties();
+        props.setProperty(PARALLEL_LZ4_PROPERTY, "true");
+        props.setProperty(ARCHIVE_THREADS_PROPERTY, "2");
+        props.setProperty(LZ4_LEVEL_PROPERTY, "9");
+        LZ4Archiver bundler = new LZ4Archiver(
+                ArchiveSettings.getInstance(props));
+        assertTrue(bundler.isParallel());
+        assertEquals(9, bundler.getLevel());
+        verify(bundler, "lz4_archive_2");
+    }
+}
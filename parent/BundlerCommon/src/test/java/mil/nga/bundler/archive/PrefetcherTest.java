@@ -0,0 +1,131 @@
+package mil.nga.bundler.archive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.zip.GZIPInputStream;
+
+import mil.nga.bundler.exceptions.ArchiveException;
+import mil.nga.bundler.model.ArchiveElement;
+
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.Test;
+
+/**
+ * jUnit tests for the read-ahead stage used by the archivers.
+ *
+ * @author L. Craig Carpenter
+ */
+public class PrefetcherTest extends ArchiveTest {
+
+    /**
+     * Construct the list of elements to read, including one file that is
+     * not a multiple of the buffer size.
+     *
+     * @return The input elements.
+     */
+    private List<ArchiveElement> getElements() throws IOException {
+        Path odd = Paths.get(ArchiveTest._tempDir, "prefetch_odd_data");
+        byte[] data = new byte[1001];
+        for (int i=0; i<data.length; i++) {
+            data[i] = (byte)(i % 251);
+        }
+        Files.write(odd, data);
+        List<String> list = super.getFileList();
+        list.add(1, odd.toString());
+        List<ArchiveElement> elems = new ArrayList<ArchiveElement>();
+        for (String file : list) {
+            Path p = Paths.get(file);
+            elems.add(new ArchiveElement.ArchiveElementBuilder()
+                    .uri(p.toUri())
+                    .entryPath(p.getFileName().toString())
+                    .size(Files.size(p))
+                    .build());
+        }
+        return elems;
+    }
+
+    /**
+     * Read the entire input stream.
+     */
+    private byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        IOUtils.copy(in, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Test that each file is returned intact, and in order, when the
+     * memory budget is far smaller than the input data.
+     */
+    @Test
+    public void testSmallBudget() throws IOException {
+        List<ArchiveElement> elems = getElements();
+        try (Prefetcher prefetcher = new Prefetcher(elems, 3, 400, 100)) {
+            for (ArchiveElement elem : elems) {
+                try (InputStream in = prefetcher.next()) {
+                    assertArrayEquals(
+                            Files.readAllBytes(Paths.get(elem.getURI())),
+                            read(in));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that files which are skipped (or only partially read) do not
+     * stall the files that follow.
+     */
+    @Test
+    public void testAbandon() throws IOException {
+        List<ArchiveElement> elems = getElements();
+        try (Prefetcher prefetcher = new Prefetcher(elems, 2, 300, 100)) {
+            for (int i=0; i<elems.size(); i++) {
+                InputStream in = prefetcher.next();
+                if (i % 2 == 0) {
+                    assertEquals(
+                            Files.readAllBytes(
+                                    Paths.get(elems.get(i).getURI()))[0],
+                            (byte)in.read());
+                    in.close();
+                }
+                else {
+                    assertArrayEquals(
+                            Files.readAllBytes(
+                                    Paths.get(elems.get(i).getURI())),
+                            read(in));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that the compressed TAR archivers produce the same output with
+     * read-ahead enabled.
+     */
+    @Test
+    public void testGZipArchiver() throws ArchiveException, IOException {
+        List<ArchiveElement> elems = getElements();
+        Properties props = new Properties();
+        props.setProperty(PREFETCH_DEPTH_PROPERTY, "2");
+        props.setProperty(PREFETCH_BUFFER_PROPERTY, "1");
+        GZipArchiver bundler = new GZipArchiver(
+                ArchiveSettings.getInstance(props));
+        assertEquals(2, bundler.getPrefetchDepth());
+        bundler.bundle(elems, Paths.get(
+                ArchiveTest._tempDir, "prefetch_archive").toUri());
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(
+                Paths.get(bundler.getOutputFile())))) {
+            assertTarContents(in, elems);
+        }
+    }
+}
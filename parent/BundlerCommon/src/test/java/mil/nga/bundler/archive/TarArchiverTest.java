@@ -1,28 +1,38 @@
 package mil.nga.bundler.archive;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 
 import mil.nga.bundler.ArchiveElementFactory;
 import mil.nga.bundler.archive.ArchiveFactory;
 import mil.nga.bundler.types.ArchiveType;
+import mil.nga.bundler.types.HashType;
 import mil.nga.bundler.interfaces.BundlerI;
 import mil.nga.bundler.model.ArchiveElement;
 import mil.nga.bundler.exceptions.ArchiveException;
 import mil.nga.bundler.exceptions.UnknownArchiveTypeException;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Test;
 
 public class TarArchiverTest extends ArchiveTest {
 
     public String _archiveFilename1 = "tar_archive_1";
     public String _archiveFilename2 = "tar_archive_2";
+    public String _archiveFilename3 = "tar_archive_3";
 
     /**
      * This method tests that the TAR archiver can archive a directory 
@@ -114,4 +124,117 @@ public class TarArchiverTest extends ArchiveTest {
         }
         
     }
+    
+    /**
+     * Test that several hashes are calculated in the same pass as the 
+     * archive is written, and that the configured hash types are parsed.
+     * 
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     * @throws ArchiveException Exception thrown if there are problems 
+     * validating input data.  Exceptions will fail the test.
+     */
+    @Test
+    public void testMultipleHashes() throws ArchiveException, IOException {
+        
+        Properties props = new Properties();
+        props.setProperty(HASH_TYPES_PROPERTY, "sha256, MD5, bogus");
+        assertEquals(EnumSet.of(HashType.MD5, HashType.SHA1, HashType.SHA256), 
+                ArchiveSettings.getInstance(props).getHashTypes());
+        assertEquals(EnumSet.of(HashType.SHA1), 
+                ArchiveSettings.getInstance(new Properties()).getHashTypes());
+        
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                super.getFileList());
+        TarArchiver bundler = new TarArchiver();
+        bundler.setHashTypes(ArchiveSettings.getInstance(props).getHashTypes());
+        bundler.bundle(elems, Paths.get(
+                ArchiveTest._tempDir, this._archiveFilename3).toUri());
+        
+        byte[] data = Files.readAllBytes(Paths.get(bundler.getOutputFile()));
+        Map<HashType, String> hashes = bundler.getHashes();
+        assertEquals(3, hashes.size());
+        assertEquals(DigestUtils.md5Hex(data), hashes.get(HashType.MD5));
+        assertEquals(DigestUtils.sha1Hex(data), hashes.get(HashType.SHA1));
+        assertEquals(DigestUtils.sha256Hex(data), hashes.get(HashType.SHA256));
+        assertEquals(DigestUtils.md5Hex(data), bundler.getHash());
+    }
+    
+    /**
+     * Test that the SHA-1 hash (the hash file advertised to clients) is 
+     * still calculated when the configured hash types do not include it.
+     * 
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     * @throws ArchiveException Exception thrown if there are problems 
+     * validating input data.  Exceptions will fail the test.
+     */
+    @Test
+    public void testHashTypesWithoutSHA1() throws ArchiveException, IOException {
+        
+        Properties props = new Properties();
+        props.setProperty(HASH_TYPES_PROPERTY, "sha256,md5");
+        Set<HashType> types = ArchiveSettings.getInstance(props).getHashTypes();
+        assertTrue(types.contains(HashType.SHA1));
+        
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                super.getFileList());
+        TarArchiver bundler = new TarArchiver();
+        bundler.setHashTypes(types);
+        bundler.bundle(elems, Paths.get(
+                ArchiveTest._tempDir, "tar_hash_types").toUri());
+        
+        byte[] data = Files.readAllBytes(Paths.get(bundler.getOutputFile()));
+        assertEquals(DigestUtils.sha1Hex(data), 
+                bundler.getHashes().get(HashType.SHA1));
+        assertEquals(DigestUtils.sha256Hex(data), 
+                bundler.getHashes().get(HashType.SHA256));
+    }
+    
+    /**
+     * Test that the zero-copy and stream-based TAR paths stop adding 
+     * entries once the bytes written reach the target volume size.  Each 
+     * test file occupies 1536 bytes (header plus data) so a 3000 byte 
+     * volume holds exactly two of them.
+     * 
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     * @throws ArchiveException Exception thrown if there are problems 
+     * validating input data.  Exceptions will fail the test.
+     */
+    @Test
+    public void testVolumeSize() throws ArchiveException, IOException {
+        
+        List<ArchiveElement> elems = new ArrayList<ArchiveElement>();
+        for (String file : super.getFileList()) {
+            Path p = Paths.get(file);
+            elems.add(new ArchiveElement.ArchiveElementBuilder()
+                    .uri(p.toUri())
+                    .entryPath(p.getFileName().toString())
+                    .size(Files.size(p))
+                    .build());
+        }
+        
+        for (boolean zeroCopy : new boolean[] { true, false }) {
+            Properties props = new Properties();
+            props.setProperty(ZERO_COPY_PROPERTY, Boolean.toString(zeroCopy));
+            TarArchiver bundler = new TarArchiver(
+                    ArchiveSettings.getInstance(props));
+            bundler.setVolumeSize(3000L);
+            bundler.bundle(elems, Paths.get(
+                    ArchiveTest._tempDir, "tar_volume_" + zeroCopy).toUri());
+            assertEquals(2, bundler.getNumBundled());
+            try (FileInputStream in = new FileInputStream(
+                    Paths.get(bundler.getOutputFile()).toFile())) {
+                assertTarContents(in, elems.subList(0, 2));
+            }
+            
+            bundler.setVolumeSize(0L);
+            bundler.bundle(elems, Paths.get(
+                    ArchiveTest._tempDir, "tar_volume_all_" + zeroCopy).toUri());
+            assertEquals(elems.size(), bundler.getNumBundled());
+        }
+    }
 }
@@ -0,0 +1,327 @@
+package mil.nga.bundler.archive;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import mil.nga.bundler.exceptions.ArchiveException;
+import mil.nga.bundler.interfaces.FileCompletionListenerI;
+import mil.nga.bundler.interfaces.BundlerI;
+import mil.nga.bundler.model.ArchiveElement;
+import mil.nga.bundler.types.HashType;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+/**
+ * jUnit tests verifying that the zero-copy (channel-based) TAR, CPIO and
+ * AR archives are byte-for-byte identical to the archives created by the
+ * commons-compress output streams.
+ *
+ * @author L. Craig Carpenter
+ */
+public class ZeroCopyTest extends ArchiveTest {
+
+    /**
+     * Size of the additional test file.  Odd so that the TAR, CPIO and AR
+     * padding logic is exercised.
+     */
+    public static final int ODD_FILE_SIZE = 1001;
+
+    /**
+     * Construct the archive settings with zero-copy enabled/disabled.
+     *
+     * @param zeroCopy True to enable zero-copy transfers.
+     * @return The archive settings.
+     */
+    private ArchiveSettings getSettings(boolean zeroCopy) {
+        Properties props = new Properties();
+        props.setProperty(ZERO_COPY_PROPERTY, Boolean.toString(zeroCopy));
+        return ArchiveSettings.getInstance(props);
+    }
+
+    /**
+     * Construct the list of elements to archive.  Entry paths are kept
+     * short so they fit in an AR header.
+     *
+     * @return The input elements.
+     */
+    private List<ArchiveElement> getElements() throws IOException {
+        Path odd = Paths.get(ArchiveTest._tempDir, "odd_sized_data");
+        byte[] data = new byte[ODD_FILE_SIZE];
+        for (int i=0; i<data.length; i++) {
+            data[i] = (byte)(i % 251);
+        }
+        Files.write(odd, data);
+        List<String> list = super.getFileList();
+        list.add(2, odd.toString());
+        List<ArchiveElement> elems = new ArrayList<ArchiveElement>();
+        for (String file : list) {
+            Path p = Paths.get(file);
+            elems.add(new ArchiveElement.ArchiveElementBuilder()
+                    .uri(p.toUri())
+                    .entryPath(p.getFileName().toString())
+                    .size(Files.size(p))
+                    .build());
+        }
+        return elems;
+    }
+
+    /**
+     * Create the archive with and without zero-copy enabled and ensure the
+     * two outputs are identical.
+     *
+     * @param withZeroCopy Archiver with zero-copy enabled.
+     * @param withoutZeroCopy Archiver with zero-copy disabled.
+     * @param name Base name of the output files.
+     */
+    private void compare(
+            Archiver withZeroCopy,
+            Archiver withoutZeroCopy,
+            String name) throws ArchiveException, IOException {
+        List<ArchiveElement> elems = getElements();
+        Path p1 = Paths.get(ArchiveTest._tempDir, name + "_zero_copy");
+        Path p2 = Paths.get(ArchiveTest._tempDir, name + "_stream");
+        ((BundlerI)withZeroCopy).bundle(elems, p1.toUri());
+        ((BundlerI)withoutZeroCopy).bundle(elems, p2.toUri());
+        Path out1 = Paths.get(withZeroCopy.getOutputFile());
+        Path out2 = Paths.get(withoutZeroCopy.getOutputFile());
+        assertTrue(Files.exists(out1));
+        assertTrue(Files.exists(out2));
+        assertArrayEquals(Files.readAllBytes(out2), Files.readAllBytes(out1));
+    }
+
+    /**
+     * Test the zero-copy TAR output.
+     */
+    @Test
+    public void testTar() throws ArchiveException, IOException {
+        compare(new TarArchiver(getSettings(true)),
+                new TarArchiver(getSettings(false)),
+                "zero_copy_tar");
+    }
+
+    /**
+     * Test the zero-copy CPIO output.
+     */
+    @Test
+    public void testCpio() throws ArchiveException, IOException {
+        compare(new CpioArchiver(getSettings(true)),
+                new CpioArchiver(getSettings(false)),
+                "zero_copy_cpio");
+    }
+
+    /**
+     * Test the zero-copy AR output.
+     */
+    @Test
+    public void testAr() throws ArchiveException, IOException {
+        compare(new ArArchiver(getSettings(true)),
+                new ArArchiver(getSettings(false)),
+                "zero_copy_ar");
+    }
+
+    /**
+     * Test that the hash calculated while writing matches the hash of the
+     * output file for both the zero-copy and stream-based paths.
+     */
+    @Test
+    public void testHash() throws ArchiveException, IOException {
+        for (boolean zeroCopy : new boolean[] { true, false }) {
+            TarArchiver bundler = new TarArchiver(getSettings(zeroCopy));
+            assertNull(bundler.getHash());
+            bundler.setHashType(HashType.SHA256);
+            bundler.bundle(getElements(), Paths.get(
+                    ArchiveTest._tempDir, "hashed_tar_" + zeroCopy).toUri());
+            byte[] data = Files.readAllBytes(
+                    Paths.get(bundler.getOutputFile()));
+            assertEquals(DigestUtils.sha256Hex(data), bundler.getHash());
+        }
+    }
+
+    /**
+     * Test that the TAR archive assembled in parallel at precomputed 
+     * offsets is identical to the stream-based archive, and that its hash
+     * is correct.
+     */
+    @Test
+    public void testParallelAssembly() throws ArchiveException, IOException {
+        Properties props = new Properties();
+        props.setProperty(ZERO_COPY_PROPERTY, "true");
+        props.setProperty(PARALLEL_ASSEMBLY_PROPERTY, "true");
+        props.setProperty(ASSEMBLY_THREADS_PROPERTY, "3");
+        TarArchiver bundler = new TarArchiver(
+                ArchiveSettings.getInstance(props));
+        assertTrue(bundler.isParallelAssembly());
+        bundler.setHashType(HashType.SHA256);
+        compare(bundler,
+                new TarArchiver(getSettings(false)),
+                "parallel_assembly_tar");
+        assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(
+                Paths.get(bundler.getOutputFile()))), bundler.getHash());
+    }
+
+    /**
+     * Test the hash of a parallel assembled TAR archive whose files are 
+     * larger than the chunks the workers may queue ahead of the digests,
+     * with fewer threads than files.
+     */
+    @Test
+    public void testParallelAssemblyLargeFiles() 
+            throws ArchiveException, IOException {
+        List<ArchiveElement> elems = new ArrayList<ArchiveElement>();
+        for (int i=0; i<3; i++) {
+            Path p = Paths.get(ArchiveTest._tempDir, "large_data_" + i);
+            byte[] data = new byte[1536 * 1024 + i];
+            for (int j=0; j<data.length; j++) {
+                data[j] = (byte)((j + i) % 253);
+            }
+            Files.write(p, data);
+            elems.add(new ArchiveElement.ArchiveElementBuilder()
+                    .uri(p.toUri())
+                    .entryPath(p.getFileName().toString())
+                    .size(Files.size(p))
+                    .build());
+        }
+        Properties props = new Properties();
+        props.setProperty(ZERO_COPY_PROPERTY, "true");
+        props.setProperty(PARALLEL_ASSEMBLY_PROPERTY, "true");
+        props.setProperty(ASSEMBLY_THREADS_PROPERTY, "2");
+        TarArchiver bundler = new TarArchiver(
+                ArchiveSettings.getInstance(props));
+        bundler.setHashType(HashType.SHA256);
+        bundler.bundle(elems, Paths.get(
+                ArchiveTest._tempDir, "parallel_large_tar").toUri());
+        TarArchiver serial = new TarArchiver(getSettings(false));
+        serial.setHashType(HashType.SHA256);
+        serial.bundle(elems, Paths.get(
+                ArchiveTest._tempDir, "serial_large_tar").toUri());
+        assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(
+                Paths.get(bundler.getOutputFile()))), bundler.getHash());
+        assertEquals(serial.getHash(), bundler.getHash());
+        assertEquals(3, bundler.getNumBundled());
+    }
+
+    /**
+     * Cut the input file in half, simulating a file that shrinks while 
+     * it is being archived.
+     *
+     * @param element The file to truncate.
+     */
+    private void truncate(ArchiveElement element) {
+        try (FileChannel channel = FileChannel.open(
+                Paths.get(element.getURI()), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() / 2);
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Create a zero-copy archive in which the third input file is 
+     * truncated once the second has been archived, and ensure that the 
+     * archive fails rather than padding the entry with zeros.
+     *
+     * @param bundler Archiver with zero-copy enabled.
+     * @param name Name of the output file.
+     */
+    private void bundleShrunk(Archiver bundler, String name) 
+            throws ArchiveException, IOException {
+        final List<ArchiveElement> elems = getElements();
+        final List<ArchiveElement> notified = new ArrayList<ArchiveElement>();
+        bundler.addFileCompletionListener(new FileCompletionListenerI() {
+            @Override
+            public void notify(ArchiveElement element) {
+                notified.add(element);
+                if (element == elems.get(1)) {
+                    truncate(elems.get(2));
+                }
+            }
+        });
+        try {
+            ((BundlerI)bundler).bundle(elems, 
+                    Paths.get(ArchiveTest._tempDir, name).toUri());
+            assertTrue("Expected an IOException.", false);
+        }
+        catch (IOException ioe) { }
+        assertEquals(elems.subList(0, 2), notified);
+    }
+
+    /**
+     * Test that the zero-copy TAR, CPIO and AR archives fail when an 
+     * input file cannot be read in full.
+     */
+    @Test
+    public void testShrunkInput() throws ArchiveException, IOException {
+        bundleShrunk(new TarArchiver(getSettings(true)), "shrunk_tar");
+        bundleShrunk(new CpioArchiver(getSettings(true)), "shrunk_cpio");
+        bundleShrunk(new ArArchiver(getSettings(true)), "shrunk_ar");
+    }
+
+    /**
+     * Test that the TAR archive assembled in parallel fails when an input
+     * file is truncated or deleted after its header has been written.
+     */
+    @Test
+    public void testParallelAssemblyShrunkInput() 
+            throws ArchiveException, IOException {
+        Properties props = new Properties();
+        props.setProperty(ZERO_COPY_PROPERTY, "true");
+        props.setProperty(PARALLEL_ASSEMBLY_PROPERTY, "true");
+        props.setProperty(ASSEMBLY_THREADS_PROPERTY, "3");
+        for (final boolean delete : new boolean[] { false, true }) {
+            final List<ArchiveElement> elems = getElements();
+            final List<ArchiveElement> notified = 
+                    new ArrayList<ArchiveElement>();
+            TarArchiver bundler = new TarArchiver(
+                    ArchiveSettings.getInstance(props)) {
+                @Override
+                protected void prepareEntry(ArchiveElement element) {
+                    if (element != elems.get(2)) {
+                        return;
+                    }
+                    if (delete) {
+                        try {
+                            Files.delete(Paths.get(element.getURI()));
+                        }
+                        catch (IOException ioe) {
+                            throw new UncheckedIOException(ioe);
+                        }
+                    }
+                    else {
+                        truncate(element);
+                    }
+                }
+            };
+            bundler.addFileCompletionListener(new FileCompletionListenerI() {
+                @Override
+                public void notify(ArchiveElement element) {
+                    notified.add(element);
+                }
+            });
+            try {
+                bundler.bundle(elems, Paths.get(ArchiveTest._tempDir, 
+                        "parallel_shrunk_tar_" + delete).toUri());
+                assertTrue("Expected an IOException.", false);
+            }
+            catch (IOException ioe) { }
+            for (int i=2; i<elems.size(); i++) {
+                assertFalse(notified.contains(elems.get(i)));
+            }
+        }
+    }
+}
@@ -1,18 +1,35 @@
 package mil.nga.bundler.archive;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.codec.digest.DigestUtils;
 
 import mil.nga.bundler.ArchiveElementFactory;
 import mil.nga.bundler.archive.ArchiveFactory;
 import mil.nga.bundler.types.ArchiveType;
+import mil.nga.bundler.types.HashType;
 import mil.nga.bundler.interfaces.BundlerConstantsI;
 import mil.nga.bundler.interfaces.BundlerI;
+import mil.nga.bundler.interfaces.FileCompletionListenerI;
 import mil.nga.bundler.model.ArchiveElement;
 import mil.nga.bundler.exceptions.UnknownArchiveTypeException;
 import mil.nga.bundler.exceptions.ArchiveException;
@@ -22,9 +39,12 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.AfterClass;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 /**
  * jUnit tests for the ZIP archiver.
@@ -35,6 +55,9 @@ public class ZipArchiverTest extends ArchiveTest {
 
     public String _archiveFilename1 = "test_archive_1";
     public String _archiveFilename2 = "test_archive_2";
+    public String _archiveFilename3 = "test_archive_3";
+    public String _archiveFilename4 = "test_archive_4";
+    public String _archiveFilename5 = "test_archive_5";
     
     /**
      * This method tests that the ZIP archiver can archive a directory 
@@ -124,4 +147,518 @@ public class ZipArchiverTest extends ArchiveTest {
         }
     }
     
+    /**
+     * This method tests that the parallel ZIP mode produces an archive 
+     * with the entries in the same order as the input list and that the 
+     * file completion listeners are notified in that same order.
+     * 
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testParallelBundler() throws ArchiveException, IOException {
+        
+        // Build the path to the output file
+        StringBuilder sb = new StringBuilder();
+        sb.append(ArchiveTest._tempDir);
+        sb.append(File.separator);
+        sb.append(this._archiveFilename3);
+        this._archiveFilename3 = sb.toString();
+        
+        Properties props = new Properties();
+        props.setProperty(PARALLEL_ZIP_PROPERTY, "true");
+        props.setProperty(ARCHIVE_THREADS_PROPERTY, "3");
+        
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                super.getFileList());
+        
+        final List<ArchiveElement> notified = new ArrayList<ArchiveElement>();
+        ZipArchiver bundler = new ZipArchiver(
+                ArchiveSettings.getInstance(props));
+        assertTrue(bundler.isParallel());
+        assertEquals(3, bundler.getThreads());
+        bundler.addFileCompletionListener(new FileCompletionListenerI() {
+            @Override
+            public void notify(ArchiveElement element) {
+                notified.add(element);
+            }
+        });
+        
+        Path p = Paths.get(this._archiveFilename3);
+        bundler.bundle(elems, p.toUri());
+        
+        Path p2 = Paths.get(p.toString() + "." + ArchiveType.ZIP.getText());
+        assertTrue(Files.exists(p2));
+        assertEquals(elems, notified);
+        
+        try (ZipFile zip = new ZipFile(p2.toFile())) {
+            Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+            for (ArchiveElement elem : elems) {
+                assertTrue(entries.hasMoreElements());
+                ZipArchiveEntry entry = entries.nextElement();
+                assertEquals(elem.getEntryPath(), entry.getName());
+                assertEquals(ZipArchiveEntry.DEFLATED, entry.getMethod());
+                assertEquals(TEMP_FILE_SIZE, entry.getSize());
+            }
+        }
+    }
+    
+    /**
+     * Construct an input list containing an already-compressed file (a 
+     * GZip file without a file extension, so it must be detected from its
+     * content) along with the plain text test files.
+     * 
+     * @return The input list of files.
+     */
+    private List<String> getMixedFileList() throws IOException {
+        Path gz = Paths.get(ArchiveTest._tempDir, "compressed_data");
+        try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            byte[] data = new byte[4 * (int)TEMP_FILE_SIZE];
+            for (int i=0; i<data.length; i++) {
+                data[i] = (byte)(i % 7);
+            }
+            os.write(data);
+        }
+        List<String> list = super.getFileList();
+        list.add(1, gz.toString());
+        return list;
+    }
+    
+    /**
+     * Verify that the already-compressed entry was STORED and the rest 
+     * were DEFLATED, and that the STORED entry holds the original bytes.
+     * 
+     * @param zipFile The output archive.
+     * @param elems The input elements.
+     */
+    private void verifyMixedArchive(Path zipFile, List<ArchiveElement> elems) 
+            throws IOException {
+        try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+            Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+            for (ArchiveElement elem : elems) {
+                ZipArchiveEntry entry = entries.nextElement();
+                assertEquals(elem.getEntryPath(), entry.getName());
+                if (elem.getEntryPath().endsWith("compressed_data")) {
+                    assertEquals(ZipArchiveEntry.STORED, entry.getMethod());
+                    assertEquals(elem.getSize(), entry.getSize());
+                    byte[] expected = Files.readAllBytes(Paths.get(elem.getURI()));
+                    byte[] actual = new byte[expected.length];
+                    try (InputStream is = zip.getInputStream(entry)) {
+                        int off = 0;
+                        int n;
+                        while ((off < actual.length) && 
+                                ((n = is.read(actual, off, actual.length - off)) != -1)) {
+                            off += n;
+                        }
+                    }
+                    assertArrayEquals(expected, actual);
+                }
+                else {
+                    assertEquals(ZipArchiveEntry.DEFLATED, entry.getMethod());
+                }
+            }
+        }
+    }
+    
+    /**
+     * This method tests that files containing already-compressed data are
+     * STORED by the serial ZIP archiver.
+     * 
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testStoreCompressed() throws ArchiveException, IOException {
+        
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                getMixedFileList());
+        
+        ZipArchiver bundler = new ZipArchiver(
+                ArchiveSettings.getInstance(new Properties()));
+        assertTrue(bundler.isStoreCompressed());
+        Path p = Paths.get(ArchiveTest._tempDir, this._archiveFilename4);
+        bundler.bundle(elems, p.toUri());
+        
+        verifyMixedArchive(
+                Paths.get(p.toString() + "." + ArchiveType.ZIP.getText()), 
+                elems);
+    }
+    
+    /**
+     * This method tests that files containing already-compressed data are
+     * STORED by the parallel ZIP archiver.
+     * 
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testParallelStoreCompressed() throws ArchiveException, IOException {
+        
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                getMixedFileList());
+        
+        Properties props = new Properties();
+        props.setProperty(PARALLEL_ZIP_PROPERTY, "true");
+        props.setProperty(ARCHIVE_THREADS_PROPERTY, "2");
+        ZipArchiver bundler = new ZipArchiver(
+                ArchiveSettings.getInstance(props));
+        Path p = Paths.get(ArchiveTest._tempDir, this._archiveFilename5);
+        bundler.bundle(elems, p.toUri());
+        
+        verifyMixedArchive(
+                Paths.get(p.toString() + "." + ArchiveType.ZIP.getText()), 
+                elems);
+    }
+    
+    /**
+     * This method tests that the serial and parallel ZIP archivers stop 
+     * adding entries once the target volume size has been reached.
+     * 
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testVolumeSize() throws ArchiveException, IOException {
+        
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                super.getFileList());
+        
+        for (String parallel : new String[] { "false", "true" }) {
+            Properties props = new Properties();
+            props.setProperty(PARALLEL_ZIP_PROPERTY, parallel);
+            props.setProperty(ARCHIVE_THREADS_PROPERTY, "2");
+            ZipArchiver bundler = new ZipArchiver(
+                    ArchiveSettings.getInstance(props));
+            bundler.setVolumeSize(1L);
+            bundler.bundle(elems, Paths.get(
+                    ArchiveTest._tempDir, "zip_volume_" + parallel).toUri());
+            assertEquals(1, bundler.getNumBundled());
+            try (ZipFile zip = new ZipFile(
+                    Paths.get(bundler.getOutputFile()).toFile())) {
+                Enumeration<ZipArchiveEntry> entries = zip.getEntries();
+                assertEquals(elems.get(0).getEntryPath(), 
+                        entries.nextElement().getName());
+                assertTrue(!entries.hasMoreElements());
+            }
+        }
+    }
+    
+    /**
+     * This method tests the serial ZIP archiver with the input files read
+     * ahead of the entry being written.
+     * 
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testPrefetch() throws ArchiveException, IOException {
+        
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                getMixedFileList());
+        
+        Properties props = new Properties();
+        props.setProperty(PREFETCH_DEPTH_PROPERTY, "3");
+        ZipArchiver bundler = new ZipArchiver(
+                ArchiveSettings.getInstance(props));
+        Path p = Paths.get(ArchiveTest._tempDir, "zip_prefetch");
+        bundler.bundle(elems, p.toUri());
+        
+        verifyMixedArchive(
+                Paths.get(p.toString() + "." + ArchiveType.ZIP.getText()), 
+                elems);
+    }
+    
+    /**
+     * This method tests that an archive made up entirely of STORED entries
+     * is assembled in parallel, and that the resulting CRCs, sizes and 
+     * contents are valid.
+     * 
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testParallelAssembly() throws ArchiveException, IOException {
+        
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                getStoredFileList());
+        
+        Properties props = new Properties();
+        props.setProperty(PARALLEL_ASSEMBLY_PROPERTY, "true");
+        props.setProperty(ASSEMBLY_THREADS_PROPERTY, "3");
+        ZipArchiver bundler = new ZipArchiver(
+                ArchiveSettings.getInstance(props));
+        assertTrue(bundler.isParallelAssembly());
+        bundler.setHashType(HashType.SHA256);
+        bundler.bundle(elems, Paths.get(
+                ArchiveTest._tempDir, "zip_assembly").toUri());
+        assertEquals(elems.size(), bundler.getNumBundled());
+        
+        Path p = Paths.get(bundler.getOutputFile());
+        assertEquals(DigestUtils.sha256Hex(Files.readAllBytes(p)), 
+                bundler.getHash());
+        
+        // java.util.zip verifies the CRC and size of each entry as it is read.
+        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(p))) {
+            for (ArchiveElement elem : elems) {
+                ZipEntry entry = zis.getNextEntry();
+                assertEquals(elem.getEntryPath(), entry.getName());
+                assertEquals(ZipEntry.STORED, entry.getMethod());
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                IOUtils.copy(zis, baos);
+                assertArrayEquals(
+                        Files.readAllBytes(Paths.get(elem.getURI())), 
+                        baos.toByteArray());
+            }
+            assertNull(zis.getNextEntry());
+        }
+        try (ZipFile zip = new ZipFile(p.toFile())) {
+            Enumeration<ZipArchiveEntry> entries = zip.getEntriesInPhysicalOrder();
+            for (ArchiveElement elem : elems) {
+                ZipArchiveEntry entry = entries.nextElement();
+                assertEquals(elem.getEntryPath(), entry.getName());
+                assertEquals(elem.getSize(), entry.getSize());
+            }
+        }
+    }
+    
+    /**
+     * This method tests that the parallel assembly of STORED entries is 
+     * used with the default hash settings (SHA-1, as set by the bundler 
+     * service), and that the hash calculated while the archive was 
+     * assembled matches the archive.
+     * 
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testParallelAssemblyDefaultHash() throws ArchiveException, IOException {
+        
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                getStoredFileList());
+        
+        Properties props = new Properties();
+        props.setProperty(PARALLEL_ASSEMBLY_PROPERTY, "true");
+        ArchiveSettings settings = ArchiveSettings.getInstance(props);
+        ZipArchiver bundler = new ZipArchiver(settings);
+        bundler.setHashTypes(settings.getHashTypes());
+        bundler.setOutputFile(Paths.get(
+                ArchiveTest._tempDir, "zip_assembly_sha1").toUri());
+        Files.deleteIfExists(Paths.get(bundler.getOutputFile()));
+        assertTrue(bundler.assembleStoredEntries(elems));
+        assertEquals(elems.size(), bundler.getNumBundled());
+        
+        Path p = Paths.get(bundler.getOutputFile());
+        assertEquals(DigestUtils.sha1Hex(Files.readAllBytes(p)), 
+                bundler.getHashes().get(HashType.SHA1));
+        
+        try (ZipInputStream zis = new ZipInputStream(Files.newInputStream(p))) {
+            for (ArchiveElement elem : elems) {
+                ZipEntry entry = zis.getNextEntry();
+                assertEquals(elem.getEntryPath(), entry.getName());
+                assertEquals(ZipEntry.STORED, entry.getMethod());
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                IOUtils.copy(zis, baos);
+                assertArrayEquals(
+                        Files.readAllBytes(Paths.get(elem.getURI())), 
+                        baos.toByteArray());
+            }
+            assertNull(zis.getNextEntry());
+        }
+    }
+    
+    /**
+     * This method tests that, when the archive is hashed, the input files
+     * are not read for their CRCs if the archive cannot be assembled (here
+     * because the last entry would be DEFLATED), and that each is read 
+     * exactly once if it can.
+     * 
+     * @throws IOException Exception thrown if there are problems writing
+     * the output archive file.  Exceptions will fail the test.
+     */
+    @Test
+    public void testParallelAssemblyEligibility() throws ArchiveException, IOException {
+        
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<String> list = getStoredFileList();
+        List<ArchiveElement> stored = archiveEF.getArchiveElements(list);
+        list.add(getFileList().get(0));
+        List<ArchiveElement> mixed = archiveEF.getArchiveElements(list);
+        
+        Properties props = new Properties();
+        props.setProperty(PARALLEL_ASSEMBLY_PROPERTY, "true");
+        ArchiveSettings settings = ArchiveSettings.getInstance(props);
+        final List<ArchiveElement> read = new ArrayList<ArchiveElement>();
+        ZipArchiver bundler = new ZipArchiver(settings) {
+            @Override
+            protected void calculateCRC(
+                    ArchiveElement element, 
+                    ZipArchiveEntry entry) throws IOException {
+                read.add(element);
+                super.calculateCRC(element, entry);
+            }
+        };
+        bundler.setHashTypes(settings.getHashTypes());
+        bundler.setOutputFile(Paths.get(
+                ArchiveTest._tempDir, "zip_assembly_eligibility").toUri());
+        Path p = Paths.get(bundler.getOutputFile());
+        Files.deleteIfExists(p);
+        
+        assertFalse(bundler.assembleStoredEntries(mixed));
+        assertTrue(read.isEmpty());
+        assertFalse(Files.exists(p));
+        
+        assertTrue(bundler.assembleStoredEntries(stored));
+        assertEquals(stored, read);
+        assertEquals(DigestUtils.sha1Hex(Files.readAllBytes(p)), 
+                bundler.getHashes().get(HashType.SHA1));
+    }
+    
+    /**
+     * Construct an input list of already-compressed (GZip) files, all of 
+     * which will be STORED.
+     * 
+     * @return The input list of files.
+     */
+    private List<String> getStoredFileList() throws IOException {
+        List<String> list = new ArrayList<String>();
+        for (int i=0; i<5; i++) {
+            Path gz = Paths.get(ArchiveTest._tempDir, "assembly_data_" + i);
+            try (OutputStream os = new GZIPOutputStream(
+                    Files.newOutputStream(gz))) {
+                byte[] data = new byte[(i + 1) * (int)TEMP_FILE_SIZE];
+                for (int j=0; j<data.length; j++) {
+                    data[j] = (byte)((j * (i + 3)) % 253);
+                }
+                os.write(data);
+            }
+            list.add(gz.toString());
+        }
+        return list;
+    }
+    
+    /**
+     * Test that a file which cannot be read fails the archive, in both the
+     * serial and parallel modes, instead of being left out of it (or 
+     * written as an incomplete entry) and reported complete.
+     */
+    @Test
+    public void testMissingInput() throws ArchiveException, IOException {
+        
+        for (String parallel : new String[] { "false", "true" }) {
+            
+            Properties props = new Properties();
+            props.setProperty(PARALLEL_ZIP_PROPERTY, parallel);
+            props.setProperty(ARCHIVE_THREADS_PROPERTY, "3");
+            
+            ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+            List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                    super.getFileList());
+            ArchiveElement missing = new ArchiveElement.ArchiveElementBuilder()
+                    .uri(Paths.get(ArchiveTest._tempDir, "missing.dat").toUri())
+                    .entryPath("missing.dat")
+                    .size(TEMP_FILE_SIZE)
+                    .build();
+            elems.add(1, missing);
+            
+            final List<ArchiveElement> notified = new ArrayList<ArchiveElement>();
+            ZipArchiver bundler = new ZipArchiver(
+                    ArchiveSettings.getInstance(props));
+            assertEquals(Boolean.parseBoolean(parallel), bundler.isParallel());
+            bundler.addFileCompletionListener(new FileCompletionListenerI() {
+                @Override
+                public void notify(ArchiveElement element) {
+                    notified.add(element);
+                }
+            });
+            try {
+                bundler.bundle(elems, Paths.get(
+                        ArchiveTest._tempDir, "zip_missing_" + parallel).toUri());
+                assertTrue("Expected an IOException.", false);
+            }
+            catch (IOException ioe) { }
+            assertEquals(1, notified.size());
+            assertTrue(!notified.contains(missing));
+        }
+    }
+    
+    /**
+     * Test that an input file which shrinks (or disappears) after its 
+     * entry header has been written fails the channel-based copies, i.e. 
+     * the parallel assembly workers and the zero-copy transfer, with and 
+     * without hashing, instead of being padded with zeros and reported 
+     * complete.
+     */
+    @Test
+    public void testShrunkInput() throws ArchiveException, IOException {
+        
+        for (boolean hashing : new boolean[] { false, true }) {
+            
+            ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+            List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                    getStoredFileList());
+            
+            final List<ArchiveElement> notified = new ArrayList<ArchiveElement>();
+            ZipArchiver bundler = new ZipArchiver(
+                    ArchiveSettings.getInstance(new Properties()));
+            if (hashing) {
+                bundler.setHashType(HashType.SHA1);
+            }
+            bundler.addFileCompletionListener(new FileCompletionListenerI() {
+                @Override
+                public void notify(ArchiveElement element) {
+                    notified.add(element);
+                }
+            });
+            bundler.setOutputFile(Paths.get(
+                    ArchiveTest._tempDir, "zip_shrunk_" + hashing).toUri());
+            
+            long[] offsets  = new long[elems.size()];
+            long[] sizes    = new long[elems.size()];
+            long   position = 0L;
+            for (int i=0; i<elems.size(); i++) {
+                offsets[i] = position;
+                sizes[i]   = Files.size(Paths.get(elems.get(i).getURI()));
+                position  += sizes[i];
+            }
+            
+            // Truncate the third file once its size has been recorded.
+            Path shrunk = Paths.get(elems.get(2).getURI());
+            try (FileChannel fc = FileChannel.open(
+                    shrunk, StandardOpenOption.WRITE)) {
+                fc.truncate(sizes[2] / 2);
+            }
+            
+            try (FileChannel out = bundler.openOutputChannel()) {
+                bundler.preallocate(out, position);
+                try {
+                    bundler.copyBodies(out, elems, offsets, sizes, true);
+                    assertTrue("Expected an IOException.", false);
+                }
+                catch (IOException ioe) { }
+                assertEquals(2, notified.size());
+                assertTrue(!notified.contains(elems.get(2)));
+            }
+            
+            try (FileChannel out = bundler.openOutputChannel()) {
+                try {
+                    bundler.transferOneFile(out, shrunk.toUri(), sizes[2]);
+                    assertTrue("Expected an IOException.", false);
+                }
+                catch (IOException ioe) { }
+                Files.delete(shrunk);
+                try {
+                    bundler.transferOneFile(out, shrunk.toUri(), sizes[2]);
+                    assertTrue("Expected an IOException.", false);
+                }
+                catch (IOException ioe) { }
+            }
+        }
+    }
 }
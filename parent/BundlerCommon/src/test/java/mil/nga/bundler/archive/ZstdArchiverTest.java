@@ -0,0 +1,86 @@
+package mil.nga.bundler.archive;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Properties;
+
+import mil.nga.bundler.ArchiveElementFactory;
+import mil.nga.bundler.exceptions.ArchiveException;
+import mil.nga.bundler.exceptions.UnknownArchiveTypeException;
+import mil.nga.bundler.interfaces.BundlerI;
+import mil.nga.bundler.model.ArchiveElement;
+import mil.nga.bundler.types.ArchiveType;
+
+import com.github.luben.zstd.ZstdInputStream;
+
+import org.junit.Test;
+
+/**
+ * jUnit tests for the Zstandard archiver.
+ *
+ * @author L. Craig Carpenter
+ */
+public class ZstdArchiverTest extends ArchiveTest {
+
+    /**
+     * Create the archive and verify the TAR entries it contains.
+     *
+     * @param bundler The archiver to test.
+     * @param name Base name of the output file.
+     */
+    private void verify(BundlerI bundler, String name) 
+            throws ArchiveException, IOException {
+        
+        Path p = Paths.get(ArchiveTest._tempDir, name);
+        ArchiveElementFactory archiveEF = new ArchiveElementFactory(awsProps);
+        List<ArchiveElement> elems = archiveEF.getArchiveElements(
+                super.getFileList());
+        bundler.bundle(elems, p.toUri());
+        
+        Path p2 = Paths.get(p.toString() + "." 
+                + ArchiveType.TAR.getText() 
+                + "." + ArchiveType.ZSTD.getText());
+        assertTrue(Files.exists(p2));
+        assertTarContents(
+                new ZstdInputStream(
+                        new BufferedInputStream(Files.newInputStream(p2))), 
+                elems);
+    }
+    
+    /**
+     * This method tests that the factory supplies a Zstandard archiver 
+     * and that it produces a valid archive.
+     */
+    @Test
+    public void testBundler() 
+            throws ArchiveException, IOException, UnknownArchiveTypeException {
+        BundlerI bundler = ArchiveFactory.getInstance().getBundler(
+                ArchiveType.ZSTD);
+        assertTrue(bundler instanceof ZstdArchiver);
+        verify(bundler, "zstd_archive_1");
+    }
+    
+    /**
+     * This method tests that the Zstandard archiver produces a valid 
+     * archive when the level is changed and worker threads are enabled.
+     */
+    @Test
+    public void testParallelBundler() throws ArchiveException, IOException {
+        Properties props = new Properties();
+        props.setProperty(PARALLEL_ZSTD_PROPERTY, "true");
+        props.setProperty(ARCHIVE_THREADS_PROPERTY, "2");
+        props.setProperty(ZSTD_LEVEL_PROPERTY, "9");
+        ZstdArchiver bundler = new ZstdArchiver(
+                ArchiveSettings.getInstance(props));
+        assertTrue(bundler.isParallel());
+        assertEquals(9, bundler.getLevel());
+        verify(bundler, "zstd_archive_2");
+    }
+}
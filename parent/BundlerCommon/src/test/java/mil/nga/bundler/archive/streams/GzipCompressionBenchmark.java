@@ -0,0 +1,129 @@
+package mil.nga.bundler.archive.streams;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmark comparing the single-threaded commons-compress GZip
+ * compressor (the original <code>GZipArchiver</code> path) against the
+ * block-parallel <code>ParallelGzipOutputStream</code>.  This is not a
+ * unit test and is not run by surefire.  Run it from the test classpath:
+ *
+ * <pre>
+ * mvn test-compile
+ * java -cp target/test-classes:target/classes:&lt;test classpath&gt; \
+ *     mil.nga.bundler.archive.streams.GzipCompressionBenchmark
+ * </pre>
+ *
+ * @author L. Craig Carpenter
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GzipCompressionBenchmark {
+
+    /**
+     * The amount of data compressed per invocation (in MB).
+     */
+    @Param({ "64" })
+    public int sizeMB;
+
+    /**
+     * The number of threads used by the parallel stream.
+     */
+    @Param({ "2", "4", "8" })
+    public int threads;
+
+    /**
+     * The test data.
+     */
+    private byte[] data;
+
+    /**
+     * Generate the test data.
+     */
+    @Setup
+    public void setup() {
+        data = ParallelGzipOutputStreamTest.getTestData(
+                sizeMB * 1024 * 1024);
+    }
+
+    /**
+     * Write the test data through the input stream in TAR-record sized
+     * chunks.
+     *
+     * @param out The target compressor stream.
+     * @param sink The sink wrapped by the compressor stream.
+     * @return The number of compressed bytes.
+     */
+    private long write(OutputStream out, CountingSink sink) throws IOException {
+        try (OutputStream os = out) {
+            for (int off=0; off<data.length; off+=10240) {
+                os.write(data, off, Math.min(10240, data.length - off));
+            }
+        }
+        return sink.count;
+    }
+
+    /**
+     * Baseline: the single-threaded commons-compress GZip compressor.
+     */
+    @Benchmark
+    public long singleThreaded() throws IOException {
+        CountingSink sink = new CountingSink();
+        return write(new GzipCompressorOutputStream(sink), sink);
+    }
+
+    /**
+     * The block-parallel GZip compressor.
+     */
+    @Benchmark
+    public long parallel() throws IOException {
+        CountingSink sink = new CountingSink();
+        return write(new ParallelGzipOutputStream(sink, threads), sink);
+    }
+
+    /**
+     * Output stream that discards the data written to it, counting the
+     * bytes.
+     */
+    private static class CountingSink extends OutputStream {
+        long count = 0;
+        @Override
+        public void write(int b) { count++; }
+        @Override
+        public void write(byte[] b, int off, int len) { count += len; }
+    }
+
+    /**
+     * Convenience entry point.
+     * @param args Not used.
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options opts = new OptionsBuilder()
+                .include(GzipCompressionBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opts).run();
+    }
+}
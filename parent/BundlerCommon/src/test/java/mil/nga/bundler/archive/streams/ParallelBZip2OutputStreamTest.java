@@ -0,0 +1,90 @@
+package mil.nga.bundler.archive.streams;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.junit.Test;
+
+/**
+ * jUnit tests for the parallel BZip2 output stream.
+ *
+ * @author L. Craig Carpenter
+ */
+public class ParallelBZip2OutputStreamTest {
+
+    /**
+     * Small chunk size used to force many chunks in the tests.
+     */
+    public static final int TEST_CHUNK_SIZE = 100 * 1000;
+
+    /**
+     * Compress the input data with the parallel stream.
+     *
+     * @param data The data to compress.
+     * @param threads The number of threads to use.
+     * @return The BZip2 data.
+     */
+    private byte[] compress(byte[] data, int threads) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ParallelBZip2OutputStream out = new ParallelBZip2OutputStream(
+                baos, threads, TEST_CHUNK_SIZE, 1)) {
+            out.write(data);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decompress the input (possibly concatenated) BZip2 data.
+     *
+     * @param bzip2 The BZip2 data.
+     * @return The uncompressed data.
+     */
+    private byte[] decompress(byte[] bzip2) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (InputStream in = new BZip2CompressorInputStream(
+                new ByteArrayInputStream(bzip2), true)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                baos.write(buffer, 0, n);
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Test that a multi-chunk stream round-trips.
+     */
+    @Test
+    public void testMultipleChunks() throws IOException {
+        byte[] data = ParallelGzipOutputStreamTest.getTestData(
+                5 * TEST_CHUNK_SIZE + 777);
+        assertArrayEquals(data, decompress(compress(data, 3)));
+    }
+
+    /**
+     * Test that an input that is an exact multiple of the chunk size (i.e.
+     * the final chunk is empty) round-trips.
+     */
+    @Test
+    public void testExactChunkMultiple() throws IOException {
+        byte[] data = ParallelGzipOutputStreamTest.getTestData(
+                2 * TEST_CHUNK_SIZE);
+        assertArrayEquals(data, decompress(compress(data, 2)));
+    }
+
+    /**
+     * Test that an empty input produces a valid BZip2 stream.
+     */
+    @Test
+    public void testEmptyInput() throws IOException {
+        byte[] bzip2 = compress(new byte[0], 2);
+        assertEquals(0, decompress(bzip2).length);
+    }
+}
@@ -0,0 +1,140 @@
+package mil.nga.bundler.archive.streams;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ * jUnit tests for the parallel GZip output stream.
+ *
+ * @author L. Craig Carpenter
+ */
+public class ParallelGzipOutputStreamTest {
+
+    /**
+     * Small block size used to force many blocks in the tests.
+     */
+    public static final int TEST_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Generate test data that is partially compressible (repeated text
+     * interleaved with random bytes).
+     *
+     * @param size The number of bytes to generate.
+     * @return The test data.
+     */
+    public static byte[] getTestData(int size) {
+        byte[] data = new byte[size];
+        byte[] text = "The quick brown fox jumps over the lazy dog. "
+                .getBytes();
+        Random random = new Random(size);
+        for (int i=0; i<size; i++) {
+            if ((i / 1000) % 3 == 0) {
+                data[i] = (byte)random.nextInt(256);
+            }
+            else {
+                data[i] = text[i % text.length];
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Compress the input data with the parallel stream.
+     *
+     * @param data The data to compress.
+     * @param threads The number of threads to use.
+     * @return The gzip data.
+     */
+    private byte[] compress(byte[] data, int threads) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(
+                baos, threads, TEST_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION)) {
+            // Write in odd-sized chunks to exercise the block boundaries.
+            int off = 0;
+            while (off < data.length) {
+                int n = Math.min(7919, data.length - off);
+                out.write(data, off, n);
+                off += n;
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decompress the input gzip data with the JDK implementation.
+     *
+     * @param gzip The gzip data.
+     * @return The uncompressed data.
+     */
+    private byte[] decompress(byte[] gzip) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(
+                new ByteArrayInputStream(gzip))) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                baos.write(buffer, 0, n);
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Test that a multi-block stream round-trips through a standard
+     * gzip decompressor.
+     */
+    @Test
+    public void testMultipleBlocks() throws IOException {
+        byte[] data = getTestData(10 * TEST_BLOCK_SIZE + 12345);
+        byte[] gzip = compress(data, 4);
+        assertArrayEquals(data, decompress(gzip));
+    }
+
+    /**
+     * Test that the output is a single gzip member even when the input
+     * is an exact multiple of the block size (i.e. the final block is
+     * empty).
+     */
+    @Test
+    public void testExactBlockMultiple() throws IOException {
+        byte[] data = getTestData(3 * TEST_BLOCK_SIZE);
+        assertArrayEquals(data, decompress(compress(data, 2)));
+    }
+
+    /**
+     * Test that empty and single-byte inputs produce valid gzip data.
+     */
+    @Test
+    public void testSmallInputs() throws IOException {
+        assertEquals(0, decompress(compress(new byte[0], 2)).length);
+        byte[] one = new byte[] { 42 };
+        assertArrayEquals(one, decompress(compress(one, 2)));
+    }
+
+    /**
+     * Test that changing the compression level mid-stream produces valid
+     * output.
+     */
+    @Test
+    public void testLevelChange() throws IOException {
+        byte[] data = getTestData(4 * TEST_BLOCK_SIZE);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(
+                baos, 3, TEST_BLOCK_SIZE, Deflater.BEST_SPEED)) {
+            out.write(data, 0, 2 * TEST_BLOCK_SIZE);
+            out.setLevel(Deflater.NO_COMPRESSION);
+            out.write(data, 2 * TEST_BLOCK_SIZE, 2 * TEST_BLOCK_SIZE);
+        }
+        assertArrayEquals(data, decompress(baos.toByteArray()));
+    }
+}
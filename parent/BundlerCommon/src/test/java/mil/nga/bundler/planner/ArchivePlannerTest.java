@@ -0,0 +1,217 @@
+package mil.nga.bundler.planner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import mil.nga.bundler.interfaces.ArchivePlannerI;
+import mil.nga.bundler.model.ArchiveElement;
+import mil.nga.bundler.types.PlannerType;
+
+import org.junit.Test;
+
+/**
+ * jUnit tests for the archive planning strategies.
+ *
+ * @author L. Craig Carpenter
+ */
+public class ArchivePlannerTest {
+
+    /**
+     * Get a reproducible set of file sizes between 1 and 600 bytes.
+     */
+    private long[] getSizes(int count) {
+        Random random = new Random(11L);
+        long[] sizes = new long[count];
+        for (int i=0; i<count; i++) {
+            sizes[i] = 1 + random.nextInt(600);
+        }
+        return sizes;
+    }
+
+    /**
+     * Check that every file appears exactly once, that the files within
+     * each archive are in request order, and that no archive holding more
+     * than one file reaches the capacity.
+     */
+    private void assertValid(
+            List<List<Integer>> plan,
+            long[] sizes,
+            long capacity) {
+        int[] seen = new int[sizes.length];
+        int previous = -1;
+        for (List<Integer> archive : plan) {
+            assertTrue(archive.size() > 0);
+            assertTrue(archive.get(0) > previous);
+            previous = archive.get(0);
+            long load = 0L;
+            for (int i=0; i<archive.size(); i++) {
+                if (i > 0) {
+                    assertTrue(archive.get(i) > archive.get(i - 1));
+                }
+                seen[archive.get(i)]++;
+                load += sizes[archive.get(i)];
+            }
+            if (archive.size() > 1) {
+                assertTrue(load < capacity);
+            }
+        }
+        for (int count : seen) {
+            assertEquals(1, count);
+        }
+    }
+
+    /**
+     * Test that the decreasing planners produce valid plans with no more
+     * archives than the next-fit planner.
+     */
+    @Test
+    public void testPlanners() {
+        long[] sizes = getSizes(500);
+        ArchivePlannerFactory factory = ArchivePlannerFactory.getInstance();
+        List<List<Integer>> nextFit = factory.getPlanner(
+                PlannerType.NEXT_FIT).plan(sizes, 1000L, 0L);
+        List<List<Integer>> ffd = factory.getPlanner(
+                PlannerType.FIRST_FIT_DECREASING).plan(sizes, 1000L, 0L);
+        List<List<Integer>> bfd = factory.getPlanner(
+                PlannerType.BEST_FIT_DECREASING).plan(sizes, 1000L, 0L);
+        assertValid(nextFit, sizes, 1000L);
+        assertValid(ffd, sizes, 1000L);
+        assertValid(bfd, sizes, 1000L);
+        assertTrue(ffd.size() < nextFit.size());
+        assertTrue(bfd.size() < nextFit.size());
+        assertTrue(factory.getPlanner(null) instanceof NextFitPlanner);
+    }
+
+    /**
+     * Get the spread between the largest and smallest archive.
+     */
+    private long getSpread(List<List<Integer>> plan, long[] sizes) {
+        long min = Long.MAX_VALUE;
+        long max = 0L;
+        for (List<Integer> archive : plan) {
+            long load = 0L;
+            for (int index : archive) {
+                load += sizes[index];
+            }
+            min = Math.min(min, load);
+            max = Math.max(max, load);
+        }
+        return max - min;
+    }
+
+    /**
+     * Test that the longest-processing-time planner uses no more archives
+     * than first-fit-decreasing and balances their sizes.
+     */
+    @Test
+    public void testBalancedPlanner() {
+        long[] sizes = getSizes(500);
+        ArchivePlannerFactory factory = ArchivePlannerFactory.getInstance();
+        List<List<Integer>> ffd = factory.getPlanner(
+                PlannerType.FIRST_FIT_DECREASING).plan(sizes, 10000L, 0L);
+        List<List<Integer>> lpt = factory.getPlanner(
+                PlannerType.LONGEST_PROCESSING_TIME).plan(sizes, 10000L, 0L);
+        assertValid(lpt, sizes, 10000L);
+        assertEquals(ffd.size(), lpt.size());
+        assertTrue(getSpread(lpt, sizes) < 600L);
+        assertTrue(getSpread(lpt, sizes) < getSpread(ffd, sizes));
+    }
+
+    /**
+     * Test that the locality planner groups files by directory (or S3 key
+     * prefix) and then size, and lists each archive in grouped order.
+     */
+    @Test
+    public void testLocalityPlanner() {
+        String[] dirs = new String[] { 
+                "file:///data/b/", "s3://bucket/a/", "file:///data/a/" };
+        List<ArchiveElement> files = new ArrayList<ArchiveElement>();
+        long[] sizes = new long[30];
+        for (int i=0; i<sizes.length; i++) {
+            sizes[i] = 100L + (7L * i) % 50L;
+            files.add(new ArchiveElement.ArchiveElementBuilder()
+                    .uri(URI.create(dirs[i % dirs.length] + "f" + i))
+                    .entryPath("f" + i)
+                    .size(sizes[i])
+                    .build());
+        }
+        List<List<Integer>> plan = ArchivePlannerFactory.getInstance()
+                .getPlanner(PlannerType.LOCALITY)
+                .plan(files, sizes, 1300L, 0L);
+        assertEquals(3, plan.size());
+        String[] expected = new String[] { 
+                "file:///data/a/", "file:///data/b/", "s3://bucket/a/" };
+        int total = 0;
+        for (int i=0; i<plan.size(); i++) {
+            long previous = 0L;
+            for (int index : plan.get(i)) {
+                assertEquals(expected[i], 
+                        LocalityPlanner.getLocation(files.get(index)));
+                assertTrue(sizes[index] >= previous);
+                previous = sizes[index];
+                total++;
+            }
+        }
+        assertEquals(sizes.length, total);
+    }
+
+    /**
+     * Test that files larger than the target size get an archive of their
+     * own and that the last archive is always produced.
+     */
+    @Test
+    public void testOversizedFiles() {
+        long[] sizes = new long[] { 5000L, 10L, 20L, 3000L, 30L };
+        for (PlannerType type : PlannerType.values()) {
+            ArchivePlannerI planner =
+                    ArchivePlannerFactory.getInstance().getPlanner(type);
+            List<List<Integer>> plan = planner.plan(sizes, 1000L, 0L);
+            assertValid(plan, sizes, 1000L);
+            int total = 0;
+            for (List<Integer> archive : plan) {
+                total += archive.size();
+                if (archive.contains(0) || archive.contains(3)) {
+                    assertEquals(1, archive.size());
+                }
+            }
+            assertEquals(sizes.length, total);
+        }
+        assertEquals(0, new BestFitDecreasingPlanner().plan(
+                new long[0], 1000L, 0L).size());
+    }
+
+    /**
+     * Test that the archive size is increased when the files do not fit in
+     * the maximum number of archives.
+     */
+    @Test
+    public void testMaxArchives() {
+        long[] sizes = getSizes(500);
+        for (PlannerType type : PlannerType.values()) {
+            ArchivePlannerI planner =
+                    ArchivePlannerFactory.getInstance().getPlanner(type);
+            List<List<Integer>> plan = planner.plan(sizes, 1000L, 20L);
+            assertTrue(plan.size() <= 20);
+            int total = 0;
+            for (List<Integer> archive : plan) {
+                total += archive.size();
+            }
+            assertEquals(sizes.length, total);
+        }
+    }
+
+    /**
+     * Test the conversion of the planner names.
+     */
+    @Test
+    public void testPlannerType() throws Exception {
+        assertEquals(PlannerType.BEST_FIT_DECREASING,
+                PlannerType.fromString(" Best_Fit_Decreasing "));
+        assertEquals(PlannerType.NEXT_FIT, PlannerType.fromString("next_fit"));
+    }
+}
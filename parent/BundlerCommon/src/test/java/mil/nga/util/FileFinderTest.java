@@ -0,0 +1,123 @@
+package mil.nga.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mil.nga.util.ParallelFileWalker.PathConsumer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * jUnit tests for the parallel directory walk used by FileFinder.
+ *
+ * @author L. Craig Carpenter
+ */
+public class FileFinderTest {
+
+    /**
+     * Shape of the test tree: DEPTH levels of WIDTH directories, each
+     * holding FILES files.
+     */
+    public static final int DEPTH = 3;
+    public static final int WIDTH = 3;
+    public static final int FILES = 4;
+
+    private static Path _root = null;
+    private static int  _numFiles = 0;
+    private static int  _numDirs  = 0;
+
+    /**
+     * Create the test tree (once).
+     */
+    @BeforeClass
+    public static void init() throws IOException {
+        _root = Paths.get(System.getProperty("java.io.tmpdir"), "finder");
+        List<Path> level = new ArrayList<Path>();
+        level.add(_root);
+        for (int depth=0; depth<=DEPTH; depth++) {
+            List<Path> next = new ArrayList<Path>();
+            for (Path dir : level) {
+                Files.createDirectories(dir);
+                _numDirs++;
+                for (int i=0; i<FILES; i++) {
+                    Path file = dir.resolve("file_" + i
+                            + (((i % 2) == 0) ? ".txt" : ".dat"));
+                    if (!Files.exists(file)) {
+                        Files.write(file, new byte[i + 1]);
+                    }
+                    _numFiles++;
+                }
+                if (depth < DEPTH) {
+                    for (int i=0; i<WIDTH; i++) {
+                        next.add(dir.resolve("dir_" + i + ".txt"));
+                    }
+                }
+            }
+            level = next;
+        }
+    }
+
+    /**
+     * Test that every file (and no directory) is listed, in sorted order.
+     */
+    @Test
+    public void testListFiles() throws IOException {
+        List<URI> files = FileFinder.listFiles(_root.toUri());
+        assertEquals(_numFiles, files.size());
+        for (int i=1; i<files.size(); i++) {
+            assertTrue(files.get(i - 1).compareTo(files.get(i)) < 0);
+            assertTrue(Files.isRegularFile(Paths.get(files.get(i))));
+        }
+        assertEquals(1, FileFinder.listFiles(
+                _root.resolve("file_0.txt").toUri()).size());
+    }
+
+    /**
+     * Test that the glob matches both files and directories.
+     */
+    @Test
+    public void testFind() throws IOException {
+        List<Path> matches = FileFinder.find(_root.toUri(), "*.txt");
+        assertEquals((_numFiles / 2) + (_numDirs - 1), matches.size());
+        assertNull(FileFinder.find(_root.toUri(), "*.none"));
+    }
+
+    /**
+     * Test that results are streamed to the consumer, including with a
+     * single worker.
+     */
+    @Test
+    public void testStreaming() throws IOException {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        PathConsumer consumer = new PathConsumer() {
+            @Override
+            public void accept(Path path, BasicFileAttributes attrs) {
+                count.incrementAndGet();
+                bytes.addAndGet(attrs.size());
+            }
+        };
+        FileFinder.listFiles(_root.toUri(), consumer);
+        assertEquals(_numFiles, count.get());
+        assertEquals(_numDirs * (1 + 2 + 3 + 4), bytes.get());
+
+        count.set(0L);
+        new ParallelFileWalker(1).walk(_root, consumer);
+        assertEquals(_numFiles + _numDirs, count.get());
+        count.set(0L);
+        new ParallelFileWalker(4).walk(_root.resolve("missing"), consumer);
+        assertEquals(0L, count.get());
+    }
+}
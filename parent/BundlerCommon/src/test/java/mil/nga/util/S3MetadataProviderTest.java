@@ -0,0 +1,265 @@
+package mil.nga.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import mil.nga.bundler.FileValidator;
+import mil.nga.bundler.messages.FileRequest;
+import mil.nga.bundler.model.FileEntry;
+
+import org.junit.Test;
+
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * jUnit tests for the listing-based S3 metadata lookups, run against an
+ * in-memory stand-in for S3.
+ *
+ * @author L. Craig Carpenter
+ */
+public class S3MetadataProviderTest {
+
+    /**
+     * Bucket and endpoint used by the tests.
+     */
+    public static final String BUCKET = "data";
+    public static final String BASE   = "s3://s3.local/" + BUCKET + "/";
+
+    /**
+     * Number of keys returned in each listing page.
+     */
+    public static final int PAGE_SIZE = 3;
+
+    /**
+     * In-memory stand-in for S3 supporting paged (and delimited) listings
+     * and HEAD requests against a single bucket.
+     */
+    private static class LocalS3 extends AbstractAmazonS3 {
+
+        private final TreeMap<String, Long> objects =
+                new TreeMap<String, Long>();
+
+        private void put(String key, long size) {
+            objects.put(key, size);
+        }
+
+        @Override
+        public ListObjectsV2Result listObjectsV2(
+                ListObjectsV2Request request) {
+            String prefix    = (request.getPrefix() == null) ?
+                    "" : request.getPrefix();
+            String delimiter = request.getDelimiter();
+            int    pageSize  = (request.getMaxKeys() == null) ?
+                    PAGE_SIZE : Math.min(PAGE_SIZE, request.getMaxKeys());
+            ListObjectsV2Result result = new ListObjectsV2Result();
+            List<String> prefixes = new ArrayList<String>();
+            String last = null;
+            int count = 0;
+            SortedMap<String, Long> page =
+                    (request.getContinuationToken() == null) ?
+                    objects.tailMap(prefix, true) :
+                    objects.tailMap(request.getContinuationToken(), false);
+            for (Map.Entry<String, Long> entry : page.entrySet()) {
+                String key = entry.getKey();
+                if (!key.startsWith(prefix)) {
+                    break;
+                }
+                if (count == pageSize) {
+                    result.setTruncated(true);
+                    result.setNextContinuationToken(last);
+                    break;
+                }
+                int index = (delimiter == null) ?
+                        -1 : key.indexOf(delimiter, prefix.length());
+                if (index >= 0) {
+                    String common = key.substring(0, index + 1);
+                    if (prefixes.contains(common)) {
+                        continue;
+                    }
+                    prefixes.add(common);
+                    last = common + Character.MAX_VALUE;
+                }
+                else {
+                    S3ObjectSummary summary = new S3ObjectSummary();
+                    summary.setBucketName(BUCKET);
+                    summary.setKey(key);
+                    summary.setSize(entry.getValue());
+                    summary.setETag("etag-" + key);
+                    result.getObjectSummaries().add(summary);
+                    last = key;
+                }
+                count++;
+            }
+            result.setCommonPrefixes(prefixes);
+            return result;
+        }
+
+        @Override
+        public ObjectMetadata getObjectMetadata(String bucket, String key) {
+            if (!objects.containsKey(key)) {
+                AmazonS3Exception ase = new AmazonS3Exception("Not Found");
+                ase.setStatusCode(404);
+                throw ase;
+            }
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(objects.get(key));
+            return metadata;
+        }
+    }
+
+    /**
+     * Populate the stand-in.
+     */
+    private LocalS3 getLocalS3() {
+        LocalS3 s3 = new LocalS3();
+        s3.put("imagery/", 0L);
+        s3.put("imagery/a/1.tif", 100L);
+        s3.put("imagery/a/2.tif", 200L);
+        s3.put("imagery/a/b/3.tif", 300L);
+        s3.put("imagery/4.tif", 400L);
+        s3.put("imagery2/5.tif", 500L);
+        s3.put("other/6.tif", 600L);
+        return s3;
+    }
+
+    /**
+     * Test that a listed prefix answers existence and size for every key
+     * beneath it, and that HEAD requests are only issued outside it.
+     */
+    @Test
+    public void testListedPrefix() throws IOException {
+        S3MetadataProvider provider = new S3MetadataProvider(getLocalS3());
+
+        List<URI> files = provider.listFiles(URI.create(BASE + "imagery"));
+        assertEquals(4, files.size());
+        assertEquals(URI.create(BASE + "imagery/4.tif"), files.get(0));
+        assertEquals(URI.create(BASE + "imagery/a/b/3.tif"), files.get(3));
+        assertEquals(2, provider.getListRequests());
+
+        assertEquals(200L, provider.getMetadata(
+                URI.create(BASE + "imagery/a/2.tif")).getSize());
+        assertEquals("etag-imagery/a/2.tif", provider.getMetadata(
+                URI.create(BASE + "imagery/a/2.tif")).getETag());
+        assertNull(provider.getMetadata(
+                URI.create(BASE + "imagery/a/missing.tif")));
+        assertTrue(provider.isDirectory(URI.create(BASE + "imagery/a/b")));
+        assertFalse(provider.isDirectory(URI.create(BASE + "imagery/4.tif")));
+        assertTrue(provider.getMetadata(
+                URI.create(BASE + "imagery/a")).isDirectory());
+        assertEquals(0, provider.getHeadRequests());
+        assertEquals(2, provider.getListRequests());
+
+        // Keys outside the listed prefix need a HEAD, once.
+        assertEquals(500L, provider.getMetadata(
+                URI.create(BASE + "imagery2/5.tif")).getSize());
+        assertEquals(500L, provider.getMetadata(
+                URI.create(BASE + "imagery2/5.tif")).getSize());
+        assertNull(provider.getMetadata(URI.create(BASE + "other/7.tif")));
+        assertNull(provider.getMetadata(URI.create(BASE + "other/7.tif")));
+        assertEquals(2, provider.getHeadRequests());
+        assertEquals(2, provider.getListRequests());
+    }
+
+    /**
+     * Test that the validator expands and validates S3 directories from a
+     * single listing, probing individual files with one request each.
+     */
+    @Test
+    public void testValidator() throws IOException {
+        S3MetadataProvider provider = new S3MetadataProvider(getLocalS3());
+        List<FileRequest> requests = new ArrayList<FileRequest>();
+        requests.add(new FileRequest.FileRequestBuilder()
+                .file(BASE + "imagery")
+                .build());
+        requests.add(new FileRequest.FileRequestBuilder()
+                .file(BASE + "other/6.tif")
+                .build());
+        requests.add(new FileRequest.FileRequestBuilder()
+                .file(BASE + "other/missing.tif")
+                .build());
+
+        List<FileRequest> expanded = FileValidator.getInstance()
+                .expand(requests, provider);
+        assertEquals(6, expanded.size());
+        List<FileEntry> entries = FileValidator.getInstance()
+                .validateFiles(expanded, provider);
+        assertEquals(5, entries.size());
+        long total = 0L;
+        for (FileEntry entry : entries) {
+            total += entry.getSize();
+        }
+        assertEquals(1600L, total);
+        assertEquals(BASE + "other/6.tif", entries.get(4).getFilePath());
+
+        // The directory is probed with a one-key listing, the two files
+        // share a parent that is listed once, and the directory is then
+        // listed in two pages.  No HEAD requests are needed.
+        assertEquals(4, provider.getListRequests());
+        assertEquals(0, provider.getHeadRequests());
+    }
+
+    /**
+     * Test that a parent shared by several requested keys is listed once,
+     * that unshared keys are probed, and that the listing of a large
+     * parent is bounded by the cost of probing its keys.
+     */
+    @Test
+    public void testSharedParent() throws IOException {
+        S3MetadataProvider provider = new S3MetadataProvider(getLocalS3());
+        List<URI> uris = new ArrayList<URI>();
+        uris.add(URI.create(BASE + "imagery/a/1.tif"));
+        uris.add(URI.create(BASE + "imagery/a/2.tif"));
+        uris.add(URI.create(BASE + "imagery/a/missing.tif"));
+        uris.add(URI.create(BASE + "imagery/a/b"));
+        uris.add(URI.create(BASE + "other/6.tif"));
+        provider.groupByParent(uris);
+
+        assertFalse(provider.isDirectory(uris.get(0)));
+        assertFalse(provider.isDirectory(uris.get(1)));
+        assertFalse(provider.isDirectory(uris.get(2)));
+        assertTrue(provider.isDirectory(uris.get(3)));
+        assertEquals(1, provider.getListRequests());
+        assertEquals(0, provider.getHeadRequests());
+        assertFalse(provider.isDirectory(uris.get(4)));
+        assertEquals(2, provider.getListRequests());
+        assertEquals(1, provider.getHeadRequests());
+        assertEquals(600L, provider.getMetadata(uris.get(4)).getSize());
+        assertNull(provider.getMetadata(uris.get(2)));
+        assertEquals(1, provider.getHeadRequests());
+
+        // Two keys in a parent of 30 objects allow 4 pages (12 keys).
+        LocalS3 s3 = getLocalS3();
+        for (int i=10; i<40; i++) {
+            s3.put("big/" + i + ".tif", (long)i);
+        }
+        provider = new S3MetadataProvider(s3);
+        uris.clear();
+        uris.add(URI.create(BASE + "big/10.tif"));
+        uris.add(URI.create(BASE + "big/39.tif"));
+        provider.groupByParent(uris);
+        assertFalse(provider.isDirectory(uris.get(0)));
+        assertEquals(4, provider.getListRequests());
+        assertFalse(provider.isDirectory(uris.get(1)));
+        assertEquals(5, provider.getListRequests());
+        assertEquals(1, provider.getHeadRequests());
+        assertEquals(39L, provider.getMetadata(uris.get(1)).getSize());
+        assertEquals(15L, provider.getMetadata(
+                URI.create(BASE + "big/15.tif")).getSize());
+        assertEquals(1, provider.getHeadRequests());
+    }
+}
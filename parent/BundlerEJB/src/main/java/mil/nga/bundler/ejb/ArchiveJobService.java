@@ -1,5 +1,8 @@
 package mil.nga.bundler.ejb;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.ejb.LocalBean;
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
@@ -18,6 +21,7 @@ import org.slf4j.LoggerFactory;
 import mil.nga.bundler.exceptions.ServiceUnavailableException;
 import mil.nga.bundler.interfaces.BundlerConstantsI;
 import mil.nga.bundler.model.ArchiveJob;
+import mil.nga.bundler.types.JobStateType;
 
 /**
  * 
@@ -167,4 +171,101 @@ public class ArchiveJobService implements BundlerConstantsI {
                     + "The ArchiveJob will not be updated.");
         }
     }
+    
+    /**
+     * Persist a new ArchiveJob object (and its file entries) into the 
+     * backing data store.
+     * 
+     * @param archive ArchiveJob object to persist.
+     */
+    public void persist(ArchiveJob archive) throws ServiceUnavailableException {
+        
+        long startTime = System.currentTimeMillis();
+        
+        if (archive != null) {
+            getEntityManager().persist(archive);
+            getEntityManager().flush();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("ArchiveJob object persisted in [ "
+                        + (System.currentTimeMillis() - startTime)
+                        + " ] ms.");
+            }
+        }
+        else {
+            LOGGER.warn("The input ArchiveJob object is null.  "
+                    + "The ArchiveJob will not be persisted.");
+        }
+    }
+    
+    /**
+     * Method used to summarize the most recently finished 
+     * <code>ArchiveJob</code> objects that completed successfully without
+     * loading the entities (and their file lists).  The database sums the 
+     * input bytes of each archive by lower-case file extension, so one row
+     * is returned for each extension present in each archive.  Used to 
+     * learn the compression ratios actually achieved.
+     * 
+     * Each row contains, in order, the job ID, the archive ID, the archive
+     * type (String), the archive size, the extension (with the "." 
+     * separator, null if the files have no extension) and the total input
+     * bytes.  Rows for the same archive are adjacent.
+     * 
+     * @param max The maximum number of archives to summarize.
+     * @return The aggregated rows (never null).
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> getCompletedArchiveSummaries(int max) 
+            throws ServiceUnavailableException {
+        
+        long           startTime = System.currentTimeMillis();
+        List<Object[]> rows      = new ArrayList<Object[]>();
+        
+        if (max > 0) {
+            
+            // Find the end time of the oldest archive in the sample.  If 
+            // there are fewer than max completed archives, use them all.
+            long cutoff = 0L;
+            Query query = getEntityManager().createQuery(
+                    "SELECT a.endTime FROM ArchiveJob a "
+                    + "WHERE a.archiveState = :state "
+                    + "ORDER BY a.endTime DESC");
+            query.setParameter("state", JobStateType.COMPLETE);
+            query.setFirstResult(max - 1);
+            query.setMaxResults(1);
+            List<Object> endTimes = query.getResultList();
+            if (!endTimes.isEmpty()) {
+                cutoff = ((Number)endTimes.get(0)).longValue();
+            }
+            
+            // The extension (text after the last "." in the final path
+            // element) cannot be extracted in JPQL so a native query is 
+            // used.  REGEXP_SUBSTR is supported by Oracle and PostgreSQL.
+            query = getEntityManager().createNativeQuery(
+                    "SELECT a.JOB_ID, a.ARCHIVE_ID, a.ARCHIVE_TYPE, "
+                    + "a.ARCHIVE_SIZE, "
+                    + "REGEXP_SUBSTR(LOWER(f.ARCHIVE_ENTRY_PATH), "
+                    + "'[.][^./]*$') AS EXTENSION, "
+                    + "SUM(f.FILE_SIZE) "
+                    + "FROM ARCHIVE_JOBS a JOIN FILE_ENTRY f "
+                    + "ON f.JOB_ID = a.JOB_ID AND f.ARCHIVE_ID = a.ARCHIVE_ID "
+                    + "WHERE a.ARCHIVE_STATE = ?1 AND a.END_TIME >= ?2 "
+                    + "GROUP BY a.JOB_ID, a.ARCHIVE_ID, a.ARCHIVE_TYPE, "
+                    + "a.ARCHIVE_SIZE, "
+                    + "REGEXP_SUBSTR(LOWER(f.ARCHIVE_ENTRY_PATH), "
+                    + "'[.][^./]*$') "
+                    + "ORDER BY a.JOB_ID, a.ARCHIVE_ID");
+            query.setParameter(1, JobStateType.COMPLETE.name());
+            query.setParameter(2, cutoff);
+            rows.addAll(query.getResultList());
+            
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Retrieved [ "
+                        + rows.size()
+                        + " ] completed ArchiveJob summary rows in [ "
+                        + (System.currentTimeMillis() - startTime)
+                        + " ] ms.");
+            }
+        }
+        return rows;
+    }
 }
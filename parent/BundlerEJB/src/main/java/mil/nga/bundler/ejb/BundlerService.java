@@ -6,7 +6,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
@@ -16,7 +20,12 @@ import javax.ejb.Stateless;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import mil.nga.bundler.FileNameGenerator;
+import mil.nga.bundler.UrlGenerator;
 import mil.nga.bundler.archive.ArchiveFactory;
+import mil.nga.bundler.archive.ArchiveSettings;
+import mil.nga.bundler.archive.Compressor;
+import mil.nga.bundler.archive.EntryOrderComparator;
 import mil.nga.bundler.exceptions.ArchiveException;
 import mil.nga.bundler.exceptions.ServiceUnavailableException;
 import mil.nga.bundler.exceptions.UnknownArchiveTypeException;
@@ -26,6 +35,8 @@ import mil.nga.bundler.messages.ArchiveMessage;
 import mil.nga.bundler.model.ArchiveElement;
 import mil.nga.bundler.model.ArchiveJob;
 import mil.nga.bundler.model.FileEntry;
+import mil.nga.bundler.model.Job;
+import mil.nga.bundler.types.HashType;
 import mil.nga.bundler.types.JobStateType;
 import mil.nga.util.FileUtils;
 import mil.nga.util.URIUtils;
@@ -72,6 +83,12 @@ public class BundlerService
     @EJB
     FileCompletionListener fileCompletionlistener;
     
+    /**
+     * Container-injected reference to the JobService EJB.
+     */
+    @EJB
+    JobService jobService;
+    
     /**
      * Default constructor. 
      */
@@ -164,16 +181,69 @@ public class BundlerService
                     bundler.addFileCompletionListener(listener);
                 }
                 
+                // Calculate the hashes as the archive is written so the 
+                // archive does not have to be read back (or downloaded 
+                // from S3) afterwards.
+                Set<HashType> hashTypes = 
+                        ArchiveSettings.getInstance().getHashTypes();
+                bundler.setHashTypes(hashTypes);
+                
+                // Close the archive when the bytes actually written reach 
+                // the requested archive size rather than relying on the 
+                // compression estimate used to plan the job.
+                if (ArchiveSettings.getInstance().isRollover()) {
+                    bundler.setVolumeSize(getTargetArchiveSize(jobID));
+                    
+                    // If the compressor reorders the entries, put the file 
+                    // entries in the same order so the files that did not 
+                    // fit are the trailing entries of the list.
+                    if ((bundler instanceof Compressor) && 
+                            (((Compressor)bundler).isOrderEntries())) {
+                        Collections.sort(
+                                archive.getFiles(), 
+                                new Comparator<FileEntry>() {
+                                    @Override
+                                    public int compare(
+                                            FileEntry f1, FileEntry f2) {
+                                        return EntryOrderComparator.compare(
+                                                f1.getEntryPath(), 
+                                                f1.getSize(), 
+                                                f2.getEntryPath(), 
+                                                f2.getSize());
+                                    }
+                                });
+                    }
+                }
+                
                 // Here's where the magic happens.
-                bundler.bundle(
-                        getArchiveElements(archive.getFiles()), 
-                        URIUtils.getInstance().getURI(archive.getArchive()));
+                List<ArchiveElement> elements = 
+                        getArchiveElements(archive.getFiles());
+                URI output = URIUtils.getInstance().getURI(archive.getArchive());
+                bundler.bundle(elements, output);
+                
+                // Move any files that did not fit into a new archive.  If 
+                // that is not possible, rebuild this archive without the 
+                // size limit so that no files are lost.
+                if ((bundler.getNumBundled() < elements.size()) && 
+                        (!rollover(archive, bundler.getNumBundled()))) {
+                    bundler.setVolumeSize(0L);
+                    bundler.bundle(elements, output);
+                }
                
                 // Generate the hash file associated with the output archive.
                 if (getHashGeneratorService() != null) {
-                    getHashGeneratorService().generate(
-                            archive.getArchive(),
-                            archive.getHash());
+                    Map<HashType, String> hashes = bundler.getHashes();
+                    if (!hashes.isEmpty()) {
+                        getHashGeneratorService().saveHashes(
+                                hashes, 
+                                archive.getHash());
+                    }
+                    else {
+                        getHashGeneratorService().generate(
+                                archive.getArchive(),
+                                archive.getHash(),
+                                hashTypes);
+                    }
                 }
                 else {
                     LOGGER.warn("Unable to obtain a reference to the "
@@ -227,6 +297,109 @@ public class BundlerService
         }   
     }
    
+    /**
+     * Look up the target size of each archive in the job.
+     * 
+     * @param jobID The job ID.
+     * @return The target archive size in bytes, or zero if the job cannot
+     * be found.
+     */
+    private long getTargetArchiveSize(String jobID) 
+            throws ServiceUnavailableException {
+        long size = 0L;
+        Job  job  = getJobService().getJob(jobID);
+        if (job != null) {
+            size = job.getArchiveSize();
+        }
+        else {
+            LOGGER.warn("Unable to find job ID [ "
+                    + jobID
+                    + " ].  Archive rollover disabled.");
+        }
+        return size;
+    }
+    
+    /**
+     * Move the files that did not fit in the output archive into a new 
+     * archive (volume) belonging to the same job.  A new archive ID is 
+     * reserved from the job, the <code>ArchiveJob</code> and its 
+     * <code>FileEntry</code> records are persisted, the file entries are 
+     * removed from the original archive, and the new archive is placed on
+     * the archiver queue for processing.
+     * 
+     * @param archive The archive that rolled over.
+     * @param numBundled The number of leading files included in the 
+     * archive.
+     * @return True if the remaining files were moved to a new archive.  
+     * False if the job already contains the maximum number of archives.
+     */
+    private boolean rollover(ArchiveJob archive, int numBundled) 
+            throws ServiceUnavailableException {
+        
+        long volumeID = getJobService().reserveArchiveID(archive.getJobID());
+        if (volumeID < 0) {
+            LOGGER.warn("Unable to roll over archive ID [ "
+                    + archive.getArchiveID()
+                    + " ] for job ID [ "
+                    + archive.getJobID()
+                    + " ].  The archive will be rebuilt without a size "
+                    + "limit.");
+            return false;
+        }
+        
+        List<FileEntry> remaining = archive.getFiles().subList(
+                numBundled, archive.getFiles().size());
+        
+        ArchiveJob volume = new ArchiveJob(
+                archive.getJobID(), volumeID, archive.getArchiveType());
+        volume.setArchive(FileNameGenerator.getVolumeFile(
+                archive.getArchive(), 
+                archive.getArchiveID(), 
+                volumeID, 
+                archive.getArchiveType()));
+        volume.setArchiveURL(
+                UrlGenerator.getInstance().toURL(volume.getArchive()));
+        volume.setHash(FileUtils.removeExtension(volume.getArchive()) 
+                + "." 
+                + HASH_FILE_EXTENSION);
+        volume.setHashURL(
+                UrlGenerator.getInstance().toURL(volume.getHash()));
+        volume.setArchiveState(JobStateType.NOT_STARTED);
+        for (FileEntry file : remaining) {
+            volume.add(new FileEntry(
+                    archive.getJobID(), 
+                    volumeID, 
+                    file.getFilePath(), 
+                    file.getEntryPath(), 
+                    file.getSize()));
+        }
+        volume.complete();
+        getArchiveJobService().persist(volume);
+        
+        LOGGER.info("Archive ID [ "
+                + archive.getArchiveID()
+                + " ] for job ID [ "
+                + archive.getJobID()
+                + " ] reached the target size after [ "
+                + numBundled
+                + " ] files.  The remaining [ "
+                + remaining.size()
+                + " ] files were moved to archive ID [ "
+                + volumeID
+                + " ].");
+        
+        remaining.clear();
+        archive.complete();
+        getArchiveJobService().update(archive);
+        
+        super.notify(ARCHIVER_DEST_Q, 
+                new ArchiveMessage.ArchiveMessageBuilder()
+                    .jobId(volume.getJobID())
+                    .archiveId(volume.getArchiveID())
+                    .build());
+        return true;
+    }
+    
     /**
      * Map the input list of <code>FileEntry</code> objects to an output list of 
      * <code>ArchiveElement</code> objects to pass into the bundler algorithm.
@@ -303,6 +476,36 @@ public class BundlerService
         return hashGeneratorService;
     }
     
+    /**
+     * Private method used to obtain a reference to the target EJB.  
+     * 
+     * Method implemented because JBoss EAP 6.x was inexplicably NOT always
+     * injecting the EJB (i.e. EJB reference was null)
+     * 
+     * @return Reference to the JobService EJB.
+     * @throws ServiceUnavailableException Thrown if we are unable to obtain
+     * a reference to the target EJB.
+     */
+    private JobService getJobService() 
+            throws ServiceUnavailableException {
+        
+        if (jobService == null) {
+            LOGGER.warn("Application container failed to inject the "
+                    + "reference to JobService.  Attempting to "
+                    + "look it up via JNDI.");
+            jobService = EJBClientUtilities
+                    .getInstance()
+                    .getJobService();
+            if (jobService == null) {
+                throw new ServiceUnavailableException("Unable to obtain a "
+                        + "reference to [ "
+                        + JobService.class.getCanonicalName()
+                        + " ].");
+            }
+        }
+        return jobService;
+    }
+    
     /**
      * Private method used to obtain a reference to the target EJB.  
      * 
@@ -0,0 +1,247 @@
+package mil.nga.bundler.ejb;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.ejb.Timeout;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import mil.nga.bundler.CompressionEstimator;
+import mil.nga.bundler.CompressionModel;
+import mil.nga.bundler.archive.ArchiveSettings;
+import mil.nga.bundler.exceptions.ServiceUnavailableException;
+import mil.nga.bundler.types.ArchiveType;
+
+/**
+ * Session Bean implementation class CompressionLearningService
+ *
+ * Periodically rebuilds the <code>CompressionModel</code> used by the
+ * <code>CompressionEstimator</code> from the compression ratios achieved
+ * by the most recently completed archives.  The archives are summarized
+ * by an aggregate query rather than loaded, and the first model is built
+ * by a timer shortly after startup so that deployment is not held up
+ * waiting on the database.  Each rebuild also measures
+ * how far the estimates in use were from the actual archive sizes; that
+ * error rate is logged and made available to clients.  Learning is
+ * skipped unless enabled in the bundler properties.
+ *
+ * @author L. Craig Carpenter
+ */
+@Singleton
+@Startup
+public class CompressionLearningService {
+
+    /**
+     * Set up the Log4j system for use throughout the class
+     */
+    static final Logger LOGGER = LoggerFactory.getLogger(
+            CompressionLearningService.class);
+
+    /**
+     * The number of recently completed archives to learn from.
+     */
+    private static final int SAMPLE_SIZE = 5000;
+
+    /**
+     * Delay (milliseconds) between startup and the initial build.
+     */
+    private static final long INITIAL_DELAY = 30000L;
+
+    /**
+     * Container-injected reference to the ArchiveJobService EJB.
+     */
+    @EJB
+    ArchiveJobService archiveJobService;
+
+    /**
+     * Container-injected timer service used to schedule the initial build.
+     */
+    @Resource
+    TimerService timerService;
+
+    /**
+     * Eclipse-generated constructor.
+     */
+    public CompressionLearningService() { }
+
+    /**
+     * Schedule the initial build of the model.  The build itself is not
+     * performed here as it would delay application startup.
+     */
+    @PostConstruct
+    public void init() {
+        if (timerService != null) {
+            timerService.createSingleActionTimer(
+                    INITIAL_DELAY, new TimerConfig(null, false));
+        }
+        else {
+            LOGGER.warn("Application container failed to inject the "
+                    + "TimerService.  The compression model will not be "
+                    + "built until the next scheduled rebuild.");
+        }
+    }
+
+    /**
+     * Build the initial model.  Invoked by the single-action timer
+     * created at startup.
+     */
+    @Timeout
+    public void initialBuild() {
+        learn();
+    }
+
+    /**
+     * Rebuild the model from the completed archives.  Runs every 30
+     * minutes.
+     */
+    @Schedule(hour="*", minute="*/30", persistent=false)
+    public void learn() {
+
+        long startTime = System.currentTimeMillis();
+
+        if (!ArchiveSettings.getInstance().isLearnedCompression()) {
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Learned compression disabled.  Compression "
+                        + "model will not be built.");
+            }
+            return;
+        }
+
+        try {
+            if (getArchiveJobService() != null) {
+                List<Object[]> rows = getArchiveJobService()
+                        .getCompletedArchiveSummaries(SAMPLE_SIZE);
+                CompressionEstimator estimator =
+                        CompressionEstimator.getInstance();
+                CompressionModel.CompressionModelBuilder builder =
+                        new CompressionModel.CompressionModelBuilder()
+                            .previous(estimator.getModel());
+                addSummaries(builder, rows);
+                CompressionModel model = builder.build();
+                estimator.setModel(model);
+                LOGGER.info("Compression model rebuilt from [ "
+                        + model.getObservations()
+                        + " ] completed archives in [ "
+                        + (System.currentTimeMillis() - startTime)
+                        + " ] ms.  Estimate error [ "
+                        + String.format("%.2f", 100.0 * model.getEstimateError())
+                        + "% ].");
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug(model.toString());
+                }
+            }
+            else {
+                LOGGER.error("The container-injected reference to the "
+                        + "ArchiveJobService EJB is null.  Unable to build "
+                        + "the compression model.");
+            }
+        }
+        catch (ServiceUnavailableException sue) {
+            LOGGER.error("Internal system failure.  Target EJB service "
+                    + "is unavailable.  Exception message => [ "
+                    + sue.getMessage()
+                    + " ].");
+        }
+    }
+
+    /**
+     * Add an observation to the model for each archive in the aggregated 
+     * rows returned by <code>ArchiveJobService</code>.  Rows for the same 
+     * archive are adjacent, one row per file extension.
+     *
+     * @param builder The builder to add the observations to.
+     * @param rows The rows returned by 
+     * <code>ArchiveJobService.getCompletedArchiveSummaries()</code>.
+     */
+    private void addSummaries(
+            CompressionModel.CompressionModelBuilder builder,
+            List<Object[]> rows) {
+
+        String            key          = null;
+        ArchiveType       type         = null;
+        long              size         = 0L;
+        Map<String, Long> perExtension = new HashMap<String, Long>();
+
+        for (Object[] row : rows) {
+            String rowKey = row[0] + "/" + row[1];
+            if (!rowKey.equals(key)) {
+                builder.archive(type, size, perExtension);
+                key          = rowKey;
+                type         = getArchiveType(row[2]);
+                size         = (row[3] == null) ?
+                        0L : ((Number)row[3]).longValue();
+                perExtension = new HashMap<String, Long>();
+            }
+            String extension = (row[4] == null) ? "" : row[4].toString();
+            long   bytes     = (row[5] == null) ?
+                    0L : ((Number)row[5]).longValue();
+            Long   total     = perExtension.get(extension);
+            perExtension.put(extension,
+                    (total == null) ? bytes : total + bytes);
+        }
+        builder.archive(type, size, perExtension);
+    }
+
+    /**
+     * Convert the archive type column (the enumeration name) to the
+     * associated <code>ArchiveType</code>.
+     *
+     * @param value The column value.
+     * @return The archive type, or null if it is not recognized.
+     */
+    private ArchiveType getArchiveType(Object value) {
+        if (value != null) {
+            try {
+                return ArchiveType.valueOf(value.toString().trim());
+            }
+            catch (IllegalArgumentException iae) {
+                LOGGER.warn("Unrecognized archive type [ "
+                        + value
+                        + " ] ignored while building the compression "
+                        + "model.");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Getter method for the error rate of the compressed size estimates.
+     * This is the mean absolute percentage error, measured against the
+     * completed archives, of the estimates in use before the current model
+     * was built.
+     *
+     * @return The estimate error (0.0 - 1.0+), or -1.0 if no model has been
+     * built.
+     */
+    public double getEstimateError() {
+        CompressionModel model = CompressionEstimator.getInstance().getModel();
+        return (model == null) ? -1.0 : model.getEstimateError();
+    }
+
+    /**
+     * Private method used to obtain a reference to the target EJB.
+     * @return Reference to the ArchiveJobService EJB.
+     */
+    private ArchiveJobService getArchiveJobService() {
+        if (archiveJobService == null) {
+            LOGGER.warn("Application container failed to inject the "
+                    + "reference to ArchiveJobService.  Attempting to "
+                    + "look it up via JNDI.");
+            archiveJobService = EJBClientUtilities
+                    .getInstance()
+                    .getArchiveJobService();
+        }
+        return archiveJobService;
+    }
+}
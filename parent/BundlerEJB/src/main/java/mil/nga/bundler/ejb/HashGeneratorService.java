@@ -6,17 +6,29 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
 
 import javax.ejb.LocalBean;
 import javax.ejb.Stateless;
 
 import mil.nga.bundler.types.HashType;
+import mil.nga.util.FileUtils;
 import mil.nga.util.URIUtils;
 
+import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,7 +43,9 @@ import org.slf4j.LoggerFactory;
  * 
  * Note: We switched to using the commons codec classes because we found 
  * issues when converting the output hashes to Base64 using the JDK classes 
- * (specifically, leading 0s were being dropped).
+ * (specifically, leading 0s were being dropped).  The digests themselves 
+ * are JDK <code>MessageDigest</code> objects so that any number of them 
+ * can be fed from a single pass over the file.
  * 
  * @author L. Craig Carpenter
  */
@@ -44,6 +58,11 @@ public class HashGeneratorService {
      */
     static final Logger LOGGER = LoggerFactory.getLogger(HashGeneratorService.class);
     
+    /**
+     * Size of the buffer used when reading the file to be hashed.
+     */
+    private static final int HASH_BUFFER_SIZE = 1024 * 1024;
+    
     /**
      * Default constructor. 
      */
@@ -76,23 +95,7 @@ public class HashGeneratorService {
                 }
                 
                 long startTime = System.currentTimeMillis();
-                switch (hashType) {
-                    case MD5 : 
-                        hash = getMD5Hash(uri);
-                        break;
-                    case SHA1:
-                        hash = getSHA1Hash(uri);
-                        break;
-                    case SHA256:
-                        hash = getSHA256Hash(uri);
-                        break;
-                    case SHA384:
-                        hash = getSHA384Hash(uri);                        
-                        break;
-                    case SHA512:
-                        hash = getSHA512Hash(uri);                        
-                        break;
-                }
+                hash = getHashes(uri, EnumSet.of(hashType)).get(hashType);
                 
                 long elapsedTime = System.currentTimeMillis() - startTime;
                 if (LOGGER.isDebugEnabled()) {
@@ -182,165 +185,250 @@ public class HashGeneratorService {
     }
     
     /**
-     * Calculate the MD5 hash using the Apache Commons Codec classes.  
+     * Calculate the MD5 hash.
      * 
      * @param file The file we need the hash for.
      * @return The calculated MD5 hash.
      */
     public String getMD5Hash(URI file) {
-
-        String hash = null;
-
-        if (file != null) {
-            try (InputStream is = Files.newInputStream(Paths.get(file))) {
-                hash = org.apache.commons.codec.digest.DigestUtils.md5Hex(is);
-            }
-            catch (IOException ioe) {
-                LOGGER.error(
-                     "Unexpected IOException encountered while generating "
-                     + "the [ " 
-                     + HashType.MD5.getText() 
-                     + " ] hash for file [ "
-                     + file.toString()
-                     + " ].  Exception message [ "
-                     + ioe.getMessage()
-                     + " ].  Method will return a null hash.");
-            }
-        }
-        else {
-            LOGGER.error("Input file Path is null.  Hash will not be generated.");
-        }
-        return hash;
+        return getHashes(file, EnumSet.of(HashType.MD5)).get(HashType.MD5);
     }
     
     /**
-     * Calculate the SHA-1 hash using the Apache Commons Codec classes.
-     * Note: SHA-1 hash generation seems to take about twice as long as MD5 
-     * hash generation.
+     * Calculate the SHA-1 hash.
      * 
      * @param file The file we need the hash for.
      * @return The calculated SHA1 hash.
      */
     public String getSHA1Hash(URI file) {
+        return getHashes(file, EnumSet.of(HashType.SHA1)).get(HashType.SHA1);
+    }
 
-        String          hash = null;
+    /**
+     * Calculate the SHA-256 hash.
+     * 
+     * @param file The file we need the hash for.
+     * @return The calculated SHA256 hash.
+     */
+    public String getSHA256Hash(URI file) {
+        return getHashes(file, EnumSet.of(HashType.SHA256)).get(HashType.SHA256);
+    }
+    
+    /**
+     * Calculate the SHA-384 hash.
+     * 
+     * @param file The file we need the hash for.
+     * @return The calculated SHA384 hash.
+     */
+    public String getSHA384Hash(URI file) {
+        return getHashes(file, EnumSet.of(HashType.SHA384)).get(HashType.SHA384);
+    }
+    
+    /**
+     * Calculate the SHA-512 hash.
+     * 
+     * @param file The file we need the hash for.
+     * @return The calculated SHA512 hash.
+     */
+    public String getSHA512Hash(URI file) {
+        return getHashes(file, EnumSet.of(HashType.SHA512)).get(HashType.SHA512);
+    }
+    
+    /**
+     * Calculate any number of hashes of the input file in a single pass 
+     * over the data.  Files on the local file system are read through a 
+     * <code>FileChannel</code> into a large direct buffer; files on other 
+     * file system providers (e.g. s3fs) are read through a stream into a 
+     * buffer of the same size.  Each block read is fed to every requested
+     * digest, so N hashes cost roughly one read of the file.
+     * 
+     * @param file The file we need the hashes for.
+     * @param hashTypes The types of hash to calculate.
+     * @return Map of hash type to hex string.  The map will be empty if 
+     * the file could not be read.
+     */
+    public Map<HashType, String> getHashes(
+            URI file, 
+            Collection<HashType> hashTypes) {
+        
+        Map<HashType, String> hashes = 
+                new EnumMap<HashType, String>(HashType.class);
+        
         if (file != null) {
-            try (InputStream is = Files.newInputStream(Paths.get(file))) {
-                hash = org.apache.commons.codec.digest.DigestUtils.sha1Hex(is);
-            }
-            catch (IOException ioe) {
-                 LOGGER.error(
+            if ((hashTypes != null) && (!hashTypes.isEmpty())) {
+                Map<HashType, MessageDigest> digests = 
+                        new EnumMap<HashType, MessageDigest>(HashType.class);
+                try {
+                    for (HashType type : hashTypes) {
+                        digests.put(type, 
+                                MessageDigest.getInstance(type.getAlgorithm()));
+                    }
+                    Path path = Paths.get(file);
+                    if (path.getFileSystem() == FileSystems.getDefault()) {
+                        try (FileChannel channel = FileChannel.open(
+                                path, StandardOpenOption.READ)) {
+                            ByteBuffer buffer = 
+                                    ByteBuffer.allocateDirect(HASH_BUFFER_SIZE);
+                            while (channel.read(buffer) != -1) {
+                                buffer.flip();
+                                for (MessageDigest digest : digests.values()) {
+                                    digest.update(buffer.duplicate());
+                                }
+                                buffer.clear();
+                            }
+                        }
+                    }
+                    else {
+                        try (InputStream is = Files.newInputStream(path)) {
+                            byte[] buffer = new byte[HASH_BUFFER_SIZE];
+                            int count;
+                            while ((count = is.read(buffer)) != -1) {
+                                for (MessageDigest digest : digests.values()) {
+                                    digest.update(buffer, 0, count);
+                                }
+                            }
+                        }
+                    }
+                    for (Map.Entry<HashType, MessageDigest> entry : 
+                            digests.entrySet()) {
+                        hashes.put(entry.getKey(), 
+                                Hex.encodeHexString(entry.getValue().digest()));
+                    }
+                }
+                catch (NoSuchAlgorithmException nsae) {
+                    LOGGER.error(
+                         "Unexpected NoSuchAlgorithmException encountered "
+                         + "while generating hashes [ " 
+                         + hashTypes.toString() 
+                         + " ] for file [ "
+                         + file.toString()
+                         + " ].  Exception message [ "
+                         + nsae.getMessage()
+                         + " ].  Method will return no hashes.");
+                }
+                catch (IOException ioe) {
+                    LOGGER.error(
                          "Unexpected IOException encountered while generating "
-                         + "the [ " 
-                         + HashType.SHA1.getText() 
-                         + " ] hash for file [ "
+                         + "hashes [ " 
+                         + hashTypes.toString() 
+                         + " ] for file [ "
                          + file.toString()
                          + " ].  Exception message [ "
                          + ioe.getMessage()
-                         + " ].  Method will return a null hash.");
+                         + " ].  Method will return no hashes.");
+                }
+            }
+            else {
+                LOGGER.error("No hash types requested.  Hash will not be "
+                        + "generated.");
             }
         }
         else {
             LOGGER.error("Input file Path is null.  Hash will not be generated.");
         }
-        return hash;
+        return hashes;
     }
-
+    
     /**
-     * Calculate the SHA-256 hash using the Apache Commons Codec classes.
+     * Generate all of the requested hashes of the input file (in a single 
+     * pass) and store each in its own hash file.  See 
+     * <code>saveHashes()</code> for the naming of the output files.
      * 
-     * @param file The file we need the hash for.
-     * @return The calculated SHA256 hash.
+     * @param inputFile The file on which to generate the hashes.
+     * @param outputFile The hash file associated with the input file.
+     * @param hashTypes The types of hash to generate.
      */
-    public String getSHA256Hash(URI file) {
-
-        String hash = null;
-        
-        if (file != null) {
-            try (InputStream is = Files.newInputStream(Paths.get(file))) {
-                hash = org.apache.commons.codec.digest.DigestUtils.sha256Hex(is);
-            }
-            catch (IOException ioe) {
-                LOGGER.error(
-                    "Unexpected IOException encountered while generating "
-                    + "the [ " 
-                    + HashType.SHA256.getText() 
-                    + " ] hash for file [ "
-                    + file.toString()
-                    + " ].  Exception message [ "
-                    + ioe.getMessage()
-                    + " ].  Method will return a null hash.");
+    public void generate(
+            String inputFile, 
+            String outputFile, 
+            Collection<HashType> hashTypes) {
+        if ((inputFile != null) && (!inputFile.isEmpty())) {
+            URI input = URIUtils.getInstance().getURI(inputFile);
+            long startTime = System.currentTimeMillis();
+            saveHashes(getHashes(input, hashTypes), outputFile);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Hash types [ "
+                        + hashTypes
+                        + " ] for file [ "
+                        + input.toString()
+                        + " ] created in [ "
+                        + (System.currentTimeMillis() - startTime)
+                        + " ] ms.");
             }
         }
         else {
-            LOGGER.error("Input file Path is null.  Hash will not be generated.");
+            LOGGER.error("The require input file parameter is null or empty.  "
+                    + "The hash will not be generated.");
         }
-        return hash;
     }
     
     /**
-     * Calculate the SHA-384 hash using the Apache Commons Codec classes.
+     * Construct the name of the hash file for the input hash type.  The 
+     * extension of the supplied hash file name is replaced with the text 
+     * associated with the hash type (e.g. archive.sha1 becomes 
+     * archive.sha256).
      * 
-     * @param file The file we need the hash for.
-     * @return The calculated SHA384 hash.
+     * @param outputFile The hash file associated with the archive.
+     * @param hashType The type of hash.
+     * @return The name of the hash file for the input type.
      */
-    public String getSHA384Hash(URI file) {
-
-        String hash = null;
-
-        if (file != null) {
-            try (InputStream is = Files.newInputStream(Paths.get(file))) {
-                hash = org.apache.commons.codec.digest.DigestUtils.sha384Hex(is);
+    public String getHashFile(String outputFile, HashType hashType) {
+        return FileUtils.removeExtension(outputFile) 
+                + "." 
+                + hashType.getText();
+    }
+    
+    /**
+     * Save each of the input hashes in its own hash file.  The name of 
+     * each file is obtained from <code>getHashFile()</code>.
+     * 
+     * @param hashes Map of hash type to previously calculated hash.
+     * @param outputFile The hash file associated with the archive.
+     */
+    public void saveHashes(Map<HashType, String> hashes, String outputFile) {
+        if ((hashes != null) && (!hashes.isEmpty())) {
+            if ((outputFile != null) && (!outputFile.isEmpty())) {
+                for (Map.Entry<HashType, String> entry : hashes.entrySet()) {
+                    saveHash(entry.getValue(), 
+                            getHashFile(outputFile, entry.getKey()));
+                }
             }
-            catch (IOException ioe) {
-                LOGGER.error(
-                    "Unexpected IOException encountered while generating "
-                    + "the [ " 
-                    + HashType.SHA384.getText() 
-                    + " ] hash for file [ "
-                    + file.toString()
-                    + " ].  Exception message [ "
-                    + ioe.getMessage()
-                    + " ].  Method will return a null hash.");
+            else {
+                LOGGER.error("The require output file parameter is null or "
+                        + "empty.  The output hash files will not be "
+                        + "generated.");
             }
         }
         else {
-            LOGGER.error("Input file Path is null.  Hash will not be generated.");
+            LOGGER.error("No hashes supplied.  The output hash files will "
+                    + "not be generated.");
         }
-        
-        return hash;
     }
     
     /**
-     * Calculate the SHA-512 hash using the Apache Commons Codec classes.
+     * Save a hash that was calculated while the archive was being written 
+     * (see <code>BundlerI.getHash()</code>) to the output file.  Unlike 
+     * <code>generate()</code> the archive file itself is not read.
      * 
-     * @param file The file we need the hash for.
-     * @return The calculated SHA512 hash.
+     * @param hash The previously calculated hash.
+     * @param outputFile The output file in which to store the hash.
      */
-    public String getSHA512Hash(URI file) {
-
-        String hash = null;
-
-        if (file != null) {
-            try (InputStream is = Files.newInputStream(Paths.get(file))) {
-                hash = org.apache.commons.codec.digest.DigestUtils.sha512Hex(is);
+    public void saveHash(String hash, String outputFile) {
+        if ((hash != null) && (!hash.isEmpty())) {
+            if ((outputFile != null) && (!outputFile.isEmpty())) {
+                saveHash(hash, Paths.get(
+                        URIUtils.getInstance().getURI(outputFile)));
             }
-            catch (IOException ioe) {
-                LOGGER.error(
-                    "Unexpected IOException encountered while generating "
-                    + "the [ " 
-                    + HashType.SHA512.getText() 
-                    + " ] hash for file [ "
-                    + file.toString()
-                    + " ].  Exception message [ "
-                    + ioe.getMessage()
-                    + " ].  Method will return a null hash.");
+            else {
+                LOGGER.error("The require output file parameter is null or "
+                        + "empty.  The output hash file will not be "
+                        + "generated.");
             }
         }
         else {
-            LOGGER.error("Input file Path is null.  Hash will not be generated.");
+            LOGGER.error("The input hash is null or empty.  The output hash "
+                    + "file will not be generated.");
         }
-        return hash;
     }
     
     /**
@@ -1,5 +1,10 @@
 package mil.nga.bundler.ejb;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 import javax.ejb.EJB;
 import javax.ejb.LocalBean;
 import javax.ejb.Stateless;
@@ -7,12 +12,14 @@ import javax.ejb.Stateless;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import mil.nga.bundler.archive.ArchiveSettings;
 import mil.nga.bundler.exceptions.ServiceUnavailableException;
 import mil.nga.bundler.interfaces.BundlerConstantsI;
 import mil.nga.bundler.messages.ArchiveMessage;
 import mil.nga.bundler.model.ArchiveJob;
 import mil.nga.bundler.model.Job;
 import mil.nga.bundler.types.JobStateType;
+import mil.nga.bundler.types.PlannerType;
 
 /**
  * This class was designed to implement a parallel processing architecture, 
@@ -94,7 +101,9 @@ public class JobRunnerService
      * This method invokes the bundler processing on an input Job object. 
      * It loops through each archive contained in the job and submits them 
      * into the cluster (via JMS messages).  The method then updates the job
-     * status through the JobTracker JPA.
+     * status through the JobTracker JPA.  When the archives were planned 
+     * for balanced completion, the largest are submitted first so that no
+     * large archive is left waiting behind the small ones.
      * 
      * @param job The populated Job object to invoke processing on.
      */
@@ -116,7 +125,7 @@ public class JobRunnerService
                     job = getJobService().update(job);
                 }
                 
-                for (ArchiveJob archive : job.getArchives()) {
+                for (ArchiveJob archive : getDispatchOrder(job)) {
                     
                     ArchiveMessage archiveMsg = new 
                             ArchiveMessage.ArchiveMessageBuilder()
@@ -138,4 +147,28 @@ public class JobRunnerService
             }
         }
     }
+    
+    /**
+     * Determine the order in which the archives of a job are submitted.  
+     * Archives are submitted in the order held by the job unless the 
+     * longest_processing_time planner is in use, in which case the largest
+     * archives are submitted first.
+     * 
+     * @param job The Job containing the archives.
+     * @return The archives in the order they should be submitted.
+     */
+    private List<ArchiveJob> getDispatchOrder(Job job) {
+        List<ArchiveJob> archives = new ArrayList<ArchiveJob>(
+                job.getArchives());
+        if (ArchiveSettings.getInstance().getPlannerType() == 
+                PlannerType.LONGEST_PROCESSING_TIME) {
+            Collections.sort(archives, new Comparator<ArchiveJob>() {
+                @Override
+                public int compare(ArchiveJob a1, ArchiveJob a2) {
+                    return Long.compare(a2.getSize(), a1.getSize());
+                }
+            });
+        }
+        return archives;
+    }
 }
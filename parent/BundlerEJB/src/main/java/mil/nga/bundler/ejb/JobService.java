@@ -7,6 +7,7 @@ import javax.ejb.LocalBean;
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.LockModeType;
 import javax.persistence.NoResultException;
 import javax.persistence.Persistence;
 import javax.persistence.PersistenceContext;
@@ -177,6 +178,50 @@ public class JobService implements BundlerConstantsI {
         return job;
     }
     
+    /**
+     * Retrieve a Job object from the target database, locking its row
+     * until the calling transaction completes.  This is used by clients
+     * that read the job, modify it and write it back (i.e. the job
+     * tracker), so that the archive count incremented concurrently by
+     * <code>reserveArchiveID()</code> is never overwritten with a stale
+     * value.
+     *
+     * @param jobID The job ID (primary key) of the job to retrieve.
+     * @return The target Job object.  Null if the Job could not be found.
+     */
+    public Job getJobForUpdate(String jobID)
+            throws ServiceUnavailableException {
+
+        long start = System.currentTimeMillis();
+        Job  job   = null;
+
+        if ((jobID != null) && (!jobID.isEmpty())) {
+            job = getEntityManager().find(
+                    Job.class,
+                    jobID,
+                    LockModeType.PESSIMISTIC_WRITE);
+            if (job == null) {
+                LOGGER.warn("Unable to find Job associated with job ID [ "
+                        + jobID
+                        + " ].  Returned Job will be null.");
+            }
+        }
+        else {
+            LOGGER.warn("The input job ID is null or empty.  Unable to "
+                    + "retrieve an associated job.");
+        }
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Job [ "
+                    + jobID
+                    + " ] retrieved and locked in [ "
+                    + (System.currentTimeMillis() - start)
+                    + " ] ms.");
+        }
+
+        return job;
+    }
+
     /**
      * Get a list of all jobIDs currently residing in the target data store.
      * 
@@ -386,4 +431,53 @@ public class JobService implements BundlerConstantsI {
                     + " ] ms.");
         }
     }
+    
+    /**
+     * Reserve the next archive ID for the input job.  This is used when an
+     * archive rolls over and the files that did not fit must be placed in 
+     * a new archive.  The job's archive count is incremented with a single
+     * UPDATE statement so that archives rolling over concurrently (on 
+     * different nodes) are never handed the same ID.  Archive IDs are 
+     * assigned sequentially from zero, so the new ID is the previous 
+     * archive count.
+     * 
+     * @param jobID The job ID.
+     * @return The reserved archive ID, or -1 if the job already contains 
+     * the maximum number of archives (or does not exist).
+     */
+    public long reserveArchiveID(String jobID) 
+            throws ServiceUnavailableException {
+        
+        long archiveID = -1L;
+        
+        if ((jobID != null) && (!jobID.isEmpty())) {
+            int updated = getEntityManager().createQuery(
+                    "UPDATE Job j SET j.numArchives = j.numArchives + 1 "
+                    + "WHERE j.jobID = :jobID AND j.numArchives < :max")
+                    .setParameter("jobID", jobID)
+                    .setParameter("max", (int)MAX_NUM_ARCHIVES)
+                    .executeUpdate();
+            if (updated > 0) {
+                Integer numArchives = getEntityManager().createQuery(
+                        "SELECT j.numArchives FROM Job j "
+                        + "WHERE j.jobID = :jobID", Integer.class)
+                        .setParameter("jobID", jobID)
+                        .getSingleResult();
+                archiveID = numArchives.longValue() - 1;
+            }
+            else {
+                LOGGER.warn("Unable to reserve a new archive ID for job [ "
+                        + jobID
+                        + " ].  The job does not exist or already contains "
+                        + "the maximum number of archives [ "
+                        + MAX_NUM_ARCHIVES
+                        + " ].");
+            }
+        }
+        else {
+            LOGGER.warn("The input job ID is null or empty.  An archive ID "
+                    + "will not be reserved.");
+        }
+        return archiveID;
+    }
 }
@@ -246,6 +246,10 @@ public class JobTrackerMDB implements MessageListener {
         job.setTotalSizeComplete(totalSizeComplete);
         job.setNumArchivesComplete(numArchivesComplete);
         
+        // The archive count is only ever changed by 
+        // JobService.reserveArchiveID() when an archive rolls over.  The 
+        // job row is locked (see onMessage()) so the count read here is 
+        // current and is written back unchanged.
         if (job.getNumArchives() == numArchivesComplete) {
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Marking job ID [ "
@@ -289,7 +293,11 @@ public class JobTrackerMDB implements MessageListener {
                          + archiveMsg.toString()
                          + " ].");
             
-                 Job job = getJobService().getJob(archiveMsg.getJobId());
+                 // Lock the job so that an archive rolling over on 
+                 // another node cannot increment the archive count between
+                 // this read and the update below.
+                 Job job = getJobService().getJobForUpdate(
+                         archiveMsg.getJobId());
                      
                  if (job != null) {
                      ArchiveJob archive = job.getArchive(archiveMsg.getArchiveId());